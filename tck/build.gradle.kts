@@ -212,6 +212,7 @@ downloadLicenses {
 sourceSets {
     main {
         java.srcDir(buildDir.resolve("generated/sources/audit"))
+        java.srcDir(buildDir.resolve("generated/sources/testRegistry"))
     }
 }
 
@@ -240,9 +241,97 @@ val generateRequirements by tasks.registering {
     }
 }
 
+// generates the registry of the tests and their assertion IDs used by TestRegistry, so that no reflection is needed
+// to start a test. Each test must have a public constructor with one of the parameter lists TestRegistry looks for,
+// and a single "testIds = List.of(...);" of Requirements IDs, or the build fails.
+val generateTestRegistry by tasks.registering {
+    val testSources = fileTree("src/main/java/org/eclipse/sparkplug/tck/test") {
+        include("broker/*Test.java", "edge/*Test.java", "host/*Test.java")
+    }
+    inputs.files(testSources)
+    val generatedSourcesDir = layout.buildDirectory.dir("generated/sources/testRegistry")
+    outputs.dir(generatedSourcesDir)
+
+    doLast {
+        // the parameter types of the test constructors, in the order TestRegistry looks for them, and the arguments
+        // of the factory to call each with
+        val signatures = linkedMapOf(
+            listOf("TCK", "String[]") to "tck, parms",
+            listOf("TCK", "String[]", "Results.Config") to "tck, parms, config",
+            listOf("TCK", "Utilities", "String[]", "Results.Config") to "tck, utilities, parms, config"
+        )
+        val entries = StringBuilder()
+        testSources.files.sortedBy { it.invariantSeparatorsPath }.forEach { source ->
+            val profile = source.parentFile.name
+            val test = source.nameWithoutExtension
+            val text = source.readText()
+            val constructors = Regex("public\\s+$test\\s*\\(([^)]*)\\)").findAll(text).map { match ->
+                match.groupValues[1].split(",").map { it.trim() }.filter { it.isNotEmpty() }.map { parameter ->
+                    // the type of "final @NotNull Type name"
+                    val tokens = parameter.replace(Regex("@[\\w.]+"), "").replace(Regex("\\s*\\[\\s*]"), "[]")
+                        .trim().split(Regex("\\s+")).filter { it != "final" }
+                    if (tokens.size != 2) {
+                        throw GradleException(
+                            "Can't parse the parameter \"$parameter\" of the $test constructor in $source")
+                    }
+                    tokens[0]
+                }
+            }.toList()
+            if (constructors.isEmpty()) {
+                throw GradleException("No public constructor in $source")
+            }
+            val arguments = signatures.entries.firstOrNull { constructors.contains(it.key) }?.value
+                ?: throw GradleException("No public constructor of $test in $source has the parameters " +
+                    signatures.keys.joinToString(" or ") { it.joinToString(", ", "(", ")") } + ", only " +
+                    constructors.joinToString(" and ") { it.joinToString(", ", "(", ")") })
+            val testIdLists = Regex("testIds\\s*=\\s*List\\.of\\(([^;]*)\\);").findAll(text).toList()
+            if (testIdLists.size != 1) {
+                throw GradleException("Expected one \"testIds = List.of(...);\" in $source, found ${testIdLists.size}")
+            }
+            val testIds = testIdLists[0].groupValues[1].replace(Regex("//[^\\n]*|/\\*[\\s\\S]*?\\*/"), "")
+                .split(",").map { it.trim() }.filter { it.isNotEmpty() }.map { id ->
+                    if (!id.matches(Regex("ID_[A-Z0-9_]+"))) {
+                        throw GradleException("Can't parse the assertion ID \"$id\" of $test in $source")
+                    }
+                    id
+                }.distinct()
+            val className = "org.eclipse.sparkplug.tck.test.$profile.$test"
+            entries.append("\t\ttests.put(\"$profile/$test\", new TestRegistry.Entry(\n")
+            entries.append("\t\t\t\t(tck, utilities, parms, config) -> new $className($arguments),\n")
+            entries.append(testIds.joinToString(", ", "\t\t\t\tList.of(", ")));\n") { "Requirements.$it" })
+        }
+
+        val packageDir = generatedSourcesDir.get().asFile.resolve("org/eclipse/sparkplug/tck/test")
+        packageDir.mkdirs()
+        packageDir.resolve("GeneratedTestRegistry.java").writeText(
+            """
+            |// generated by the generateTestRegistry task of build.gradle.kts, do not edit
+            |package org.eclipse.sparkplug.tck.test;
+            |
+            |import java.util.HashMap;
+            |import java.util.List;
+            |import java.util.Map;
+            |import java.util.function.Supplier;
+            |
+            |import org.eclipse.sparkplug.tck.test.common.Requirements;
+            |
+            |final class GeneratedTestRegistry implements Supplier<Map<String, TestRegistry.Entry>> {
+            |
+            |	@Override
+            |	public Map<String, TestRegistry.Entry> get() {
+            |		final Map<String, TestRegistry.Entry> tests = new HashMap<>();
+            |$entries		return tests;
+            |	}
+            |}
+            |""".trimMargin()
+        )
+    }
+}
+
 tasks.compileJava {
     dependsOn(audit)
     dependsOn(generateRequirements)
+    dependsOn(generateTestRegistry)
 
     inputs.files(tckAuditXml)
     val coverageReportDir = layout.buildDirectory.dir("coverage-report")
@@ -257,6 +346,34 @@ tasks.compileJava {
     )
 }
 
+/* ******************** benchmarks ******************** */
+
+// JMH benchmarks of the hot paths, in src/jmh/java. Run with: ./gradlew jmhRun -Pjmh.args="<JMH options>"
+val jmh: SourceSet by sourceSets.creating {
+    compileClasspath += sourceSets.main.get().output + configurations.compileClasspath.get()
+    runtimeClasspath += sourceSets.main.get().output + configurations.runtimeClasspath.get()
+}
+
+dependencies {
+    "jmhImplementation"("org.openjdk.jmh:jmh-core:${property("jmh.version")}")
+    "jmhAnnotationProcessor"("org.openjdk.jmh:jmh-generator-annprocess:${property("jmh.version")}")
+    // the SDK is provided by the broker at runtime, so the benchmarks need their own copy
+    "jmhImplementation"("com.hivemq:hivemq-extension-sdk:${hivemqExtension.sdkVersion.get()}")
+    "jmhRuntimeOnly"("org.slf4j:slf4j-nop:${property("slf4j.version")}")
+}
+
+val jmhRun by tasks.registering(JavaExec::class) {
+    group = "benchmark"
+    description = "Runs the JMH benchmarks."
+    classpath = jmh.runtimeClasspath
+    mainClass.set("org.openjdk.jmh.Main")
+    val resultFile = buildDir.resolve("reports/jmh/results.json")
+    args = listOf("-rf", "json", "-rff", resultFile.absolutePath) +
+            (findProperty("jmh.args")?.toString()?.split(" ")?.filter { it.isNotBlank() } ?: listOf())
+    doFirst { resultFile.parentFile.mkdirs() }
+}
+
+
 /* ******************** debug run ******************** */
 
 val downloadHivemqCe by tasks.registering(de.undercouch.gradle.tasks.download.Download::class) {
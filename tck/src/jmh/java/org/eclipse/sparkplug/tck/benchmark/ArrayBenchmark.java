@@ -0,0 +1,100 @@
+/*******************************************************************************
+ * Copyright (c) 2022 Ian Craggs
+ *
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v2.0
+ * which is available at https://www.eclipse.org/legal/epl-2.0/
+ *
+ * SPDX-License-Identifier: EPL-2.0
+ *
+ * Contributors:
+ *    Ian Craggs - initial implementation and documentation
+ *******************************************************************************/
+
+package org.eclipse.sparkplug.tck.benchmark;
+
+import java.nio.ByteBuffer;
+import java.util.Date;
+import java.util.concurrent.TimeUnit;
+
+import org.eclipse.sparkplug.impl.exception.message.SparkplugBArrayDecoder;
+import org.eclipse.sparkplug.impl.exception.message.SparkplugBPayloadDecoder;
+import org.eclipse.sparkplug.impl.exception.message.SparkplugBPayloadEncoder;
+import org.eclipse.sparkplug.impl.exception.model.Metric.MetricBuilder;
+import org.eclipse.sparkplug.impl.exception.model.MetricDataType;
+import org.eclipse.sparkplug.impl.exception.model.SparkplugBPayload;
+import org.eclipse.sparkplug.impl.exception.model.SparkplugBPayload.SparkplugBPayloadBuilder;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Encoding and decoding of a payload holding one waveform, a DoubleArray metric, with the value held as a Double[] or
+ * as a double[].
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class ArrayBenchmark {
+
+	@Param({ "true", "false" })
+	public boolean primitive;
+
+	@Param({ "1024", "65536" })
+	public int length;
+
+	private final SparkplugBPayloadEncoder encoder = new SparkplugBPayloadEncoder();
+	private SparkplugBPayload payload;
+	private ByteBuffer encoded;
+	private ByteBuffer buffer;
+
+	@Setup
+	public void setup() throws Exception {
+		double[] samples = new double[length];
+		for (int i = 0; i < length; i++) {
+			samples[i] = Math.sin(i * 0.01);
+		}
+		Object value = samples;
+		if (!primitive) {
+			Double[] boxed = new Double[length];
+			for (int i = 0; i < length; i++) {
+				boxed[i] = samples[i];
+			}
+			value = boxed;
+		}
+		Date now = new Date();
+		payload = new SparkplugBPayloadBuilder(0L).setTimestamp(now)
+				.addMetric(new MetricBuilder("Waveform", MetricDataType.DoubleArray, value).timestamp(now).createMetric())
+				.createPayload();
+		encoded = ByteBuffer.wrap(PayloadCorpus.encode(payload));
+		buffer = ByteBuffer.allocate(encoded.remaining());
+	}
+
+	@Benchmark
+	public byte[] encode() throws Exception {
+		return encoder.getBytes(payload);
+	}
+
+	@Benchmark
+	public int encodeReused() throws Exception {
+		buffer.clear();
+		return encoder.encode(payload, buffer);
+	}
+
+	@Benchmark
+	public Object decode() throws Exception {
+		return SparkplugBArrayDecoder
+				.decode(SparkplugBPayloadDecoder.getInstance().buildAliasedFromByteBuffer(encoded).getMetrics(0));
+	}
+}
@@ -0,0 +1,108 @@
+/*******************************************************************************
+ * Copyright (c) 2022 Ian Craggs
+ *
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v2.0
+ * which is available at https://www.eclipse.org/legal/epl-2.0/
+ *
+ * SPDX-License-Identifier: EPL-2.0
+ *
+ * Contributors:
+ *    Ian Craggs - initial implementation and documentation
+ *******************************************************************************/
+
+package org.eclipse.sparkplug.tck.benchmark;
+
+import java.nio.ByteBuffer;
+import java.util.Date;
+import java.util.concurrent.TimeUnit;
+
+import org.eclipse.sparkplug.impl.exception.message.SparkplugBDataSetDecoder;
+import org.eclipse.sparkplug.impl.exception.message.SparkplugBPayloadDecoder;
+import org.eclipse.sparkplug.impl.exception.message.SparkplugBPayloadEncoder;
+import org.eclipse.sparkplug.impl.exception.model.ColumnarDataSet;
+import org.eclipse.sparkplug.impl.exception.model.ColumnarDataSet.ColumnarDataSetBuilder;
+import org.eclipse.sparkplug.impl.exception.model.DataSet.DataSetBuilder;
+import org.eclipse.sparkplug.impl.exception.model.DataSetDataType;
+import org.eclipse.sparkplug.impl.exception.model.Metric.MetricBuilder;
+import org.eclipse.sparkplug.impl.exception.model.MetricDataType;
+import org.eclipse.sparkplug.impl.exception.model.SparkplugBPayload;
+import org.eclipse.sparkplug.impl.exception.model.SparkplugBPayload.SparkplugBPayloadBuilder;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Building, encoding and decoding of a payload holding one historian data set, with a timestamp, a value and a quality
+ * column, held as rows or as columns.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class DataSetBenchmark {
+
+	@Param({ "true", "false" })
+	public boolean columnar;
+
+	@Param({ "1000", "100000" })
+	public int rows;
+
+	private final SparkplugBPayloadEncoder encoder = new SparkplugBPayloadEncoder();
+	private long[] timestamps;
+	private double[] values;
+	private int[] qualities;
+	private SparkplugBPayload payload;
+	private ByteBuffer encoded;
+
+	@Setup
+	public void setup() throws Exception {
+		timestamps = new long[rows];
+		values = new double[rows];
+		qualities = new int[rows];
+		for (int i = 0; i < rows; i++) {
+			timestamps[i] = 1650000000000L + i * 1000L;
+			values[i] = Math.sin(i * 0.01);
+			qualities[i] = 192;
+		}
+		Date now = new Date();
+		payload = new SparkplugBPayloadBuilder(0L).setTimestamp(now)
+				.addMetric(new MetricBuilder("History", MetricDataType.DataSet, build()).timestamp(now).createMetric())
+				.createPayload();
+		encoded = ByteBuffer.wrap(PayloadCorpus.encode(payload));
+	}
+
+	@Benchmark
+	public Object build() throws Exception {
+		ColumnarDataSet columns = new ColumnarDataSetBuilder()
+				.addColumn("Timestamp", DataSetDataType.DateTime, timestamps)
+				.addColumn("Value", DataSetDataType.Double, values)
+				.addColumn("Quality", DataSetDataType.Int32, qualities).createDataSet();
+		if (columnar) {
+			return columns;
+		}
+		return new DataSetBuilder(3).addColumnNames(columns.getColumnNames()).addTypes(columns.getTypes())
+				.addRows(columns.getRows()).createDataSet();
+	}
+
+	@Benchmark
+	public byte[] encode() throws Exception {
+		return encoder.getBytes(payload);
+	}
+
+	@Benchmark
+	public Object decode() throws Exception {
+		return SparkplugBDataSetDecoder.decode(
+				SparkplugBPayloadDecoder.getInstance().buildAliasedFromByteBuffer(encoded).getMetrics(0).getDatasetValue());
+	}
+}
@@ -0,0 +1,98 @@
+/*******************************************************************************
+ * Copyright (c) 2022 Ian Craggs
+ *
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v2.0
+ * which is available at https://www.eclipse.org/legal/epl-2.0/
+ *
+ * SPDX-License-Identifier: EPL-2.0
+ *
+ * Contributors:
+ *    Ian Craggs - initial implementation and documentation
+ *******************************************************************************/
+
+
+package org.eclipse.sparkplug.tck.benchmark;
+
+import java.util.concurrent.TimeUnit;
+
+import org.eclipse.sparkplug.tck.test.Monitor;
+import org.eclipse.sparkplug.tck.test.Results;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import com.hivemq.extension.sdk.api.packets.publish.PublishPacket;
+
+/**
+ * The Monitor's checks of one edge node's NBIRTH and NDATA messages, including decoding the payloads, as done for
+ * every publish the broker receives.
+ *
+ * The NDATA stream is a valid sequence following the NBIRTH, with consecutive sequence numbers and changing values,
+ * so that no assertion fails. A failing assertion would publish a log message, which can't be done outside the
+ * broker.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class MonitorBenchmark {
+
+	private static final String CLIENT_ID = "Benchmark Edge Node";
+	private static final String GROUP_ID = "Plant 1";
+	private static final String EDGE_NODE_ID = "Line 4 Edge Node";
+
+	@Param({ "SCALARS", "ARRAYS", "DATASET", "TEMPLATE" })
+	public PayloadCorpus.Kind kind;
+
+	@Param({ "10", "100", "1000" })
+	public int metricCount;
+
+	@Param({ "1", "10" })
+	public int dataSampleRate;
+
+	private Monitor monitor;
+	private PublishPacket nbirth;
+	private final PublishPacket[] ndata = new PublishPacket[256];
+	private int next = 0;
+
+	@Setup
+	public void setup() throws Exception {
+		Results.Config config = new Results.Config();
+		config.UTCwindow = Long.MAX_VALUE;
+		config.monitorDataSampleRate = dataSampleRate;
+		monitor = new Monitor(config);
+
+		String prefix = "spBv1.0/" + GROUP_ID + "/";
+		nbirth = PayloadCorpus.publishPacket(prefix + "NBIRTH/" + EDGE_NODE_ID,
+				PayloadCorpus.encode(PayloadCorpus.create(kind, metricCount, true, 0, 0)));
+		for (int i = 0; i < ndata.length; i++) {
+			// sequence numbers 1 to 255 then 0, so the stream can be replayed from the start
+			ndata[i] = PayloadCorpus.publishPacket(prefix + "NDATA/" + EDGE_NODE_ID,
+					PayloadCorpus.encode(PayloadCorpus.create(kind, metricCount, false, (i + 1) % 256, i + 1)));
+		}
+		monitor.publish(CLIENT_ID, nbirth);
+	}
+
+	@Benchmark
+	public void nbirth() {
+		monitor.publish(CLIENT_ID, nbirth);
+		next = 0;
+	}
+
+	@Benchmark
+	public void ndata() {
+		monitor.publish(CLIENT_ID, ndata[next]);
+		next = (next + 1) & 0xff;
+	}
+}
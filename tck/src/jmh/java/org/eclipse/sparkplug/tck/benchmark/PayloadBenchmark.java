@@ -0,0 +1,102 @@
+/*******************************************************************************
+ * Copyright (c) 2022 Ian Craggs
+ *
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v2.0
+ * which is available at https://www.eclipse.org/legal/epl-2.0/
+ *
+ * SPDX-License-Identifier: EPL-2.0
+ *
+ * Contributors:
+ *    Ian Craggs - initial implementation and documentation
+ *******************************************************************************/
+
+
+package org.eclipse.sparkplug.tck.benchmark;
+
+import java.nio.ByteBuffer;
+import java.util.concurrent.TimeUnit;
+
+import org.eclipse.sparkplug.impl.exception.message.SparkplugBPayloadEncoder;
+import org.eclipse.sparkplug.impl.exception.model.MetricView;
+import org.eclipse.sparkplug.impl.exception.model.SparkplugBPayload;
+import org.eclipse.sparkplug.impl.exception.model.SparkplugBPayloadView;
+import org.eclipse.sparkplug.tck.test.common.SparkplugBProto.PayloadOrBuilder;
+import org.eclipse.sparkplug.tck.test.common.Utils;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Encoding of payloads with {@link SparkplugBPayloadEncoder#getBytes(SparkplugBPayload)}, and with the streaming
+ * encoder into a buffer of the exact size or a reused buffer, and decoding with {@link Utils#decode(ByteBuffer)}, for
+ * each kind of metric in the {@link PayloadCorpus}. The view benchmark reads the seq and the name, alias and datatype
+ * of each metric through a {@link SparkplugBPayloadView}, as a validator of those fields would.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class PayloadBenchmark {
+
+	@Param({ "SCALARS", "ARRAYS", "DATASET", "TEMPLATE" })
+	public PayloadCorpus.Kind kind;
+
+	@Param({ "10", "100", "1000" })
+	public int metricCount;
+
+	private final SparkplugBPayloadEncoder encoder = new SparkplugBPayloadEncoder();
+	private SparkplugBPayload payload;
+	private ByteBuffer encoded;
+	private ByteBuffer buffer;
+
+	@Setup
+	public void setup() throws Exception {
+		payload = PayloadCorpus.create(kind, metricCount, false, 1, 0);
+		encoded = ByteBuffer.wrap(PayloadCorpus.encode(payload));
+		buffer = ByteBuffer.allocate(encoded.remaining());
+	}
+
+	@Benchmark
+	public byte[] encode() throws Exception {
+		return encoder.getBytes(payload);
+	}
+
+	@Benchmark
+	public ByteBuffer encodeSized() throws Exception {
+		ByteBuffer sized = ByteBuffer.allocate(encoder.getSerializedSize(payload));
+		encoder.encode(payload, sized);
+		return sized;
+	}
+
+	@Benchmark
+	public int encodeReused() throws Exception {
+		buffer.clear();
+		return encoder.encode(payload, buffer);
+	}
+
+	@Benchmark
+	public PayloadOrBuilder decode() {
+		return Utils.decode(encoded);
+	}
+
+	@Benchmark
+	public long view() throws Exception {
+		SparkplugBPayloadView view = SparkplugBPayloadView.of(encoded);
+		long hash = view.getSeq();
+		for (MetricView metric : view.getMetrics()) {
+			hash += metric.getName().length() + metric.getDatatype() + (metric.hasAlias() ? metric.getAlias() : 0);
+		}
+		return hash;
+	}
+}
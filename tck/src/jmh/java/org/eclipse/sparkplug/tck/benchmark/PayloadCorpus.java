@@ -0,0 +1,217 @@
+/*******************************************************************************
+ * Copyright (c) 2022 Ian Craggs
+ *
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v2.0
+ * which is available at https://www.eclipse.org/legal/epl-2.0/
+ *
+ * SPDX-License-Identifier: EPL-2.0
+ *
+ * Contributors:
+ *    Ian Craggs - initial implementation and documentation
+ *******************************************************************************/
+
+package org.eclipse.sparkplug.tck.benchmark;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.List;
+import java.util.Optional;
+
+import org.eclipse.sparkplug.impl.exception.SparkplugException;
+import org.eclipse.sparkplug.impl.exception.message.SparkplugBPayloadEncoder;
+import org.eclipse.sparkplug.impl.exception.model.DataSet;
+import org.eclipse.sparkplug.impl.exception.model.DataSetDataType;
+import org.eclipse.sparkplug.impl.exception.model.Metric;
+import org.eclipse.sparkplug.impl.exception.model.Metric.MetricBuilder;
+import org.eclipse.sparkplug.impl.exception.model.MetricDataType;
+import org.eclipse.sparkplug.impl.exception.model.Row;
+import org.eclipse.sparkplug.impl.exception.model.SparkplugBPayload;
+import org.eclipse.sparkplug.impl.exception.model.SparkplugBPayload.SparkplugBPayloadBuilder;
+import org.eclipse.sparkplug.impl.exception.model.Template;
+import org.eclipse.sparkplug.impl.exception.model.Template.TemplateBuilder;
+import org.eclipse.sparkplug.impl.exception.model.Value;
+
+import com.hivemq.extension.sdk.api.packets.general.Qos;
+import com.hivemq.extension.sdk.api.packets.publish.PublishPacket;
+
+/**
+ * Representative Sparkplug B payloads for the benchmarks: metrics of scalar types, arrays, DataSets and Templates,
+ * in any number. Each variant of a payload has the same metric names and types as the others, with different
+ * values, so that a stream of variants is a valid sequence of data messages following the same birth.
+ */
+public final class PayloadCorpus {
+
+	public enum Kind {
+		SCALARS,
+		ARRAYS,
+		DATASET,
+		TEMPLATE
+	}
+
+	static final String TEMPLATE_DEFINITION = "Motor";
+
+	private PayloadCorpus() {
+	}
+
+	/**
+	 * @param kind the kind of metrics
+	 * @param metricCount the number of metrics
+	 * @param birth true for a birth payload, which holds the template definition for {@link Kind#TEMPLATE}
+	 * @param seq the sequence number
+	 * @param variant selects the metric values
+	 * @return the payload
+	 */
+	public static SparkplugBPayload create(Kind kind, int metricCount, boolean birth, long seq, int variant)
+			throws SparkplugException {
+		Date now = new Date();
+		List<Metric> metrics = new ArrayList<>(metricCount + 2);
+		if (birth) {
+			metrics.add(new MetricBuilder("bdSeq", MetricDataType.Int64, 0L).timestamp(now).createMetric());
+			if (kind == Kind.TEMPLATE) {
+				metrics.add(new MetricBuilder(TEMPLATE_DEFINITION, MetricDataType.Template, motor(true, 0))
+						.timestamp(now).createMetric());
+			}
+		}
+		for (int i = 0; i < metricCount; i++) {
+			metrics.add(metric(kind, i, variant, now));
+		}
+		return new SparkplugBPayloadBuilder(seq).setTimestamp(now).addMetrics(metrics).createPayload();
+	}
+
+	/**
+	 * @return the encoded payload
+	 */
+	public static byte[] encode(SparkplugBPayload payload) throws IOException {
+		return new SparkplugBPayloadEncoder().getBytes(payload);
+	}
+
+	private static Metric metric(Kind kind, int i, int variant, Date now) throws SparkplugException {
+		int v = i + variant;
+		switch (kind) {
+			case ARRAYS:
+				return arrayMetric(i, v, now);
+			case DATASET:
+				return new MetricBuilder("Table " + i, MetricDataType.DataSet, dataSet(v)).timestamp(now)
+						.createMetric();
+			case TEMPLATE:
+				return new MetricBuilder("Motor " + i, MetricDataType.Template, motor(false, v)).timestamp(now)
+						.createMetric();
+			default:
+				return scalarMetric(i, v, now);
+		}
+	}
+
+	private static Metric scalarMetric(int i, int v, Date now) throws SparkplugException {
+		String name = "Node Metric " + i;
+		switch (i % 6) {
+			case 0:
+				return new MetricBuilder(name, MetricDataType.Int32, v).timestamp(now).createMetric();
+			case 1:
+				return new MetricBuilder(name, MetricDataType.Int64, (long) v * 1000L).timestamp(now).createMetric();
+			case 2:
+				return new MetricBuilder(name, MetricDataType.Double, v * 1.5).timestamp(now).createMetric();
+			case 3:
+				return new MetricBuilder(name, MetricDataType.Boolean, v % 2 == 0).timestamp(now).createMetric();
+			case 4:
+				return new MetricBuilder(name, MetricDataType.String, "value " + v).timestamp(now).createMetric();
+			default:
+				return new MetricBuilder(name, MetricDataType.DateTime, new Date(now.getTime() + v)).timestamp(now)
+						.createMetric();
+		}
+	}
+
+	private static Metric arrayMetric(int i, int v, Date now) throws SparkplugException {
+		String name = "Array Metric " + i;
+		final int length = 16;
+		switch (i % 4) {
+			case 0:
+				Integer[] ints = new Integer[length];
+				for (int j = 0; j < length; j++) {
+					ints[j] = v + j;
+				}
+				return new MetricBuilder(name, MetricDataType.Int32Array, ints).timestamp(now).createMetric();
+			case 1:
+				Double[] doubles = new Double[length];
+				for (int j = 0; j < length; j++) {
+					doubles[j] = (v + j) * 0.25;
+				}
+				return new MetricBuilder(name, MetricDataType.DoubleArray, doubles).timestamp(now).createMetric();
+			case 2:
+				Boolean[] booleans = new Boolean[length];
+				for (int j = 0; j < length; j++) {
+					booleans[j] = (v + j) % 3 == 0;
+				}
+				return new MetricBuilder(name, MetricDataType.BooleanArray, booleans).timestamp(now).createMetric();
+			default:
+				String[] strings = new String[length];
+				for (int j = 0; j < length; j++) {
+					strings[j] = "item " + (v + j);
+				}
+				return new MetricBuilder(name, MetricDataType.StringArray, strings).timestamp(now).createMetric();
+		}
+	}
+
+	private static DataSet dataSet(int v) throws SparkplugException {
+		final int rows = 10;
+		DataSet.DataSetBuilder builder = new DataSet.DataSetBuilder(4).addColumnName("Id").addColumnName("Reading")
+				.addColumnName("Label").addColumnName("Valid").addType(DataSetDataType.Int32)
+				.addType(DataSetDataType.Double).addType(DataSetDataType.String).addType(DataSetDataType.Boolean);
+		for (int r = 0; r < rows; r++) {
+			builder.addRow(new Row.RowBuilder().addValue(new Value<Integer>(DataSetDataType.Int32, r))
+					.addValue(new Value<Double>(DataSetDataType.Double, (v + r) * 0.5))
+					.addValue(new Value<String>(DataSetDataType.String, "row " + r))
+					.addValue(new Value<Boolean>(DataSetDataType.Boolean, (v + r) % 2 == 0)).createRow());
+		}
+		return builder.createDataSet();
+	}
+
+	private static Template motor(boolean definition, int v) throws SparkplugException {
+		TemplateBuilder builder = new TemplateBuilder().version("1.0").definition(definition);
+		if (!definition) {
+			builder.templateRef(TEMPLATE_DEFINITION);
+		}
+		return builder.addMetric(new MetricBuilder("RPM", MetricDataType.Int32, v).createMetric())
+				.addMetric(new MetricBuilder("Temperature", MetricDataType.Double, v * 0.1).createMetric())
+				.addMetric(new MetricBuilder("Running", MetricDataType.Boolean, v % 2 == 0).createMetric())
+				.createTemplate();
+	}
+
+	/**
+	 * A publish packet as the broker would pass it to the TCK, for benchmarks which run outside the broker. Only the
+	 * topic, payload, QoS and retain flag are available.
+	 */
+	public static PublishPacket publishPacket(String topic, byte[] payload) {
+		return (PublishPacket) java.lang.reflect.Proxy.newProxyInstance(PublishPacket.class.getClassLoader(),
+				new Class<?>[] { PublishPacket.class }, (proxy, method, args) -> {
+					switch (method.getName()) {
+						case "getTopic":
+							return topic;
+						case "getPayload":
+							return Optional.of(ByteBuffer.wrap(payload).asReadOnlyBuffer());
+						case "getQos":
+							return Qos.AT_MOST_ONCE;
+						case "hashCode":
+							return System.identityHashCode(proxy);
+						case "equals":
+							return proxy == args[0];
+						case "toString":
+							return "PublishPacket " + topic;
+						default:
+							Class<?> type = method.getReturnType();
+							if (type == boolean.class) {
+								return false;
+							} else if (type == int.class) {
+								return 0;
+							} else if (type == long.class) {
+								return 0L;
+							} else if (type == Optional.class) {
+								return Optional.empty();
+							}
+							return null;
+					}
+				});
+	}
+}
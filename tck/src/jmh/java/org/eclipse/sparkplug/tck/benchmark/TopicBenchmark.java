@@ -0,0 +1,61 @@
+/*******************************************************************************
+ * Copyright (c) 2022 Ian Craggs
+ *
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v2.0
+ * which is available at https://www.eclipse.org/legal/epl-2.0/
+ *
+ * SPDX-License-Identifier: EPL-2.0
+ *
+ * Contributors:
+ *    Ian Craggs - initial implementation and documentation
+ *******************************************************************************/
+
+
+package org.eclipse.sparkplug.tck.benchmark;
+
+import java.util.concurrent.TimeUnit;
+
+import org.eclipse.sparkplug.impl.exception.model.Topic;
+import org.eclipse.sparkplug.tck.test.common.Utils;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Parsing of Sparkplug topics with {@link Topic#parseTopic(String)}, and of console commands with
+ * {@link Utils#tokenize(String)}.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class TopicBenchmark {
+
+	private static final String[] TOPICS = { "spBv1.0/Plant 1/NBIRTH/Line 4 Edge Node",
+			"spBv1.0/Plant 1/NDATA/Line 4 Edge Node", "spBv1.0/Plant 1/DDATA/Line 4 Edge Node/Filler 12",
+			"spBv1.0/Plant 1/DBIRTH/Line 4 Edge Node/Filler 12", "spBv1.0/STATE/Central SCADA" };
+
+	private static final String COMMAND = "NEW_TEST edge SendDataTest \"Plant 1\" \"Line 4 Edge Node\" \"Filler 12\"";
+
+	private int next = 0;
+
+	@Benchmark
+	public Topic parseTopic() throws Exception {
+		next = (next + 1) % TOPICS.length;
+		return Topic.parseTopic(TOPICS[next]);
+	}
+
+	@Benchmark
+	public String[] tokenize() {
+		return Utils.tokenize(COMMAND);
+	}
+}
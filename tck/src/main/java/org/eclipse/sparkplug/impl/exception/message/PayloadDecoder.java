@@ -0,0 +1,44 @@
+/********************************************************************************
+ * Copyright (c) 2014-2022 Cirrus Link Solutions and others
+ *
+ * This program and the accompanying materials are made available under the
+ * terms of the Eclipse Public License 2.0 which is available at
+ * http://www.eclipse.org/legal/epl-2.0.
+ *
+ * SPDX-License-Identifier: EPL-2.0
+ *
+ * Contributors:
+ *   Cirrus Link Solutions - initial implementation
+ ********************************************************************************/
+
+package org.eclipse.sparkplug.impl.exception.message;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+
+/**
+ * An interface for decoding payloads.
+ * 
+ * @param <P> the type of payload.
+ */
+public interface PayloadDecoder<P> {
+
+	/**
+	 * Builds a payload from a byte array.
+	 * 
+	 * @param bytes the bytes representing the payload
+	 * @return a payload object built from the bytes
+	 * @throws IOException
+	 */
+	public P buildFromByteArray(byte[] bytes) throws IOException;
+
+	/**
+	 * Builds a payload from the remaining bytes of a {@link ByteBuffer}. The position of the buffer is left
+	 * unchanged.
+	 * 
+	 * @param buffer the buffer holding the payload
+	 * @return a payload object built from the buffer
+	 * @throws IOException
+	 */
+	public P buildFromByteBuffer(ByteBuffer buffer) throws IOException;
+}
@@ -14,6 +14,8 @@
 package org.eclipse.sparkplug.impl.exception.message;
 
 import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
 
 /**
  * An interface for encoding payloads.
@@ -30,4 +32,45 @@ public interface PayloadEncoder<P> {
 	 * @throws IOException
 	 */
 	public byte[] getBytes(P payload) throws IOException;
+
+	/**
+	 * Writes the encoded payload to an output stream.
+	 * 
+	 * @param payload a payload object
+	 * @param stream the stream to write to, which is not closed
+	 * @throws IOException
+	 */
+	public default void encode(P payload, OutputStream stream) throws IOException {
+		stream.write(getBytes(payload));
+	}
+
+	/**
+	 * Writes the encoded payload into a buffer, starting at its position, and advances the position past it. The
+	 * buffer can be allocated with {@link #getSerializedSize(Object)} bytes, or be a reused buffer with at least that
+	 * many bytes remaining.
+	 * 
+	 * @param payload a payload object
+	 * @param buffer the buffer to write to
+	 * @return the number of bytes written
+	 * @throws IOException if the payload can't be encoded or does not fit in the buffer
+	 */
+	public default int encode(P payload, ByteBuffer buffer) throws IOException {
+		byte[] bytes = getBytes(payload);
+		if (bytes.length > buffer.remaining()) {
+			throw new IOException("Buffer too small for payload: " + bytes.length + " bytes");
+		}
+		buffer.put(bytes);
+		return bytes.length;
+	}
+
+	/**
+	 * Returns the number of bytes the encoded payload takes.
+	 * 
+	 * @param payload a payload object
+	 * @return the size of the encoded payload
+	 * @throws IOException
+	 */
+	public default int getSerializedSize(P payload) throws IOException {
+		return getBytes(payload).length;
+	}
 }
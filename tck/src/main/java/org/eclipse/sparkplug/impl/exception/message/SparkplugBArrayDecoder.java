@@ -0,0 +1,122 @@
+/********************************************************************************
+ * Copyright (c) 2014-2022 Cirrus Link Solutions and others
+ *
+ * This program and the accompanying materials are made available under the
+ * terms of the Eclipse Public License 2.0 which is available at
+ * http://www.eclipse.org/legal/epl-2.0.
+ *
+ * SPDX-License-Identifier: EPL-2.0
+ *
+ * Contributors:
+ *   Cirrus Link Solutions - initial implementation
+ ********************************************************************************/
+
+package org.eclipse.sparkplug.impl.exception.message;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+
+import org.eclipse.sparkplug.impl.exception.SparkplugParsingException;
+import org.eclipse.sparkplug.impl.exception.model.MetricDataType;
+import org.eclipse.sparkplug.tck.test.common.SparkplugBProto;
+
+import com.google.protobuf.ByteString;
+
+/**
+ * Decodes the bytes value of a numeric array metric into a primitive array, the form described in
+ * {@link MetricDataType}.
+ * <p>
+ * The elements are read through a little-endian view of the bytes value, with one bulk copy into the result. When the
+ * payload was decoded by {@link SparkplugBPayloadDecoder}, the bytes value aliases the buffer the payload was parsed
+ * from, so no other copy of the data is made.
+ * <p>
+ * This is a library class, the decoding counterpart of the primitive array encoding of
+ * {@link SparkplugBPayloadEncoder}, for applications which build on the Sparkplug model classes. The TCK's own checks
+ * don't use it: they validate the protobuf form of a payload, where an array metric is a bytes value and its length
+ * is all they look at.
+ */
+public final class SparkplugBArrayDecoder {
+
+	private SparkplugBArrayDecoder() {
+	}
+
+	/**
+	 * Decodes the value of an Int8Array to UInt64Array, FloatArray or DoubleArray metric.
+	 *
+	 * @param metric the metric
+	 * @return the primitive array of the metric's datatype
+	 * @throws SparkplugParsingException if the metric is not a numeric array or its value has an invalid length
+	 */
+	public static Object decode(SparkplugBProto.Payload.MetricOrBuilder metric) throws SparkplugParsingException {
+		MetricDataType type = MetricDataType.fromInteger(metric.getDatatype());
+		ByteString bytes = metric.getBytesValue();
+		switch (type) {
+			case Int8Array:
+			case UInt8Array:
+				return decodeInt8Array(bytes);
+			case Int16Array:
+			case UInt16Array:
+				return decodeInt16Array(bytes, type);
+			case Int32Array:
+			case UInt32Array:
+				return decodeInt32Array(bytes, type);
+			case Int64Array:
+			case UInt64Array:
+				return decodeInt64Array(bytes, type);
+			case FloatArray:
+				return decodeFloatArray(bytes);
+			case DoubleArray:
+				return decodeDoubleArray(bytes);
+			default:
+				throw new SparkplugParsingException("Not a numeric array datatype: " + type);
+		}
+	}
+
+	public static byte[] decodeInt8Array(ByteString bytes) {
+		return bytes.toByteArray();
+	}
+
+	public static short[] decodeInt16Array(ByteString bytes, MetricDataType type) throws SparkplugParsingException {
+		ByteBuffer buffer = littleEndian(bytes, 2, type);
+		short[] array = new short[buffer.remaining() / 2];
+		buffer.asShortBuffer().get(array);
+		return array;
+	}
+
+	public static int[] decodeInt32Array(ByteString bytes, MetricDataType type) throws SparkplugParsingException {
+		ByteBuffer buffer = littleEndian(bytes, 4, type);
+		int[] array = new int[buffer.remaining() / 4];
+		buffer.asIntBuffer().get(array);
+		return array;
+	}
+
+	public static long[] decodeInt64Array(ByteString bytes, MetricDataType type) throws SparkplugParsingException {
+		ByteBuffer buffer = littleEndian(bytes, 8, type);
+		long[] array = new long[buffer.remaining() / 8];
+		buffer.asLongBuffer().get(array);
+		return array;
+	}
+
+	public static float[] decodeFloatArray(ByteString bytes) throws SparkplugParsingException {
+		ByteBuffer buffer = littleEndian(bytes, 4, MetricDataType.FloatArray);
+		float[] array = new float[buffer.remaining() / 4];
+		buffer.asFloatBuffer().get(array);
+		return array;
+	}
+
+	public static double[] decodeDoubleArray(ByteString bytes) throws SparkplugParsingException {
+		ByteBuffer buffer = littleEndian(bytes, 8, MetricDataType.DoubleArray);
+		double[] array = new double[buffer.remaining() / 8];
+		buffer.asDoubleBuffer().get(array);
+		return array;
+	}
+
+	private static ByteBuffer littleEndian(ByteString bytes, int elementSize, MetricDataType type)
+			throws SparkplugParsingException {
+		if (bytes.size() % elementSize != 0) {
+			throw new SparkplugParsingException(
+					"Invalid " + type + " value: " + bytes.size() + " bytes is not a multiple of " + elementSize);
+		}
+		return bytes.asReadOnlyByteBuffer().order(ByteOrder.LITTLE_ENDIAN);
+	}
+}
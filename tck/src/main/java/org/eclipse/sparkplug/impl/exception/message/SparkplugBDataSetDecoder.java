@@ -0,0 +1,132 @@
+/********************************************************************************
+ * Copyright (c) 2014-2022 Cirrus Link Solutions and others
+ *
+ * This program and the accompanying materials are made available under the
+ * terms of the Eclipse Public License 2.0 which is available at
+ * http://www.eclipse.org/legal/epl-2.0.
+ *
+ * SPDX-License-Identifier: EPL-2.0
+ *
+ * Contributors:
+ *   Cirrus Link Solutions - initial implementation
+ ********************************************************************************/
+
+package org.eclipse.sparkplug.impl.exception.message;
+
+import java.lang.reflect.Array;
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.List;
+
+import org.eclipse.sparkplug.impl.exception.SparkplugParsingException;
+import org.eclipse.sparkplug.impl.exception.model.ColumnarDataSet;
+import org.eclipse.sparkplug.impl.exception.model.DataSetDataType;
+import org.eclipse.sparkplug.tck.test.common.SparkplugBProto;
+import org.eclipse.sparkplug.tck.test.common.SparkplugBProto.Payload.DataSet.DataSetValue;
+
+/**
+ * Decodes the value of a DataSet metric into a {@link ColumnarDataSet}, with the values of each column read directly
+ * into the column array and no object created per value.
+ * <p>
+ * A value which is not set is decoded as null.
+ * <p>
+ * This is a library class, the decoding counterpart of the columnar data set encoding of
+ * {@link SparkplugBPayloadEncoder}, for applications which build on the Sparkplug model classes. The TCK's own checks
+ * don't use it: they validate the protobuf form of a data set, its column count, types and value cases, which needs
+ * no decoding into columns.
+ */
+public final class SparkplugBDataSetDecoder {
+
+	private SparkplugBDataSetDecoder() {
+	}
+
+	/**
+	 * Decodes a data set.
+	 *
+	 * @param dataSet the data set message
+	 * @return the columnar data set
+	 * @throws SparkplugParsingException if a column type is unknown, the number of column names or types is not the
+	 *             number of columns, or a row doesn't have a value for each column
+	 */
+	public static ColumnarDataSet decode(SparkplugBProto.Payload.DataSetOrBuilder dataSet)
+			throws SparkplugParsingException {
+		int columnCount = (int) dataSet.getNumOfColumns();
+		if (dataSet.getColumnsCount() != columnCount || dataSet.getTypesCount() != columnCount) {
+			throw new SparkplugParsingException("Invalid data set: " + columnCount + " columns but "
+					+ dataSet.getColumnsCount() + " names and " + dataSet.getTypesCount() + " types");
+		}
+
+		int rowCount = dataSet.getRowsCount();
+		List<String> columnNames = new ArrayList<>(dataSet.getColumnsList());
+		List<DataSetDataType> types = new ArrayList<>(columnCount);
+		Object[] columns = new Object[columnCount];
+		BitSet[] nulls = new BitSet[columnCount];
+		for (int column = 0; column < columnCount; column++) {
+			DataSetDataType type = DataSetDataType.fromInteger(dataSet.getTypes(column));
+			if (type == DataSetDataType.Unknown) {
+				throw new SparkplugParsingException(
+						"Invalid type of data set column " + columnNames.get(column) + ": " + dataSet.getTypes(column));
+			}
+			types.add(type);
+			columns[column] = Array.newInstance(type.getColumnClazz().getComponentType(), rowCount);
+		}
+
+		for (int row = 0; row < rowCount; row++) {
+			SparkplugBProto.Payload.DataSet.Row protoRow = dataSet.getRows(row);
+			if (protoRow.getElementsCount() != columnCount) {
+				throw new SparkplugParsingException("Invalid data set row " + row + ": " + protoRow.getElementsCount()
+						+ " values for " + columnCount + " columns");
+			}
+			for (int column = 0; column < columnCount; column++) {
+				DataSetValue value = protoRow.getElements(column);
+				if (value.getValueCase() == DataSetValue.ValueCase.VALUE_NOT_SET) {
+					if (nulls[column] == null) {
+						nulls[column] = new BitSet(rowCount);
+					}
+					nulls[column].set(row);
+				} else {
+					setValue(columns[column], types.get(column), row, value);
+				}
+			}
+		}
+
+		return new ColumnarDataSet(columnNames, types, columns, nulls, rowCount);
+	}
+
+	private static void setValue(Object column, DataSetDataType type, int row, DataSetValue value) {
+		switch (type) {
+			case Int8:
+				((byte[]) column)[row] = (byte) value.getIntValue();
+				break;
+			case Int16:
+			case UInt8:
+				((short[]) column)[row] = (short) value.getIntValue();
+				break;
+			case Int32:
+			case UInt16:
+				((int[]) column)[row] = value.getIntValue();
+				break;
+			case Int64:
+			case UInt32:
+			case UInt64:
+			case DateTime:
+				((long[]) column)[row] = value.getLongValue();
+				break;
+			case Float:
+				((float[]) column)[row] = value.getFloatValue();
+				break;
+			case Double:
+				((double[]) column)[row] = value.getDoubleValue();
+				break;
+			case Boolean:
+				((boolean[]) column)[row] = value.getBooleanValue();
+				break;
+			case String:
+			case Text:
+				((String[]) column)[row] = value.getStringValue();
+				break;
+			default:
+				break;
+		}
+	}
+}
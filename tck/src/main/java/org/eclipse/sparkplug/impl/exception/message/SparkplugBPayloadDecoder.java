@@ -0,0 +1,79 @@
+/********************************************************************************
+ * Copyright (c) 2014-2022 Cirrus Link Solutions and others
+ *
+ * This program and the accompanying materials are made available under the
+ * terms of the Eclipse Public License 2.0 which is available at
+ * http://www.eclipse.org/legal/epl-2.0.
+ *
+ * SPDX-License-Identifier: EPL-2.0
+ *
+ * Contributors:
+ *   Cirrus Link Solutions - initial implementation
+ ********************************************************************************/
+
+package org.eclipse.sparkplug.impl.exception.message;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+
+import org.eclipse.sparkplug.tck.test.common.SparkplugBProto;
+
+import com.google.protobuf.CodedInputStream;
+
+/**
+ * A {@link PayloadDecoder} implementation for decoding Sparkplug B payloads.
+ * <p>
+ * Buffers with an accessible backing array and direct buffers are parsed where they are. Any other buffer, such as
+ * the read-only heap buffers HiveMQ passes to extensions, is copied into an array by {@link CodedInputStream} on each
+ * call, so a caller decoding such a buffer more than once should copy it to an array itself first, as
+ * {@link org.eclipse.sparkplug.tck.test.common.PublishEnvelope} does.
+ * <p>
+ * The payloads decoded by the Monitor are kept long after the publish they came from, as births, as the last metrics
+ * of an edge node, or on the validation pipeline, so bytes fields are copied out of the input by default. A payload
+ * which is only used while its input is unchanged, as in the benchmarks, can be decoded with
+ * {@link #buildAliasedFromByteBuffer(ByteBuffer)} instead, whose bytes fields refer to the input.
+ */
+public class SparkplugBPayloadDecoder implements PayloadDecoder<SparkplugBProto.Payload> {
+
+	private static final SparkplugBPayloadDecoder INSTANCE = new SparkplugBPayloadDecoder();
+
+	public SparkplugBPayloadDecoder() {
+		super();
+	}
+
+	/**
+	 * Returns a shared decoder instance. The decoder holds no state, so it is safe to use from any thread.
+	 * 
+	 * @return the shared {@link SparkplugBPayloadDecoder}
+	 */
+	public static SparkplugBPayloadDecoder getInstance() {
+		return INSTANCE;
+	}
+
+	@Override
+	public SparkplugBProto.Payload buildFromByteArray(byte[] bytes) throws IOException {
+		return SparkplugBProto.Payload.parseFrom(CodedInputStream.newInstance(bytes));
+	}
+
+	@Override
+	public SparkplugBProto.Payload buildFromByteBuffer(ByteBuffer buffer) throws IOException {
+		// Work on a duplicate so the caller's position is left untouched. Only buffers with an accessible array and
+		// direct buffers are read in place, a read-only heap buffer is copied.
+		return SparkplugBProto.Payload.parseFrom(CodedInputStream.newInstance(buffer.duplicate()));
+	}
+
+	/**
+	 * Decodes a payload whose bytes fields, such as bytes and file metric values, refer to the buffer rather than
+	 * being copied. The buffer contents must not be modified or reused while the payload is in use, so this is only
+	 * for payloads which are dropped before the buffer is, and never for the buffer of a publish whose payload is kept.
+	 *
+	 * @param buffer the encoded payload, whose position is left unchanged
+	 * @return the payload
+	 * @throws IOException if the payload is not a valid protobuf encoding
+	 */
+	public SparkplugBProto.Payload buildAliasedFromByteBuffer(ByteBuffer buffer) throws IOException {
+		CodedInputStream input = CodedInputStream.newInstance(buffer.duplicate());
+		input.enableAliasing(true);
+		return SparkplugBProto.Payload.parseFrom(input);
+	}
+}
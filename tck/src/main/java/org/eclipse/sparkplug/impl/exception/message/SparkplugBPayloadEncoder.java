@@ -14,6 +14,7 @@
 package org.eclipse.sparkplug.impl.exception.message;
 
 import java.io.IOException;
+import java.io.OutputStream;
 import java.math.BigInteger;
 import java.nio.ByteBuffer;
 import java.nio.ByteOrder;
@@ -22,6 +23,7 @@ import java.util.Date;
 import java.util.List;
 import java.util.Map;
 
+import org.eclipse.sparkplug.impl.exception.model.ColumnarDataSet;
 import org.eclipse.sparkplug.impl.exception.model.DataSet;
 import org.eclipse.sparkplug.impl.exception.model.DataSetDataType;
 import org.eclipse.sparkplug.impl.exception.model.File;
@@ -41,6 +43,8 @@ import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import com.google.protobuf.ByteString;
+import com.google.protobuf.CodedOutputStream;
+import com.google.protobuf.UnsafeByteOperations;
 
 /**
  * A {@link PayloadDecode} implementation for encoding Sparkplug B payloads.
@@ -90,6 +94,34 @@ public class SparkplugBPayloadEncoder implements PayloadEncoder<SparkplugBPayloa
 		return protoMsg.build().toByteArray();
 	}
 
+	/**
+	 * Writes the payload to the stream without building the protobuf messages first. The bytes are the same as those
+	 * of {@link #getBytes(SparkplugBPayload)}.
+	 */
+	@Override
+	public void encode(SparkplugBPayload payload, OutputStream stream) throws IOException {
+		CodedOutputStream out = CodedOutputStream.newInstance(stream);
+		SparkplugBPayloadWriter.write(payload, out);
+		out.flush();
+	}
+
+	/**
+	 * Writes the payload into the buffer, from its position, without building the protobuf messages first. The bytes
+	 * are the same as those of {@link #getBytes(SparkplugBPayload)}.
+	 */
+	@Override
+	public int encode(SparkplugBPayload payload, ByteBuffer buffer) throws IOException {
+		CodedOutputStream out = CodedOutputStream.newInstance(buffer);
+		SparkplugBPayloadWriter.write(payload, out);
+		out.flush();
+		return out.getTotalBytesWritten();
+	}
+
+	@Override
+	public int getSerializedSize(SparkplugBPayload payload) throws IOException {
+		return SparkplugBPayloadWriter.getSerializedSize(payload);
+	}
+
 	private SparkplugBProto.Payload.Metric.Builder convertMetric(Metric metric) throws Exception {
 
 		// build a metric
@@ -309,7 +341,10 @@ public class SparkplugBPayloadEncoder implements PayloadEncoder<SparkplugBPayloa
 
 		if (metric.getValue() == null) {
 			metricBuilder.setIsNull(true);
+		} else if (metric.getDataType().isPrimitiveArray(metric.getValue())) {
+			metricBuilder.setBytesValue(convertPrimitiveArray(metric.getValue()));
 		} else {
+			// The buffers of the array types are not used after encoding, so they are wrapped rather than copied
 			switch (metric.getDataType()) {
 				case Boolean:
 					metricBuilder.setBooleanValue(toBoolean(metric.getValue()));
@@ -363,6 +398,10 @@ public class SparkplugBPayloadEncoder implements PayloadEncoder<SparkplugBPayloa
 					metricBuilder.setBytesValue(ByteString.copyFrom((byte[]) metric.getValue()));
 					break;
 				case DataSet:
+					if (metric.getValue() instanceof ColumnarDataSet) {
+						metricBuilder.setDatasetValue(convertDataSet((ColumnarDataSet) metric.getValue()));
+						break;
+					}
 					DataSet dataSet = (DataSet) metric.getValue();
 					SparkplugBProto.Payload.DataSet.Builder dataSetBuilder =
 							SparkplugBProto.Payload.DataSet.newBuilder();
@@ -451,7 +490,7 @@ public class SparkplugBPayloadEncoder implements PayloadEncoder<SparkplugBPayloa
 						int8ByteBuffer.put(value);
 					}
 					if (int8ByteBuffer.hasArray()) {
-						metricBuilder.setBytesValue(ByteString.copyFrom(int8ByteBuffer.array()));
+						metricBuilder.setBytesValue(UnsafeByteOperations.unsafeWrap(int8ByteBuffer.array()));
 					}
 					break;
 				case Int16Array:
@@ -462,7 +501,7 @@ public class SparkplugBPayloadEncoder implements PayloadEncoder<SparkplugBPayloa
 						int16ByteBuffer.putShort(value);
 					}
 					if (int16ByteBuffer.hasArray()) {
-						metricBuilder.setBytesValue(ByteString.copyFrom(int16ByteBuffer.array()));
+						metricBuilder.setBytesValue(UnsafeByteOperations.unsafeWrap(int16ByteBuffer.array()));
 					}
 					break;
 				case Int32Array:
@@ -473,7 +512,7 @@ public class SparkplugBPayloadEncoder implements PayloadEncoder<SparkplugBPayloa
 						int32ByteBuffer.putInt(value);
 					}
 					if (int32ByteBuffer.hasArray()) {
-						metricBuilder.setBytesValue(ByteString.copyFrom(int32ByteBuffer.array()));
+						metricBuilder.setBytesValue(UnsafeByteOperations.unsafeWrap(int32ByteBuffer.array()));
 					}
 					break;
 				case Int64Array:
@@ -484,7 +523,7 @@ public class SparkplugBPayloadEncoder implements PayloadEncoder<SparkplugBPayloa
 						int64ByteBuffer.putLong(value);
 					}
 					if (int64ByteBuffer.hasArray()) {
-						metricBuilder.setBytesValue(ByteString.copyFrom(int64ByteBuffer.array()));
+						metricBuilder.setBytesValue(UnsafeByteOperations.unsafeWrap(int64ByteBuffer.array()));
 					}
 					break;
 				case UInt8Array:
@@ -495,7 +534,7 @@ public class SparkplugBPayloadEncoder implements PayloadEncoder<SparkplugBPayloa
 						uInt8ByteBuffer.put((byte) (value & 0xffff));
 					}
 					if (uInt8ByteBuffer.hasArray()) {
-						metricBuilder.setBytesValue(ByteString.copyFrom(uInt8ByteBuffer.array()));
+						metricBuilder.setBytesValue(UnsafeByteOperations.unsafeWrap(uInt8ByteBuffer.array()));
 					}
 					break;
 				case UInt16Array:
@@ -506,7 +545,7 @@ public class SparkplugBPayloadEncoder implements PayloadEncoder<SparkplugBPayloa
 						uInt16ByteBuffer.putShort((short) (value & 0xffffffff));
 					}
 					if (uInt16ByteBuffer.hasArray()) {
-						metricBuilder.setBytesValue(ByteString.copyFrom(uInt16ByteBuffer.array()));
+						metricBuilder.setBytesValue(UnsafeByteOperations.unsafeWrap(uInt16ByteBuffer.array()));
 					}
 					break;
 				case UInt32Array:
@@ -517,7 +556,7 @@ public class SparkplugBPayloadEncoder implements PayloadEncoder<SparkplugBPayloa
 						uInt32ByteBuffer.putInt((int) (value & 0xffffffffffffffffL));
 					}
 					if (uInt32ByteBuffer.hasArray()) {
-						metricBuilder.setBytesValue(ByteString.copyFrom(uInt32ByteBuffer.array()));
+						metricBuilder.setBytesValue(UnsafeByteOperations.unsafeWrap(uInt32ByteBuffer.array()));
 					}
 					break;
 				case UInt64Array:
@@ -528,7 +567,7 @@ public class SparkplugBPayloadEncoder implements PayloadEncoder<SparkplugBPayloa
 						uInt64ByteBuffer.putLong(bigIntegerToUnsignedLong(value));
 					}
 					if (uInt64ByteBuffer.hasArray()) {
-						metricBuilder.setBytesValue(ByteString.copyFrom(uInt64ByteBuffer.array()));
+						metricBuilder.setBytesValue(UnsafeByteOperations.unsafeWrap(uInt64ByteBuffer.array()));
 					}
 					break;
 				case FloatArray:
@@ -539,7 +578,7 @@ public class SparkplugBPayloadEncoder implements PayloadEncoder<SparkplugBPayloa
 						floatByteBuffer.putFloat(value);
 					}
 					if (floatByteBuffer.hasArray()) {
-						metricBuilder.setBytesValue(ByteString.copyFrom(floatByteBuffer.array()));
+						metricBuilder.setBytesValue(UnsafeByteOperations.unsafeWrap(floatByteBuffer.array()));
 					}
 					break;
 				case DoubleArray:
@@ -550,7 +589,7 @@ public class SparkplugBPayloadEncoder implements PayloadEncoder<SparkplugBPayloa
 						doubleByteBuffer.putDouble(value);
 					}
 					if (doubleByteBuffer.hasArray()) {
-						metricBuilder.setBytesValue(ByteString.copyFrom(doubleByteBuffer.array()));
+						metricBuilder.setBytesValue(UnsafeByteOperations.unsafeWrap(doubleByteBuffer.array()));
 					}
 					break;
 				case BooleanArray:
@@ -574,7 +613,7 @@ public class SparkplugBPayloadEncoder implements PayloadEncoder<SparkplugBPayloa
 						booleanByteBuffer.put(nextByte);
 					}
 
-					metricBuilder.setBytesValue(ByteString.copyFrom(booleanByteBuffer.array()));
+					metricBuilder.setBytesValue(UnsafeByteOperations.unsafeWrap(booleanByteBuffer.array()));
 					break;
 				case StringArray:
 					String[] stringArrayValue = (String[]) metric.getValue();
@@ -589,7 +628,7 @@ public class SparkplugBPayloadEncoder implements PayloadEncoder<SparkplugBPayloa
 						stringByteBuffer.put((byte) 0);
 					}
 					if (stringByteBuffer.hasArray()) {
-						metricBuilder.setBytesValue(ByteString.copyFrom(stringByteBuffer.array()));
+						metricBuilder.setBytesValue(UnsafeByteOperations.unsafeWrap(stringByteBuffer.array()));
 					}
 					break;
 				case DateTimeArray:
@@ -600,7 +639,7 @@ public class SparkplugBPayloadEncoder implements PayloadEncoder<SparkplugBPayloa
 						dateTimeByteBuffer.putLong(value.getTime());
 					}
 					if (dateTimeByteBuffer.hasArray()) {
-						metricBuilder.setBytesValue(ByteString.copyFrom(dateTimeByteBuffer.array()));
+						metricBuilder.setBytesValue(UnsafeByteOperations.unsafeWrap(dateTimeByteBuffer.array()));
 					}
 					break;
 				case Unknown:
@@ -613,6 +652,39 @@ public class SparkplugBPayloadEncoder implements PayloadEncoder<SparkplugBPayloa
 		return metricBuilder;
 	}
 
+	/**
+	 * Converts a primitive array metric value into its little-endian encoding with a single bulk copy, and wraps the
+	 * result without copying it again. A byte[] value is wrapped as it is.
+	 */
+	private ByteString convertPrimitiveArray(Object value) {
+		if (value instanceof byte[]) {
+			return UnsafeByteOperations.unsafeWrap((byte[]) value);
+		}
+		ByteBuffer buffer;
+		if (value instanceof short[]) {
+			short[] array = (short[]) value;
+			buffer = ByteBuffer.allocate(array.length * 2).order(ByteOrder.LITTLE_ENDIAN);
+			buffer.asShortBuffer().put(array);
+		} else if (value instanceof int[]) {
+			int[] array = (int[]) value;
+			buffer = ByteBuffer.allocate(array.length * 4).order(ByteOrder.LITTLE_ENDIAN);
+			buffer.asIntBuffer().put(array);
+		} else if (value instanceof long[]) {
+			long[] array = (long[]) value;
+			buffer = ByteBuffer.allocate(array.length * 8).order(ByteOrder.LITTLE_ENDIAN);
+			buffer.asLongBuffer().put(array);
+		} else if (value instanceof float[]) {
+			float[] array = (float[]) value;
+			buffer = ByteBuffer.allocate(array.length * 4).order(ByteOrder.LITTLE_ENDIAN);
+			buffer.asFloatBuffer().put(array);
+		} else {
+			double[] array = (double[]) value;
+			buffer = ByteBuffer.allocate(array.length * 8).order(ByteOrder.LITTLE_ENDIAN);
+			buffer.asDoubleBuffer().put(array);
+		}
+		return UnsafeByteOperations.unsafeWrap(buffer.array());
+	}
+
 	private SparkplugBProto.Payload.Metric.Builder setMetaData(SparkplugBProto.Payload.Metric.Builder metricBuilder,
 			Metric metric) throws Exception {
 		// If the builder has been built already - use it
@@ -745,7 +817,76 @@ public class SparkplugBPayloadEncoder implements PayloadEncoder<SparkplugBPayloa
 		return protoValueBuilder;
 	}
 
-	private Boolean toBoolean(Object value) {
+	/**
+	 * Converts a {@link ColumnarDataSet}, reading the values of each row from the column arrays.
+	 */
+	private SparkplugBProto.Payload.DataSet.Builder convertDataSet(ColumnarDataSet dataSet) throws Exception {
+		SparkplugBProto.Payload.DataSet.Builder dataSetBuilder = SparkplugBProto.Payload.DataSet.newBuilder();
+		dataSetBuilder.setNumOfColumns(dataSet.getNumOfColumns());
+		dataSetBuilder.addAllColumns(dataSet.getColumnNames());
+		for (DataSetDataType type : dataSet.getTypes()) {
+			dataSetBuilder.addTypes(type.toIntValue());
+		}
+		int columnCount = (int) dataSet.getNumOfColumns();
+		for (int row = 0; columnCount > 0 && row < dataSet.getRowCount(); row++) {
+			SparkplugBProto.Payload.DataSet.Row.Builder protoRowBuilder =
+					SparkplugBProto.Payload.DataSet.Row.newBuilder();
+			for (int column = 0; column < columnCount; column++) {
+				protoRowBuilder.addElements(convertDataSetValue(dataSet, column, row));
+			}
+			dataSetBuilder.addRows(protoRowBuilder);
+		}
+		return dataSetBuilder;
+	}
+
+	/**
+	 * Converts a value of a {@link ColumnarDataSet}, read from its column array rather than from a {@link Value}.
+	 */
+	private SparkplugBProto.Payload.DataSet.DataSetValue.Builder convertDataSetValue(ColumnarDataSet dataSet,
+			int column, int row) throws Exception {
+		SparkplugBProto.Payload.DataSet.DataSetValue.Builder protoValueBuilder =
+				SparkplugBProto.Payload.DataSet.DataSetValue.newBuilder();
+		if (dataSet.isNull(column, row)) {
+			return protoValueBuilder;
+		}
+
+		DataSetDataType type = dataSet.getType(column);
+		switch (type) {
+			case Int8:
+			case Int16:
+			case Int32:
+			case UInt8:
+			case UInt16:
+				protoValueBuilder.setIntValue(dataSet.getInt(column, row));
+				break;
+			case Int64:
+			case UInt32:
+			case UInt64:
+			case DateTime:
+				protoValueBuilder.setLongValue(dataSet.getLong(column, row));
+				break;
+			case Float:
+				protoValueBuilder.setFloatValue(dataSet.getFloat(column, row));
+				break;
+			case Double:
+				protoValueBuilder.setDoubleValue(dataSet.getDouble(column, row));
+				break;
+			case String:
+			case Text:
+				protoValueBuilder.setStringValue(dataSet.getString(column, row));
+				break;
+			case Boolean:
+				protoValueBuilder.setBooleanValue(dataSet.getBoolean(column, row));
+				break;
+			default:
+				logger.error("Unknown DataSetDataType DataType: " + type);
+				throw new Exception("Failed to convert value " + type);
+		}
+
+		return protoValueBuilder;
+	}
+
+	static Boolean toBoolean(Object value) {
 		if (value == null) {
 			return null;
 		}
@@ -767,7 +908,7 @@ public class SparkplugBPayloadEncoder implements PayloadEncoder<SparkplugBPayloa
 		return (Boolean) value;
 	}
 
-	private long bigIntegerToUnsignedLong(BigInteger bigInteger) {
+	static long bigIntegerToUnsignedLong(BigInteger bigInteger) {
 		BigInteger bref = BigInteger.ONE.shiftLeft(64);
 		if (bigInteger.compareTo(BigInteger.ZERO) < 0)
 			bigInteger = bigInteger.add(bref);
@@ -0,0 +1,988 @@
+/********************************************************************************
+ * Copyright (c) 2014-2022 Cirrus Link Solutions and others
+ *
+ * This program and the accompanying materials are made available under the
+ * terms of the Eclipse Public License 2.0 which is available at
+ * http://www.eclipse.org/legal/epl-2.0.
+ *
+ * SPDX-License-Identifier: EPL-2.0
+ *
+ * Contributors:
+ *   Cirrus Link Solutions - initial implementation
+ ********************************************************************************/
+
+package org.eclipse.sparkplug.impl.exception.message;
+
+import static org.eclipse.sparkplug.impl.exception.message.SparkplugBPayloadEncoder.bigIntegerToUnsignedLong;
+import static org.eclipse.sparkplug.impl.exception.message.SparkplugBPayloadEncoder.toBoolean;
+
+import java.io.IOException;
+import java.math.BigInteger;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.Date;
+import java.util.List;
+import java.util.Map;
+
+import org.eclipse.sparkplug.impl.exception.model.ColumnarDataSet;
+import org.eclipse.sparkplug.impl.exception.model.DataSet;
+import org.eclipse.sparkplug.impl.exception.model.DataSetDataType;
+import org.eclipse.sparkplug.impl.exception.model.File;
+import org.eclipse.sparkplug.impl.exception.model.MetaData;
+import org.eclipse.sparkplug.impl.exception.model.Metric;
+import org.eclipse.sparkplug.impl.exception.model.MetricDataType;
+import org.eclipse.sparkplug.impl.exception.model.Parameter;
+import org.eclipse.sparkplug.impl.exception.model.ParameterDataType;
+import org.eclipse.sparkplug.impl.exception.model.PropertyDataType;
+import org.eclipse.sparkplug.impl.exception.model.PropertySet;
+import org.eclipse.sparkplug.impl.exception.model.PropertyValue;
+import org.eclipse.sparkplug.impl.exception.model.Row;
+import org.eclipse.sparkplug.impl.exception.model.SparkplugBPayload;
+import org.eclipse.sparkplug.impl.exception.model.Template;
+import org.eclipse.sparkplug.impl.exception.model.Value;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.google.protobuf.CodedOutputStream;
+import com.google.protobuf.WireFormat;
+
+/**
+ * Serializes a {@link SparkplugBPayload} straight to a {@link CodedOutputStream}, in the Sparkplug B protobuf wire
+ * format, without building the intermediate protobuf messages that {@link SparkplugBPayloadEncoder#getBytes} uses.
+ * The bytes written are the same as those of getBytes.
+ *
+ * Each message is described once, as a sequence of fields passed to a {@link Sink}. A sizing sink adds up the
+ * encoded lengths of the fields, and records the length of every nested message in the order the messages start. A
+ * writing sink then walks the payload in the same order, writing the fields and taking the length prefix of each
+ * nested message from that record, so that no message is sized more than once.
+ */
+final class SparkplugBPayloadWriter {
+
+	private static final Logger logger = LoggerFactory.getLogger(SparkplugBPayloadWriter.class.getName());
+
+	/**
+	 * The fields of one message, or the content of one bytes field.
+	 */
+	private interface Part {
+		void writeTo(Sink sink) throws Exception;
+	}
+
+	/**
+	 * Puts count elements of an array, from offset, into a little-endian chunk which has room for them.
+	 */
+	private interface Filler {
+		void fill(ByteBuffer chunk, int offset, int count);
+	}
+
+	// the size of the buffer the elements of fixed width arrays are put into before being written
+	private static final int CHUNK_SIZE = 4096;
+
+	/**
+	 * The receiver of the fields of a message.
+	 */
+	private abstract static class Sink {
+
+		abstract void uint32(int field, int value) throws IOException;
+
+		abstract void uint64(int field, long value) throws IOException;
+
+		abstract void float32(int field, float value) throws IOException;
+
+		abstract void float64(int field, double value) throws IOException;
+
+		abstract void bool(int field, boolean value) throws IOException;
+
+		abstract void string(int field, String value) throws IOException;
+
+		abstract void bytes(int field, byte[] value) throws IOException;
+
+		abstract void message(int field, Part fields) throws Exception;
+
+		/**
+		 * A bytes field of the given length, whose content is written by the part as raw values.
+		 */
+		abstract void array(int field, int length, Part content) throws Exception;
+
+		/**
+		 * A bytes field holding count array elements of elementSize bytes each, which the filler puts into chunks.
+		 */
+		abstract void elements(int field, int count, int elementSize, Filler filler) throws IOException;
+
+		abstract void rawByte(byte value) throws IOException;
+
+		abstract void rawBytes(byte[] value) throws IOException;
+
+		abstract void rawInt32(int value) throws IOException;
+	}
+
+	private static class SizeSink extends Sink {
+		private int size = 0;
+
+		// the lengths of the nested messages, in the order they start
+		private int[] lengths = new int[16];
+		private int count = 0;
+
+		@Override
+		void uint32(int field, int value) {
+			size += CodedOutputStream.computeUInt32Size(field, value);
+		}
+
+		@Override
+		void uint64(int field, long value) {
+			size += CodedOutputStream.computeUInt64Size(field, value);
+		}
+
+		@Override
+		void float32(int field, float value) {
+			size += CodedOutputStream.computeFloatSize(field, value);
+		}
+
+		@Override
+		void float64(int field, double value) {
+			size += CodedOutputStream.computeDoubleSize(field, value);
+		}
+
+		@Override
+		void bool(int field, boolean value) {
+			size += CodedOutputStream.computeBoolSize(field, value);
+		}
+
+		@Override
+		void string(int field, String value) {
+			size += CodedOutputStream.computeStringSize(field, value);
+		}
+
+		@Override
+		void bytes(int field, byte[] value) {
+			size += CodedOutputStream.computeByteArraySize(field, value);
+		}
+
+		@Override
+		void message(int field, Part fields) throws Exception {
+			if (count == lengths.length) {
+				lengths = Arrays.copyOf(lengths, count * 2);
+			}
+			int index = count++;
+			int start = size;
+			fields.writeTo(this);
+			int length = size - start;
+			lengths[index] = length;
+			size += CodedOutputStream.computeTagSize(field) + CodedOutputStream.computeUInt32SizeNoTag(length);
+		}
+
+		@Override
+		void array(int field, int length, Part content) {
+			size += CodedOutputStream.computeTagSize(field) + CodedOutputStream.computeUInt32SizeNoTag(length)
+					+ length;
+		}
+
+		@Override
+		void elements(int field, int count, int elementSize, Filler filler) {
+			array(field, count * elementSize, null);
+		}
+
+		// the length of an array is known in advance, so its content is never sized byte by byte
+
+		@Override
+		void rawByte(byte value) {
+		}
+
+		@Override
+		void rawBytes(byte[] value) {
+		}
+
+		@Override
+		void rawInt32(int value) {
+		}
+	}
+
+	private static class WriteSink extends Sink {
+		private final CodedOutputStream out;
+		private final int[] lengths;
+		private int next = 0;
+		private ByteBuffer chunk = null;
+
+		WriteSink(CodedOutputStream out, int[] lengths) {
+			this.out = out;
+			this.lengths = lengths;
+		}
+
+		@Override
+		void uint32(int field, int value) throws IOException {
+			out.writeUInt32(field, value);
+		}
+
+		@Override
+		void uint64(int field, long value) throws IOException {
+			out.writeUInt64(field, value);
+		}
+
+		@Override
+		void float32(int field, float value) throws IOException {
+			out.writeFloat(field, value);
+		}
+
+		@Override
+		void float64(int field, double value) throws IOException {
+			out.writeDouble(field, value);
+		}
+
+		@Override
+		void bool(int field, boolean value) throws IOException {
+			out.writeBool(field, value);
+		}
+
+		@Override
+		void string(int field, String value) throws IOException {
+			out.writeString(field, value);
+		}
+
+		@Override
+		void bytes(int field, byte[] value) throws IOException {
+			out.writeByteArray(field, value);
+		}
+
+		@Override
+		void message(int field, Part fields) throws Exception {
+			out.writeTag(field, WireFormat.WIRETYPE_LENGTH_DELIMITED);
+			out.writeUInt32NoTag(lengths[next++]);
+			fields.writeTo(this);
+		}
+
+		@Override
+		void array(int field, int length, Part content) throws Exception {
+			out.writeTag(field, WireFormat.WIRETYPE_LENGTH_DELIMITED);
+			out.writeUInt32NoTag(length);
+			content.writeTo(this);
+		}
+
+		@Override
+		void elements(int field, int count, int elementSize, Filler filler) throws IOException {
+			out.writeTag(field, WireFormat.WIRETYPE_LENGTH_DELIMITED);
+			out.writeUInt32NoTag(count * elementSize);
+			if (chunk == null) {
+				chunk = ByteBuffer.allocate(CHUNK_SIZE).order(ByteOrder.LITTLE_ENDIAN);
+			}
+			int perChunk = CHUNK_SIZE / elementSize;
+			for (int offset = 0; offset < count; offset += perChunk) {
+				int n = Math.min(perChunk, count - offset);
+				chunk.clear();
+				filler.fill(chunk, offset, n);
+				out.writeRawBytes(chunk.array(), 0, n * elementSize);
+			}
+		}
+
+		@Override
+		void rawByte(byte value) throws IOException {
+			out.writeRawByte(value);
+		}
+
+		@Override
+		void rawBytes(byte[] value) throws IOException {
+			out.writeRawBytes(value);
+		}
+
+		@Override
+		void rawInt32(int value) throws IOException {
+			out.writeFixed32NoTag(value);
+		}
+	}
+
+	private SparkplugBPayloadWriter() {
+	}
+
+	/**
+	 * @param payload the payload
+	 * @return the number of bytes the encoded payload takes
+	 * @throws IOException
+	 */
+	static int getSerializedSize(SparkplugBPayload payload) throws IOException {
+		SizeSink sink = new SizeSink();
+		payload(sink, payload);
+		return sink.size;
+	}
+
+	/**
+	 * Writes an encoded payload. The output is not flushed.
+	 *
+	 * @param payload the payload
+	 * @param out the output
+	 * @throws IOException
+	 */
+	static void write(SparkplugBPayload payload, CodedOutputStream out) throws IOException {
+		SizeSink sizer = new SizeSink();
+		payload(sizer, payload);
+		payload(new WriteSink(out, sizer.lengths), payload);
+	}
+
+	private static void payload(Sink sink, SparkplugBPayload payload) throws IOException {
+		if (payload.getTimestamp() != null) {
+			sink.uint64(1, payload.getTimestamp().getTime());
+		}
+
+		for (Metric metric : payload.getMetrics()) {
+			try {
+				sink.message(2, s -> metric(s, metric));
+			} catch (IOException e) {
+				throw e;
+			} catch (Exception e) {
+				logger.error("Failed to add metric: " + metric.getName(), e);
+				throw new RuntimeException(e);
+			}
+		}
+
+		if (payload.getSeq() != null) {
+			sink.uint64(3, payload.getSeq());
+		}
+
+		if (payload.getUuid() != null) {
+			sink.string(4, payload.getUuid());
+		}
+
+		if (payload.getBody() != null) {
+			sink.bytes(5, payload.getBody());
+		}
+	}
+
+	private static void metric(Sink sink, Metric metric) throws Exception {
+		if (metric.hasName()) {
+			sink.string(1, metric.getName());
+		}
+		if (metric.hasAlias()) {
+			sink.uint64(2, metric.getAlias());
+		}
+		if (metric.getTimestamp() != null) {
+			sink.uint64(3, metric.getTimestamp().getTime());
+		}
+		sink.uint32(4, metric.getDataType().toIntValue());
+		if (metric.getIsHistorical() != null) {
+			sink.bool(5, metric.isHistorical());
+		}
+		if (metric.getIsTransient() != null) {
+			sink.bool(6, metric.isTransient());
+		}
+
+		Object value = metric.getValue();
+		if (metric.getIsNull() != null) {
+			sink.bool(7, metric.isNull());
+		} else if (value == null) {
+			sink.bool(7, true);
+		}
+
+		// A File value puts its file name in the metadata, unless the metadata has its own
+		File file = (value != null && metric.getDataType() == MetricDataType.File) ? (File) value : null;
+		MetaData metaData = metric.getMetaData();
+		if (file != null || metaData != null) {
+			sink.message(8, s -> metaData(s, file, metaData));
+		}
+
+		if (metric.getProperties() != null) {
+			sink.message(9, s -> propertySet(s, metric.getProperties()));
+		}
+
+		if (value != null) {
+			metricValue(sink, metric.getDataType(), value);
+		}
+	}
+
+	private static void metaData(Sink sink, File file, MetaData metaData) throws IOException {
+		if (metaData != null && metaData.isMultiPart() != null) {
+			sink.bool(1, metaData.isMultiPart());
+		}
+		if (metaData != null && metaData.getContentType() != null) {
+			sink.string(2, metaData.getContentType());
+		}
+		if (metaData != null && metaData.getSize() != null) {
+			sink.uint64(3, metaData.getSize());
+		}
+		if (metaData != null && metaData.getSeq() != null) {
+			sink.uint64(4, metaData.getSeq());
+		}
+		if (metaData != null && metaData.getFileName() != null) {
+			sink.string(5, metaData.getFileName());
+		} else if (file != null && file.getFileName() != null) {
+			sink.string(5, file.getFileName());
+		}
+		if (metaData != null && metaData.getFileType() != null) {
+			sink.string(6, metaData.getFileType());
+		}
+		if (metaData != null && metaData.getMd5() != null) {
+			sink.string(7, metaData.getMd5());
+		}
+		if (metaData != null && metaData.getDescription() != null) {
+			sink.string(8, metaData.getDescription());
+		}
+	}
+
+	private static void metricValue(Sink sink, MetricDataType type, Object value) throws Exception {
+		if (type.isPrimitiveArray(value)) {
+			primitiveArray(sink, value);
+			return;
+		}
+		switch (type) {
+			case Boolean:
+				sink.bool(14, toBoolean(value));
+				break;
+			case DateTime:
+				sink.uint64(11, ((Date) value).getTime());
+				break;
+			case File:
+				sink.bytes(16, ((File) value).getBytes());
+				break;
+			case Float:
+				sink.float32(12, (Float) value);
+				break;
+			case Double:
+				sink.float64(13, (Double) value);
+				break;
+			case Int8:
+				sink.uint32(10, (Byte) value);
+				break;
+			case Int16:
+				sink.uint32(10, (Short) value);
+				break;
+			case Int32:
+				sink.uint32(10, (Integer) value);
+				break;
+			case Int64:
+				sink.uint64(11, (Long) value);
+				break;
+			case UInt8:
+				sink.uint32(10, Short.toUnsignedInt((Short) value));
+				break;
+			case UInt16:
+				sink.uint32(10, (int) Integer.toUnsignedLong((Integer) value));
+				break;
+			case UInt32:
+				sink.uint64(11, (Long) value);
+				break;
+			case UInt64:
+				sink.uint64(11, bigIntegerToUnsignedLong((BigInteger) value));
+				break;
+			case String:
+			case Text:
+			case UUID:
+				sink.string(15, (String) value);
+				break;
+			case Bytes:
+				sink.bytes(16, (byte[]) value);
+				break;
+			case DataSet:
+				if (value instanceof ColumnarDataSet) {
+					sink.message(17, s -> columnarDataSet(s, (ColumnarDataSet) value));
+				} else {
+					sink.message(17, s -> dataSet(s, (DataSet) value));
+				}
+				break;
+			case Template:
+				sink.message(18, s -> template(s, (Template) value));
+				break;
+			case Int8Array:
+				Byte[] int8ArrayValue = (Byte[]) value;
+				sink.elements(16, int8ArrayValue.length, 1, (chunk, offset, count) -> {
+					for (int i = offset; i < offset + count; i++) {
+						chunk.put(int8ArrayValue[i]);
+					}
+				});
+				break;
+			case Int16Array:
+				Short[] int16ArrayValue = (Short[]) value;
+				sink.elements(16, int16ArrayValue.length, 2, (chunk, offset, count) -> {
+					for (int i = offset; i < offset + count; i++) {
+						chunk.putShort(int16ArrayValue[i]);
+					}
+				});
+				break;
+			case Int32Array:
+				Integer[] int32ArrayValue = (Integer[]) value;
+				sink.elements(16, int32ArrayValue.length, 4, (chunk, offset, count) -> {
+					for (int i = offset; i < offset + count; i++) {
+						chunk.putInt(int32ArrayValue[i]);
+					}
+				});
+				break;
+			case Int64Array:
+				Long[] int64ArrayValue = (Long[]) value;
+				sink.elements(16, int64ArrayValue.length, 8, (chunk, offset, count) -> {
+					for (int i = offset; i < offset + count; i++) {
+						chunk.putLong(int64ArrayValue[i]);
+					}
+				});
+				break;
+			case UInt8Array:
+				Short[] uInt8ArrayValue = (Short[]) value;
+				sink.elements(16, uInt8ArrayValue.length, 1, (chunk, offset, count) -> {
+					for (int i = offset; i < offset + count; i++) {
+						chunk.put((byte) (uInt8ArrayValue[i] & 0xffff));
+					}
+				});
+				break;
+			case UInt16Array:
+				Integer[] uInt16ArrayValue = (Integer[]) value;
+				sink.elements(16, uInt16ArrayValue.length, 2, (chunk, offset, count) -> {
+					for (int i = offset; i < offset + count; i++) {
+						chunk.putShort((short) (uInt16ArrayValue[i] & 0xffffffff));
+					}
+				});
+				break;
+			case UInt32Array:
+				Long[] uInt32ArrayValue = (Long[]) value;
+				sink.elements(16, uInt32ArrayValue.length, 4, (chunk, offset, count) -> {
+					for (int i = offset; i < offset + count; i++) {
+						chunk.putInt((int) (uInt32ArrayValue[i] & 0xffffffffffffffffL));
+					}
+				});
+				break;
+			case UInt64Array:
+				BigInteger[] uInt64ArrayValue = (BigInteger[]) value;
+				sink.elements(16, uInt64ArrayValue.length, 8, (chunk, offset, count) -> {
+					for (int i = offset; i < offset + count; i++) {
+						chunk.putLong(bigIntegerToUnsignedLong(uInt64ArrayValue[i]));
+					}
+				});
+				break;
+			case FloatArray:
+				Float[] floatArrayValue = (Float[]) value;
+				sink.elements(16, floatArrayValue.length, 4, (chunk, offset, count) -> {
+					for (int i = offset; i < offset + count; i++) {
+						chunk.putFloat(floatArrayValue[i]);
+					}
+				});
+				break;
+			case DoubleArray:
+				Double[] doubleArrayValue = (Double[]) value;
+				sink.elements(16, doubleArrayValue.length, 8, (chunk, offset, count) -> {
+					for (int i = offset; i < offset + count; i++) {
+						chunk.putDouble(doubleArrayValue[i]);
+					}
+				});
+				break;
+			case BooleanArray:
+				Boolean[] booleanArrayValue = (Boolean[]) value;
+				int numberOfBytes = (booleanArrayValue.length + 7) / 8;
+				sink.array(16, 4 + numberOfBytes, s -> {
+					// The first 4 bytes is the number of booleans in the array
+					s.rawInt32(booleanArrayValue.length);
+					for (int i = 0; i < numberOfBytes; i++) {
+						byte nextByte = 0;
+						for (int bit = 0; bit < 8; bit++) {
+							int index = i * 8 + bit;
+							if (index < booleanArrayValue.length && booleanArrayValue[index]) {
+								nextByte |= (128 >> bit);
+							}
+						}
+						s.rawByte(nextByte);
+					}
+				});
+				break;
+			case StringArray:
+				String[] stringArrayValue = (String[]) value;
+				int size = 0;
+				for (String string : stringArrayValue) {
+					size += utf8Length(string) + 1;
+				}
+				sink.array(16, size, s -> {
+					for (String element : stringArrayValue) {
+						s.rawBytes(element.getBytes(StandardCharsets.UTF_8));
+						s.rawByte((byte) 0);
+					}
+				});
+				break;
+			case DateTimeArray:
+				Date[] dateTimeArrayValue = (Date[]) value;
+				sink.elements(16, dateTimeArrayValue.length, 8, (chunk, offset, count) -> {
+					for (int i = offset; i < offset + count; i++) {
+						chunk.putLong(dateTimeArrayValue[i].getTime());
+					}
+				});
+				break;
+			case Unknown:
+			default:
+				logger.error("Unsupported MetricDataType: " + type);
+				throw new Exception("Failed to encode");
+		}
+	}
+
+	/**
+	 * Writes a primitive array metric value with bulk copies into the chunks of the output.
+	 */
+	private static void primitiveArray(Sink sink, Object value) throws Exception {
+		if (value instanceof byte[]) {
+			byte[] array = (byte[]) value;
+			sink.array(16, array.length, s -> s.rawBytes(array));
+		} else if (value instanceof short[]) {
+			short[] array = (short[]) value;
+			sink.elements(16, array.length, 2,
+					(chunk, offset, count) -> chunk.asShortBuffer().put(array, offset, count));
+		} else if (value instanceof int[]) {
+			int[] array = (int[]) value;
+			sink.elements(16, array.length, 4,
+					(chunk, offset, count) -> chunk.asIntBuffer().put(array, offset, count));
+		} else if (value instanceof long[]) {
+			long[] array = (long[]) value;
+			sink.elements(16, array.length, 8,
+					(chunk, offset, count) -> chunk.asLongBuffer().put(array, offset, count));
+		} else if (value instanceof float[]) {
+			float[] array = (float[]) value;
+			sink.elements(16, array.length, 4,
+					(chunk, offset, count) -> chunk.asFloatBuffer().put(array, offset, count));
+		} else {
+			double[] array = (double[]) value;
+			sink.elements(16, array.length, 8,
+					(chunk, offset, count) -> chunk.asDoubleBuffer().put(array, offset, count));
+		}
+	}
+
+	private static void dataSet(Sink sink, DataSet dataSet) throws Exception {
+		sink.uint64(1, dataSet.getNumOfColumns());
+
+		List<String> columnNames = dataSet.getColumnNames();
+		if (columnNames != null) {
+			for (String name : columnNames) {
+				sink.string(2, name);
+			}
+		}
+
+		List<DataSetDataType> columnTypes = dataSet.getTypes();
+		if (columnTypes != null) {
+			for (DataSetDataType type : columnTypes) {
+				sink.uint32(3, type.toIntValue());
+			}
+		}
+
+		List<Row> rows = dataSet.getRows();
+		if (rows != null) {
+			for (Row row : rows) {
+				List<Value<?>> values = row.getValues();
+				if (values != null && !values.isEmpty()) {
+					sink.message(4, s -> {
+						for (Value<?> value : values) {
+							s.message(1, e -> dataSetValue(e, value));
+						}
+					});
+				}
+			}
+		}
+	}
+
+	private static void columnarDataSet(Sink sink, ColumnarDataSet dataSet) throws Exception {
+		sink.uint64(1, dataSet.getNumOfColumns());
+		for (String name : dataSet.getColumnNames()) {
+			sink.string(2, name);
+		}
+		for (DataSetDataType type : dataSet.getTypes()) {
+			sink.uint32(3, type.toIntValue());
+		}
+
+		int columnCount = (int) dataSet.getNumOfColumns();
+		if (columnCount == 0) {
+			return;
+		}
+		for (int i = 0; i < dataSet.getRowCount(); i++) {
+			int row = i;
+			sink.message(4, s -> {
+				for (int column = 0; column < columnCount; column++) {
+					int c = column;
+					s.message(1, e -> dataSetValue(e, dataSet, c, row));
+				}
+			});
+		}
+	}
+
+	private static void dataSetValue(Sink sink, ColumnarDataSet dataSet, int column, int row) throws Exception {
+		if (dataSet.isNull(column, row)) {
+			return;
+		}
+		DataSetDataType type = dataSet.getType(column);
+		switch (type) {
+			case Int8:
+			case Int16:
+			case Int32:
+			case UInt8:
+			case UInt16:
+				sink.uint32(1, dataSet.getInt(column, row));
+				break;
+			case Int64:
+			case UInt32:
+			case UInt64:
+			case DateTime:
+				sink.uint64(2, dataSet.getLong(column, row));
+				break;
+			case Float:
+				sink.float32(3, dataSet.getFloat(column, row));
+				break;
+			case Double:
+				sink.float64(4, dataSet.getDouble(column, row));
+				break;
+			case String:
+			case Text:
+				sink.string(6, dataSet.getString(column, row));
+				break;
+			case Boolean:
+				sink.bool(5, dataSet.getBoolean(column, row));
+				break;
+			default:
+				logger.error("Unknown DataSetDataType DataType: " + type);
+				throw new Exception("Failed to convert value " + type);
+		}
+	}
+
+	private static void dataSetValue(Sink sink, Value<?> value) throws Exception {
+		DataSetDataType type = value.getType();
+		Object v = value.getValue();
+		switch (type) {
+			case Int8:
+				if (v != null) {
+					sink.uint32(1, (Byte) v);
+				}
+				break;
+			case Int16:
+				if (v != null) {
+					sink.uint32(1, (Short) v);
+				}
+				break;
+			case Int32:
+				if (v != null) {
+					sink.uint32(1, (Integer) v);
+				}
+				break;
+			case Int64:
+				if (v != null) {
+					sink.uint64(2, (Long) v);
+				}
+				break;
+			case UInt8:
+				if (v != null) {
+					sink.uint32(1, Short.toUnsignedInt((Short) v));
+				}
+				break;
+			case UInt16:
+				if (v != null) {
+					sink.uint32(1, (int) Integer.toUnsignedLong((Integer) v));
+				}
+				break;
+			case UInt32:
+				if (v != null) {
+					sink.uint64(2, (Long) v);
+				}
+				break;
+			case UInt64:
+				if (v != null) {
+					sink.uint64(2, bigIntegerToUnsignedLong((BigInteger) v));
+				}
+				break;
+			case Float:
+				if (v != null) {
+					sink.float32(3, (Float) v);
+				}
+				break;
+			case Double:
+				if (v != null) {
+					sink.float64(4, (Double) v);
+				}
+				break;
+			case String:
+			case Text:
+				if (v != null) {
+					sink.string(6, (String) v);
+				}
+				break;
+			case Boolean:
+				if (v != null) {
+					sink.bool(5, toBoolean(v));
+				}
+				break;
+			case DateTime:
+				if (v != null) {
+					sink.uint64(2, ((Date) v).getTime());
+				}
+				break;
+			default:
+				logger.error("Unknown DataSetDataType DataType: " + type);
+				throw new Exception("Failed to convert value " + type);
+		}
+	}
+
+	private static void template(Sink sink, Template template) throws Exception {
+		if (template.getVersion() != null) {
+			sink.string(1, template.getVersion());
+		}
+		if (template.getMetrics() != null) {
+			for (Metric metric : template.getMetrics()) {
+				sink.message(2, s -> metric(s, metric));
+			}
+		}
+		if (template.getParameters() != null) {
+			for (Parameter parameter : template.getParameters()) {
+				sink.message(3, s -> parameter(s, parameter));
+			}
+		}
+		if (template.getTemplateRef() != null) {
+			sink.string(4, template.getTemplateRef());
+		}
+		sink.bool(5, template.isDefinition());
+	}
+
+	private static void parameter(Sink sink, Parameter parameter) throws Exception {
+		ParameterDataType type = parameter.getType();
+		sink.string(1, parameter.getName());
+		sink.uint32(2, type.toIntValue());
+
+		Object value = parameter.getValue();
+		value = type == ParameterDataType.String && value == null ? "" : value;
+		if (value != null) {
+			switch (type) {
+				case Boolean:
+					sink.bool(7, toBoolean(value));
+					break;
+				case DateTime:
+					sink.uint64(4, ((Date) value).getTime());
+					break;
+				case Double:
+					sink.float64(6, (Double) value);
+					break;
+				case Float:
+					sink.float32(5, (Float) value);
+					break;
+				case Int8:
+					sink.uint32(3, (Byte) value);
+					break;
+				case Int16:
+					sink.uint32(3, (Short) value);
+					break;
+				case Int32:
+					sink.uint32(3, (Integer) value);
+					break;
+				case Int64:
+					sink.uint64(4, (Long) value);
+					break;
+				case UInt8:
+					sink.uint32(3, Short.toUnsignedInt((Short) value));
+					break;
+				case UInt16:
+					sink.uint32(3, (int) Integer.toUnsignedLong((Integer) value));
+					break;
+				case UInt32:
+					sink.uint64(4, Long.valueOf(Long.toUnsignedString(((BigInteger) value).longValue())));
+					break;
+				case UInt64:
+					sink.uint64(4, bigIntegerToUnsignedLong((BigInteger) value));
+					break;
+				case Text:
+				case String:
+					sink.string(8, (String) value);
+					break;
+				case Unknown:
+				default:
+					logger.error("Unknown Type: " + type);
+					throw new Exception("Failed to encode");
+			}
+		}
+	}
+
+	private static void propertySet(Sink sink, PropertySet propertySet) throws Exception {
+		// all the keys come before all the values, as the protobuf fields are written in field number order
+		Map<String, PropertyValue> map = propertySet.getPropertyMap();
+		for (String key : map.keySet()) {
+			sink.string(1, key);
+		}
+		for (String key : map.keySet()) {
+			PropertyValue value = map.get(key);
+			sink.message(2, s -> propertyValue(s, value));
+		}
+	}
+
+	private static void propertyValue(Sink sink, PropertyValue value) throws Exception {
+		PropertyDataType type = value.getType();
+		sink.uint32(1, type.toIntValue());
+		Object v = value.getValue();
+		if (v == null) {
+			sink.bool(2, true);
+			return;
+		}
+		switch (type) {
+			case Boolean:
+				sink.bool(7, (Boolean) v);
+				break;
+			case DateTime:
+				sink.uint64(4, ((Date) v).getTime());
+				break;
+			case Double:
+				sink.float64(6, (Double) v);
+				break;
+			case Float:
+				sink.float32(5, (Float) v);
+				break;
+			case Int8:
+				sink.uint32(3, (Byte) v);
+				break;
+			case Int16:
+				sink.uint32(3, (Short) v);
+				break;
+			case Int32:
+				sink.uint32(3, (Integer) v);
+				break;
+			case Int64:
+				sink.uint64(4, (Long) v);
+				break;
+			case UInt8:
+				sink.uint32(3, Short.toUnsignedInt((Short) v));
+				break;
+			case UInt16:
+				sink.uint32(3, (int) Integer.toUnsignedLong((Integer) v));
+				break;
+			case UInt32:
+				sink.uint64(4, (Long) v);
+				break;
+			case UInt64:
+				sink.uint64(4, bigIntegerToUnsignedLong((BigInteger) v));
+				break;
+			case String:
+			case Text:
+				sink.string(8, (String) v);
+				break;
+			case PropertySet:
+				sink.message(9, s -> propertySet(s, (PropertySet) v));
+				break;
+			case PropertySetList:
+				List<?> setList = (List<?>) v;
+				sink.message(10, s -> {
+					for (Object obj : setList) {
+						s.message(1, e -> propertySet(e, (PropertySet) obj));
+					}
+				});
+				break;
+			case Unknown:
+			default:
+				logger.error("Unknown PropertyDataType: " + type);
+				throw new Exception("Failed to convert value " + type);
+		}
+	}
+
+	/**
+	 * @return the number of bytes in the UTF-8 encoding of a string, as produced by {@link String#getBytes}, where
+	 *         an unpaired surrogate is replaced by a single byte
+	 */
+	private static int utf8Length(String string) {
+		int length = 0;
+		for (int i = 0; i < string.length(); i++) {
+			char c = string.charAt(i);
+			if (c < 0x80) {
+				length += 1;
+			} else if (c < 0x800) {
+				length += 2;
+			} else if (Character.isHighSurrogate(c) && i + 1 < string.length()
+					&& Character.isLowSurrogate(string.charAt(i + 1))) {
+				length += 4;
+				i++;
+			} else if (Character.isSurrogate(c)) {
+				length += 1;
+			} else {
+				length += 3;
+			}
+		}
+		return length;
+	}
+}
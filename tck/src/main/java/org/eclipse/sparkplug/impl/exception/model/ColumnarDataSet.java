@@ -0,0 +1,320 @@
+/********************************************************************************
+ * Copyright (c) 2014-2022 Cirrus Link Solutions and others
+ *
+ * This program and the accompanying materials are made available under the
+ * terms of the Eclipse Public License 2.0 which is available at
+ * http://www.eclipse.org/legal/epl-2.0.
+ *
+ * SPDX-License-Identifier: EPL-2.0
+ *
+ * Contributors:
+ *   Cirrus Link Solutions - initial implementation
+ ********************************************************************************/
+
+package org.eclipse.sparkplug.impl.exception.model;
+
+import java.lang.reflect.Array;
+import java.math.BigInteger;
+import java.util.AbstractList;
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.Collections;
+import java.util.Date;
+import java.util.List;
+
+import org.eclipse.sparkplug.impl.exception.SparkplugErrorCode;
+import org.eclipse.sparkplug.impl.exception.SparkplugException;
+
+/**
+ * A read-only table of data which holds its values by column, in one array per column, as described by
+ * {@link DataSetDataType#getColumnClazz()}, with a bitmap of the null values of each column. It can be used as the
+ * value of a DataSet metric in place of a {@link DataSet}, and is encoded in the same way.
+ * <p>
+ * No object is held per value, so a large data set takes about as much memory as its values. It has no mutators:
+ * {@link #getRows()} is a read-only view which creates each {@link Row} when it is read, and {@link #toDataSet()}
+ * makes a row-based {@link DataSet} which can be changed.
+ * <p>
+ * Instances are created with a {@link ColumnarDataSetBuilder}, or by
+ * {@link org.eclipse.sparkplug.impl.exception.message.SparkplugBDataSetDecoder}.
+ */
+public final class ColumnarDataSet {
+
+	private final List<String> columnNames;
+	private final List<DataSetDataType> types;
+	private final int rowCount;
+	private final Object[] columns;
+	private final BitSet[] nulls;
+
+	/**
+	 * @param columnNames the names of the columns
+	 * @param types the data types of the columns
+	 * @param columns the column arrays, all with the same length
+	 * @param nulls for each column, the rows whose value is null, or null if there are none
+	 * @param rowCount the number of rows
+	 */
+	public ColumnarDataSet(List<String> columnNames, List<DataSetDataType> types, Object[] columns, BitSet[] nulls,
+			int rowCount) {
+		this.columnNames = Collections.unmodifiableList(new ArrayList<String>(columnNames));
+		this.types = Collections.unmodifiableList(new ArrayList<DataSetDataType>(types));
+		this.columns = columns;
+		this.nulls = nulls;
+		this.rowCount = rowCount;
+	}
+
+	public long getNumOfColumns() {
+		return columns.length;
+	}
+
+	public List<String> getColumnNames() {
+		return columnNames;
+	}
+
+	public List<DataSetDataType> getTypes() {
+		return types;
+	}
+
+	public int getRowCount() {
+		return rowCount;
+	}
+
+	/**
+	 * Returns the array holding the values of a column, in rows order. The array is the data set's own, so it must not
+	 * be changed.
+	 *
+	 * @param column the column index
+	 * @return the column array, of the class given by {@link DataSetDataType#getColumnClazz()}
+	 */
+	public Object getColumn(int column) {
+		return columns[column];
+	}
+
+	/**
+	 * @param column the column index
+	 * @return a copy of the rows whose value is null, or null if there are none
+	 */
+	public BitSet getNulls(int column) {
+		return (nulls[column] == null) ? null : (BitSet) nulls[column].clone();
+	}
+
+	public DataSetDataType getType(int column) {
+		return getTypes().get(column);
+	}
+
+	public boolean isNull(int column, int row) {
+		if (nulls[column] != null && nulls[column].get(row)) {
+			return true;
+		}
+		Object array = columns[column];
+		return array instanceof String[] && ((String[]) array)[row] == null;
+	}
+
+	/**
+	 * Returns a value of an Int8, Int16, Int32, UInt8 or UInt16 column, as it is encoded.
+	 */
+	public int getInt(int column, int row) {
+		Object array = columns[column];
+		if (array instanceof byte[]) {
+			return ((byte[]) array)[row];
+		} else if (array instanceof short[]) {
+			short value = ((short[]) array)[row];
+			return getType(column) == DataSetDataType.UInt8 ? Short.toUnsignedInt(value) : value;
+		}
+		return ((int[]) array)[row];
+	}
+
+	/**
+	 * Returns a value of an Int64, UInt32, UInt64 or DateTime column, as it is encoded.
+	 */
+	public long getLong(int column, int row) {
+		return ((long[]) columns[column])[row];
+	}
+
+	public float getFloat(int column, int row) {
+		return ((float[]) columns[column])[row];
+	}
+
+	public double getDouble(int column, int row) {
+		return ((double[]) columns[column])[row];
+	}
+
+	public boolean getBoolean(int column, int row) {
+		return ((boolean[]) columns[column])[row];
+	}
+
+	public String getString(int column, int row) {
+		return ((String[]) columns[column])[row];
+	}
+
+	/**
+	 * Returns a value as it would be held in the {@link Value} of a row.
+	 *
+	 * @param column the column index
+	 * @param row the row index
+	 * @return the value, or null
+	 */
+	public Object getValue(int column, int row) {
+		if (isNull(column, row)) {
+			return null;
+		}
+		Object array = columns[column];
+		switch (getType(column)) {
+			case Int8:
+				return ((byte[]) array)[row];
+			case Int16:
+			case UInt8:
+				return ((short[]) array)[row];
+			case Int32:
+			case UInt16:
+				return ((int[]) array)[row];
+			case Int64:
+			case UInt32:
+				return ((long[]) array)[row];
+			case UInt64:
+				return new BigInteger(Long.toUnsignedString(((long[]) array)[row]));
+			case Float:
+				return ((float[]) array)[row];
+			case Double:
+				return ((double[]) array)[row];
+			case Boolean:
+				return ((boolean[]) array)[row];
+			case String:
+			case Text:
+				return ((String[]) array)[row];
+			case DateTime:
+				return new Date(((long[]) array)[row]);
+			default:
+				return null;
+		}
+	}
+
+	/**
+	 * Creates a row from the column values.
+	 *
+	 * @param row the row index
+	 * @return a new {@link Row}
+	 */
+	public Row getRow(int row) {
+		List<Value<?>> values = new ArrayList<>(columns.length);
+		for (int column = 0; column < columns.length; column++) {
+			values.add(new Value<Object>(getType(column), getValue(column, row)));
+		}
+		return new Row(values);
+	}
+
+	/**
+	 * @return a read-only view of the rows, each created when it is read
+	 */
+	public List<Row> getRows() {
+		return new AbstractList<Row>() {
+			@Override
+			public Row get(int index) {
+				if (index < 0 || index >= rowCount) {
+					throw new IndexOutOfBoundsException("Row " + index + " of " + rowCount);
+				}
+				return getRow(index);
+			}
+
+			@Override
+			public int size() {
+				return rowCount;
+			}
+		};
+	}
+
+	/**
+	 * Copies the values into a row-based {@link DataSet}.
+	 *
+	 * @return a new data set, with one {@link Row} per row
+	 */
+	public DataSet toDataSet() {
+		return new DataSet(columns.length, new ArrayList<String>(columnNames), new ArrayList<DataSetDataType>(types),
+				new ArrayList<Row>(getRows()));
+	}
+
+	@Override
+	public String toString() {
+		StringBuilder builder = new StringBuilder();
+		builder.append("ColumnarDataSet [numOfColumns=");
+		builder.append(getNumOfColumns());
+		builder.append(", columnNames=");
+		builder.append(getColumnNames());
+		builder.append(", types=");
+		builder.append(getTypes());
+		builder.append(", rowCount=");
+		builder.append(rowCount);
+		builder.append("]");
+		return builder.toString();
+	}
+
+	/**
+	 * A builder for creating a {@link ColumnarDataSet} from whole columns.
+	 */
+	public static class ColumnarDataSetBuilder {
+
+		private final List<String> columnNames = new ArrayList<String>();
+		private final List<DataSetDataType> types = new ArrayList<DataSetDataType>();
+		private final List<Object> columns = new ArrayList<Object>();
+		private final List<BitSet> nulls = new ArrayList<BitSet>();
+
+		public ColumnarDataSetBuilder() {
+		}
+
+		/**
+		 * Adds a whole column with no null values.
+		 *
+		 * @param columnName the column name
+		 * @param type the column data type
+		 * @param values the array of the column values, of the class given by {@link DataSetDataType#getColumnClazz()}
+		 * @return this builder
+		 */
+		public ColumnarDataSetBuilder addColumn(String columnName, DataSetDataType type, Object values) {
+			return addColumn(columnName, type, values, null);
+		}
+
+		/**
+		 * Adds a whole column.
+		 *
+		 * @param columnName the column name
+		 * @param type the column data type
+		 * @param values the array of the column values, of the class given by {@link DataSetDataType#getColumnClazz()}
+		 * @param nulls the rows whose value is null, or null if there are none
+		 * @return this builder
+		 */
+		public ColumnarDataSetBuilder addColumn(String columnName, DataSetDataType type, Object values,
+				BitSet nulls) {
+			this.columnNames.add(columnName);
+			this.types.add(type);
+			this.columns.add(values);
+			this.nulls.add(nulls);
+			return this;
+		}
+
+		public ColumnarDataSet createDataSet() throws SparkplugException {
+			validate();
+			return new ColumnarDataSet(columnNames, types, columns.toArray(), nulls.toArray(new BitSet[0]),
+					columns.isEmpty() ? 0 : Array.getLength(columns.get(0)));
+		}
+
+		/**
+		 * Checks the type of each column array once, rather than the type of each value.
+		 */
+		public void validate() throws SparkplugException {
+			int rowCount = -1;
+			for (int i = 0; i < columns.size(); i++) {
+				types.get(i).checkColumnType(columns.get(i));
+				int length = Array.getLength(columns.get(i));
+				if (rowCount >= 0 && length != rowCount) {
+					throw new SparkplugException(SparkplugErrorCode.INVALID_ARGUMENT,
+							"Invalid number of rows in data set column " + columnNames.get(i) + ": " + length
+									+ " vs expected: " + rowCount);
+				}
+				BitSet columnNulls = nulls.get(i);
+				if (columnNulls != null && columnNulls.length() > length) {
+					throw new SparkplugException(SparkplugErrorCode.INVALID_ARGUMENT,
+							"Null bitmap of data set column " + columnNames.get(i) + " beyond row " + length);
+				}
+				rowCount = length;
+			}
+		}
+	}
+}
@@ -20,34 +20,40 @@ import org.eclipse.sparkplug.impl.exception.SparkplugInvalidTypeException;
 
 /**
  * A enumeration of data types of values in a {@link DataSet}
+ * <p>
+ * Each data type also has the class of the array holding a whole column of values in a {@link ColumnarDataSet}: a
+ * primitive array of the type's value class, long[] holding the unsigned bits of UInt64 values and long[] holding the
+ * milliseconds of DateTime values.
  */
 public enum DataSetDataType {
 
 	// Basic Types
-	Int8(1, Byte.class),
-	Int16(2, Short.class),
-	Int32(3, Integer.class),
-	Int64(4, Long.class),
-	UInt8(5, Short.class),
-	UInt16(6, Integer.class),
-	UInt32(7, Long.class),
-	UInt64(8, BigInteger.class),
-	Float(9, Float.class),
-	Double(10, Double.class),
-	Boolean(11, Boolean.class),
-	String(12, String.class),
-	DateTime(13, Date.class),
-	Text(14, String.class),
+	Int8(1, Byte.class, byte[].class),
+	Int16(2, Short.class, short[].class),
+	Int32(3, Integer.class, int[].class),
+	Int64(4, Long.class, long[].class),
+	UInt8(5, Short.class, short[].class),
+	UInt16(6, Integer.class, int[].class),
+	UInt32(7, Long.class, long[].class),
+	UInt64(8, BigInteger.class, long[].class),
+	Float(9, Float.class, float[].class),
+	Double(10, Double.class, double[].class),
+	Boolean(11, Boolean.class, boolean[].class),
+	String(12, String.class, String[].class),
+	DateTime(13, Date.class, long[].class),
+	Text(14, String.class, String[].class),
 
 	// Unknown
-	Unknown(0, Object.class);
+	Unknown(0, Object.class, null);
 
 	private Class<?> clazz = null;
+	private Class<?> columnClazz = null;
 	private int intValue = 0;
 
-	private DataSetDataType(int intValue, Class<?> clazz) {
+	private DataSetDataType(int intValue, Class<?> clazz, Class<?> columnClazz) {
 		this.intValue = intValue;
 		this.clazz = clazz;
+		this.columnClazz = columnClazz;
 	}
 
 	public void checkType(Object value) throws SparkplugInvalidTypeException {
@@ -114,4 +120,25 @@ public enum DataSetDataType {
 	public Class<?> getClazz() {
 		return clazz;
 	}
+
+	/**
+	 * Returns the class of the array holding a column of this DataType, or null if there is none
+	 * 
+	 * @return the column array class for this DataType, or null
+	 */
+	public Class<?> getColumnClazz() {
+		return columnClazz;
+	}
+
+	/**
+	 * Checks the array holding a whole column of this DataType
+	 * 
+	 * @param column the column array
+	 * @throws SparkplugInvalidTypeException if the column is not an instance of {@link #getColumnClazz()}
+	 */
+	public void checkColumnType(Object column) throws SparkplugInvalidTypeException {
+		if (column == null || columnClazz == null || !columnClazz.isInstance(column)) {
+			throw new SparkplugInvalidTypeException(column == null ? Object.class : column.getClass());
+		}
+	}
 }
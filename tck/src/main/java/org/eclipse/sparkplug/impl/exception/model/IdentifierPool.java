@@ -0,0 +1,158 @@
+/********************************************************************************
+ * Copyright (c) 2014-2022 Cirrus Link Solutions and others
+ *
+ * This program and the accompanying materials are made available under the
+ * terms of the Eclipse Public License 2.0 which is available at
+ * http://www.eclipse.org/legal/epl-2.0.
+ *
+ * SPDX-License-Identifier: EPL-2.0
+ *
+ * Contributors:
+ *   Cirrus Link Solutions - initial implementation
+ ********************************************************************************/
+
+package org.eclipse.sparkplug.impl.exception.model;
+
+import java.util.Locale;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * A pool of Sparkplug identifiers, such as group IDs, Edge Node IDs, device IDs and metric names, in which each
+ * identifier is held once along with its lower case form and hash code.
+ * <p>
+ * Identifiers decoded from topics and payloads are new strings every time. Long-lived state keyed by them, such as
+ * the births of a large fleet, would otherwise hold a separate copy of the same identifier for every edge node, and
+ * the lower case form used by the case sensitivity checks would be computed again for every birth.
+ * <p>
+ * Only identifiers which are kept, such as those of the births the TCK Monitor records, should be added to the pool.
+ * Identifiers taken from every topic would let any client fill it with values which never recur, and would cost a
+ * lookup on every message. The pool is bounded: once it holds its maximum number of identifiers, new identifiers are
+ * returned as they are and their lower case form is computed on each call. Identifiers are only removed when the
+ * pool is {@link #clear() cleared}. The pool is thread safe.
+ */
+public final class IdentifierPool {
+
+	/**
+	 * The maximum number of identifiers held by the {@link #getShared() shared pool}.
+	 */
+	public static final int DEFAULT_MAXIMUM_SIZE = 1 << 20;
+
+	private static final IdentifierPool SHARED = new IdentifierPool(DEFAULT_MAXIMUM_SIZE);
+
+	/**
+	 * An identifier, with its lower case form and hash code.
+	 */
+	public static final class Identifier {
+
+		private final String name;
+		private final String lowerCase;
+		private final int hash;
+
+		private Identifier(String name) {
+			this.name = name;
+			String lower = name.toLowerCase(Locale.ROOT);
+			this.lowerCase = lower.equals(name) ? name : lower;
+			this.hash = name.hashCode();
+		}
+
+		public String getName() {
+			return name;
+		}
+
+		public String getLowerCase() {
+			return lowerCase;
+		}
+
+		@Override
+		public int hashCode() {
+			return hash;
+		}
+
+		@Override
+		public boolean equals(Object object) {
+			return this == object || (object instanceof Identifier && name.equals(((Identifier) object).name));
+		}
+
+		@Override
+		public String toString() {
+			return name;
+		}
+	}
+
+	private final ConcurrentHashMap<String, Identifier> identifiers = new ConcurrentHashMap<>();
+	private final int maximumSize;
+
+	/**
+	 * @param maximumSize the maximum number of identifiers to hold
+	 */
+	public IdentifierPool(int maximumSize) {
+		this.maximumSize = maximumSize;
+	}
+
+	/**
+	 * Returns the pool shared by the model classes and the TCK Monitor.
+	 *
+	 * @return the shared {@link IdentifierPool}
+	 */
+	public static IdentifierPool getShared() {
+		return SHARED;
+	}
+
+	/**
+	 * Returns the pooled identifier equal to a name, adding it to the pool if it is not full.
+	 *
+	 * @param name the identifier
+	 * @return the pooled {@link Identifier}
+	 */
+	public Identifier get(String name) {
+		Identifier identifier = identifiers.get(name);
+		if (identifier != null) {
+			return identifier;
+		}
+		identifier = new Identifier(name);
+		if (identifiers.size() >= maximumSize) {
+			return identifier;
+		}
+		Identifier raced = identifiers.putIfAbsent(name, identifier);
+		return raced == null ? identifier : raced;
+	}
+
+	/**
+	 * Returns the pooled instance of a string.
+	 *
+	 * @param name the identifier, or null
+	 * @return the pooled string equal to the name, or null if the name is null
+	 */
+	public String intern(String name) {
+		return name == null ? null : get(name).getName();
+	}
+
+	/**
+	 * Returns the lower case form of an identifier, as used for the case sensitivity checks.
+	 *
+	 * @param name the identifier
+	 * @return the lower case form, in the root locale
+	 */
+	public String toLowerCase(String name) {
+		return get(name).getLowerCase();
+	}
+
+	/**
+	 * Removes all the identifiers from the pool. Strings already handed out stay valid, they are just no longer shared
+	 * with identifiers added later.
+	 */
+	public void clear() {
+		identifiers.clear();
+	}
+
+	/**
+	 * @return the number of identifiers in the pool
+	 */
+	public int size() {
+		return identifiers.size();
+	}
+
+	public int getMaximumSize() {
+		return maximumSize;
+	}
+}
@@ -77,12 +77,73 @@ public enum MessageType {
 	NRECORD;
 
 	public static MessageType parseMessageType(String type) throws SparkplugParsingException {
-		for (MessageType messageType : MessageType.values()) {
-			if (messageType.name().equals(type)) {
-				return messageType;
+		MessageType messageType = type == null ? null : lookup(type, 0, type.length());
+		if (messageType == null) {
+			throw new SparkplugParsingException("Invalid message type: " + type);
+		}
+		return messageType;
+	}
+
+	/**
+	 * Looks up the message type whose name is the given region of a character sequence, without allocating. The
+	 * candidate is selected on the length and the first character and then compared once.
+	 * 
+	 * @param chars the characters holding the message type, typically a whole topic
+	 * @param start the index of the first character of the message type
+	 * @param end the index after the last character of the message type
+	 * @return the message type, or null if the region is not the name of a message type
+	 */
+	public static MessageType lookup(CharSequence chars, int start, int end) {
+		if (start >= end) {
+			return null;
+		}
+		MessageType candidate;
+		switch (end - start) {
+			case 4:
+				candidate = select(chars.charAt(start), NCMD, DCMD);
+				break;
+			case 5:
+				switch (chars.charAt(start)) {
+					case 'N':
+						candidate = NDATA;
+						break;
+					case 'D':
+						candidate = DDATA;
+						break;
+					case 'S':
+						candidate = STATE;
+						break;
+					default:
+						return null;
+				}
+				break;
+			case 6:
+				if (chars.charAt(start + 1) == 'B') {
+					candidate = select(chars.charAt(start), NBIRTH, DBIRTH);
+				} else {
+					candidate = select(chars.charAt(start), NDEATH, DDEATH);
+				}
+				break;
+			case 7:
+				candidate = select(chars.charAt(start), NRECORD, DRECORD);
+				break;
+			default:
+				return null;
+		}
+		if (candidate == null) {
+			return null;
+		}
+		String name = candidate.name();
+		for (int i = 1; i < name.length(); i++) {
+			if (chars.charAt(start + i) != name.charAt(i)) {
+				return null;
 			}
 		}
-		throw new SparkplugParsingException("Invalid message type: " + type);
+		return candidate;
+	}
+
+	private static MessageType select(char first, MessageType node, MessageType device) {
+		return first == 'N' ? node : first == 'D' ? device : null;
 	}
 
 	public boolean isDeath() {
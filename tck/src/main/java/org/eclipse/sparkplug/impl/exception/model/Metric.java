@@ -200,6 +200,22 @@ public class Metric {
 		this.isTransient = isTransient;
 	}
 
+	/**
+	 * Clears every field so that the metric can be reused.
+	 */
+	void reset() {
+		name = null;
+		alias = null;
+		timestamp = null;
+		dataType = null;
+		isHistorical = null;
+		isTransient = null;
+		metaData = null;
+		properties = null;
+		value = null;
+		isNull = null;
+	}
+
 	@JsonIgnore
 	public Boolean isNull() {
 		return isNull == null ? false : isNull;
@@ -230,7 +246,9 @@ public class Metric {
 		builder.append(", properties=");
 		builder.append(properties);
 		builder.append(", value=");
-		if (dataType == MetricDataType.BooleanArray) {
+		if (dataType != null && dataType.isPrimitiveArray(value)) {
+			builder.append(primitiveArrayToString(value));
+		} else if (dataType == MetricDataType.BooleanArray) {
 			builder.append(Arrays.toString((Boolean[]) value));
 		} else if (dataType == MetricDataType.DateTimeArray) {
 			builder.append(Arrays.toString((Date[]) value));
@@ -265,6 +283,22 @@ public class Metric {
 		return builder.toString();
 	}
 
+	private static String primitiveArrayToString(Object value) {
+		if (value instanceof byte[]) {
+			return Arrays.toString((byte[]) value);
+		} else if (value instanceof short[]) {
+			return Arrays.toString((short[]) value);
+		} else if (value instanceof int[]) {
+			return Arrays.toString((int[]) value);
+		} else if (value instanceof long[]) {
+			return Arrays.toString((long[]) value);
+		} else if (value instanceof float[]) {
+			return Arrays.toString((float[]) value);
+		} else {
+			return Arrays.toString((double[]) value);
+		}
+	}
+
 	/**
 	 * A builder for creating a {@link Metric} instance.
 	 */
@@ -308,9 +342,10 @@ public class Metric {
 					: null;
 			switch (dataType) {
 				case DataSet:
-					this.value = metric.getValue() != null
+					// a columnar data set is read-only, so it is shared rather than copied
+					this.value = metric.getValue() instanceof DataSet
 							? new DataSetBuilder((DataSet) metric.getValue()).createDataSet()
-							: null;
+							: metric.getValue();
 					break;
 				case Template:
 					this.value = metric.getValue() != null
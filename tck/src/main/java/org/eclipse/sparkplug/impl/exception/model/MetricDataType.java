@@ -23,6 +23,11 @@ import org.slf4j.LoggerFactory;
 
 /**
  * An enumeration of data types associated with the value of a {@link Metric}
+ * <p>
+ * The numeric array types also accept a primitive array of the same element width as on the wire, which is encoded
+ * without boxing each element: byte[] for Int8Array and UInt8Array, short[] for Int16Array and UInt16Array, int[] for
+ * Int32Array and UInt32Array, long[] for Int64Array and UInt64Array, float[] for FloatArray and double[] for
+ * DoubleArray. The elements of the unsigned types hold the unsigned value in the bits of the signed Java type.
  */
 public enum MetricDataType {
 
@@ -52,16 +57,16 @@ public enum MetricDataType {
 	// PropertyValue Types (20 and 21) are NOT metric datatypes
 
 	// Array Types
-	Int8Array(22, Byte[].class),
-	Int16Array(23, Short[].class),
-	Int32Array(24, Integer[].class),
-	Int64Array(25, Long[].class),
-	UInt8Array(26, Short[].class),
-	UInt16Array(27, Integer[].class),
-	UInt32Array(28, Long[].class),
-	UInt64Array(29, BigInteger[].class),
-	FloatArray(30, Float[].class),
-	DoubleArray(31, Double[].class),
+	Int8Array(22, Byte[].class, byte[].class),
+	Int16Array(23, Short[].class, short[].class),
+	Int32Array(24, Integer[].class, int[].class),
+	Int64Array(25, Long[].class, long[].class),
+	UInt8Array(26, Short[].class, byte[].class),
+	UInt16Array(27, Integer[].class, short[].class),
+	UInt32Array(28, Long[].class, int[].class),
+	UInt64Array(29, BigInteger[].class, long[].class),
+	FloatArray(30, Float[].class, float[].class),
+	DoubleArray(31, Double[].class, double[].class),
 	BooleanArray(32, Boolean[].class),
 	StringArray(33, String[].class),
 	DateTimeArray(34, Date[].class),
@@ -72,15 +77,22 @@ public enum MetricDataType {
 	private static final Logger logger = LoggerFactory.getLogger(MetricDataType.class.getName());
 
 	private Class<?> clazz = null;
+	private Class<?> primitiveArrayClazz = null;
 	private int intValue = 0;
 
 	private MetricDataType(int intValue, Class<?> clazz) {
+		this(intValue, clazz, null);
+	}
+
+	private MetricDataType(int intValue, Class<?> clazz, Class<?> primitiveArrayClazz) {
 		this.intValue = intValue;
 		this.clazz = clazz;
+		this.primitiveArrayClazz = primitiveArrayClazz;
 	}
 
 	public void checkType(Object value) throws SparkplugInvalidTypeException {
-		if (value != null && !clazz.isAssignableFrom(value.getClass())) {
+		if (value != null && !clazz.isAssignableFrom(value.getClass()) && !isPrimitiveArray(value)
+				&& !(this == DataSet && value instanceof ColumnarDataSet)) {
 			logger.warn(
 					"Failed type check - " + clazz + " != " + ((value != null) ? value.getClass().toString() : "null"));
 			throw new SparkplugInvalidTypeException(value.getClass());
@@ -181,4 +193,23 @@ public enum MetricDataType {
 	public Class<?> getClazz() {
 		return clazz;
 	}
+
+	/**
+	 * Returns the primitive array class also accepted for this DataType, or null if there is none
+	 * 
+	 * @return the primitive array class for this DataType, or null
+	 */
+	public Class<?> getPrimitiveArrayClazz() {
+		return primitiveArrayClazz;
+	}
+
+	/**
+	 * Returns true if the value is the primitive array form of this DataType
+	 * 
+	 * @param value a metric value
+	 * @return true if the value is an instance of {@link #getPrimitiveArrayClazz()}
+	 */
+	public boolean isPrimitiveArray(Object value) {
+		return primitiveArrayClazz != null && primitiveArrayClazz.isInstance(value);
+	}
 }
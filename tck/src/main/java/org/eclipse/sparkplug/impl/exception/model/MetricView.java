@@ -0,0 +1,402 @@
+/********************************************************************************
+ * Copyright (c) 2014-2022 Cirrus Link Solutions and others
+ *
+ * This program and the accompanying materials are made available under the
+ * terms of the Eclipse Public License 2.0 which is available at
+ * http://www.eclipse.org/legal/epl-2.0.
+ *
+ * SPDX-License-Identifier: EPL-2.0
+ *
+ * Contributors:
+ *   Cirrus Link Solutions - initial implementation
+ ********************************************************************************/
+
+package org.eclipse.sparkplug.impl.exception.model;
+
+import java.io.IOException;
+
+import org.eclipse.sparkplug.tck.test.common.SparkplugBProto.Payload;
+import org.eclipse.sparkplug.tck.test.common.SparkplugBProto.Payload.Metric;
+
+import com.google.protobuf.ByteString;
+import com.google.protobuf.CodedInputStream;
+import com.google.protobuf.WireFormat;
+
+/**
+ * A read-only view of an encoded metric of a {@link SparkplugBPayloadView}.
+ * <p>
+ * The fields are read on the first call of any getter, in a single pass which decodes the scalar fields and records
+ * the offset and length of the others. The name and string value are decoded on their first access. The metadata,
+ * properties, data set and template are parsed from their recorded offsets on their first access, and the parsed
+ * message is kept.
+ */
+public class MetricView {
+
+	private static final int VARINT = WireFormat.WIRETYPE_VARINT;
+	private static final int DELIMITED = WireFormat.WIRETYPE_LENGTH_DELIMITED;
+
+	private static final int NAME = Metric.NAME_FIELD_NUMBER << 3 | DELIMITED;
+	private static final int ALIAS = Metric.ALIAS_FIELD_NUMBER << 3 | VARINT;
+	private static final int TIMESTAMP = Metric.TIMESTAMP_FIELD_NUMBER << 3 | VARINT;
+	private static final int DATATYPE = Metric.DATATYPE_FIELD_NUMBER << 3 | VARINT;
+	private static final int IS_HISTORICAL = Metric.IS_HISTORICAL_FIELD_NUMBER << 3 | VARINT;
+	private static final int IS_TRANSIENT = Metric.IS_TRANSIENT_FIELD_NUMBER << 3 | VARINT;
+	private static final int IS_NULL = Metric.IS_NULL_FIELD_NUMBER << 3 | VARINT;
+	private static final int METADATA = Metric.METADATA_FIELD_NUMBER << 3 | DELIMITED;
+	private static final int PROPERTIES = Metric.PROPERTIES_FIELD_NUMBER << 3 | DELIMITED;
+	private static final int INT_VALUE = Metric.INT_VALUE_FIELD_NUMBER << 3 | VARINT;
+	private static final int LONG_VALUE = Metric.LONG_VALUE_FIELD_NUMBER << 3 | VARINT;
+	private static final int FLOAT_VALUE = Metric.FLOAT_VALUE_FIELD_NUMBER << 3 | WireFormat.WIRETYPE_FIXED32;
+	private static final int DOUBLE_VALUE = Metric.DOUBLE_VALUE_FIELD_NUMBER << 3 | WireFormat.WIRETYPE_FIXED64;
+	private static final int BOOLEAN_VALUE = Metric.BOOLEAN_VALUE_FIELD_NUMBER << 3 | VARINT;
+	private static final int STRING_VALUE = Metric.STRING_VALUE_FIELD_NUMBER << 3 | DELIMITED;
+	private static final int BYTES_VALUE = Metric.BYTES_VALUE_FIELD_NUMBER << 3 | DELIMITED;
+	private static final int DATASET_VALUE = Metric.DATASET_VALUE_FIELD_NUMBER << 3 | DELIMITED;
+	private static final int TEMPLATE_VALUE = Metric.TEMPLATE_VALUE_FIELD_NUMBER << 3 | DELIMITED;
+
+	private final ByteString bytes;
+	private boolean scanned;
+
+	private int nameOffset = -1;
+	private int nameLength;
+	private String name;
+	private Long alias;
+	private Long timestamp;
+	private Integer datatype;
+	private boolean historical;
+	private boolean transientValue;
+	private boolean isNull;
+	private int metaDataOffset = -1;
+	private int metaDataLength;
+	private Payload.MetaData metaData;
+	private int propertiesOffset = -1;
+	private int propertiesLength;
+	private Payload.PropertySet properties;
+
+	// The value is a oneof, so only the last value field read is kept
+	private Metric.ValueCase valueCase = Metric.ValueCase.VALUE_NOT_SET;
+	private long scalarValue;
+	private int valueOffset;
+	private int valueLength;
+	private Object parsedValue;
+
+	MetricView(ByteString bytes) {
+		this.bytes = bytes;
+	}
+
+	private void scan() {
+		if (scanned) {
+			return;
+		}
+		scanned = true;
+		try {
+			CodedInputStream input = bytes.newCodedInput();
+			int tag;
+			while ((tag = input.readTag()) != 0) {
+				switch (tag) {
+					case NAME:
+						nameLength = input.readRawVarint32();
+						nameOffset = input.getTotalBytesRead();
+						input.skipRawBytes(nameLength);
+						break;
+					case ALIAS:
+						alias = input.readUInt64();
+						break;
+					case TIMESTAMP:
+						timestamp = input.readUInt64();
+						break;
+					case DATATYPE:
+						datatype = input.readUInt32();
+						break;
+					case IS_HISTORICAL:
+						historical = input.readBool();
+						break;
+					case IS_TRANSIENT:
+						transientValue = input.readBool();
+						break;
+					case IS_NULL:
+						isNull = input.readBool();
+						break;
+					case METADATA:
+						metaDataLength = input.readRawVarint32();
+						metaDataOffset = input.getTotalBytesRead();
+						input.skipRawBytes(metaDataLength);
+						break;
+					case PROPERTIES:
+						propertiesLength = input.readRawVarint32();
+						propertiesOffset = input.getTotalBytesRead();
+						input.skipRawBytes(propertiesLength);
+						break;
+					case INT_VALUE:
+						setScalar(Metric.ValueCase.INT_VALUE, Integer.toUnsignedLong(input.readUInt32()));
+						break;
+					case LONG_VALUE:
+						setScalar(Metric.ValueCase.LONG_VALUE, input.readUInt64());
+						break;
+					case FLOAT_VALUE:
+						setScalar(Metric.ValueCase.FLOAT_VALUE, input.readRawLittleEndian32());
+						break;
+					case DOUBLE_VALUE:
+						setScalar(Metric.ValueCase.DOUBLE_VALUE, input.readRawLittleEndian64());
+						break;
+					case BOOLEAN_VALUE:
+						setScalar(Metric.ValueCase.BOOLEAN_VALUE, input.readBool() ? 1 : 0);
+						break;
+					case STRING_VALUE:
+						setDelimited(Metric.ValueCase.STRING_VALUE, input);
+						break;
+					case BYTES_VALUE:
+						setDelimited(Metric.ValueCase.BYTES_VALUE, input);
+						break;
+					case DATASET_VALUE:
+						setDelimited(Metric.ValueCase.DATASET_VALUE, input);
+						break;
+					case TEMPLATE_VALUE:
+						setDelimited(Metric.ValueCase.TEMPLATE_VALUE, input);
+						break;
+					default:
+						if (WireFormat.getTagFieldNumber(tag) == Metric.EXTENSION_VALUE_FIELD_NUMBER) {
+							valueCase = Metric.ValueCase.EXTENSION_VALUE;
+						}
+						if (!input.skipField(tag)) {
+							return;
+						}
+				}
+			}
+		} catch (IOException e) {
+			// The view was created from a payload whose top level was valid, so this is a malformed metric
+			throw new IllegalStateException("Invalid metric encoding", e);
+		}
+	}
+
+	private void setScalar(Metric.ValueCase valueCase, long value) {
+		this.valueCase = valueCase;
+		this.scalarValue = value;
+		this.parsedValue = null;
+	}
+
+	private void setDelimited(Metric.ValueCase valueCase, CodedInputStream input) throws IOException {
+		this.valueCase = valueCase;
+		this.valueLength = input.readRawVarint32();
+		this.valueOffset = input.getTotalBytesRead();
+		this.parsedValue = null;
+		input.skipRawBytes(valueLength);
+	}
+
+	private ByteString range(int offset, int length) {
+		return bytes.substring(offset, offset + length);
+	}
+
+	public boolean hasName() {
+		scan();
+		return nameOffset >= 0;
+	}
+
+	/**
+	 * @return the metric name, or null if it is not set
+	 */
+	public String getName() {
+		scan();
+		if (name == null && nameOffset >= 0) {
+			name = range(nameOffset, nameLength).toStringUtf8();
+		}
+		return name;
+	}
+
+	public boolean hasAlias() {
+		scan();
+		return alias != null;
+	}
+
+	/**
+	 * @return the metric alias, or null if it is not set
+	 */
+	public Long getAlias() {
+		scan();
+		return alias;
+	}
+
+	public boolean hasTimestamp() {
+		scan();
+		return timestamp != null;
+	}
+
+	/**
+	 * @return the metric timestamp, or null if it is not set
+	 */
+	public Long getTimestamp() {
+		scan();
+		return timestamp;
+	}
+
+	public boolean hasDatatype() {
+		scan();
+		return datatype != null;
+	}
+
+	/**
+	 * @return the metric datatype, or null if it is not set
+	 */
+	public Integer getDatatype() {
+		scan();
+		return datatype;
+	}
+
+	public boolean isHistorical() {
+		scan();
+		return historical;
+	}
+
+	public boolean isTransient() {
+		scan();
+		return transientValue;
+	}
+
+	public boolean isNull() {
+		scan();
+		return isNull;
+	}
+
+	public Metric.ValueCase getValueCase() {
+		scan();
+		return valueCase;
+	}
+
+	public int getIntValue() {
+		return getValueCase() == Metric.ValueCase.INT_VALUE ? (int) scalarValue : 0;
+	}
+
+	public long getLongValue() {
+		return getValueCase() == Metric.ValueCase.LONG_VALUE ? scalarValue : 0L;
+	}
+
+	public float getFloatValue() {
+		return getValueCase() == Metric.ValueCase.FLOAT_VALUE ? Float.intBitsToFloat((int) scalarValue) : 0f;
+	}
+
+	public double getDoubleValue() {
+		return getValueCase() == Metric.ValueCase.DOUBLE_VALUE ? Double.longBitsToDouble(scalarValue) : 0d;
+	}
+
+	public boolean getBooleanValue() {
+		return getValueCase() == Metric.ValueCase.BOOLEAN_VALUE && scalarValue != 0;
+	}
+
+	public String getStringValue() {
+		if (getValueCase() != Metric.ValueCase.STRING_VALUE) {
+			return "";
+		}
+		if (parsedValue == null) {
+			parsedValue = range(valueOffset, valueLength).toStringUtf8();
+		}
+		return (String) parsedValue;
+	}
+
+	/**
+	 * @return the bytes value, aliasing the encoded payload
+	 */
+	public ByteString getBytesValue() {
+		return getValueCase() == Metric.ValueCase.BYTES_VALUE ? range(valueOffset, valueLength) : ByteString.EMPTY;
+	}
+
+	/**
+	 * Returns the data set value, which is parsed on the first call.
+	 *
+	 * @return the data set, or null if the value is not a data set
+	 * @throws IOException if the data set is not a valid protobuf encoding
+	 */
+	public Payload.DataSet getDataSetValue() throws IOException {
+		if (getValueCase() != Metric.ValueCase.DATASET_VALUE) {
+			return null;
+		}
+		if (parsedValue == null) {
+			parsedValue = Payload.DataSet.parseFrom(aliasing(valueOffset, valueLength));
+		}
+		return (Payload.DataSet) parsedValue;
+	}
+
+	/**
+	 * Returns the template value, with its metrics and parameters, which is parsed on the first call.
+	 *
+	 * @return the template, or null if the value is not a template
+	 * @throws IOException if the template is not a valid protobuf encoding
+	 */
+	public Payload.Template getTemplateValue() throws IOException {
+		if (getValueCase() != Metric.ValueCase.TEMPLATE_VALUE) {
+			return null;
+		}
+		if (parsedValue == null) {
+			parsedValue = Payload.Template.parseFrom(aliasing(valueOffset, valueLength));
+		}
+		return (Payload.Template) parsedValue;
+	}
+
+	public boolean hasMetaData() {
+		scan();
+		return metaDataOffset >= 0;
+	}
+
+	/**
+	 * Returns the metadata, which is parsed on the first call.
+	 *
+	 * @return the metadata, or null if it is not set
+	 * @throws IOException if the metadata is not a valid protobuf encoding
+	 */
+	public Payload.MetaData getMetaData() throws IOException {
+		if (metaData == null && hasMetaData()) {
+			metaData = Payload.MetaData.parseFrom(aliasing(metaDataOffset, metaDataLength));
+		}
+		return metaData;
+	}
+
+	public boolean hasProperties() {
+		scan();
+		return propertiesOffset >= 0;
+	}
+
+	/**
+	 * Returns the properties, which are parsed on the first call.
+	 *
+	 * @return the properties, or null if they are not set
+	 * @throws IOException if the properties are not a valid protobuf encoding
+	 */
+	public Payload.PropertySet getProperties() throws IOException {
+		if (properties == null && hasProperties()) {
+			properties = Payload.PropertySet.parseFrom(aliasing(propertiesOffset, propertiesLength));
+		}
+		return properties;
+	}
+
+	/**
+	 * Parses the whole metric. Its bytes fields are copied, so it can be kept after the view is dropped.
+	 *
+	 * @return the parsed metric
+	 * @throws IOException if the metric is not a valid protobuf encoding
+	 */
+	public Metric toMetric() throws IOException {
+		return Metric.parseFrom(bytes);
+	}
+
+	private CodedInputStream aliasing(int offset, int length) {
+		CodedInputStream input = range(offset, length).newCodedInput();
+		input.enableAliasing(true);
+		return input;
+	}
+
+	@Override
+	public String toString() {
+		StringBuilder builder = new StringBuilder();
+		builder.append("MetricView [name=");
+		builder.append(getName());
+		builder.append(", alias=");
+		builder.append(alias);
+		builder.append(", timestamp=");
+		builder.append(timestamp);
+		builder.append(", datatype=");
+		builder.append(datatype);
+		builder.append(", valueCase=");
+		builder.append(valueCase);
+		builder.append("]");
+		return builder.toString();
+	}
+}
@@ -0,0 +1,188 @@
+/********************************************************************************
+ * Copyright (c) 2014-2022 Cirrus Link Solutions and others
+ *
+ * This program and the accompanying materials are made available under the
+ * terms of the Eclipse Public License 2.0 which is available at
+ * http://www.eclipse.org/legal/epl-2.0.
+ *
+ * SPDX-License-Identifier: EPL-2.0
+ *
+ * Contributors:
+ *   Cirrus Link Solutions - initial implementation
+ ********************************************************************************/
+
+package org.eclipse.sparkplug.impl.exception.model;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.List;
+
+import org.eclipse.sparkplug.impl.exception.SparkplugInvalidTypeException;
+
+/**
+ * A pool of {@link SparkplugBPayload} and {@link Metric} objects, for publishers which create payloads at a high rate,
+ * such as load generators, so that publishing does not allocate a new payload, metric and timestamp each time.
+ * <p>
+ * A payload or metric acquired from the pool is used as usual, and released once it has been encoded. Releasing a
+ * payload also releases the pooled metrics it holds. The timestamp of a pooled payload or metric is a {@link Date}
+ * owned by the pool, which is set again on each acquire rather than replaced, so it must not be kept after release.
+ * Objects which were not acquired from this pool are ignored on release, so a pooled payload can hold metrics created
+ * elsewhere.
+ * <p>
+ * At most a fixed number of free payloads and of free metrics are kept. A pool is not thread safe: each publishing
+ * thread should have its own.
+ */
+public class PayloadPool {
+
+	/**
+	 * The default maximum number of free payloads, and of free metrics, kept by a pool.
+	 */
+	public static final int DEFAULT_MAXIMUM_FREE = 1024;
+
+	// Sparkplug sequence numbers run from 0 to 255, which Long.valueOf only caches up to 127
+	private static final Long[] SEQUENCE_NUMBERS = new Long[256];
+
+	static {
+		for (int i = 0; i < SEQUENCE_NUMBERS.length; i++) {
+			SEQUENCE_NUMBERS[i] = Long.valueOf(i);
+		}
+	}
+
+	private static final class PooledPayload extends SparkplugBPayload {
+		private final PayloadPool pool;
+		private final Date date = new Date();
+		private boolean free;
+
+		private PooledPayload(PayloadPool pool) {
+			super(null, new ArrayList<Metric>());
+			this.pool = pool;
+		}
+	}
+
+	private static final class PooledMetric extends Metric {
+		private final PayloadPool pool;
+		private final Date date = new Date();
+		private boolean free;
+
+		private PooledMetric(PayloadPool pool) {
+			this.pool = pool;
+		}
+	}
+
+	private final ArrayDeque<PooledPayload> payloads = new ArrayDeque<>();
+	private final ArrayDeque<PooledMetric> metrics = new ArrayDeque<>();
+	private final int maximumFree;
+
+	public PayloadPool() {
+		this(DEFAULT_MAXIMUM_FREE);
+	}
+
+	/**
+	 * @param maximumFree the maximum number of free payloads, and of free metrics, to keep
+	 */
+	public PayloadPool(int maximumFree) {
+		this.maximumFree = maximumFree;
+	}
+
+	/**
+	 * Returns an empty payload.
+	 *
+	 * @param timestamp the payload timestamp, in milliseconds since the epoch
+	 * @param seq the sequence number, or null
+	 * @return a payload with no metrics
+	 */
+	public SparkplugBPayload acquirePayload(long timestamp, Long seq) {
+		PooledPayload payload = payloads.poll();
+		if (payload == null) {
+			payload = new PooledPayload(this);
+		}
+		payload.free = false;
+		payload.date.setTime(timestamp);
+		payload.setTimestamp(payload.date);
+		payload.setSeq(seq);
+		return payload;
+	}
+
+	/**
+	 * Returns an empty payload with a Sparkplug sequence number, which is not boxed again for each payload.
+	 *
+	 * @param timestamp the payload timestamp, in milliseconds since the epoch
+	 * @param seq the sequence number, from 0 to 255
+	 * @return a payload with no metrics
+	 */
+	public SparkplugBPayload acquirePayload(long timestamp, long seq) {
+		return acquirePayload(timestamp, (seq >= 0 && seq < SEQUENCE_NUMBERS.length)
+				? SEQUENCE_NUMBERS[(int) seq]
+				: Long.valueOf(seq));
+	}
+
+	/**
+	 * Returns a metric with a name, value and timestamp, and no other fields set.
+	 *
+	 * @param name the metric name
+	 * @param dataType the metric datatype
+	 * @param value the value, of the class expected for the datatype
+	 * @param timestamp the metric timestamp, in milliseconds since the epoch
+	 * @return the metric
+	 * @throws SparkplugInvalidTypeException if the value is not of the class expected for the datatype
+	 */
+	public Metric acquireMetric(String name, MetricDataType dataType, Object value, long timestamp)
+			throws SparkplugInvalidTypeException {
+		dataType.checkType(value);
+		PooledMetric metric = metrics.poll();
+		if (metric == null) {
+			metric = new PooledMetric(this);
+		}
+		metric.free = false;
+		metric.setName(name);
+		metric.date.setTime(timestamp);
+		metric.setTimestamp(metric.date);
+		metric.setDataType(dataType);
+		metric.setValue(value);
+		return metric;
+	}
+
+	/**
+	 * Returns a payload and the pooled metrics it holds to the pool. Nothing is done for a payload which was not
+	 * acquired from this pool, other than releasing its pooled metrics.
+	 *
+	 * @param payload the payload, which must not be used after release
+	 */
+	public void release(SparkplugBPayload payload) {
+		List<Metric> payloadMetrics = payload.getMetrics();
+		if (payloadMetrics != null) {
+			for (int i = 0; i < payloadMetrics.size(); i++) {
+				release(payloadMetrics.get(i));
+			}
+		}
+		if (payload instanceof PooledPayload) {
+			PooledPayload pooled = (PooledPayload) payload;
+			if (pooled.pool == this && !pooled.free) {
+				pooled.reset();
+				pooled.free = true;
+				if (payloads.size() < maximumFree) {
+					payloads.push(pooled);
+				}
+			}
+		}
+	}
+
+	/**
+	 * Returns a metric to the pool. Nothing is done for a metric which was not acquired from this pool.
+	 *
+	 * @param metric the metric, which must not be used after release
+	 */
+	public void release(Metric metric) {
+		if (metric instanceof PooledMetric) {
+			PooledMetric pooled = (PooledMetric) metric;
+			if (pooled.pool == this && !pooled.free) {
+				pooled.reset();
+				pooled.free = true;
+				if (metrics.size() < maximumFree) {
+					metrics.push(pooled);
+				}
+			}
+		}
+	}
+}
@@ -119,6 +119,21 @@ public class SparkplugBPayload {
 		this.body = body;
 	}
 
+	/**
+	 * Clears every field so that the payload can be reused, keeping the list of metrics, which is emptied.
+	 */
+	void reset() {
+		timestamp = null;
+		if (metrics == null) {
+			metrics = new ArrayList<Metric>();
+		} else {
+			metrics.clear();
+		}
+		seq = null;
+		uuid = null;
+		body = null;
+	}
+
 	@Override
 	public String toString() {
 		StringBuilder builder = new StringBuilder();
@@ -138,6 +153,11 @@ public class SparkplugBPayload {
 
 	/**
 	 * A builder for creating a {@link SparkplugBPayload} instance.
+	 * <p>
+	 * A builder can be used again for another payload after {@link #reset()}. A payload created by
+	 * {@link #createPayload()} takes the builder's list of metrics, so the next reset needs a new one. Filling in a
+	 * reused payload, such as one from a {@link PayloadPool}, with {@link #createPayload(SparkplugBPayload)} leaves
+	 * the list with the builder, so reusing both allocates nothing.
 	 */
 	public static class SparkplugBPayloadBuilder {
 
@@ -147,6 +167,9 @@ public class SparkplugBPayload {
 		private String uuid;
 		private byte[] body;
 
+		// true once the metrics list has been given to a payload, so it can't be cleared on reset
+		private boolean metricsShared = false;
+
 		public SparkplugBPayloadBuilder(Long sequenceNumber) {
 			this.seq = sequenceNumber;
 			metrics = new ArrayList<Metric>();
@@ -187,7 +210,53 @@ public class SparkplugBPayload {
 		}
 
 		public SparkplugBPayload createPayload() {
+			metricsShared = true;
 			return new SparkplugBPayload(timestamp, metrics, seq, uuid, body);
 		}
+
+		/**
+		 * Sets the fields of an existing payload to those of this builder. The metrics are copied into the payload's
+		 * own list, which is emptied first.
+		 *
+		 * @param payload the payload to fill in
+		 * @return the payload
+		 */
+		public SparkplugBPayload createPayload(SparkplugBPayload payload) {
+			payload.setTimestamp(timestamp);
+			payload.setSeq(seq);
+			payload.setUuid(uuid);
+			payload.setBody(body);
+			List<Metric> payloadMetrics = payload.getMetrics();
+			if (payloadMetrics == null) {
+				payload.setMetrics(new ArrayList<Metric>(metrics));
+			} else {
+				payloadMetrics.clear();
+				// by index, as addAll would copy the metrics to an array first
+				for (int i = 0; i < metrics.size(); i++) {
+					payloadMetrics.add(metrics.get(i));
+				}
+			}
+			return payload;
+		}
+
+		/**
+		 * Clears every field, so that the builder can be used for another payload. The list of metrics is reused
+		 * unless it is held by a payload already created.
+		 * 
+		 * @return this builder
+		 */
+		public SparkplugBPayloadBuilder reset() {
+			timestamp = null;
+			seq = null;
+			uuid = null;
+			body = null;
+			if (metricsShared) {
+				metrics = new ArrayList<Metric>();
+				metricsShared = false;
+			} else {
+				metrics.clear();
+			}
+			return this;
+		}
 	}
 }
@@ -0,0 +1,239 @@
+/********************************************************************************
+ * Copyright (c) 2014-2022 Cirrus Link Solutions and others
+ *
+ * This program and the accompanying materials are made available under the
+ * terms of the Eclipse Public License 2.0 which is available at
+ * http://www.eclipse.org/legal/epl-2.0.
+ *
+ * SPDX-License-Identifier: EPL-2.0
+ *
+ * Contributors:
+ *   Cirrus Link Solutions - initial implementation
+ ********************************************************************************/
+
+package org.eclipse.sparkplug.impl.exception.model;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.AbstractList;
+import java.util.Arrays;
+import java.util.List;
+
+import org.eclipse.sparkplug.tck.test.common.SparkplugBProto.Payload;
+
+import com.google.protobuf.ByteString;
+import com.google.protobuf.CodedInputStream;
+import com.google.protobuf.UnsafeByteOperations;
+import com.google.protobuf.WireFormat;
+
+/**
+ * A read-only view of an encoded Sparkplug B payload, which keeps the encoded bytes and reads each field only when it
+ * is needed.
+ * <p>
+ * Creating a view reads the timestamp and seq and records the offset and length of each metric, skipping over the
+ * metrics themselves. Each {@link MetricView} is then created on its first access, and reads its own fields only when
+ * one of them is first asked for. The metadata, properties, data set and template of a metric are parsed from their
+ * recorded offsets on first access, so a consumer that only looks at names, aliases, datatypes and seq never parses
+ * them.
+ * <p>
+ * The view aliases the bytes it was created from, so they must not be modified while it is in use. A view is not
+ * thread safe.
+ */
+public class SparkplugBPayloadView {
+
+	private static final int TIMESTAMP = Payload.TIMESTAMP_FIELD_NUMBER << 3 | WireFormat.WIRETYPE_VARINT;
+	private static final int METRICS = Payload.METRICS_FIELD_NUMBER << 3 | WireFormat.WIRETYPE_LENGTH_DELIMITED;
+	private static final int SEQ = Payload.SEQ_FIELD_NUMBER << 3 | WireFormat.WIRETYPE_VARINT;
+	private static final int UUID = Payload.UUID_FIELD_NUMBER << 3 | WireFormat.WIRETYPE_LENGTH_DELIMITED;
+	private static final int BODY = Payload.BODY_FIELD_NUMBER << 3 | WireFormat.WIRETYPE_LENGTH_DELIMITED;
+
+	private final ByteString bytes;
+	private Long timestamp;
+	private Long seq;
+	private int uuidOffset = -1;
+	private int uuidLength;
+	private int bodyOffset = -1;
+	private int bodyLength;
+	private int metricCount;
+	private int[] metricOffsets = new int[16];
+	private int[] metricLengths = new int[16];
+	private MetricView[] metrics;
+
+	private SparkplugBPayloadView(ByteString bytes) throws IOException {
+		this.bytes = bytes;
+		CodedInputStream input = bytes.newCodedInput();
+		int tag;
+		while ((tag = input.readTag()) != 0) {
+			switch (tag) {
+				case TIMESTAMP:
+					timestamp = input.readUInt64();
+					break;
+				case METRICS:
+					int length = input.readRawVarint32();
+					addMetric(input.getTotalBytesRead(), length);
+					input.skipRawBytes(length);
+					break;
+				case SEQ:
+					seq = input.readUInt64();
+					break;
+				case UUID:
+					uuidLength = input.readRawVarint32();
+					uuidOffset = input.getTotalBytesRead();
+					input.skipRawBytes(uuidLength);
+					break;
+				case BODY:
+					bodyLength = input.readRawVarint32();
+					bodyOffset = input.getTotalBytesRead();
+					input.skipRawBytes(bodyLength);
+					break;
+				default:
+					if (!input.skipField(tag)) {
+						return;
+					}
+			}
+		}
+	}
+
+	/**
+	 * Creates a view of an encoded payload.
+	 *
+	 * @param bytes the encoded payload
+	 * @return the view
+	 * @throws IOException if the payload is not a valid protobuf encoding
+	 */
+	public static SparkplugBPayloadView of(byte[] bytes) throws IOException {
+		return new SparkplugBPayloadView(UnsafeByteOperations.unsafeWrap(bytes));
+	}
+
+	/**
+	 * Creates a view of the remaining bytes of a buffer, whose position is left unchanged.
+	 *
+	 * @param buffer the encoded payload
+	 * @return the view
+	 * @throws IOException if the payload is not a valid protobuf encoding
+	 */
+	public static SparkplugBPayloadView of(ByteBuffer buffer) throws IOException {
+		return new SparkplugBPayloadView(UnsafeByteOperations.unsafeWrap(buffer.duplicate()));
+	}
+
+	private void addMetric(int offset, int length) {
+		if (metricCount == metricOffsets.length) {
+			metricOffsets = Arrays.copyOf(metricOffsets, metricCount * 2);
+			metricLengths = Arrays.copyOf(metricLengths, metricCount * 2);
+		}
+		metricOffsets[metricCount] = offset;
+		metricLengths[metricCount] = length;
+		metricCount++;
+	}
+
+	public boolean hasTimestamp() {
+		return timestamp != null;
+	}
+
+	/**
+	 * @return the payload timestamp, or null if it is not set
+	 */
+	public Long getTimestamp() {
+		return timestamp;
+	}
+
+	public boolean hasSeq() {
+		return seq != null;
+	}
+
+	/**
+	 * @return the payload sequence number, or null if it is not set
+	 */
+	public Long getSeq() {
+		return seq;
+	}
+
+	/**
+	 * @return the payload UUID, or null if it is not set
+	 */
+	public String getUuid() {
+		return uuidOffset < 0 ? null : bytes.substring(uuidOffset, uuidOffset + uuidLength).toStringUtf8();
+	}
+
+	/**
+	 * @return the payload body, aliasing the encoded bytes, or null if it is not set
+	 */
+	public ByteString getBody() {
+		return bodyOffset < 0 ? null : bytes.substring(bodyOffset, bodyOffset + bodyLength);
+	}
+
+	public int getMetricCount() {
+		return metricCount;
+	}
+
+	/**
+	 * Returns the view of a metric, which is created on the first call.
+	 *
+	 * @param index the index of the metric in the payload
+	 * @return the metric view
+	 */
+	public MetricView getMetric(int index) {
+		if (index < 0 || index >= metricCount) {
+			throw new IndexOutOfBoundsException("Metric " + index + " of " + metricCount);
+		}
+		if (metrics == null) {
+			metrics = new MetricView[metricCount];
+		}
+		MetricView metric = metrics[index];
+		if (metric == null) {
+			int offset = metricOffsets[index];
+			metric = new MetricView(bytes.substring(offset, offset + metricLengths[index]));
+			metrics[index] = metric;
+		}
+		return metric;
+	}
+
+	/**
+	 * @return a read-only list of the metric views, each created on its first access
+	 */
+	public List<MetricView> getMetrics() {
+		return new AbstractList<MetricView>() {
+			@Override
+			public MetricView get(int index) {
+				return getMetric(index);
+			}
+
+			@Override
+			public int size() {
+				return metricCount;
+			}
+		};
+	}
+
+	/**
+	 * @return the encoded payload
+	 */
+	public ByteString getBytes() {
+		return bytes;
+	}
+
+	/**
+	 * Parses the whole payload. Its bytes fields are copied, so it can be kept after the view is dropped.
+	 *
+	 * @return the parsed payload
+	 * @throws IOException if the payload is not a valid protobuf encoding
+	 */
+	public Payload toPayload() throws IOException {
+		return Payload.parseFrom(bytes);
+	}
+
+	@Override
+	public String toString() {
+		StringBuilder builder = new StringBuilder();
+		builder.append("SparkplugBPayloadView [timestamp=");
+		builder.append(timestamp);
+		builder.append(", seq=");
+		builder.append(seq);
+		builder.append(", metricCount=");
+		builder.append(metricCount);
+		builder.append(", size=");
+		builder.append(bytes.size());
+		builder.append("]");
+		return builder.toString();
+	}
+}
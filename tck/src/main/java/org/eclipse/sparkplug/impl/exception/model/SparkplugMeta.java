@@ -16,6 +16,7 @@ package org.eclipse.sparkplug.impl.exception.model;
 public class SparkplugMeta {
 
 	public static final String SPARKPLUG_B_TOPIC_PREFIX = "spBv1.0";
+	public static final String SPARKPLUG_A_TOPIC_PREFIX = "spAv1.0";
 	public static final String SPARKPLUG_TOPIC_HOST_STATE_TOKEN = "STATE";
 	public static final String SPARKPLUG_TOPIC_HOST_STATE_PREFIX =
 			SPARKPLUG_B_TOPIC_PREFIX + "/" + SPARKPLUG_TOPIC_HOST_STATE_TOKEN;
@@ -15,6 +15,7 @@ package org.eclipse.sparkplug.impl.exception.model;
 
 import org.eclipse.sparkplug.impl.exception.SparkplugErrorCode;
 import org.eclipse.sparkplug.impl.exception.SparkplugException;
+import org.eclipse.sparkplug.impl.exception.SparkplugParsingException;
 
 import com.fasterxml.jackson.annotation.JsonIgnore;
 import com.fasterxml.jackson.annotation.JsonInclude;
@@ -171,31 +172,33 @@ public class Topic {
 						"Invalid Sparkplug topic String: ''" + topicString);
 			}
 
-			String[] splitTopic = topicString.split("/");
-			if (splitTopic.length == 3) {
-				if (SparkplugMeta.SPARKPLUG_B_TOPIC_PREFIX.equals(splitTopic[0])
-						&& SparkplugMeta.SPARKPLUG_TOPIC_HOST_STATE_TOKEN.equals(splitTopic[1])) {
-					return new Topic(SparkplugMeta.SPARKPLUG_B_TOPIC_PREFIX, splitTopic[2], MessageType.STATE);
+			TopicTokenizer tokens = new TopicTokenizer(topicString);
+			if (tokens.getLevelCount() == 3) {
+				if (tokens.isSparkplugB() && tokens.isState()) {
+					return new Topic(SparkplugMeta.SPARKPLUG_B_TOPIC_PREFIX, tokens.getHostApplicationId(),
+							MessageType.STATE);
 				} else {
 					throw new SparkplugException(SparkplugErrorCode.INVALID_ARGUMENT,
 							"Invalid Sparkplug STATE topic String: ''" + topicString);
 				}
-			} else if (splitTopic.length == 4) {
-				MessageType messageType = MessageType.parseMessageType(splitTopic[2]);
-				if (SparkplugMeta.SPARKPLUG_B_TOPIC_PREFIX.equals(splitTopic[0]) && (messageType == MessageType.NBIRTH
-						|| messageType == MessageType.NCMD || messageType == MessageType.NDATA
-						|| messageType == MessageType.NDEATH || messageType == MessageType.NRECORD)) {
-					return new Topic(SparkplugMeta.SPARKPLUG_B_TOPIC_PREFIX, splitTopic[1], splitTopic[3], messageType);
+			} else if (tokens.getLevelCount() == 4) {
+				MessageType messageType = parseMessageType(tokens);
+				if (tokens.isSparkplugB() && (messageType == MessageType.NBIRTH || messageType == MessageType.NCMD
+						|| messageType == MessageType.NDATA || messageType == MessageType.NDEATH
+						|| messageType == MessageType.NRECORD)) {
+					return new Topic(SparkplugMeta.SPARKPLUG_B_TOPIC_PREFIX, tokens.getGroupId(),
+							tokens.getEdgeNodeId(), messageType);
 				} else {
 					throw new SparkplugException(SparkplugErrorCode.INVALID_ARGUMENT,
 							"Invalid Sparkplug Edge Node topic String: ''" + topicString);
 				}
-			} else if (splitTopic.length == 5) {
-				MessageType messageType = MessageType.parseMessageType(splitTopic[2]);
-				if (SparkplugMeta.SPARKPLUG_B_TOPIC_PREFIX.equals(splitTopic[0]) && (messageType == MessageType.DBIRTH
-						|| messageType == MessageType.DCMD || messageType == MessageType.DDATA
-						|| messageType == MessageType.DDEATH || messageType == MessageType.DRECORD)) {
-					return new Topic(SparkplugMeta.SPARKPLUG_B_TOPIC_PREFIX, splitTopic[1], splitTopic[3], messageType);
+			} else if (tokens.getLevelCount() == 5) {
+				MessageType messageType = parseMessageType(tokens);
+				if (tokens.isSparkplugB() && (messageType == MessageType.DBIRTH || messageType == MessageType.DCMD
+						|| messageType == MessageType.DDATA || messageType == MessageType.DDEATH
+						|| messageType == MessageType.DRECORD)) {
+					return new Topic(SparkplugMeta.SPARKPLUG_B_TOPIC_PREFIX, tokens.getGroupId(),
+							tokens.getEdgeNodeId(), tokens.getDeviceId(), messageType);
 				} else {
 					throw new SparkplugException(SparkplugErrorCode.INVALID_ARGUMENT,
 							"Invalid Sparkplug Device topic String: ''" + topicString);
@@ -209,6 +212,14 @@ public class Topic {
 		}
 	}
 
+	private static MessageType parseMessageType(TopicTokenizer tokens) throws SparkplugParsingException {
+		MessageType messageType = tokens.getMessageType();
+		if (messageType == null) {
+			throw new SparkplugParsingException("Invalid message type: " + tokens.getLevel(2));
+		}
+		return messageType;
+	}
+
 	/**
 	 * Returns the Sparkplug namespace version.
 	 * 
@@ -0,0 +1,261 @@
+/********************************************************************************
+ * Copyright (c) 2022 Cirrus Link Solutions and others
+ *
+ * This program and the accompanying materials are made available under the
+ * terms of the Eclipse Public License 2.0 which is available at
+ * http://www.eclipse.org/legal/epl-2.0.
+ *
+ * SPDX-License-Identifier: EPL-2.0
+ *
+ * Contributors:
+ *   Cirrus Link Solutions - initial implementation
+ ********************************************************************************/
+
+package org.eclipse.sparkplug.impl.exception.model;
+
+import java.util.Arrays;
+
+/**
+ * Splits an MQTT topic into its levels in a single pass, recording only the offsets of the level separators.
+ * <p>
+ * The namespace and the message type are resolved during the same pass, without creating any strings. The group,
+ * Edge Node, device and Host Application IDs are only materialized as strings when they are first asked for. A
+ * tokenizer can be reused for any number of topics by calling {@link #reset(String)}; it is not thread safe.
+ * <p>
+ * Unlike {@link String#split(String)}, empty levels are kept, including a trailing one, as MQTT defines them.
+ */
+public class TopicTokenizer {
+
+	/**
+	 * The namespace of a topic, as given by its first level.
+	 */
+	public enum Namespace {
+		SPARKPLUG_B,
+		SPARKPLUG_A,
+		OTHER
+	}
+
+	private String topic;
+
+	/**
+	 * The start offset of each level, followed by the offset just past the end of the topic + 1, so that level i
+	 * runs from starts[i] to starts[i + 1] - 1.
+	 */
+	private int[] starts = new int[8];
+	private int levels;
+
+	private Namespace namespace;
+	private MessageType messageType;
+
+	private String groupId;
+	private String edgeNodeId;
+	private String deviceId;
+	private String hostApplicationId;
+
+	public TopicTokenizer() {
+		super();
+	}
+
+	public TopicTokenizer(String topic) {
+		this();
+		reset(topic);
+	}
+
+	/**
+	 * Tokenizes a new topic, discarding everything known about the previous one.
+	 *
+	 * @param topic the topic to tokenize
+	 * @return this tokenizer
+	 */
+	public TopicTokenizer reset(String topic) {
+		this.topic = topic;
+		this.groupId = null;
+		this.edgeNodeId = null;
+		this.deviceId = null;
+		this.hostApplicationId = null;
+
+		int length = topic.length();
+		levels = 0;
+		starts[0] = 0;
+		for (int i = 0; i < length; i++) {
+			if (topic.charAt(i) == '/') {
+				addLevelEnd(i);
+			}
+		}
+		addLevelEnd(length);
+
+		namespace = levelEquals(0, SparkplugMeta.SPARKPLUG_B_TOPIC_PREFIX)
+				? Namespace.SPARKPLUG_B
+				: levelEquals(0, SparkplugMeta.SPARKPLUG_A_TOPIC_PREFIX) ? Namespace.SPARKPLUG_A : Namespace.OTHER;
+		if (namespace == Namespace.SPARKPLUG_B && levels >= 2
+				&& levelEquals(1, SparkplugMeta.SPARKPLUG_TOPIC_HOST_STATE_TOKEN)) {
+			messageType = MessageType.STATE;
+		} else if (namespace != Namespace.OTHER && levels >= 3) {
+			messageType = MessageType.lookup(topic, starts[2], levelEnd(2));
+			if (messageType == MessageType.STATE) {
+				// STATE is only valid as the second level
+				messageType = null;
+			}
+		} else {
+			messageType = null;
+		}
+		return this;
+	}
+
+	private void addLevelEnd(int end) {
+		if (levels + 2 > starts.length) {
+			starts = Arrays.copyOf(starts, starts.length * 2);
+		}
+		starts[++levels] = end + 1;
+	}
+
+	private int levelEnd(int level) {
+		return starts[level + 1] - 1;
+	}
+
+	/**
+	 * @return the topic being tokenized
+	 */
+	public String getTopic() {
+		return topic;
+	}
+
+	/**
+	 * @return the number of levels in the topic
+	 */
+	public int getLevelCount() {
+		return levels;
+	}
+
+	/**
+	 * Returns a level of the topic as a new string.
+	 *
+	 * @param level the index of the level, starting at 0
+	 * @return the level
+	 */
+	public String getLevel(int level) {
+		checkLevel(level);
+		return topic.substring(starts[level], levelEnd(level));
+	}
+
+	/**
+	 * @param level the index of the level, starting at 0
+	 * @return the number of characters in the level
+	 */
+	public int getLevelLength(int level) {
+		checkLevel(level);
+		return levelEnd(level) - starts[level];
+	}
+
+	/**
+	 * Compares a level of the topic with a string without creating a string for the level.
+	 *
+	 * @param level the index of the level, starting at 0
+	 * @param value the string to compare with
+	 * @return true if the level exists and is equal to the value, false otherwise
+	 */
+	public boolean levelEquals(int level, String value) {
+		if (level < 0 || level >= levels) {
+			return false;
+		}
+		int start = starts[level];
+		return levelEnd(level) - start == value.length() && topic.regionMatches(start, value, 0, value.length());
+	}
+
+	/**
+	 * @param level the index of the level, starting at 0
+	 * @param c a character
+	 * @return true if the level contains the character
+	 */
+	public boolean levelContains(int level, char c) {
+		checkLevel(level);
+		int index = topic.indexOf(c, starts[level]);
+		return index != -1 && index < levelEnd(level);
+	}
+
+	private void checkLevel(int level) {
+		if (level < 0 || level >= levels) {
+			throw new IndexOutOfBoundsException("Topic level " + level + " of " + levels + ": " + topic);
+		}
+	}
+
+	public Namespace getNamespace() {
+		return namespace;
+	}
+
+	/**
+	 * @return true if the first level is the Sparkplug B namespace
+	 */
+	public boolean isSparkplugB() {
+		return namespace == Namespace.SPARKPLUG_B;
+	}
+
+	/**
+	 * @return true if the first level is the Sparkplug A namespace
+	 */
+	public boolean isSparkplugA() {
+		return namespace == Namespace.SPARKPLUG_A;
+	}
+
+	/**
+	 * @return true if this is a Sparkplug B Host Application STATE topic, of any number of levels
+	 */
+	public boolean isState() {
+		return messageType == MessageType.STATE;
+	}
+
+	/**
+	 * Returns the message type of a Sparkplug topic. For STATE topics this is {@link MessageType#STATE}, otherwise
+	 * it is taken from the third level.
+	 *
+	 * @return the message type, or null if the topic is not a Sparkplug topic or the message type is not recognized
+	 */
+	public MessageType getMessageType() {
+		return messageType;
+	}
+
+	/**
+	 * @return the group ID, or null if the topic is a STATE topic or has too few levels
+	 */
+	public String getGroupId() {
+		if (groupId == null && !isState() && levels >= 4) {
+			groupId = getLevel(1);
+		}
+		return groupId;
+	}
+
+	/**
+	 * @return the Edge Node ID, or null if the topic is a STATE topic or has too few levels
+	 */
+	public String getEdgeNodeId() {
+		if (edgeNodeId == null && !isState() && levels >= 4) {
+			edgeNodeId = getLevel(3);
+		}
+		return edgeNodeId;
+	}
+
+	/**
+	 * @return the device ID, or null if the topic is a STATE topic or has fewer than five levels
+	 */
+	public String getDeviceId() {
+		if (deviceId == null && !isState() && levels >= 5) {
+			deviceId = getLevel(4);
+		}
+		return deviceId;
+	}
+
+	/**
+	 * @return the Host Application ID of a STATE topic, otherwise null
+	 */
+	public String getHostApplicationId() {
+		if (hostApplicationId == null && isState() && levels >= 3) {
+			hostApplicationId = getLevel(2);
+		}
+		return hostApplicationId;
+	}
+
+	@Override
+	public String toString() {
+		return topic;
+	}
+}
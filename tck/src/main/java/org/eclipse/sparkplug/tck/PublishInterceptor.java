@@ -17,11 +17,12 @@ import static org.eclipse.sparkplug.tck.test.common.Constants.TCK_CONSOLE_TEST_C
 import static org.eclipse.sparkplug.tck.test.common.Constants.TCK_LOG_TOPIC;
 import static org.eclipse.sparkplug.tck.test.common.Utils.tokenize;
 
-import java.nio.ByteBuffer;
 import java.nio.charset.StandardCharsets;
 
 import org.eclipse.sparkplug.tck.test.TCK;
 import org.eclipse.sparkplug.tck.test.common.Constants.Profile;
+import org.eclipse.sparkplug.tck.test.common.StageMetrics;
+import org.eclipse.sparkplug.tck.test.common.StageMetrics.Stage;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
@@ -51,21 +52,25 @@ public class PublishInterceptor implements PublishInboundInterceptor {
 	@Override
 	public void onInboundPublish(final @NotNull PublishInboundInput publishInboundInput,
 			final @NotNull PublishInboundOutput publishInboundOutput) {
+		final long start = StageMetrics.start();
 		try {
 			final String clientId = publishInboundInput.getClientInformation().getClientId();
 			final PublishPacket packet = publishInboundInput.getPublishPacket();
 			final String topic = packet.getTopic();
 			logger.debug("Inbound publish from '{}' at {} ", clientId, topic);
 			if (packet.getPayload().isPresent()) {
-				final ByteBuffer payloadByteBuffer = packet.getPayload().get();
-				final String payload = StandardCharsets.UTF_8.decode(payloadByteBuffer).toString();
+				// only decode the payload as a string when it is needed, as this runs on the broker's thread
+				final boolean isControl = topic.equals(TCK_CONSOLE_TEST_CONTROL_TOPIC);
+				final String payload = (isControl || topic.equals(TCK_LOG_TOPIC) || logger.isTraceEnabled())
+						? StandardCharsets.UTF_8.decode(packet.getPayload().get()).toString()
+						: null;
 				logger.trace("\tPayload {}", payload);
 
 				if (topic.equals(TCK_LOG_TOPIC)) {
 					logger.debug(clientId + ": " + payload); // display log message
 				}
 
-				if (topic.equals(TCK_CONSOLE_TEST_CONTROL_TOPIC)) {
+				if (isControl) {
 					String cmd = "NEW_TEST";
 					if (payload.toUpperCase().startsWith(cmd)) {
 						final String[] strings = tokenize(payload.trim());
@@ -90,6 +95,8 @@ public class PublishInterceptor implements PublishInboundInterceptor {
 			}
 		} catch (final Exception e) {
 			logger.error("Publish Exception", e);
+		} finally {
+			StageMetrics.record(Stage.INTERCEPTOR, start);
 		}
 	}
 }
\ No newline at end of file
@@ -34,6 +34,8 @@ public class SparkplugHiveMQExtension implements ExtensionMain {
 
 	private static final @NotNull Logger logger = LoggerFactory.getLogger("Sparkplug");
 
+	private TCK aTCK = null;
+
 	@Override
 	public void extensionStart(final @NotNull ExtensionStartInput extensionStartInput,
 			final @NotNull ExtensionStartOutput extensionStartOutput) {
@@ -41,7 +43,7 @@ public class SparkplugHiveMQExtension implements ExtensionMain {
 		try {
 			logger.info("Starting Sparkplug TCK Extension");
 
-			final TCK aTCK = new TCK();
+			aTCK = new TCK();
 
 			final ConnectInterceptor connectInterceptor = new ConnectInterceptor(aTCK);
 			Services.interceptorRegistry().setConnectInboundInterceptorProvider(input -> connectInterceptor);
@@ -73,5 +75,8 @@ public class SparkplugHiveMQExtension implements ExtensionMain {
 	public void extensionStop(final @NotNull ExtensionStopInput extensionStopInput,
 			final @NotNull ExtensionStopOutput extensionStopOutput) {
 		logger.info("Stopping Sparkplug TCK Extension");
+		if (aTCK != null) {
+			aTCK.shutdown();
+		}
 	}
 }
\ No newline at end of file
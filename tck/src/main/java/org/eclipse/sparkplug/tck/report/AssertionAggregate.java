@@ -0,0 +1,132 @@
+/*******************************************************************************
+ * Copyright (c) 2022 Ian Craggs
+ *
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v2.0
+ * which is available at https://www.eclipse.org/legal/epl-2.0/
+ *
+ * SPDX-License-Identifier: EPL-2.0
+ *
+ * Contributors:
+ *    Ian Craggs - initial implementation and documentation
+ *******************************************************************************/
+
+package org.eclipse.sparkplug.tck.report;
+
+import static org.eclipse.sparkplug.tck.test.common.Constants.FAIL;
+import static org.eclipse.sparkplug.tck.test.common.Constants.MAYBE;
+import static org.eclipse.sparkplug.tck.test.common.Constants.PASS;
+
+import org.eclipse.sparkplug.tck.test.ResultRecord;
+
+import com.fasterxml.jackson.annotation.JsonProperty;
+
+/**
+ * The results of one assertion in one profile over all the runs read by the {@link ReportEngine}.
+ *
+ * @author Ian Craggs
+ */
+public class AssertionAggregate {
+
+	@JsonProperty("passes")
+	private long passes;
+
+	@JsonProperty("fails")
+	private long fails;
+
+	@JsonProperty("maybes")
+	private long maybes;
+
+	@JsonProperty("notExecuted")
+	private long notExecuted;
+
+	@JsonProperty("lastResult")
+	private String lastResult;
+
+	@JsonProperty("lastRun")
+	private String lastRun;
+
+	@JsonProperty("lastTest")
+	private String lastTest;
+
+	@JsonProperty("lastTimestamp")
+	private long lastTimestamp;
+
+	@JsonProperty("lastFailRun")
+	private String lastFailRun;
+
+	@JsonProperty("lastFailTimestamp")
+	private long lastFailTimestamp;
+
+	public AssertionAggregate() {
+	}
+
+	/**
+	 * Adds a result. The latest result, by the time its test reported, becomes the last result whatever order the
+	 * results are added in.
+	 *
+	 * @param record the result
+	 */
+	public void add(ResultRecord record) {
+		final String result = record.getResult();
+		if (result.startsWith(PASS)) {
+			passes++;
+		} else if (result.startsWith(FAIL)) {
+			fails++;
+			if (lastFailRun == null || record.getTimestamp() >= lastFailTimestamp) {
+				lastFailRun = record.getRun();
+				lastFailTimestamp = record.getTimestamp();
+			}
+		} else if (result.startsWith(MAYBE)) {
+			maybes++;
+		} else {
+			notExecuted++;
+		}
+		if (lastResult == null || record.getTimestamp() >= lastTimestamp) {
+			lastResult = result;
+			lastRun = record.getRun();
+			lastTest = record.getTest();
+			lastTimestamp = record.getTimestamp();
+		}
+	}
+
+	public long getPasses() {
+		return passes;
+	}
+
+	public long getFails() {
+		return fails;
+	}
+
+	public long getMaybes() {
+		return maybes;
+	}
+
+	public long getNotExecuted() {
+		return notExecuted;
+	}
+
+	public String getLastResult() {
+		return lastResult;
+	}
+
+	public String getLastRun() {
+		return lastRun;
+	}
+
+	public String getLastTest() {
+		return lastTest;
+	}
+
+	public long getLastTimestamp() {
+		return lastTimestamp;
+	}
+
+	public String getLastFailRun() {
+		return lastFailRun;
+	}
+
+	public long getLastFailTimestamp() {
+		return lastFailTimestamp;
+	}
+}
@@ -0,0 +1,492 @@
+/*******************************************************************************
+ * Copyright (c) 2022 Ian Craggs
+ *
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v2.0
+ * which is available at https://www.eclipse.org/legal/epl-2.0/
+ *
+ * SPDX-License-Identifier: EPL-2.0
+ *
+ * Contributors:
+ *    Ian Craggs - initial implementation and documentation
+ *******************************************************************************/
+
+package org.eclipse.sparkplug.tck.report;
+
+import static org.eclipse.sparkplug.tck.test.common.Constants.FAIL;
+import static org.eclipse.sparkplug.tck.test.common.Constants.PASS;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.Writer;
+import java.lang.reflect.Field;
+import java.lang.reflect.Modifier;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.sql.Timestamp;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.zip.GZIPInputStream;
+
+import org.eclipse.sparkplug.tck.test.ResultRecord;
+import org.eclipse.sparkplug.tck.test.ResultsStore;
+import org.eclipse.sparkplug.tck.test.common.Requirements;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.ObjectReader;
+
+/**
+ * Builds the coverage report of the TCK results against the assertions of the specification.
+ *
+ * The results are read from results stores, written by {@link ResultsStore}, or from results logs, whose test
+ * summaries are converted to records as the store does. Each file is read from where the previous update stopped, and
+ * the results are added to the aggregates of their assertions in a {@link ReportState}, which is saved between runs.
+ * So a report over a long history of runs only reads the runs added since the last report.
+ *
+ * The assertions are those of {@link Requirements}, which is generated from the same specification audit file as
+ * the @SpecAssertion annotations of the tests are checked against by the annotation processor.
+ *
+ * The report can be written as HTML, in the form of report.py, or as JSON.
+ *
+ * @author Ian Craggs
+ */
+public class ReportEngine {
+
+	private static final Logger logger = LoggerFactory.getLogger("Sparkplug");
+
+	private static final String SUMMARY = "Summary Test Results for ";
+	private static final String OVERALL = "OVERALL: ";
+	private static final String GZIP = ".gz";
+
+	// the most of the first line of a file that is fingerprinted
+	private static final int FINGERPRINT_LENGTH = 64 * 1024;
+
+	/**
+	 * Receives the lines of a file.
+	 */
+	private interface LineHandler {
+		/**
+		 * @return true if this line and all the lines before it are processed, and need not be read again
+		 */
+		boolean line(String line) throws IOException;
+	}
+
+	private final ReportState state;
+	private final ObjectReader reader = new ObjectMapper().readerFor(ResultRecord.class);
+
+	public ReportEngine(ReportState state) {
+		this.state = state;
+	}
+
+	public ReportState getState() {
+		return state;
+	}
+
+	/**
+	 * Reads the results added to a file since the last update. A file ending .jsonl is read as a results store, and
+	 * any other as a results log. Either can be compressed with gzip, when its name ends .gz as well. A partial record
+	 * or test summary at the end of a file is left to be read by the next update.
+	 *
+	 * Files are known by their identity rather than their path, so that a results log which has been rotated is
+	 * neither read again nor partly skipped. The identity of a file is a fingerprint of its first line, with its file
+	 * key, which is its inode on Unix, or its creation time if the file system has no file keys. A compressed file is a
+	 * new file, so the first time it is read it takes over the state of the file with the same fingerprint which was
+	 * read last. A file which is shorter than the length already read is assumed to have been replaced, and is read
+	 * from the start.
+	 *
+	 * @param file the results store or log
+	 * @return the number of results added
+	 * @throws IOException if the file can't be read
+	 */
+	public int update(Path file) throws IOException {
+		final String name = file.getFileName().toString();
+		final boolean gzip = name.endsWith(GZIP);
+		final String baseName = gzip ? name.substring(0, name.length() - GZIP.length()) : name;
+		final String fingerprint = fingerprint(file, gzip);
+		if (fingerprint == null) {
+			logger.info("Results file {} has no complete line yet", file);
+			return 0;
+		}
+		final String key = fingerprint + " " + getIdentity(file);
+		ReportState.FileState fileState = state.getFiles().get(key);
+		if (fileState == null && gzip) {
+			fileState = findUncompressed(fingerprint);
+		}
+		if (fileState == null) {
+			// results logs have no run ID, so the file name they were first read under is used
+			final Long legacy = state.getOffsets().remove(file.toAbsolutePath().normalize().toString());
+			fileState = new ReportState.FileState(fingerprint, baseName, (legacy == null) ? 0L : legacy);
+		}
+		long offset = fileState.getOffset();
+		if (!gzip && Files.size(file) < offset) {
+			logger.warn("Results file {} is shorter than when it was last read, reading it again", file);
+			offset = 0L;
+		}
+
+		final int[] added = { 0 };
+		final long end;
+		if (baseName.endsWith(".jsonl")) {
+			end = readLines(file, gzip, offset, line -> {
+				try {
+					add(reader.readValue(line));
+					added[0]++;
+				} catch (IOException e) {
+					logger.warn("Skipping unreadable record in {}: {}", file, e.getMessage());
+				}
+				return true;
+			});
+		} else {
+			final String run = fileState.getRun();
+			final StringBuilder summary = new StringBuilder();
+			end = readLines(file, gzip, offset, line -> {
+				if (line.contains(SUMMARY)) {
+					summary.setLength(0);
+				}
+				summary.append(line).append('\n');
+				if (line.startsWith(OVERALL)) {
+					for (final ResultRecord record : ResultsStore.parseSummary(run, summary.toString())) {
+						add(record);
+						added[0]++;
+					}
+					summary.setLength(0);
+				}
+				return summary.length() == 0;
+			});
+		}
+		fileState.setOffset(end);
+		fileState.setRead(System.currentTimeMillis());
+		state.getFiles().put(key, fileState);
+		logger.info("Read {} results from {}", added[0], file);
+		return added[0];
+	}
+
+	/**
+	 * Adds a result to the aggregates.
+	 *
+	 * @param record the result
+	 */
+	public void add(ResultRecord record) {
+		state.getRuns().add(record.getRun());
+		state.getProfiles().computeIfAbsent(record.getProfile(), p -> new TreeMap<>())
+				.computeIfAbsent(record.getAssertion(), a -> new AssertionAggregate()).add(record);
+	}
+
+	/**
+	 * @return the assertion IDs of the specification, with their descriptions, in order
+	 */
+	public static Map<String, String> getRequirements() {
+		final Map<String, String> requirements = new TreeMap<>();
+		for (final Field field : Requirements.class.getFields()) {
+			if (!field.getName().startsWith("ID_") || !Modifier.isStatic(field.getModifiers())) {
+				continue;
+			}
+			try {
+				final String id = (String) field.get(null);
+				String description = "";
+				try {
+					description = (String) Requirements.class.getField(field.getName().substring(3)).get(null);
+					// the description starts with the tag of the assertion, [tck-id-...]
+					if (description.startsWith("[")) {
+						description = description.substring(description.indexOf(']') + 1).trim();
+					}
+				} catch (NoSuchFieldException e) {
+					// no description
+				}
+				requirements.put(id, description);
+			} catch (IllegalAccessException | ClassCastException e) {
+				logger.warn("Can't read requirement {}", field.getName());
+			}
+		}
+		return requirements;
+	}
+
+	/**
+	 * Writes the report as JSON: the results of each assertion by profile, and the assertions with no results.
+	 *
+	 * @param out where to write the report
+	 * @param requirements the assertions of the specification, from {@link #getRequirements()}
+	 * @throws IOException if the report can't be written
+	 */
+	public void writeJson(Writer out, Map<String, String> requirements) throws IOException {
+		final Map<String, Object> report = new LinkedHashMap<>();
+		report.put("generated", System.currentTimeMillis());
+		report.put("runs", state.getRuns().size());
+		report.put("assertions", requirements.size());
+		final Map<String, Object> profiles = new LinkedHashMap<>();
+		for (final Map.Entry<String, Map<String, AssertionAggregate>> profile : state.getProfiles().entrySet()) {
+			final long[] counts = count(profile.getValue());
+			final Map<String, Object> summary = new LinkedHashMap<>();
+			summary.put("assertions", profile.getValue().size());
+			summary.put("passed", counts[0]);
+			summary.put("failed", counts[1]);
+			summary.put("results", profile.getValue());
+			profiles.put(profile.getKey(), summary);
+		}
+		report.put("profiles", profiles);
+		report.put("notCovered", getNotCovered(requirements));
+		new ObjectMapper().writerWithDefaultPrettyPrinter().writeValue(out, report);
+	}
+
+	/**
+	 * Writes the report as HTML: a table of the last result of each assertion by profile, and the assertions with no
+	 * results.
+	 *
+	 * @param out where to write the report
+	 * @param requirements the assertions of the specification, from {@link #getRequirements()}
+	 * @throws IOException if the report can't be written
+	 */
+	public void writeHtml(Writer out, Map<String, String> requirements) throws IOException {
+		out.write("<!DOCTYPE html>\n<html>\n<head>\n<style>\ntable, th, td {\n  border: 1px solid black;\n"
+				+ "  border-collapse: collapse;\n  text-align: center;\n}\n</style>\n</head>\n<body>\n");
+		out.write("<h1>Eclipse&trade; Sparkplug&trade; TCK Results summary</h1>\n");
+		out.write("<p>Date: " + new Timestamp(System.currentTimeMillis()) + ", runs: " + state.getRuns().size()
+				+ "</p>\n");
+
+		for (final Map.Entry<String, Map<String, AssertionAggregate>> profile : state.getProfiles().entrySet()) {
+			final Map<String, AssertionAggregate> assertions = profile.getValue();
+			final long[] counts = count(assertions);
+			out.write("<h2>Sparkplug Profile: " + escape(profile.getKey()) + "</h2>\n");
+			out.write(String.format("<h4>Assertion count: %d Number passed: %d Number failed: %d "
+					+ "Percent passed: %d%%</h4>%n", assertions.size(), counts[0], counts[1],
+					assertions.isEmpty() ? 0 : counts[0] * 100 / assertions.size()));
+			out.write("<table border=1 width=100%>\n<tr><th>Assertion ID</th><th>Assertion Type</th><th>Test</th>"
+					+ "<th>Time</th><th>Result</th><th>Passes</th><th>Fails</th><th>Last Failed Run</th></tr>\n");
+			for (final Map.Entry<String, AssertionAggregate> entry : assertions.entrySet()) {
+				final AssertionAggregate aggregate = entry.getValue();
+				out.write("<tr><td style=\"text-align: left\">tck-id-" + escape(entry.getKey()) + "</td><td>"
+						+ getType(requirements.get(entry.getKey())) + "</td><td>" + escape(aggregate.getLastTest())
+						+ "</td><td>" + new Timestamp(aggregate.getLastTimestamp()) + "</td><td>"
+						+ escape(aggregate.getLastResult()) + "</td><td>" + aggregate.getPasses() + "</td><td>"
+						+ aggregate.getFails() + "</td><td>"
+						+ (aggregate.getLastFailRun() == null ? "" : escape(aggregate.getLastFailRun()))
+						+ "</td></tr>\n");
+			}
+			out.write("</table>\n");
+		}
+
+		final List<String> notCovered = getNotCovered(requirements);
+		out.write("<h2>Assertions with no results: " + notCovered.size() + " of " + requirements.size() + "</h2>\n");
+		out.write("<table border=1 width=100%>\n<tr><th>Assertion ID</th><th>Assertion Type</th></tr>\n");
+		for (final String id : notCovered) {
+			out.write("<tr><td style=\"text-align: left\">tck-id-" + escape(id) + "</td><td>"
+					+ getType(requirements.get(id)) + "</td></tr>\n");
+		}
+		out.write("</table>\n</body>\n</html>\n");
+	}
+
+	/**
+	 * Updates the report state from results files, and writes the report.
+	 *
+	 * Options are given as name=value: state is the file of the report state, html and json the reports to write. All
+	 * the other arguments are results stores or logs.
+	 */
+	public static void main(String[] args) throws IOException {
+		Path statePath = Paths.get("SparkplugTCKreport.json");
+		Path htmlPath = Paths.get("summary.html");
+		Path jsonPath = null;
+		final List<Path> files = new ArrayList<>();
+		for (final String arg : args) {
+			if (arg.startsWith("state=")) {
+				statePath = Paths.get(arg.substring(6));
+			} else if (arg.startsWith("html=")) {
+				htmlPath = Paths.get(arg.substring(5));
+			} else if (arg.startsWith("json=")) {
+				jsonPath = Paths.get(arg.substring(5));
+			} else {
+				files.add(Paths.get(arg));
+			}
+		}
+		if (files.isEmpty()) {
+			System.out.println("Usage: ReportEngine [state=file] [html=file] [json=file] results-file...");
+			return;
+		}
+
+		final ReportEngine engine = new ReportEngine(ReportState.load(statePath));
+		for (final Path file : files) {
+			engine.update(file);
+		}
+		engine.getState().save(statePath);
+
+		final Map<String, String> requirements = getRequirements();
+		try (Writer out = Files.newBufferedWriter(htmlPath, StandardCharsets.UTF_8)) {
+			engine.writeHtml(out, requirements);
+		}
+		logger.info("Results summary written to {}", htmlPath);
+		if (jsonPath != null) {
+			try (Writer out = Files.newBufferedWriter(jsonPath, StandardCharsets.UTF_8)) {
+				engine.writeJson(out, requirements);
+			}
+			logger.info("Results summary written to {}", jsonPath);
+		}
+	}
+
+	private List<String> getNotCovered(Map<String, String> requirements) {
+		final List<String> notCovered = new ArrayList<>();
+		for (final String id : requirements.keySet()) {
+			boolean covered = false;
+			for (final Map<String, AssertionAggregate> assertions : state.getProfiles().values()) {
+				covered |= assertions.containsKey(id);
+			}
+			if (!covered) {
+				notCovered.add(id);
+			}
+		}
+		return notCovered;
+	}
+
+	/**
+	 * @return the number of assertions whose last result passed, and the number whose last result failed
+	 */
+	private static long[] count(Map<String, AssertionAggregate> assertions) {
+		final long[] counts = new long[2];
+		for (final AssertionAggregate aggregate : assertions.values()) {
+			if (aggregate.getLastResult().startsWith(PASS)) {
+				counts[0]++;
+			} else if (aggregate.getLastResult().startsWith(FAIL)) {
+				counts[1]++;
+			}
+		}
+		return counts;
+	}
+
+	private static String getType(String description) {
+		if (description == null) {
+			return "";
+		} else if (description.contains("MUST")) {
+			return "MUST";
+		} else if (description.contains("SHOULD")) {
+			return "SHOULD";
+		} else if (description.contains("MAY")) {
+			return "MAY";
+		}
+		return "";
+	}
+
+	private static String escape(String text) {
+		return text.replace("&", "&amp;").replace("<", "&lt;").replace(">", "&gt;");
+	}
+
+	/**
+	 * @return the state of the file with a fingerprint which was read last, as the state of its compressed copy
+	 */
+	private ReportState.FileState findUncompressed(String fingerprint) {
+		ReportState.FileState found = null;
+		for (final ReportState.FileState fileState : state.getFiles().values()) {
+			if (fingerprint.equals(fileState.getFingerprint())
+					&& (found == null || fileState.getRead() > found.getRead())) {
+				found = fileState;
+			}
+		}
+		return (found == null) ? null : new ReportState.FileState(fingerprint, found.getRun(), found.getOffset());
+	}
+
+	/**
+	 * @return the file key of a file, or its creation time if the file system has no file keys
+	 */
+	private static String getIdentity(Path file) throws IOException {
+		final BasicFileAttributes attributes = Files.readAttributes(file, BasicFileAttributes.class);
+		final Object fileKey = attributes.fileKey();
+		return (fileKey != null) ? fileKey.toString() : attributes.creationTime().toString();
+	}
+
+	/**
+	 * @return the SHA-256 of the first line of a file, as hex, or null if the file has no complete first line
+	 */
+	private static String fingerprint(Path file, boolean gzip) throws IOException {
+		final ByteArrayOutputStream line = new ByteArrayOutputStream(256);
+		try (InputStream in = open(file, gzip)) {
+			int b;
+			while ((b = in.read()) != '\n') {
+				if (b < 0) {
+					return null;
+				}
+				line.write(b);
+				if (line.size() == FINGERPRINT_LENGTH) {
+					break;
+				}
+			}
+		}
+		try {
+			final StringBuilder hex = new StringBuilder(64);
+			for (final byte b : MessageDigest.getInstance("SHA-256").digest(line.toByteArray())) {
+				hex.append(String.format("%02x", b));
+			}
+			return hex.toString();
+		} catch (NoSuchAlgorithmException e) {
+			throw new IOException(e);
+		}
+	}
+
+	private static InputStream open(Path file, boolean gzip) throws IOException {
+		final InputStream in = Files.newInputStream(file);
+		if (!gzip) {
+			return in;
+		}
+		try {
+			return new GZIPInputStream(in, 64 * 1024);
+		} catch (IOException e) {
+			in.close();
+			throw e;
+		}
+	}
+
+	/**
+	 * Reads the complete lines of a file from an offset into its content, which is uncompressed first if it is
+	 * compressed.
+	 *
+	 * @return the offset after the last line which the handler has finished with
+	 */
+	private static long readLines(Path file, boolean gzip, long offset, LineHandler handler) throws IOException {
+		long committed = offset;
+		try (InputStream in = open(file, gzip)) {
+			long skipped = 0L;
+			while (skipped < offset) {
+				final long n = in.skip(offset - skipped);
+				if (n <= 0) {
+					if (in.read() < 0) {
+						return committed;
+					}
+					skipped++;
+				} else {
+					skipped += n;
+				}
+			}
+			final byte[] bytes = new byte[64 * 1024];
+			final ByteArrayOutputStream line = new ByteArrayOutputStream(256);
+			long position = offset;
+			int n;
+			while ((n = in.read(bytes)) > 0) {
+				int from = 0;
+				for (int i = 0; i < n; i++) {
+					if (bytes[i] != '\n') {
+						continue;
+					}
+					line.write(bytes, from, i - from);
+					String text = new String(line.toByteArray(), StandardCharsets.UTF_8);
+					if (text.endsWith("\r")) {
+						text = text.substring(0, text.length() - 1);
+					}
+					if (handler.line(text)) {
+						committed = position + i + 1;
+					}
+					line.reset();
+					from = i + 1;
+				}
+				line.write(bytes, from, n - from);
+				position += n;
+			}
+		}
+		return committed;
+	}
+}
@@ -0,0 +1,162 @@
+/*******************************************************************************
+ * Copyright (c) 2022 Ian Craggs
+ *
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v2.0
+ * which is available at https://www.eclipse.org/legal/epl-2.0/
+ *
+ * SPDX-License-Identifier: EPL-2.0
+ *
+ * Contributors:
+ *    Ian Craggs - initial implementation and documentation
+ *******************************************************************************/
+
+package org.eclipse.sparkplug.tck.report;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.TreeSet;
+
+import com.fasterxml.jackson.annotation.JsonIgnoreProperties;
+import com.fasterxml.jackson.annotation.JsonProperty;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.annotation.JsonDeserialize;
+
+/**
+ * What the {@link ReportEngine} has read so far, saved between its runs so that it only reads the results added
+ * since: how far it has read each results file, and the aggregated results of each assertion.
+ *
+ * The state saved by an earlier version kept the offsets by path. They are loaded, and used the next time each of
+ * those files is read. Unknown properties are ignored.
+ *
+ * @author Ian Craggs
+ */
+@JsonIgnoreProperties(ignoreUnknown = true)
+public class ReportState {
+
+	/**
+	 * How far one results file has been read. A file keeps its state when it is renamed, as it is when a results log
+	 * is rotated, and a compressed copy of a file takes over the state of the file.
+	 */
+	public static class FileState {
+
+		// the fingerprint of the first line of the file
+		@JsonProperty("fingerprint")
+		private String fingerprint;
+
+		// the run ID given to the results of a results log
+		@JsonProperty("run")
+		private String run;
+
+		// the number of bytes read, of the uncompressed content
+		@JsonProperty("offset")
+		private long offset;
+
+		// when the file was last read, in milliseconds since the epoch
+		@JsonProperty("read")
+		private long read;
+
+		public FileState() {
+		}
+
+		public FileState(String fingerprint, String run, long offset) {
+			this.fingerprint = fingerprint;
+			this.run = run;
+			this.offset = offset;
+		}
+
+		public String getFingerprint() {
+			return fingerprint;
+		}
+
+		public String getRun() {
+			return run;
+		}
+
+		public long getOffset() {
+			return offset;
+		}
+
+		public void setOffset(long offset) {
+			this.offset = offset;
+		}
+
+		public long getRead() {
+			return read;
+		}
+
+		public void setRead(long read) {
+			this.read = read;
+		}
+	}
+
+	// how far each results file has been read, by the identity of the file: see ReportEngine#update(Path)
+	@JsonProperty("files")
+	@JsonDeserialize(as = TreeMap.class)
+	private Map<String, FileState> files = new TreeMap<>();
+
+	// the number of bytes read from each results file, by absolute path, as saved by an earlier version
+	@JsonProperty("offsets")
+	@JsonDeserialize(as = TreeMap.class)
+	private Map<String, Long> offsets = new TreeMap<>();
+
+	@JsonProperty("runs")
+	@JsonDeserialize(as = TreeSet.class)
+	private Set<String> runs = new TreeSet<>();
+
+	// profile -> assertion ID -> results
+	@JsonProperty("profiles")
+	@JsonDeserialize(as = TreeMap.class, contentAs = TreeMap.class)
+	private Map<String, Map<String, AssertionAggregate>> profiles = new TreeMap<>();
+
+	public ReportState() {
+	}
+
+	/**
+	 * Loads the state saved by {@link #save(Path)}.
+	 *
+	 * @param path the file of the state
+	 * @return the state, or an empty one if the file does not exist
+	 * @throws IOException if the file can't be read
+	 */
+	public static ReportState load(Path path) throws IOException {
+		if (!Files.exists(path)) {
+			return new ReportState();
+		}
+		return new ObjectMapper().readValue(path.toFile(), ReportState.class);
+	}
+
+	/**
+	 * Saves the state. It is written to a temporary file which then replaces the previous state, so a failure part way
+	 * through leaves the previous state.
+	 *
+	 * @param path the file of the state
+	 * @throws IOException if the file can't be written
+	 */
+	public void save(Path path) throws IOException {
+		final Path temp = path.resolveSibling(path.getFileName() + ".tmp");
+		new ObjectMapper().writeValue(temp.toFile(), this);
+		Files.move(temp, path, StandardCopyOption.REPLACE_EXISTING);
+	}
+
+	public Map<String, FileState> getFiles() {
+		return files;
+	}
+
+	public Map<String, Long> getOffsets() {
+		return offsets;
+	}
+
+	public Set<String> getRuns() {
+		return runs;
+	}
+
+	public Map<String, Map<String, AssertionAggregate>> getProfiles() {
+		return profiles;
+	}
+}
@@ -0,0 +1,336 @@
+/*******************************************************************************
+ * Copyright (c) 2022 Ian Craggs
+ *
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v2.0
+ * which is available at https://www.eclipse.org/legal/epl-2.0/
+ *
+ * SPDX-License-Identifier: EPL-2.0
+ *
+ * Contributors:
+ *    Ian Craggs - initial implementation and documentation
+ *******************************************************************************/
+
+package org.eclipse.sparkplug.tck.test;
+
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.eclipse.sparkplug.impl.exception.model.IdentifierPool;
+import org.eclipse.sparkplug.impl.exception.model.MetricView;
+import org.eclipse.sparkplug.tck.test.common.AliasMap;
+import org.eclipse.sparkplug.tck.test.common.SparkplugBProto.DataType;
+import org.eclipse.sparkplug.tck.test.common.SparkplugBProto.Payload.Metric;
+import org.eclipse.sparkplug.tck.test.common.SparkplugBProto.Payload.Template;
+
+import com.hivemq.extension.sdk.api.annotations.NotNull;
+import com.hivemq.extension.sdk.api.annotations.Nullable;
+
+/**
+ * The birth certificates seen by the Monitor, for edge nodes and devices, indexed so that each metric of a data
+ * message can be checked against its birth in constant time.
+ *
+ * For every edge node or device the metrics of the last NBIRTH or DBIRTH are held by name and by alias, along with
+ * what the Monitor needs to know about them: the datatype, and whether the metric is a template definition. Aliases
+ * are held in an {@link AliasMap}, which also finds any alias used twice within the birth. Template definitions are
+ * interned in a {@link TemplateRegistry} shared by all edge nodes, and each definition metric refers to the shared
+ * definition. Metric names are taken from the shared {@link IdentifierPool}, as the same names recur across a fleet.
+ * The metrics of the last data message of each edge node or device are kept alongside, by name, so that the report by
+ * exception checks can compare each metric with the same metric in the previous message.
+ *
+ * @author Ian Craggs
+ */
+class BirthRegistry {
+
+	/**
+	 * What is known about one metric from a birth certificate.
+	 */
+	static class BirthMetric {
+		private final @NotNull String name;
+		private final boolean hasAlias;
+		private final long alias;
+		private final int datatype;
+		private final @Nullable TemplateRegistry.Definition definition;
+		private final @Nullable String templateRef;
+
+		BirthMetric(final @NotNull Metric metric, final @NotNull TemplateRegistry templates) {
+			this.name = IdentifierPool.getShared().intern(metric.getName());
+			this.hasAlias = metric.hasAlias();
+			this.alias = metric.getAlias();
+			this.datatype = metric.getDatatype();
+			if (metric.hasTemplateValue()) {
+				final Template template = metric.getTemplateValue();
+				final boolean isDefinition = template.hasIsDefinition() && !template.hasTemplateRef();
+				this.definition = isDefinition ? templates.intern(name, template) : null;
+				this.templateRef = template.hasTemplateRef() ? template.getTemplateRef() : null;
+			} else {
+				this.definition = null;
+				this.templateRef = null;
+			}
+		}
+
+		public @NotNull String getName() {
+			return name;
+		}
+
+		public boolean hasAlias() {
+			return hasAlias;
+		}
+
+		public long getAlias() {
+			return alias;
+		}
+
+		public int getDatatype() {
+			return datatype;
+		}
+
+		public boolean isTemplate() {
+			return datatype == DataType.Template.getNumber();
+		}
+
+		/**
+		 * @return true if this metric is a template definition, which instances can refer to by name
+		 */
+		public boolean isTemplateDefinition() {
+			return definition != null;
+		}
+
+		/**
+		 * @return the shared template definition, if this metric is a template definition, or null
+		 */
+		public @Nullable TemplateRegistry.Definition getDefinition() {
+			return definition;
+		}
+
+		/**
+		 * @return the name of the template definition this metric is an instance of, or null
+		 */
+		public @Nullable String getTemplateRef() {
+			return templateRef;
+		}
+	}
+
+	/**
+	 * The birth certificate of one edge node or device.
+	 */
+	static class Birth {
+		private final @NotNull BirthMetric[] metrics;
+		private final @NotNull Map<String, BirthMetric> byName;
+		private final @NotNull AliasMap byAlias;
+		private @Nullable Long duplicateAlias = null;
+
+		Birth(final @NotNull List<Metric> metrics, final @NotNull TemplateRegistry templates) {
+			this.metrics = new BirthMetric[metrics.size()];
+			byName = new HashMap<>(capacity(metrics.size()));
+			int aliasCount = 0;
+			for (int i = 0; i < this.metrics.length; i++) {
+				final BirthMetric birthMetric = new BirthMetric(metrics.get(i), templates);
+				this.metrics[i] = birthMetric;
+				byName.put(birthMetric.getName(), birthMetric);
+				if (birthMetric.hasAlias()) {
+					aliasCount++;
+				}
+			}
+			byAlias = new AliasMap(aliasCount);
+			if (aliasCount > 0) {
+				for (int i = 0; i < this.metrics.length; i++) {
+					final BirthMetric birthMetric = this.metrics[i];
+					if (birthMetric.hasAlias() && byAlias.put(birthMetric.getAlias(), i) != AliasMap.NO_VALUE
+							&& duplicateAlias == null) {
+						duplicateAlias = birthMetric.getAlias();
+					}
+				}
+			}
+		}
+
+		public @Nullable BirthMetric getMetric(final @Nullable String name) {
+			return (name == null) ? null : byName.get(name);
+		}
+
+		public @Nullable BirthMetric getMetricByAlias(final long alias) {
+			final int index = byAlias.get(alias);
+			return (index == AliasMap.NO_VALUE) ? null : metrics[index];
+		}
+
+		public boolean hasAliases() {
+			return !byAlias.isEmpty();
+		}
+
+		/**
+		 * @return the first alias which is used by more than one metric of this birth, or null if aliases are unique
+		 */
+		public @Nullable Long getDuplicateAlias() {
+			return duplicateAlias;
+		}
+
+		/**
+		 * @param other another birth certificate of the same edge node
+		 * @return the first alias of this birth which is also used in the other birth, or null if there is none
+		 */
+		public @Nullable Long findSharedAlias(final @NotNull Birth other) {
+			if (hasAliases() && other.hasAliases()) {
+				for (BirthMetric metric : metrics) {
+					if (metric.hasAlias() && other.byAlias.containsAlias(metric.getAlias())) {
+						return metric.getAlias();
+					}
+				}
+			}
+			return null;
+		}
+
+		public boolean hasMetric(final @Nullable String name) {
+			return getMetric(name) != null;
+		}
+
+		/**
+		 * @param name the name a template instance refers to
+		 * @return true if this birth has a template definition metric of that name
+		 */
+		public boolean hasTemplateDefinition(final @Nullable String name) {
+			return getTemplateDefinition(name) != null;
+		}
+
+		/**
+		 * @param name the name a template instance refers to
+		 * @return the shared template definition of that name in this birth, or null
+		 */
+		public @Nullable TemplateRegistry.Definition getTemplateDefinition(final @Nullable String name) {
+			final BirthMetric metric = getMetric(name);
+			return (metric == null) ? null : metric.getDefinition();
+		}
+
+		public int size() {
+			return metrics.length;
+		}
+	}
+
+	private final @NotNull TemplateRegistry templates;
+
+	private final @NotNull Map<String, Birth> births = new HashMap<>();
+
+	// id to metric name to the metric with that name in the last message
+	private final @NotNull Map<String, Map<String, Metric>> lastMetrics = new HashMap<>();
+
+	BirthRegistry(final @NotNull TemplateRegistry templates) {
+		this.templates = templates;
+	}
+
+	private static int capacity(final int size) {
+		return (int) (size / 0.75f) + 1;
+	}
+
+	/**
+	 * Records the birth certificate of an edge node or device, replacing any previous one with the same id.
+	 *
+	 * @param id the edge node or device id
+	 * @param metrics the metrics of the NBIRTH or DBIRTH
+	 * @return the indexed birth
+	 */
+	public @NotNull Birth register(final @NotNull String id, final @NotNull List<Metric> metrics) {
+		final Birth birth = new Birth(metrics, templates);
+		births.put(id, birth);
+		return birth;
+	}
+
+	public @Nullable Birth getBirth(final @NotNull String id) {
+		return births.get(id);
+	}
+
+	/**
+	 * Returns the name of a metric in a data message, which is resolved through the alias of the birth certificate
+	 * if the metric has no name.
+	 *
+	 * @param id the edge node or device id
+	 * @param metric the metric
+	 * @return the name, or null if the metric has only an alias which is not in the birth certificate
+	 */
+	public @Nullable String resolveName(final @NotNull String id, final @NotNull Metric metric) {
+		if (!metric.hasName() && metric.hasAlias()) {
+			final Birth birth = births.get(id);
+			final BirthMetric birthMetric = (birth == null) ? null : birth.getMetricByAlias(metric.getAlias());
+			return (birthMetric == null) ? null : birthMetric.getName();
+		}
+		return metric.getName();
+	}
+
+	/**
+	 * Returns the name of a metric in a view of a data message, which is resolved in the same way as
+	 * {@link #resolveName(String, Metric)}.
+	 *
+	 * @param id the edge node or device id
+	 * @param metric the metric view
+	 * @return the name, or null if the metric has no name and its alias is not in the birth certificate
+	 */
+	public @Nullable String resolveName(final @NotNull String id, final @NotNull MetricView metric) {
+		if (!metric.hasName() && metric.hasAlias()) {
+			final Birth birth = births.get(id);
+			final BirthMetric birthMetric = (birth == null) ? null : birth.getMetricByAlias(metric.getAlias());
+			return (birthMetric == null) ? null : birthMetric.getName();
+		}
+		return metric.getName();
+	}
+
+	/**
+	 * @param id the edge node or device id
+	 * @param name a metric name
+	 * @return the metric with that name in the last message, or null
+	 */
+	public @Nullable Metric getLastMetric(final @NotNull String id, final @Nullable String name) {
+		final Map<String, Metric> last = lastMetrics.get(id);
+		return (last == null || name == null) ? null : last.get(name);
+	}
+
+	/**
+	 * Replaces the last reported metrics of an edge node or device with those of a data message. A metric which is
+	 * named more than once is kept as it first appears.
+	 *
+	 * @param id the edge node or device id
+	 * @param metrics the metrics of the data message
+	 */
+	public void setLastMetrics(final @NotNull String id, final @NotNull List<Metric> metrics) {
+		final Map<String, Metric> last = new HashMap<>(capacity(metrics.size()));
+		for (Metric metric : metrics) {
+			final String name = resolveName(id, metric);
+			if (name != null) {
+				last.putIfAbsent(name, metric);
+			}
+		}
+		lastMetrics.put(id, last);
+	}
+
+	/**
+	 * Forgets the last reported values of an edge node or device, so that the next values are not compared with them.
+	 *
+	 * @param id the edge node or device id
+	 */
+	public void clearLastMetrics(final @NotNull String id) {
+		lastMetrics.remove(id);
+	}
+
+	/**
+	 * Forgets the last reported values of an edge node and all its devices, so that the next values are not compared
+	 * with them.
+	 *
+	 * @param id the edge node id, as group_id/edge_node_id
+	 */
+	public void clearEdgeNodeLastMetrics(final @NotNull String id) {
+		final String devicePrefix = id + "/";
+		lastMetrics.keySet().removeIf(key -> key.equals(id) || key.startsWith(devicePrefix));
+	}
+
+	/**
+	 * Replaces the last reported values of an edge node or device with the metrics of a birth certificate.
+	 *
+	 * @param id the edge node or device id
+	 * @param metrics the birth certificate metrics
+	 */
+	public void resetLastMetrics(final @NotNull String id, final @NotNull List<Metric> metrics) {
+		final Map<String, Metric> last = new HashMap<>(capacity(metrics.size()));
+		for (Metric metric : metrics) {
+			last.put(IdentifierPool.getShared().intern(metric.getName()), metric);
+		}
+		lastMetrics.put(id, last);
+	}
+}
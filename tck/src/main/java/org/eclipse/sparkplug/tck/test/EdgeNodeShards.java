@@ -0,0 +1,119 @@
+/*******************************************************************************
+ * Copyright (c) 2022 Ian Craggs
+ *
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v2.0
+ * which is available at https://www.eclipse.org/legal/epl-2.0/
+ *
+ * SPDX-License-Identifier: EPL-2.0
+ *
+ * Contributors:
+ *    Ian Craggs - initial implementation and documentation
+ *******************************************************************************/
+
+package org.eclipse.sparkplug.tck.test;
+
+import java.util.HashMap;
+import java.util.HashSet;
+
+import com.hivemq.extension.sdk.api.annotations.NotNull;
+
+/**
+ * The Monitor's per edge node session state, split into a fixed number of shards. Each edge node, identified by
+ * group_id:edge_node_id, always maps to the same shard, and all its devices live in the same shard too.
+ *
+ * A shard's state is only touched while holding the shard's monitor lock. HiveMQ delivers the messages of one client
+ * in order, so holding the lock keeps an edge node's messages in order across the Monitor's checks too. Messages
+ * from edge nodes in different shards are validated in parallel without contending for any lock.
+ *
+ * @author Ian Craggs
+ */
+class EdgeNodeShards {
+
+	/**
+	 * The state of the edge nodes which hash to one shard. The maps are keyed in the same way as the Monitor's
+	 * original maps: by group_id:edge_node_id, or by group_id/group_id:edge_node_id[/device_id] for sequence numbers
+	 * and births.
+	 */
+	static class Shard {
+		// edge_node_id to device_id
+		final @NotNull HashMap<String, HashSet<String>> edge_to_devices = new HashMap<>();
+
+		// edge_node_id to sequence number
+		final @NotNull HashMap<String, Long> edgeBdSeqs = new HashMap<>();
+
+		// edge_node_id to last sequence number
+		final @NotNull HashMap<String, Long> edgeSeqs = new HashMap<>();
+
+		// edge node and device birth certificates, and the last metric values
+		final @NotNull BirthRegistry births;
+
+		// edge_node_id to the number of data messages since the last one validated in full
+		final @NotNull HashMap<String, Integer> dataSampleCounts = new HashMap<>();
+
+		// the edge_node_ids with data messages which the validation pipeline discarded since the last one seen
+		final @NotNull HashSet<String> dataGaps = new HashSet<>();
+
+		Shard(final @NotNull TemplateRegistry templates) {
+			births = new BirthRegistry(templates);
+		}
+
+		/**
+		 * Counts a data message of an edge node or one of its devices for the sampling policy.
+		 *
+		 * @param edgeNodeKey the edge node as group_id:edge_node_id
+		 * @param rate validate one in every rate data messages
+		 * @return true if this message should be validated in full
+		 */
+		boolean sampleData(final @NotNull String edgeNodeKey, final int rate) {
+			final Integer count = dataSampleCounts.get(edgeNodeKey);
+			final int next = (count == null || count + 1 >= rate) ? 0 : count + 1;
+			dataSampleCounts.put(edgeNodeKey, next);
+			return next == 0;
+		}
+	}
+
+	private final @NotNull Shard[] shards;
+	private final int mask;
+
+	/**
+	 * @param templates the template definitions shared by all the shards
+	 */
+	EdgeNodeShards(final @NotNull TemplateRegistry templates) {
+		this(Runtime.getRuntime().availableProcessors() * 4, templates);
+	}
+
+	EdgeNodeShards(final int minimumShards, final @NotNull TemplateRegistry templates) {
+		int count = 1;
+		while (count < minimumShards) {
+			count <<= 1;
+		}
+		shards = new Shard[count];
+		for (int i = 0; i < count; i++) {
+			shards[i] = new Shard(templates);
+		}
+		mask = count - 1;
+	}
+
+	/**
+	 * @param edgeNodeKey the edge node as group_id:edge_node_id
+	 * @return the shard holding the edge node
+	 */
+	@NotNull
+	Shard get(final @NotNull String edgeNodeKey) {
+		return shards[index(edgeNodeKey)];
+	}
+
+	/**
+	 * @param edgeNodeKey the edge node as group_id:edge_node_id
+	 * @return the index of the shard holding the edge node, between 0 and {@link #size()} - 1
+	 */
+	int index(final @NotNull String edgeNodeKey) {
+		final int h = edgeNodeKey.hashCode();
+		return (h ^ (h >>> 16)) & mask;
+	}
+
+	int size() {
+		return shards.length;
+	}
+}
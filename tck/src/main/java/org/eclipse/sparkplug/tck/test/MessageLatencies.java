@@ -0,0 +1,284 @@
+/*******************************************************************************
+ * Copyright (c) 2022 Ian Craggs
+ *
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v2.0
+ * which is available at https://www.eclipse.org/legal/epl-2.0/
+ *
+ * SPDX-License-Identifier: EPL-2.0
+ *
+ * Contributors:
+ *    Ian Craggs - initial implementation and documentation
+ *******************************************************************************/
+
+package org.eclipse.sparkplug.tck.test;
+
+import java.nio.ByteBuffer;
+import java.util.EnumMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAccumulator;
+import java.util.concurrent.atomic.LongAdder;
+
+import org.eclipse.sparkplug.impl.exception.model.MessageType;
+import org.eclipse.sparkplug.impl.exception.model.TopicTokenizer;
+import org.eclipse.sparkplug.tck.test.common.PublishEnvelope;
+import org.eclipse.sparkplug.tck.test.common.SparkplugBProto.PayloadOrBuilder;
+import org.eclipse.sparkplug.tck.utility.LatencyHistogram;
+
+import com.hivemq.extension.sdk.api.annotations.NotNull;
+import com.hivemq.extension.sdk.api.annotations.Nullable;
+
+/**
+ * The latencies of the messages received by the TCK, from the timestamp in their payload to their arrival at the
+ * publish interceptor, by message type and by edge node.
+ *
+ * The latency of a message is the sum of the time it took to reach the broker, its queueing in the broker, and the
+ * skew between the clock of its publisher and the clock of the broker. A negative latency, when the publisher's clock
+ * is ahead, is counted separately, with the most negative value, as it can only be skew. Messages with no timestamp
+ * are counted but not timed.
+ *
+ * Sparkplug B payloads are timed from the header alone, without decoding their metrics, and STATE payloads from their
+ * JSON timestamp. The header is decoded once per message by its {@link PublishEnvelope}, which the Monitor's data
+ * sampling shares. The TCK only records latencies when the MessageLatencies setting is on. At most
+ * {@link #MAX_EDGE_NODES} edge nodes are timed separately, so that a large fleet can't use up the memory of the
+ * broker: the messages of later edge nodes are still timed by message type.
+ *
+ * This class is thread safe, as it records on the broker's threads.
+ *
+ * @author Ian Craggs
+ */
+class MessageLatencies {
+
+	static final int MAX_EDGE_NODES = 1000;
+
+	private static final byte[] TIMESTAMP = "\"timestamp\"".getBytes();
+
+	/**
+	 * The latencies of one kind of message.
+	 */
+	static final class Series {
+		private final LatencyHistogram histogram = new LatencyHistogram();
+		private final LongAdder ahead = new LongAdder();
+		private final LongAccumulator minimum = new LongAccumulator(Math::min, Long.MAX_VALUE);
+		private final LongAdder untimed = new LongAdder();
+
+		void record(final long millis) {
+			if (millis < 0) {
+				ahead.increment();
+				minimum.accumulate(millis);
+			} else {
+				histogram.record(TimeUnit.MILLISECONDS.toNanos(millis));
+			}
+		}
+
+		long getCount() {
+			return histogram.getCount() + ahead.sum() + untimed.sum();
+		}
+
+		void appendJson(final @NotNull StringBuilder json) {
+			json.append("{\"count\":").append(getCount());
+			json.append(",\"untimed\":").append(untimed.sum());
+			json.append(",\"ahead\":").append(ahead.sum());
+			if (ahead.sum() > 0) {
+				json.append(",\"minimumMs\":").append(minimum.get());
+			}
+			json.append(",\"meanMs\":").append(millis(histogram.getMean()));
+			json.append(",\"p50Ms\":").append(millis(histogram.getPercentile(0.5)));
+			json.append(",\"p90Ms\":").append(millis(histogram.getPercentile(0.9)));
+			json.append(",\"p99Ms\":").append(millis(histogram.getPercentile(0.99)));
+			json.append(",\"p999Ms\":").append(millis(histogram.getPercentile(0.999)));
+			json.append(",\"maxMs\":").append(millis(histogram.getMax())).append('}');
+		}
+
+		@Override
+		public String toString() {
+			final StringBuilder line = new StringBuilder();
+			line.append("count=").append(getCount()).append(", p50=").append(millis(histogram.getPercentile(0.5)));
+			line.append(" ms, p99=").append(millis(histogram.getPercentile(0.99)));
+			line.append(" ms, max=").append(millis(histogram.getMax())).append(" ms");
+			if (ahead.sum() > 0) {
+				line.append(", ahead=").append(ahead.sum()).append(" (minimum ").append(minimum.get()).append(" ms)");
+			}
+			if (untimed.sum() > 0) {
+				line.append(", untimed=").append(untimed.sum());
+			}
+			return line.toString();
+		}
+
+		private static long millis(final long nanos) {
+			return TimeUnit.NANOSECONDS.toMillis(nanos);
+		}
+	}
+
+	private volatile @NotNull Map<MessageType, Series> types = newTypes();
+	private volatile @NotNull ConcurrentHashMap<String, ConcurrentHashMap<String, Series>> groups =
+			new ConcurrentHashMap<>();
+	private final @NotNull LongAdder edgeNodeCount = new LongAdder();
+
+	/**
+	 * Records the latency of a received message. Messages on other than Sparkplug topics are ignored.
+	 *
+	 * @param envelope the received message
+	 */
+	public void record(final @NotNull PublishEnvelope envelope) {
+		final MessageType type = envelope.getMessageType();
+		if (type == null) {
+			return;
+		}
+		final Series byType = types.get(type);
+		final TopicTokenizer tokens = envelope.getTopicTokens();
+		final Series byNode =
+				(type == MessageType.STATE) ? null : edgeNode(tokens.getGroupId(), tokens.getEdgeNodeId());
+
+		final Long timestamp = getTimestamp(envelope, type);
+		if (timestamp == null) {
+			byType.untimed.increment();
+			if (byNode != null) {
+				byNode.untimed.increment();
+			}
+			return;
+		}
+		final long latency = envelope.getReceivedTimestamp() - timestamp;
+		byType.record(latency);
+		if (byNode != null) {
+			byNode.record(latency);
+		}
+	}
+
+	/**
+	 * Clears all the latencies, at the start of a test.
+	 */
+	public void reset() {
+		types = newTypes();
+		groups = new ConcurrentHashMap<>();
+		edgeNodeCount.reset();
+	}
+
+	/**
+	 * @return the latencies by message type, as a JSON object, followed by those by edge node, keyed by group/edge node
+	 */
+	public @NotNull String toJson(final @Nullable String testName) {
+		final StringBuilder json = new StringBuilder(256);
+		json.append("{\"test\":");
+		if (testName == null) {
+			json.append("null");
+		} else {
+			appendString(json, testName);
+		}
+		json.append(",\"timestamp\":").append(System.currentTimeMillis());
+		json.append(",\"messageTypes\":{");
+		boolean first = true;
+		for (final Map.Entry<MessageType, Series> entry : types.entrySet()) {
+			if (entry.getValue().getCount() > 0) {
+				json.append(first ? "" : ",").append('"').append(entry.getKey().name()).append("\":");
+				entry.getValue().appendJson(json);
+				first = false;
+			}
+		}
+		json.append("},\"edgeNodes\":{");
+		first = true;
+		for (final Map.Entry<String, ConcurrentHashMap<String, Series>> group : groups.entrySet()) {
+			for (final Map.Entry<String, Series> node : group.getValue().entrySet()) {
+				json.append(first ? "" : ",");
+				appendString(json, group.getKey() + "/" + node.getKey());
+				json.append(':');
+				node.getValue().appendJson(json);
+				first = false;
+			}
+		}
+		return json.append("}}").toString();
+	}
+
+	/**
+	 * @return one line for each message type received, for the results log
+	 */
+	public @NotNull String getSummary() {
+		final StringBuilder summary = new StringBuilder();
+		for (final Map.Entry<MessageType, Series> entry : types.entrySet()) {
+			if (entry.getValue().getCount() > 0) {
+				summary.append("Latency ").append(entry.getKey().name()).append(": ").append(entry.getValue())
+						.append(System.lineSeparator());
+			}
+		}
+		return summary.toString();
+	}
+
+	private @Nullable Series edgeNode(final @Nullable String groupId, final @Nullable String edgeNodeId) {
+		if (groupId == null || edgeNodeId == null) {
+			return null;
+		}
+		final ConcurrentHashMap<String, Series> nodes = groups.computeIfAbsent(groupId, g -> new ConcurrentHashMap<>());
+		Series series = nodes.get(edgeNodeId);
+		if (series == null) {
+			if (edgeNodeCount.sum() >= MAX_EDGE_NODES) {
+				return null;
+			}
+			series = nodes.computeIfAbsent(edgeNodeId, n -> {
+				edgeNodeCount.increment();
+				return new Series();
+			});
+		}
+		return series;
+	}
+
+	private static @NotNull Map<MessageType, Series> newTypes() {
+		final Map<MessageType, Series> types = new EnumMap<>(MessageType.class);
+		for (final MessageType type : MessageType.values()) {
+			types.put(type, new Series());
+		}
+		return types;
+	}
+
+	private static @Nullable Long getTimestamp(final @NotNull PublishEnvelope envelope, final MessageType type) {
+		if (type == MessageType.STATE) {
+			final ByteBuffer buffer = envelope.getPacket().getPayload().orElse(null);
+			return (buffer == null) ? null : getStateTimestamp(buffer.duplicate());
+		}
+		final PayloadOrBuilder header = envelope.getPayloadHeader();
+		return (header != null && header.hasTimestamp()) ? header.getTimestamp() : null;
+	}
+
+	/**
+	 * Finds the timestamp of a STATE payload, {"online" : true, "timestamp" : 1668114759262}, without a JSON parser.
+	 */
+	static @Nullable Long getStateTimestamp(final @NotNull ByteBuffer buffer) {
+		final int start = buffer.position();
+		final int end = buffer.limit();
+		outer: for (int i = start; i <= end - TIMESTAMP.length; i++) {
+			for (int j = 0; j < TIMESTAMP.length; j++) {
+				if (buffer.get(i + j) != TIMESTAMP[j]) {
+					continue outer;
+				}
+			}
+			int k = i + TIMESTAMP.length;
+			while (k < end && (buffer.get(k) == ' ' || buffer.get(k) == ':')) {
+				k++;
+			}
+			long value = 0;
+			int digits = 0;
+			while (k < end && buffer.get(k) >= '0' && buffer.get(k) <= '9' && digits < 18) {
+				value = value * 10 + (buffer.get(k++) - '0');
+				digits++;
+			}
+			return (digits == 0) ? null : value;
+		}
+		return null;
+	}
+
+	private static void appendString(final @NotNull StringBuilder json, final @NotNull String value) {
+		json.append('"');
+		for (int i = 0; i < value.length(); i++) {
+			final char c = value.charAt(i);
+			if (c == '"' || c == '\\') {
+				json.append('\\').append(c);
+			} else if (c < 0x20) {
+				json.append(String.format("\\u%04x", (int) c));
+			} else {
+				json.append(c);
+			}
+		}
+		json.append('"');
+	}
+}
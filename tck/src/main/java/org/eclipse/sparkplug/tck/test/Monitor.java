@@ -15,14 +15,7 @@ package org.eclipse.sparkplug.tck.test;
 
 import static org.eclipse.sparkplug.tck.test.common.Constants.FAIL;
 import static org.eclipse.sparkplug.tck.test.common.Constants.NOT_EXECUTED;
-import static org.eclipse.sparkplug.tck.test.common.Constants.TOPIC_PATH_DBIRTH;
-import static org.eclipse.sparkplug.tck.test.common.Constants.TOPIC_PATH_DDATA;
-import static org.eclipse.sparkplug.tck.test.common.Constants.TOPIC_PATH_DDEATH;
-import static org.eclipse.sparkplug.tck.test.common.Constants.TOPIC_PATH_NBIRTH;
-import static org.eclipse.sparkplug.tck.test.common.Constants.TOPIC_PATH_NDATA;
 import static org.eclipse.sparkplug.tck.test.common.Constants.TOPIC_PATH_NDEATH;
-import static org.eclipse.sparkplug.tck.test.common.Constants.TOPIC_PATH_STATE;
-import static org.eclipse.sparkplug.tck.test.common.Constants.TOPIC_ROOT_SP_BV_1_0;
 import static org.eclipse.sparkplug.tck.test.common.Requirements.CASE_SENSITIVITY_SPARKPLUG_IDS;
 import static org.eclipse.sparkplug.tck.test.common.Requirements.HOST_TOPIC_PHID_BIRTH_PAYLOAD;
 import static org.eclipse.sparkplug.tck.test.common.Requirements.HOST_TOPIC_PHID_DEATH_PAYLOAD_TIMESTAMP_CONNECT;
@@ -47,6 +40,7 @@ import static org.eclipse.sparkplug.tck.test.common.Requirements.ID_OPERATIONAL_
 import static org.eclipse.sparkplug.tck.test.common.Requirements.ID_OPERATIONAL_BEHAVIOR_DATA_PUBLISH_NBIRTH_ORDER;
 import static org.eclipse.sparkplug.tck.test.common.Requirements.ID_OPERATIONAL_BEHAVIOR_HOST_APPLICATION_CONNECT_WILL_PAYLOAD;
 import static org.eclipse.sparkplug.tck.test.common.Requirements.ID_OPERATIONAL_BEHAVIOR_HOST_APPLICATION_HOST_ID;
+import static org.eclipse.sparkplug.tck.test.common.Requirements.ID_PAYLOADS_ALIAS_UNIQUENESS;
 import static org.eclipse.sparkplug.tck.test.common.Requirements.ID_PAYLOADS_DBIRTH_SEQ_INC;
 import static org.eclipse.sparkplug.tck.test.common.Requirements.ID_PAYLOADS_DDATA_SEQ_INC;
 import static org.eclipse.sparkplug.tck.test.common.Requirements.ID_PAYLOADS_DDEATH_SEQ_INC;
@@ -88,6 +82,7 @@ import static org.eclipse.sparkplug.tck.test.common.Requirements.OPERATIONAL_BEH
 import static org.eclipse.sparkplug.tck.test.common.Requirements.OPERATIONAL_BEHAVIOR_DATA_PUBLISH_NBIRTH_ORDER;
 import static org.eclipse.sparkplug.tck.test.common.Requirements.OPERATIONAL_BEHAVIOR_HOST_APPLICATION_CONNECT_WILL_PAYLOAD;
 import static org.eclipse.sparkplug.tck.test.common.Requirements.OPERATIONAL_BEHAVIOR_HOST_APPLICATION_HOST_ID;
+import static org.eclipse.sparkplug.tck.test.common.Requirements.PAYLOADS_ALIAS_UNIQUENESS;
 import static org.eclipse.sparkplug.tck.test.common.Requirements.PAYLOADS_DBIRTH_SEQ_INC;
 import static org.eclipse.sparkplug.tck.test.common.Requirements.PAYLOADS_DDATA_SEQ_INC;
 import static org.eclipse.sparkplug.tck.test.common.Requirements.PAYLOADS_DDEATH_SEQ_INC;
@@ -121,20 +116,27 @@ import static org.eclipse.sparkplug.tck.test.common.Utils.setResultIfNotFail;
 import static org.eclipse.sparkplug.tck.test.common.Utils.setShouldResultIfNotFail;
 
 import java.nio.charset.StandardCharsets;
-import java.util.HashMap;
 import java.util.HashSet;
 import java.util.List;
 import java.util.ListIterator;
 import java.util.Map;
 import java.util.Optional;
-import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
 
 import org.eclipse.sparkplug.tck.sparkplug.Sections;
-import org.eclipse.sparkplug.tck.test.common.Constants;
+import org.eclipse.sparkplug.impl.exception.model.IdentifierPool;
+import org.eclipse.sparkplug.impl.exception.model.MessageType;
+import org.eclipse.sparkplug.impl.exception.model.MetricView;
+import org.eclipse.sparkplug.impl.exception.model.SparkplugBPayloadView;
+import org.eclipse.sparkplug.impl.exception.model.TopicTokenizer;
+import org.eclipse.sparkplug.tck.test.common.PublishEnvelope;
+import org.eclipse.sparkplug.tck.test.common.ResultTable;
 import org.eclipse.sparkplug.tck.test.common.SparkplugBProto.DataType;
 import org.eclipse.sparkplug.tck.test.common.SparkplugBProto.Payload.Metric;
 import org.eclipse.sparkplug.tck.test.common.SparkplugBProto.Payload.Template;
 import org.eclipse.sparkplug.tck.test.common.SparkplugBProto.PayloadOrBuilder;
+import org.eclipse.sparkplug.tck.test.common.StageMetrics;
+import org.eclipse.sparkplug.tck.test.common.StageMetrics.Stage;
 import org.eclipse.sparkplug.tck.test.common.Utils;
 import org.jboss.test.audit.annotations.SpecAssertion;
 import org.jboss.test.audit.annotations.SpecVersion;
@@ -167,8 +169,7 @@ public class Monitor extends TCKTest implements ClientLifecycleEventListener {
 
 	private static Logger logger = LoggerFactory.getLogger("Sparkplug");
 	protected static final String TEST_FAILED_FOR_ASSERTION = "Monitor: Test failed for assertion ";
-	private static final @NotNull String NAMESPACE = TOPIC_ROOT_SP_BV_1_0;
-	private final TreeMap<String, String> testResults = new TreeMap<>();
+	private final ResultTable testResults = new ResultTable();
 	private final @NotNull List<String> testIds = List.of(ID_INTRO_EDGE_NODE_ID_UNIQUENESS,
 			ID_TOPIC_STRUCTURE_NAMESPACE_DUPLICATE_DEVICE_ID_ACROSS_EDGE_NODE,
 			ID_TOPIC_STRUCTURE_NAMESPACE_UNIQUE_EDGE_NODE_DESCRIPTOR, ID_TOPIC_STRUCTURE_NAMESPACE_UNIQUE_DEVICE_ID,
@@ -189,54 +190,56 @@ public class Monitor extends TCKTest implements ClientLifecycleEventListener {
 			ID_TOPIC_STRUCTURE_NAMESPACE_VALID_DEVICE_ID,
 			ID_MESSAGE_FLOW_EDGE_NODE_BIRTH_PUBLISH_WILL_MESSAGE_PAYLOAD_BDSEQ, ID_HOST_TOPIC_PHID_BIRTH_PAYLOAD,
 			ID_PAYLOADS_NDATA_SEQ_INC, ID_PAYLOADS_DDATA_SEQ_INC, ID_TOPIC_STRUCTURE_NAMESPACE_A,
-			ID_PAYLOADS_DDEATH_SEQ_INC, ID_PAYLOADS_NBIRTH_SEQ,
+			ID_PAYLOADS_DDEATH_SEQ_INC, ID_PAYLOADS_NBIRTH_SEQ, ID_PAYLOADS_ALIAS_UNIQUENESS,
 			ID_MESSAGE_FLOW_DEVICE_BIRTH_PUBLISH_DBIRTH_PAYLOAD_SEQ);
 
+	// The Monitor is called from many broker threads at once. Edge node session state lives in
+	// shards, one lock per shard, and the state shared by all edge nodes is held in concurrent maps.
+
 	// edge_node_id to clientid
-	private HashMap<String, String> edge_nodes = new HashMap<>();
+	private final ConcurrentHashMap<String, String> edge_nodes = new ConcurrentHashMap<>();
 
 	// clientid to edge_node_id
-	private HashMap<String, String> clientids = new HashMap<>();
-
-	// edge_node_id to device_id
-	private HashMap<String, HashSet<String>> edge_to_devices = new HashMap<>();
-
-	// edge_node_id to sequence number
-	private HashMap<String, Long> edgeBdSeqs = new HashMap<String, Long>();
-
-	// edge_node_id to last sequence number
-	private HashMap<String, Long> edgeSeqs = new HashMap<>();
-
-	private HashMap<String, List<Metric>> edgeBirthMetrics = new HashMap<String, List<Metric>>();
-	private HashMap<String, List<Metric>> deviceBirthMetrics = new HashMap<String, List<Metric>>();
+	private final ConcurrentHashMap<String, String> clientids = new ConcurrentHashMap<>();
 
-	private HashMap<String, List<Metric>> edgeLastMetrics = new HashMap<String, List<Metric>>();
-	private HashMap<String, List<Metric>> deviceLastMetrics = new HashMap<String, List<Metric>>();
+	// template definitions, interned across all edge nodes for the current test
+	private final TemplateRegistry templates = new TemplateRegistry();
 
-	private HashMap<String, Map<Long, String>> edgeAliasMaps = new HashMap<>();
+	// devices, sequence numbers and births, by edge node
+	private final EdgeNodeShards shards = new EdgeNodeShards(templates);
 
 	// host application id to sequence number
-	private HashMap<String, Long> hostTimestamps = new HashMap<String, Long>();
+	private final ConcurrentHashMap<String, Long> hostTimestamps = new ConcurrentHashMap<String, Long>();
 
 	// host application id to MQTT client id
-	HashMap<String, String> hostClientids = new HashMap<String, String>();
+	final ConcurrentHashMap<String, String> hostClientids = new ConcurrentHashMap<String, String>();
+
+	// the ids of births and the keys made from them, with their lower case forms
+	private final IdentifierPool identifiers = IdentifierPool.getShared();
 
 	// device/edge ids lowercase to original
-	HashMap<String, String> lowerGroupIds = new HashMap<String, String>();
-	HashMap<String, String> lowerEdgeIds = new HashMap<String, String>();
-	HashMap<String, String> lowerDeviceIds = new HashMap<String, String>();
+	final ConcurrentHashMap<String, String> lowerGroupIds = new ConcurrentHashMap<String, String>();
+	final ConcurrentHashMap<String, String> lowerEdgeIds = new ConcurrentHashMap<String, String>();
+	final ConcurrentHashMap<String, String> lowerDeviceIds = new ConcurrentHashMap<String, String>();
 
-	private Results results = null;
+	private final Results.Config config;
 
-	private boolean ignoreBdSeqNumCheck = false;
+	private volatile boolean ignoreBdSeqNumCheck = false;
 
-	private boolean ignoreSeqNumCheck = false;
+	private volatile boolean ignoreSeqNumCheck = false;
 
-	private boolean ignoreDupHostCheck = false;
+	private volatile boolean ignoreDupHostCheck = false;
 
 	public Monitor(Results results) {
+		this(results.getConfig());
+	}
+
+	/**
+	 * @param config the TCK configuration, which may be changed while the Monitor runs
+	 */
+	public Monitor(Results.Config config) {
 		logger.info("Sparkplug TCK message monitor 1.0");
-		this.results = results;
+		this.config = config;
 		clearResults();
 	}
 
@@ -248,6 +251,9 @@ public class Monitor extends TCKTest implements ClientLifecycleEventListener {
 
 	public void startTest() {
 		clearResults();
+		// the definitions and identifiers of the births of earlier tests are no longer shared
+		templates.clear();
+		identifiers.clear();
 	}
 
 	public void endTest(Map<String, String> results) {
@@ -281,17 +287,49 @@ public class Monitor extends TCKTest implements ClientLifecycleEventListener {
 	public boolean hasDevice(String groupId, String edgeNodeId, String deviceId) {
 		logger.info("Monitor edge {} ", edge_nodes.keySet().toString());
 		String edgeId = groupId + ":" + edgeNodeId;
-		return edge_to_devices.containsKey(edgeId) && edge_to_devices.get(edgeId).contains(deviceId);
+		EdgeNodeShards.Shard shard = shards.get(edgeId);
+		synchronized (shard) {
+			return shard.edge_to_devices.containsKey(edgeId) && shard.edge_to_devices.get(edgeId).contains(deviceId);
+		}
 	}
 
-	public TreeMap<String, String> getResults() {
-		TreeMap<String, String> labelledResults = new TreeMap<>();
-		for (int i = 0; i < testIds.size(); ++i) {
-			if (testResults.containsKey(testIds.get(i))) {
-				labelledResults.put("Monitor:" + testIds.get(i), testResults.get(testIds.get(i)));
+	/**
+	 * @return the results, labelled as the Monitor's, formatted when they are read
+	 */
+	public Map<String, String> getResults() {
+		return testResults.labelled("Monitor:");
+	}
+
+	/**
+	 * Called by the validation pipeline, in order with the client's other events, when data messages from the client
+	 * were discarded and not validated. The next sequence number of the client's edge node is not compared with the
+	 * last one seen, and its last metric values are forgotten, so that the gap is not reported as a failure.
+	 *
+	 * @param clientId the MQTT client id of the edge node
+	 */
+	public void dataGap(String clientId) {
+		String edge_node_id = clientids.get(clientId);
+		if (edge_node_id != null) {
+			logger.debug("Monitor: data messages of edge node {} were not validated", edge_node_id);
+			EdgeNodeShards.Shard shard = shards.get(edge_node_id);
+			synchronized (shard) {
+				shard.dataGaps.add(edge_node_id);
 			}
 		}
-		return labelledResults;
+	}
+
+	/**
+	 * Takes the gap left by data messages of an edge node which were not validated, if there is one. Called with the
+	 * shard locked.
+	 *
+	 * @return true if there was a gap, so the sequence number can't be compared with the last one seen
+	 */
+	private boolean takeDataGap(EdgeNodeShards.Shard shard, String group_id, String edge_node_id) {
+		if (shard.dataGaps.isEmpty() || !shard.dataGaps.remove(edge_node_id)) {
+			return false;
+		}
+		shard.births.clearEdgeNodeLastMetrics(group_id + "/" + edge_node_id);
+		return true;
 	}
 
 	@Override
@@ -323,22 +361,20 @@ public class Monitor extends TCKTest implements ClientLifecycleEventListener {
 				logger.error("Monitor: Error removing edge_node_id {} on disconnect", edge_node_id);
 			}
 
-			HashSet<String> devices = (HashSet<String>) edge_to_devices.get(edge_node_id);
-			logger.debug("Monitor: devices for edge_node_id {} were {}", edge_node_id, devices);
-			if (edge_to_devices.remove(edge_node_id) == null) {
-				logger.error("Monitor: Error removing edge_node_id {} from edge_to_devices on disconnect",
-						edge_node_id);
+			EdgeNodeShards.Shard shard = shards.get(edge_node_id);
+			synchronized (shard) {
+				HashSet<String> devices = (HashSet<String>) shard.edge_to_devices.get(edge_node_id);
+				logger.debug("Monitor: devices for edge_node_id {} were {}", edge_node_id, devices);
+				if (shard.edge_to_devices.remove(edge_node_id) == null) {
+					logger.error("Monitor: Error removing edge_node_id {} from edge_to_devices on disconnect",
+							edge_node_id);
+				}
 			}
 		}
 
-		if (hostClientids.values().contains(clientid)) {
+		synchronized (hostClientids) {
 			// remove hostid - clientid relation
-			for (String hostid : hostClientids.keySet()) {
-				if (hostClientids.get(hostid).equals(clientid)) {
-					hostClientids.remove(hostid);
-					break;
-				}
-			}
+			hostClientids.values().remove(clientid);
 		}
 	}
 
@@ -370,44 +406,48 @@ public class Monitor extends TCKTest implements ClientLifecycleEventListener {
 		if (willPublishPacketOptional.isPresent()) {
 			WillPublishPacket willPublishPacket = willPublishPacketOptional.get();
 			String willTopic = willPublishPacket.getTopic();
-			String[] levels = willTopic.split("/");
-			if (levels.length >= 3 && levels[2].equals(TOPIC_PATH_NDEATH)) {
+			TopicTokenizer levels = new TopicTokenizer(willTopic);
+			if (levels.getLevelCount() >= 3 && levels.levelEquals(2, TOPIC_PATH_NDEATH)) {
 
 				// this is an edge node connect
 				PayloadOrBuilder payload = getSparkplugPayload(willPublishPacket);
 
 				List<Metric> metrics = payload.getMetricsList();
-				String id = levels[1] + "/" + levels[3]; // group_id + edge_node_id
-				ListIterator<Metric> metricIterator = metrics.listIterator();
-				while (metricIterator.hasNext()) {
-					Metric current = metricIterator.next();
-					if (current.getName().equals("bdSeq") && current.hasLongValue()) {
-						long bdseq = current.getLongValue();
-						if (edgeBdSeqs.get(id) != null) {
-							if (!ignoreBdSeqNumCheck) {
-								if (!setResultIfNotFail(testResults, bdseq == getNextSeq(edgeBdSeqs.get(id)),
-										ID_TOPICS_NBIRTH_BDSEQ_INCREMENT, TOPICS_NBIRTH_BDSEQ_INCREMENT)) {
-									log(TEST_FAILED_FOR_ASSERTION + ID_TOPICS_NBIRTH_BDSEQ_INCREMENT + ": edge id: "
-											+ id);
-									log("INFO: Actual bdseq: " + bdseq + " expected bdseq: "
-											+ getNextSeq(edgeBdSeqs.get(id)));
-								}
-								if (!setResultIfNotFail(testResults, bdseq == getNextSeq(edgeBdSeqs.get(id)),
-										ID_MESSAGE_FLOW_EDGE_NODE_BIRTH_PUBLISH_WILL_MESSAGE_PAYLOAD_BDSEQ,
-										MESSAGE_FLOW_EDGE_NODE_BIRTH_PUBLISH_WILL_MESSAGE_PAYLOAD_BDSEQ)) {
-									log(TEST_FAILED_FOR_ASSERTION
-											+ ID_MESSAGE_FLOW_EDGE_NODE_BIRTH_PUBLISH_WILL_MESSAGE_PAYLOAD_BDSEQ
-											+ ": edge id: " + id);
-									log("INFO: Actual bdseq: " + bdseq + " expected bdseq: "
-											+ getNextSeq(edgeBdSeqs.get(id)));
+				String id = levels.getLevel(1) + "/" + levels.getLevel(3); // group_id + edge_node_id
+				EdgeNodeShards.Shard shard = shards.get(levels.getLevel(1) + ":" + levels.getLevel(3));
+				synchronized (shard) {
+					ListIterator<Metric> metricIterator = metrics.listIterator();
+					while (metricIterator.hasNext()) {
+						Metric current = metricIterator.next();
+						if (current.getName().equals("bdSeq") && current.hasLongValue()) {
+							long bdseq = current.getLongValue();
+							Long lastBdSeq = shard.edgeBdSeqs.get(id);
+							if (lastBdSeq != null) {
+								if (!ignoreBdSeqNumCheck) {
+									if (!setResultIfNotFail(testResults, bdseq == getNextSeq(lastBdSeq),
+											ID_TOPICS_NBIRTH_BDSEQ_INCREMENT, TOPICS_NBIRTH_BDSEQ_INCREMENT)) {
+										log(TEST_FAILED_FOR_ASSERTION + ID_TOPICS_NBIRTH_BDSEQ_INCREMENT
+												+ ": edge id: " + id);
+										log("INFO: Actual bdseq: " + bdseq + " expected bdseq: "
+												+ getNextSeq(lastBdSeq));
+									}
+									if (!setResultIfNotFail(testResults, bdseq == getNextSeq(lastBdSeq),
+											ID_MESSAGE_FLOW_EDGE_NODE_BIRTH_PUBLISH_WILL_MESSAGE_PAYLOAD_BDSEQ,
+											MESSAGE_FLOW_EDGE_NODE_BIRTH_PUBLISH_WILL_MESSAGE_PAYLOAD_BDSEQ)) {
+										log(TEST_FAILED_FOR_ASSERTION
+												+ ID_MESSAGE_FLOW_EDGE_NODE_BIRTH_PUBLISH_WILL_MESSAGE_PAYLOAD_BDSEQ
+												+ ": edge id: " + id);
+										log("INFO: Actual bdseq: " + bdseq + " expected bdseq: "
+												+ getNextSeq(lastBdSeq));
+									}
 								}
 							}
+							shard.edgeBdSeqs.put(id, bdseq);
 						}
-						edgeBdSeqs.put(id, bdseq);
 					}
 				}
-			} else if (levels[0].equals(TOPIC_ROOT_SP_BV_1_0) && levels[1].equals(TOPIC_PATH_STATE)) {
-				String hostid = levels[2];
+			} else if (levels.isSparkplugB() && levels.isState()) {
+				String hostid = levels.getLevel(2);
 				ObjectMapper mapper = new ObjectMapper();
 				String payloadString = StandardCharsets.UTF_8.decode(willPublishPacket.getPayload().get()).toString();
 				boolean isValidPayload = true;
@@ -426,7 +466,7 @@ public class Monitor extends TCKTest implements ClientLifecycleEventListener {
 						JsonNode timestampNode = json.get("timestamp");
 						long timestamp = -1;
 						if (timestampNode.isLong()
-								&& Utils.checkUTC(timestampNode.longValue(), results.getConfig().UTCwindow)) {
+								&& Utils.checkUTC(timestampNode.longValue(), config.UTCwindow)) {
 							timestamp = timestampNode.longValue();
 						} else {
 							setResultIfNotFail(testResults, false, ID_HOST_TOPIC_PHID_BIRTH_PAYLOAD,
@@ -438,7 +478,7 @@ public class Monitor extends TCKTest implements ClientLifecycleEventListener {
 
 						if (!setResultIfNotFail(testResults,
 								timestampNode.isLong()
-										&& Utils.checkUTC(timestampNode.longValue(), results.getConfig().UTCwindow),
+										&& Utils.checkUTC(timestampNode.longValue(), config.UTCwindow),
 								ID_HOST_TOPIC_PHID_DEATH_PAYLOAD_TIMESTAMP_CONNECT,
 								HOST_TOPIC_PHID_DEATH_PAYLOAD_TIMESTAMP_CONNECT)) {
 							log(TEST_FAILED_FOR_ASSERTION + ID_HOST_TOPIC_PHID_DEATH_PAYLOAD_TIMESTAMP_CONNECT
@@ -501,75 +541,178 @@ public class Monitor extends TCKTest implements ClientLifecycleEventListener {
 			id = ID_TOPIC_STRUCTURE_NAMESPACE_A)
 	@Override
 	public void publish(String clientId, PublishPacket packet) {
+		publish(clientId, packet, new PublishEnvelope(clientId, packet));
+	}
+
+	@Override
+	public void publish(String clientId, PublishPacket packet, PublishEnvelope envelope) {
 
-		String topic = packet.getTopic();
+		TopicTokenizer topicTokens = envelope.getTopicTokens();
 
-		if (topic.startsWith("spAv1.0/")) {
+		if (topicTokens.isSparkplugA()) {
 			log("Warning - non-standard Sparkplug A message received");
 			testResult(ID_TOPIC_STRUCTURE_NAMESPACE_A, setResult(false, TOPIC_STRUCTURE_NAMESPACE_A));
-		} else if (topic.startsWith(NAMESPACE)) {
-			String[] topicParts = topic.split("/");
+		} else if (topicTokens.isSparkplugB()) {
 			// topic is spBv1.0/group_id/message_type/edge_node_id/[device_id]"
 			// or spBv1.0/STATE/hostid
 
-			checkTopic(topicParts);
+			checkTopic(topicTokens);
 
-			if (topicParts.length > 5 || topicParts.length < 3) {
+			int levels = topicTokens.getLevelCount();
+			if (levels > 5 || levels < 3) {
 				return;
 			}
 
-			if (topicParts.length == 3 && Constants.TOPIC_PATH_STATE.equals(topicParts[1])) {
+			if (levels == 3 && topicTokens.isState()) {
 				if (packet.getPayload().isPresent()) {
 					String payloadString = StandardCharsets.UTF_8.decode(packet.getPayload().get()).toString();
-					handleSTATE(clientId, topic, payloadString);
+					final long start = StageMetrics.start();
+					handleSTATE(clientId, topicTokens.getHostApplicationId(), payloadString);
+					StageMetrics.record(Stage.HANDLE_STATE, start);
 				}
 				return;
 			}
 
-			String device_id = null;
-			String group_id = topicParts[1];
-			String message_type = topicParts[2];
-			String edge_node_id = topicParts[3];
-			if (topicParts.length == 5) {
-				device_id = topicParts[topicParts.length - 1];
+			if (levels < 4) {
+				return;
 			}
 
+			String group_id = topicTokens.getGroupId();
+			MessageType message_type = topicTokens.getMessageType();
+			String edge_node_id = topicTokens.getEdgeNodeId();
+			String device_id = topicTokens.getDeviceId();
+
 			// Uniqueness for edge node ids is within group id, so
 			// we add the group_id to the edge node id as a shortcut to make it so.
 			edge_node_id = group_id + ":" + edge_node_id;
 
-			PayloadOrBuilder payload = getSparkplugPayload(packet);
+			// all the messages of an edge node and its devices are checked under the lock of its shard
+			EdgeNodeShards.Shard shard = shards.get(edge_node_id);
+
+			int dataSampleRate = config.monitorDataSampleRate;
+			if (dataSampleRate > 1 && (message_type == MessageType.NDATA || message_type == MessageType.DDATA)) {
+				synchronized (shard) {
+					if (passOverData(shard, group_id, edge_node_id, device_id, envelope, dataSampleRate)) {
+						return;
+					}
+				}
+			}
+
+			PayloadOrBuilder payload = envelope.getPayload();
 
 			if (payload.hasTimestamp()) {
-				setResultIfNotFail(testResults, checkUTC(payload.getTimestamp(), results.getConfig().UTCwindow),
+				setResultIfNotFail(testResults, checkUTC(payload.getTimestamp(), config.UTCwindow),
 						ID_PAYLOADS_TIMESTAMP_IN_UTC, PAYLOADS_TIMESTAMP_IN_UTC);
 			}
 
-			// if we have more than one MQTT client id with the same edge node id then it's an error
-			if (message_type.equals(TOPIC_PATH_NBIRTH)) {
-				handleNBIRTH(group_id, edge_node_id, clientId, payload);
-			} else if (message_type.equals(TOPIC_PATH_NDEATH)) {
-				handleNDEATH(group_id, edge_node_id, clientId);
-			} else if (message_type.equals(TOPIC_PATH_NDATA)) {
-				handleNDATA(group_id, edge_node_id, payload);
-			} else if (message_type.equals(TOPIC_PATH_DBIRTH)) {
-				handleDBIRTH(group_id, edge_node_id, device_id, payload);
-			} else if (message_type.equals(TOPIC_PATH_DDEATH)) {
-				handleDDEATH(group_id, edge_node_id, device_id, payload);
-			} else if (message_type.equals(TOPIC_PATH_DDATA)) {
-				handleDDATA(group_id, edge_node_id, device_id, payload);
+			synchronized (shard) {
+				// timed inside the lock, so that the time spent waiting for the shard is not counted
+				final long start = StageMetrics.start();
+				// if we have more than one MQTT client id with the same edge node id then it's an error
+				if (message_type == MessageType.NBIRTH) {
+					handleNBIRTH(shard, group_id, edge_node_id, clientId, payload);
+					StageMetrics.record(Stage.HANDLE_NBIRTH, start);
+				} else if (message_type == MessageType.NDEATH) {
+					handleNDEATH(shard, group_id, edge_node_id, clientId);
+				} else if (message_type == MessageType.NDATA) {
+					handleNDATA(shard, group_id, edge_node_id, payload);
+					StageMetrics.record(Stage.HANDLE_NDATA, start);
+				} else if (message_type == MessageType.DBIRTH) {
+					handleDBIRTH(shard, group_id, edge_node_id, device_id, payload);
+					StageMetrics.record(Stage.HANDLE_DBIRTH, start);
+				} else if (message_type == MessageType.DDEATH) {
+					handleDDEATH(shard, group_id, edge_node_id, device_id, payload);
+				} else if (message_type == MessageType.DDATA) {
+					handleDDATA(shard, group_id, edge_node_id, device_id, payload);
+					StageMetrics.record(Stage.HANDLE_DDATA, start);
+				} else {
+					logger.info("Monitor: *** {} *** {}/{} {}", topicTokens.getLevel(2), group_id, edge_node_id,
+							(device_id == null) ? "" : device_id);
+				}
+			}
+		}
+	}
+
+	/**
+	 * The sampling policy for data messages. BIRTH, DEATH and STATE messages are always validated. Of the NDATA and
+	 * DDATA messages of an edge node and its devices, one in every dataSampleRate is validated in full, starting with
+	 * the first after each NBIRTH. The others are read through a view of the payload, which decodes their timestamp
+	 * and sequence number, so that the sequence number is still tracked for every message, and the name or alias of
+	 * each metric, which must be in the birth certificate. A message which shows a gap in the sequence numbers is
+	 * always validated in full, so that the gap is reported. The view is kept by the envelope, so the payload is not
+	 * read again for the message latencies.
+	 *
+	 * The metric values of a message passed over are not recorded, so the last values of its edge node or device are
+	 * forgotten. Otherwise the next message validated in full would be compared with values several messages old, and
+	 * a metric which changed and changed back would be reported as unchanged.
+	 *
+	 * @return true if the message has been passed over, and needs no further checks
+	 */
+	private boolean passOverData(EdgeNodeShards.Shard shard, String group_id, String edge_node_id, String device_id,
+			PublishEnvelope envelope, int dataSampleRate) {
+		if (shard.sampleData(edge_node_id, dataSampleRate)) {
+			return false;
+		}
+		SparkplugBPayloadView view = envelope.getPayloadView();
+		if (view == null || !view.hasSeq()) {
+			return false;
+		}
+		String id = group_id + "/" + edge_node_id;
+		Long lastSeq = shard.edgeSeqs.get(id);
+		if (lastSeq == null || view.getSeq() != getNextSeq(lastSeq)) {
+			return false;
+		}
+		String metricsId = (device_id == null) ? id : id + "/" + device_id;
+		try {
+			checkBirthMetricNames(shard, metricsId, device_id == null, view);
+		} catch (IllegalStateException e) {
+			// a malformed metric is reported by the full validation
+			return false;
+		}
+		shard.edgeSeqs.put(id, view.getSeq());
+		shard.births.clearLastMetrics(metricsId);
+		if (view.hasTimestamp() && !checkUTC(view.getTimestamp(), config.UTCwindow)) {
+			setResultIfNotFail(testResults, false, ID_PAYLOADS_TIMESTAMP_IN_UTC, PAYLOADS_TIMESTAMP_IN_UTC);
+		}
+		return true;
+	}
+
+	/**
+	 * Checks that every metric of a data message passed over is in the birth certificate of its edge node or device,
+	 * as handleNDATA and handleDDATA do for a message validated in full. Only the name or alias of each metric is read.
+	 *
+	 * @throws IllegalStateException if a metric is not a valid protobuf encoding
+	 */
+	private void checkBirthMetricNames(EdgeNodeShards.Shard shard, String id, boolean edgeNode,
+			SparkplugBPayloadView view) {
+		BirthRegistry.Birth birth = shard.births.getBirth(id);
+		if (birth == null) {
+			return;
+		}
+		for (MetricView metric : view.getMetrics()) {
+			String name = shard.births.resolveName(id, metric);
+			if (birth.hasMetric(name)) {
+				continue;
+			}
+			if (edgeNode) {
+				setResultIfNotFail(testResults, false, ID_TOPICS_NBIRTH_METRIC_REQS, TOPICS_NBIRTH_METRIC_REQS);
+				setResultIfNotFail(testResults, false, ID_OPERATIONAL_BEHAVIOR_DATA_PUBLISH_NBIRTH,
+						OPERATIONAL_BEHAVIOR_DATA_PUBLISH_NBIRTH);
+				log(TEST_FAILED_FOR_ASSERTION + ID_TOPICS_NBIRTH_METRIC_REQS + ": metric name: " + name);
+				log(TEST_FAILED_FOR_ASSERTION + ID_OPERATIONAL_BEHAVIOR_DATA_PUBLISH_NBIRTH + ": metric name: " + name);
 			} else {
-				logger.info("Monitor: *** {} *** {}/{} {}", message_type, group_id, edge_node_id,
-						(device_id == null) ? "" : device_id);
+				setResultIfNotFail(testResults, false, ID_TOPICS_DBIRTH_METRIC_REQS, TOPICS_DBIRTH_METRIC_REQS);
+				setResultIfNotFail(testResults, false, ID_OPERATIONAL_BEHAVIOR_DATA_PUBLISH_DBIRTH,
+						OPERATIONAL_BEHAVIOR_DATA_PUBLISH_DBIRTH);
+				log(TEST_FAILED_FOR_ASSERTION + ID_TOPICS_DBIRTH_METRIC_REQS + ": metric name: " + name);
+				log(TEST_FAILED_FOR_ASSERTION + ID_OPERATIONAL_BEHAVIOR_DATA_PUBLISH_DBIRTH + ": metric name: " + name);
 			}
 		}
 	}
 
 	private void testResult(String id, String state) {
 		// Don't override a failing test fail
-		if (testResults.get(id) != null && !((String) testResults.get(id)).startsWith(FAIL)) {
-			testResults.put(id, state);
-		}
+		testResults.replaceIfNotFail(id, state);
 	}
 
 	@SpecAssertion(
@@ -608,40 +751,37 @@ public class Monitor extends TCKTest implements ClientLifecycleEventListener {
 	@SpecAssertion(
 			section = Sections.TOPICS_DEVICE_ID_ELEMENT,
 			id = ID_TOPIC_STRUCTURE_NAMESPACE_DEVICE_ID_NON_ASSOCIATED_MESSAGE_TYPES)
-	public void checkTopic(String[] elements) {
+	public void checkTopic(TopicTokenizer topicTokens) {
 		Boolean result = false;
-		if (elements[0].equals(TOPIC_ROOT_SP_BV_1_0) && elements[1].equals(TOPIC_PATH_STATE)) {
-			if (elements.length == 3) {
+		int levels = topicTokens.getLevelCount();
+		if (topicTokens.isSparkplugB() && topicTokens.isState()) {
+			if (levels == 3) {
 				result = true;
 			}
 			testResult(ID_TOPIC_STRUCTURE, setResult(result, TOPIC_STRUCTURE));
 		} else {
-			if (elements.length < 4) {
+			if (levels < 4) {
 				testResult(ID_TOPIC_STRUCTURE, setResult(false, "(too few topic elements)"));
 			} else {
-				String namespace = elements[0];
-				String group_id = elements[1];
-				String message_type = elements[2];
-				String edge_node_id = elements[3];
-				String device_id = null;
-				if (elements.length >= 5) {
-					device_id = elements[4];
-				}
+				String group_id = topicTokens.getGroupId();
+				MessageType message_type = topicTokens.getMessageType();
+				String edge_node_id = topicTokens.getEdgeNodeId();
+				String device_id = topicTokens.getDeviceId();
 
-				if (message_type.equals("DBIRTH") || message_type.equals("DDEATH") || message_type.equals("DDATA")
-						|| message_type.equals("DCMD")) {
+				if (message_type == MessageType.DBIRTH || message_type == MessageType.DDEATH
+						|| message_type == MessageType.DDATA || message_type == MessageType.DCMD) {
 
-					testResult(ID_TOPIC_STRUCTURE_NAMESPACE_DEVICE_ID_ASSOCIATED_MESSAGE_TYPES, setResult(
-							elements.length == 5, TOPIC_STRUCTURE_NAMESPACE_DEVICE_ID_ASSOCIATED_MESSAGE_TYPES));
-					result = (elements.length == 5) ? true : false;
+					testResult(ID_TOPIC_STRUCTURE_NAMESPACE_DEVICE_ID_ASSOCIATED_MESSAGE_TYPES,
+							setResult(levels == 5, TOPIC_STRUCTURE_NAMESPACE_DEVICE_ID_ASSOCIATED_MESSAGE_TYPES));
+					result = (levels == 5) ? true : false;
 				}
 
-				if (message_type.equals("NBIRTH") || message_type.equals("NDEATH") || message_type.equals("NDATA")
-						|| message_type.equals("NCMD")) {
+				if (message_type == MessageType.NBIRTH || message_type == MessageType.NDEATH
+						|| message_type == MessageType.NDATA || message_type == MessageType.NCMD) {
 
-					testResult(ID_TOPIC_STRUCTURE_NAMESPACE_DEVICE_ID_NON_ASSOCIATED_MESSAGE_TYPES, setResult(
-							elements.length == 4, TOPIC_STRUCTURE_NAMESPACE_DEVICE_ID_NON_ASSOCIATED_MESSAGE_TYPES));
-					result = (elements.length == 4) ? true : false;
+					testResult(ID_TOPIC_STRUCTURE_NAMESPACE_DEVICE_ID_NON_ASSOCIATED_MESSAGE_TYPES,
+							setResult(levels == 4, TOPIC_STRUCTURE_NAMESPACE_DEVICE_ID_NON_ASSOCIATED_MESSAGE_TYPES));
+					result = (levels == 4) ? true : false;
 				}
 				testResult(ID_TOPIC_STRUCTURE, setResult(result, TOPIC_STRUCTURE));
 
@@ -715,6 +855,9 @@ public class Monitor extends TCKTest implements ClientLifecycleEventListener {
 	@SpecAssertion(
 			section = Sections.TOPICS_EDGE_NODE_ID_ELEMENT,
 			id = ID_TOPIC_STRUCTURE_NAMESPACE_UNIQUE_EDGE_NODE_DESCRIPTOR)
+	@SpecAssertion(
+			section = Sections.PAYLOADS_B_METRIC,
+			id = ID_PAYLOADS_ALIAS_UNIQUENESS)
 	@SpecAssertion(
 			section = Sections.PAYLOADS_B_NBIRTH,
 			id = ID_PAYLOADS_NBIRTH_SEQ)
@@ -727,8 +870,12 @@ public class Monitor extends TCKTest implements ClientLifecycleEventListener {
 	@SpecAssertion(
 			section = Sections.OPERATIONAL_BEHAVIOR_CASE_SENSITIVITY,
 			id = ID_CASE_SENSITIVITY_SPARKPLUG_IDS)
-	private void handleNBIRTH(String group_id, String edge_node_id, String clientId, PayloadOrBuilder payload) {
+	private void handleNBIRTH(EdgeNodeShards.Shard shard, String group_id, String edge_node_id, String clientId,
+			PayloadOrBuilder payload) {
 		logger.info("Monitor: *** NBIRTH *** {}/{} {}", group_id, edge_node_id, clientId);
+		shard.dataSampleCounts.remove(edge_node_id);
+		// the birth starts the sequence numbers and metric values again
+		shard.dataGaps.remove(edge_node_id);
 		String client_id = (String) edge_nodes.get(edge_node_id);
 		if (client_id != null && !client_id.equals(clientId)) {
 			logger.error("Monitor: two clientids {} {} using the same group_id/edge_node_id {}", client_id, clientId,
@@ -742,62 +889,48 @@ public class Monitor extends TCKTest implements ClientLifecycleEventListener {
 			logger.info("Monitor: adding edge node {} for client id {} on NBIRTH", edge_node_id, clientId);
 			edge_nodes.put(edge_node_id, clientId);
 			clientids.put(clientId, edge_node_id);
-			edge_to_devices.put(edge_node_id, new HashSet<String>());
+			shard.edge_to_devices.put(edge_node_id, new HashSet<String>());
 		}
 
 		boolean lowerResult = true;
 
-		String lowGroupId = group_id.toLowerCase();
-		if (lowerGroupIds.containsKey(lowGroupId)) {
-			lowerResult = group_id.equals(lowerGroupIds.get(lowGroupId));
-		} else {
-			lowerGroupIds.put(lowGroupId, group_id);
+		String lowGroupId = identifiers.toLowerCase(group_id);
+		String knownGroupId = lowerGroupIds.putIfAbsent(lowGroupId, group_id);
+		if (knownGroupId != null) {
+			lowerResult = group_id.equals(knownGroupId);
 		}
 		setShouldResultIfNotFail(testResults, lowerResult, ID_CASE_SENSITIVITY_SPARKPLUG_IDS,
 				CASE_SENSITIVITY_SPARKPLUG_IDS + " group ids: " + group_id + " " + lowerGroupIds.get(lowGroupId));
 
-		String lowEdgeId = edge_node_id.toLowerCase();
-		if (lowerEdgeIds.containsKey(lowEdgeId)) {
-			lowerResult = edge_node_id.equals(lowerEdgeIds.get(lowEdgeId));
-		} else {
-			lowerEdgeIds.put(lowEdgeId, edge_node_id);
+		String lowEdgeId = identifiers.toLowerCase(edge_node_id);
+		String knownEdgeId = lowerEdgeIds.putIfAbsent(lowEdgeId, edge_node_id);
+		if (knownEdgeId != null) {
+			lowerResult = edge_node_id.equals(knownEdgeId);
 		}
 		setShouldResultIfNotFail(testResults, lowerResult, ID_CASE_SENSITIVITY_SPARKPLUG_IDS,
 				CASE_SENSITIVITY_SPARKPLUG_IDS + " edge ids: " + edge_node_id + " " + lowerEdgeIds.get(lowEdgeId));
 
-		String id = group_id + "/" + edge_node_id;
+		String id = identifiers.intern(group_id + "/" + edge_node_id);
 		if (payload.hasSeq()) {
 			if (payload.getSeq() > 255 || payload.getSeq() < 0) {
 				testResults.put(ID_PAYLOADS_NBIRTH_SEQ, setResult(false, PAYLOADS_NBIRTH_SEQ));
 			}
-			edgeSeqs.put(id, payload.getSeq());
+			shard.edgeSeqs.put(id, payload.getSeq());
 			testResults.put(ID_PAYLOADS_NBIRTH_SEQ, setResult(true, PAYLOADS_NBIRTH_SEQ));
 		} else {
 			testResults.put(ID_PAYLOADS_NBIRTH_SEQ, setResult(false, PAYLOADS_NBIRTH_SEQ));
 		}
 
 		if (payload != null) {
-			edgeBirthMetrics.put(id, payload.getMetricsList());
+			BirthRegistry.Birth birth = shard.births.register(id, payload.getMetricsList());
+			checkAliasUniqueness(id, birth, null);
 
 			long lastHistoricalTimestamp = 0L;
 			List<Metric> metrics = payload.getMetricsList();
 			ListIterator<Metric> metricIterator = metrics.listIterator();
-			boolean aliasMapInitialized = false;
 			while (metricIterator.hasNext()) {
 				Metric current = metricIterator.next();
 
-				if (current.hasAlias()) {
-					Map<Long, String> aliasMap = edgeAliasMaps.get(id);
-					if (!aliasMapInitialized) {
-						aliasMap = edgeAliasMaps.computeIfAbsent(id, (k) -> new HashMap<>());
-						aliasMap.clear();
-						aliasMapInitialized = true;
-					}
-
-					logger.debug("Creating alias: {} -> {}", current.getAlias(), current.getName());
-					aliasMap.put(current.getAlias(), current.getName());
-				}
-
 				if (current.hasIsHistorical() && current.getIsHistorical() == false) {
 					if (!setResultIfNotFail(testResults, current.getTimestamp() >= lastHistoricalTimestamp,
 							ID_OPERATIONAL_BEHAVIOR_DATA_PUBLISH_NBIRTH_ORDER,
@@ -818,8 +951,10 @@ public class Monitor extends TCKTest implements ClientLifecycleEventListener {
 			section = Sections.PAYLOADS_B_NBIRTH,
 			id = ID_PAYLOADS_NBIRTH_EDGE_NODE_DESCRIPTOR)
 
-	private void handleNDEATH(String group_id, String edge_node_id, String clientId) {
+	private void handleNDEATH(EdgeNodeShards.Shard shard, String group_id, String edge_node_id, String clientId) {
 		logger.info("Monitor: *** NDEATH *** {}/{} {}", group_id, edge_node_id, clientId);
+		shard.dataSampleCounts.remove(edge_node_id);
+		shard.dataGaps.remove(edge_node_id);
 		String found_client_id = (String) edge_nodes.get(edge_node_id);
 
 		if (found_client_id != null && !found_client_id.equals(clientId)) {
@@ -839,16 +974,16 @@ public class Monitor extends TCKTest implements ClientLifecycleEventListener {
 				logger.info("Monitor: Error removing edge_node_id {} on NDEATH", edge_node_id);
 			}
 
-			HashSet<String> devices = (HashSet<String>) edge_to_devices.get(edge_node_id);
+			HashSet<String> devices = (HashSet<String>) shard.edge_to_devices.get(edge_node_id);
 			logger.info("Monitor: devices for edge_node_id {} were {}", edge_node_id, devices);
-			if (edge_to_devices.remove(edge_node_id) == null) {
+			if (shard.edge_to_devices.remove(edge_node_id) == null) {
 				logger.error("Monitor: Error removing edge_node_id {} from edge_to_devices on disconnect",
 						edge_node_id);
 			}
 		}
 
 		String id = group_id + "/" + edge_node_id;
-		edgeSeqs.remove(id);
+		shard.edgeSeqs.remove(id);
 	}
 
 	@SpecAssertion(
@@ -875,21 +1010,26 @@ public class Monitor extends TCKTest implements ClientLifecycleEventListener {
 	@SpecAssertion(
 			section = Sections.PAYLOADS_B_PAYLOAD,
 			id = ID_PAYLOADS_SEQUENCE_NUM_INCREMENTING)
-	private void handleNDATA(String group_id, String edge_node_id, PayloadOrBuilder payload) {
+	private void handleNDATA(EdgeNodeShards.Shard shard, String group_id, String edge_node_id,
+			PayloadOrBuilder payload) {
 		logger.info("Monitor: *** NDATA *** {}/{}", group_id, edge_node_id);
 
 		boolean correct_seq = false;
+		// after a gap left by data messages which were not validated there is no seq to compare with
+		boolean gap = takeDataGap(shard, group_id, edge_node_id);
 		if (payload.hasSeq()) {
 			String id = group_id + "/" + edge_node_id;
-			if (edgeSeqs.get(id) != null) {
-				long expectedSeq = getNextSeq((Long) edgeSeqs.get(id));
+			if (shard.edgeSeqs.get(id) != null) {
+				long expectedSeq = getNextSeq((Long) shard.edgeSeqs.get(id));
 				if (payload.getSeq() == expectedSeq) {
 					correct_seq = true;
 				}
 			}
-			edgeSeqs.put(id, payload.getSeq());
+			shard.edgeSeqs.put(id, payload.getSeq());
 		}
-		if (ignoreSeqNumCheck) {
+		if (gap) {
+			logger.debug("Monitor: seq of {}/{} not checked after unvalidated data messages", group_id, edge_node_id);
+		} else if (ignoreSeqNumCheck) {
 			setResultIfNotFail(testResults, true, ID_PAYLOADS_NDATA_SEQ_INC, PAYLOADS_NDATA_SEQ_INC);
 			setResultIfNotFail(testResults, true, ID_PAYLOADS_SEQUENCE_NUM_INCREMENTING,
 					PAYLOADS_SEQUENCE_NUM_INCREMENTING);
@@ -902,27 +1042,17 @@ public class Monitor extends TCKTest implements ClientLifecycleEventListener {
 		long lastHistoricalTimestamp = 0L;
 		List<Metric> metrics = payload.getMetricsList();
 		String id = group_id + "/" + edge_node_id;
+		BirthRegistry.Birth birth = shard.births.getBirth(id);
 		ListIterator<Metric> metricIterator = metrics.listIterator();
 		while (metricIterator.hasNext()) {
 			Metric current = metricIterator.next();
 
 			// Get the metric name if aliases are used and set it as needed
-			String currentMetricName = current.getName();
-			if (!current.hasName() && current.hasAlias()) {
-				currentMetricName = edgeAliasMaps.get(id).get(current.getAlias());
-				logger.debug("Got currentMetricName from alias: {} -> {}", current.getAlias(), currentMetricName);
-			}
+			String currentMetricName = shard.births.resolveName(id, current);
 
-			List<Metric> birthMetrics = edgeBirthMetrics.get(id);
-			if (birthMetrics != null) {
-				boolean found = false;
+			if (birth != null) {
 				// look for the current metric name in the birth metrics
-				for (Metric birth : birthMetrics) {
-					if (birth.getName().equals(currentMetricName)) {
-						found = true;
-						break;
-					}
-				}
+				boolean found = birth.hasMetric(currentMetricName);
 
 				if (!setResultIfNotFail(testResults, found, ID_TOPICS_NBIRTH_METRIC_REQS, TOPICS_NBIRTH_METRIC_REQS)) {
 					log(TEST_FAILED_FOR_ASSERTION + ID_TOPICS_NBIRTH_METRIC_REQS + ": metric name: "
@@ -935,36 +1065,7 @@ public class Monitor extends TCKTest implements ClientLifecycleEventListener {
 				}
 			}
 
-			if (current.getDatatype() == DataType.Template.getNumber()) {
-				if (current.hasTemplateValue()) {
-					Template template = current.getTemplateValue();
-					// instances must have a reference
-					if (template.hasTemplateRef()) {
-						boolean found = false;
-						String templateName = template.getTemplateRef();
-						// look for the template in the birth metrics
-						for (Metric birth : birthMetrics) {
-							if (birth.getName().equals(templateName)) {
-
-								if (birth.hasTemplateValue()) {
-									Template templatedef = birth.getTemplateValue();
-									if (templatedef.hasIsDefinition() && templatedef.hasIsDefinition()
-											&& !templatedef.hasTemplateRef()) {
-										found = true;
-										break;
-									}
-								}
-
-							}
-						}
-						if (!setResultIfNotFail(testResults, found, ID_TOPICS_NBIRTH_TEMPLATES,
-								TOPICS_NBIRTH_TEMPLATES)) {
-							log(TEST_FAILED_FOR_ASSERTION + ID_TOPICS_NBIRTH_TEMPLATES + ": metric name: "
-									+ currentMetricName);
-						}
-					}
-				}
-			}
+			checkTemplateInstance(birth, current, currentMetricName);
 
 			if (current.hasIsHistorical() && current.getIsHistorical() == false) {
 				if (!setResultIfNotFail(testResults, current.getTimestamp() >= lastHistoricalTimestamp,
@@ -976,37 +1077,60 @@ public class Monitor extends TCKTest implements ClientLifecycleEventListener {
 				lastHistoricalTimestamp = current.getTimestamp();
 			}
 
-			List<Metric> lastMetrics = edgeLastMetrics.get(id);
-			if (lastMetrics != null) {
-				boolean found = false;
-				// look for the current metric name in the last metrics
-				for (Metric last : lastMetrics) {
-					// Get the metric name if aliases are used and set it as needed
-					String lastMetricName = last.getName();
-					if (!last.hasName() && last.hasAlias()) {
-						lastMetricName = edgeAliasMaps.get(id).get(last.getAlias());
-					}
+			Metric last = shard.births.getLastMetric(id, currentMetricName);
+			if (last != null) {
+				if (!setShouldResultIfNotFail(testResults, !metricsEqual(current, last),
+						ID_OPERATIONAL_BEHAVIOR_DATA_PUBLISH_NBIRTH_CHANGE,
+						OPERATIONAL_BEHAVIOR_DATA_PUBLISH_NBIRTH_CHANGE)) {
+					log(TEST_FAILED_FOR_ASSERTION + ID_OPERATIONAL_BEHAVIOR_DATA_PUBLISH_NBIRTH_CHANGE
+							+ ": metric name: " + currentMetricName);
+				}
+				if (!setShouldResultIfNotFail(testResults, !metricsEqual(current, last), ID_PRINCIPLES_RBE_RECOMMENDED,
+						PRINCIPLES_RBE_RECOMMENDED)) {
+					log(TEST_FAILED_FOR_ASSERTION + ID_PRINCIPLES_RBE_RECOMMENDED + ": metric name: "
+							+ currentMetricName);
+				}
+			}
+		}
+		shard.births.setLastMetrics(id, metrics);
+	}
 
-					if (lastMetricName.equals(currentMetricName)) {
-						found = true;
+	/**
+	 * Aliases must be unique across all the metrics of an edge node, so within each birth certificate, and between a
+	 * DBIRTH and the NBIRTH of its edge node.
+	 */
+	private void checkAliasUniqueness(String id, BirthRegistry.Birth birth, BirthRegistry.Birth edgeBirth) {
+		if (!birth.hasAliases()) {
+			return;
+		}
+		Long duplicate = birth.getDuplicateAlias();
+		if (duplicate == null && edgeBirth != null) {
+			duplicate = birth.findSharedAlias(edgeBirth);
+		}
+		if (!setResultIfNotFail(testResults, duplicate == null, ID_PAYLOADS_ALIAS_UNIQUENESS,
+				PAYLOADS_ALIAS_UNIQUENESS)) {
+			log(TEST_FAILED_FOR_ASSERTION + ID_PAYLOADS_ALIAS_UNIQUENESS + ": id: " + id + " alias: " + duplicate);
+		}
+	}
 
-						if (!setShouldResultIfNotFail(testResults, !metricsEqual(current, last),
-								ID_OPERATIONAL_BEHAVIOR_DATA_PUBLISH_NBIRTH_CHANGE,
-								OPERATIONAL_BEHAVIOR_DATA_PUBLISH_NBIRTH_CHANGE)) {
-							log(TEST_FAILED_FOR_ASSERTION + ID_OPERATIONAL_BEHAVIOR_DATA_PUBLISH_NBIRTH_CHANGE
-									+ ": metric name: " + currentMetricName);
-						}
-						if (!setShouldResultIfNotFail(testResults, !metricsEqual(current, last),
-								ID_PRINCIPLES_RBE_RECOMMENDED, PRINCIPLES_RBE_RECOMMENDED)) {
-							log(TEST_FAILED_FOR_ASSERTION + ID_PRINCIPLES_RBE_RECOMMENDED + ": metric name: "
-									+ currentMetricName);
-						}
-						break;
+	/**
+	 * A template instance must refer to a template definition in the NBIRTH of its edge node.
+	 */
+	private void checkTemplateInstance(BirthRegistry.Birth edgeBirth, Metric current, String currentMetricName) {
+		if (edgeBirth != null && current.getDatatype() == DataType.Template.getNumber()) {
+			if (current.hasTemplateValue()) {
+				Template template = current.getTemplateValue();
+				// instances must have a reference
+				if (template.hasTemplateRef()) {
+					// look for the template definition in the birth metrics
+					boolean found = edgeBirth.hasTemplateDefinition(template.getTemplateRef());
+					if (!setResultIfNotFail(testResults, found, ID_TOPICS_NBIRTH_TEMPLATES, TOPICS_NBIRTH_TEMPLATES)) {
+						log(TEST_FAILED_FOR_ASSERTION + ID_TOPICS_NBIRTH_TEMPLATES + ": metric name: "
+								+ currentMetricName);
 					}
 				}
 			}
 		}
-		edgeLastMetrics.put(id, metrics);
 	}
 
 	@SpecAssertion(
@@ -1030,12 +1154,16 @@ public class Monitor extends TCKTest implements ClientLifecycleEventListener {
 	@SpecAssertion(
 			section = Sections.OPERATIONAL_BEHAVIOR_CASE_SENSITIVITY,
 			id = ID_CASE_SENSITIVITY_SPARKPLUG_IDS)
-	private void handleDBIRTH(String group_id, String edge_node_id, String device_id, PayloadOrBuilder payload) {
+	@SpecAssertion(
+			section = Sections.PAYLOADS_B_METRIC,
+			id = ID_PAYLOADS_ALIAS_UNIQUENESS)
+	private void handleDBIRTH(EdgeNodeShards.Shard shard, String group_id, String edge_node_id, String device_id,
+			PayloadOrBuilder payload) {
 		logger.info("Monitor: *** DBIRTH *** {}/{}/{}", group_id, edge_node_id, device_id);
-		if (!edge_to_devices.keySet().contains(edge_node_id)) {
+		if (!shard.edge_to_devices.keySet().contains(edge_node_id)) {
 			logger.error("Monitor: DBIRTH before NBIRTH");
 		} else {
-			HashSet<String> devices = (HashSet<String>) edge_to_devices.get(edge_node_id);
+			HashSet<String> devices = (HashSet<String>) shard.edge_to_devices.get(edge_node_id);
 			if (devices.contains(device_id)) {
 				logger.error("Monitor: edge_node {} using device_id {} twice", edge_node_id, device_id);
 				testResults.put(ID_TOPIC_STRUCTURE_NAMESPACE_UNIQUE_DEVICE_ID,
@@ -1052,39 +1180,36 @@ public class Monitor extends TCKTest implements ClientLifecycleEventListener {
 
 		boolean lowerResult = true;
 
-		String lowGroupId = group_id.toLowerCase();
-		if (lowerGroupIds.containsKey(lowGroupId)) {
-			lowerResult = group_id.equals(lowerGroupIds.get(lowGroupId));
-		} else {
-			lowerGroupIds.put(lowGroupId, group_id);
+		String lowGroupId = identifiers.toLowerCase(group_id);
+		String knownGroupId = lowerGroupIds.putIfAbsent(lowGroupId, group_id);
+		if (knownGroupId != null) {
+			lowerResult = group_id.equals(knownGroupId);
 		}
 		setShouldResultIfNotFail(testResults, lowerResult, ID_CASE_SENSITIVITY_SPARKPLUG_IDS,
 				CASE_SENSITIVITY_SPARKPLUG_IDS + " group ids: " + group_id + " " + lowerGroupIds.get(lowGroupId));
 
-		String lowEdgeId = edge_node_id.toLowerCase();
-		if (lowerEdgeIds.containsKey(lowEdgeId)) {
-			lowerResult = edge_node_id.equals(lowerEdgeIds.get(lowEdgeId));
-		} else {
-			lowerEdgeIds.put(lowEdgeId, edge_node_id);
+		String lowEdgeId = identifiers.toLowerCase(edge_node_id);
+		String knownEdgeId = lowerEdgeIds.putIfAbsent(lowEdgeId, edge_node_id);
+		if (knownEdgeId != null) {
+			lowerResult = edge_node_id.equals(knownEdgeId);
 		}
 		setShouldResultIfNotFail(testResults, lowerResult, ID_CASE_SENSITIVITY_SPARKPLUG_IDS,
 				CASE_SENSITIVITY_SPARKPLUG_IDS + " edge ids: " + edge_node_id + " " + lowerEdgeIds.get(lowEdgeId));
 
-		String lowDeviceId = device_id.toLowerCase();
-		if (lowerDeviceIds.containsKey(lowDeviceId)) {
-			lowerResult = device_id.equals(lowerDeviceIds.get(lowDeviceId));
-		} else {
-			lowerDeviceIds.put(lowDeviceId, device_id);
+		String lowDeviceId = identifiers.toLowerCase(device_id);
+		String knownDeviceId = lowerDeviceIds.putIfAbsent(lowDeviceId, device_id);
+		if (knownDeviceId != null) {
+			lowerResult = device_id.equals(knownDeviceId);
 		}
 		setShouldResultIfNotFail(testResults, lowerResult, ID_CASE_SENSITIVITY_SPARKPLUG_IDS,
 				CASE_SENSITIVITY_SPARKPLUG_IDS + " device ids: " + device_id + " " + lowerDeviceIds.get(lowDeviceId));
 
 		// record sequence numbers for checking
 		if (payload.hasSeq()) {
-			String id = group_id + "/" + edge_node_id;
+			String id = identifiers.intern(group_id + "/" + edge_node_id);
 
-			if (edgeSeqs.get(id) != null) {
-				long expectedSeq = getNextSeq((Long) edgeSeqs.get(id));
+			if (shard.edgeSeqs.get(id) != null && !takeDataGap(shard, group_id, edge_node_id)) {
+				long expectedSeq = getNextSeq((Long) shard.edgeSeqs.get(id));
 				if (payload.getSeq() == expectedSeq) {
 					if (testResults.get(ID_PAYLOADS_DBIRTH_SEQ_INC) == null) {
 						testResults.put(ID_PAYLOADS_DBIRTH_SEQ_INC, setResult(true, PAYLOADS_DBIRTH_SEQ_INC));
@@ -1099,7 +1224,7 @@ public class Monitor extends TCKTest implements ClientLifecycleEventListener {
 							setResult(false, MESSAGE_FLOW_DEVICE_BIRTH_PUBLISH_DBIRTH_PAYLOAD_SEQ));
 				}
 			}
-			edgeSeqs.put(id, payload.getSeq());
+			shard.edgeSeqs.put(id, payload.getSeq());
 		} else {
 			testResults.put(ID_PAYLOADS_DBIRTH_SEQ_INC, setResult(false, PAYLOADS_DBIRTH_SEQ_INC));
 			testResults.put(ID_MESSAGE_FLOW_DEVICE_BIRTH_PUBLISH_DBIRTH_PAYLOAD_SEQ,
@@ -1107,29 +1232,17 @@ public class Monitor extends TCKTest implements ClientLifecycleEventListener {
 		}
 
 		if (payload != null) {
-			String id = group_id + "/" + edge_node_id + "/" + device_id;
-			deviceBirthMetrics.put(id, payload.getMetricsList());
-			deviceLastMetrics.put(id, payload.getMetricsList());
+			String id = identifiers.intern(group_id + "/" + edge_node_id + "/" + device_id);
+			BirthRegistry.Birth birth = shard.births.register(id, payload.getMetricsList());
+			shard.births.resetLastMetrics(id, payload.getMetricsList());
+			checkAliasUniqueness(id, birth, shard.births.getBirth(group_id + "/" + edge_node_id));
 
 			long lastHistoricalTimestamp = 0L;
 			List<Metric> metrics = payload.getMetricsList();
 			ListIterator<Metric> metricIterator = metrics.listIterator();
-			boolean aliasMapInitialized = false;
 			while (metricIterator.hasNext()) {
 				Metric current = metricIterator.next();
 
-				if (current.hasAlias()) {
-					Map<Long, String> aliasMap = edgeAliasMaps.get(id);
-					if (!aliasMapInitialized) {
-						aliasMap = edgeAliasMaps.computeIfAbsent(id, (k) -> new HashMap<>());
-						aliasMap.clear();
-						aliasMapInitialized = true;
-					}
-
-					logger.debug("Creating alias: {} -> {}", current.getAlias(), current.getName());
-					aliasMap.put(current.getAlias(), current.getName());
-				}
-
 				if (current.hasIsHistorical() && current.getIsHistorical() == false) {
 					if (!setResultIfNotFail(testResults, current.getTimestamp() >= lastHistoricalTimestamp,
 							ID_OPERATIONAL_BEHAVIOR_DATA_PUBLISH_DBIRTH_ORDER,
@@ -1146,12 +1259,13 @@ public class Monitor extends TCKTest implements ClientLifecycleEventListener {
 	@SpecAssertion(
 			section = Sections.PAYLOADS_B_DDEATH,
 			id = ID_PAYLOADS_DDEATH_SEQ_INC)
-	private void handleDDEATH(String group_id, String edge_node_id, String device_id, PayloadOrBuilder payload) {
+	private void handleDDEATH(EdgeNodeShards.Shard shard, String group_id, String edge_node_id, String device_id,
+			PayloadOrBuilder payload) {
 		logger.info("Monitor: *** DDEATH *** {}/{}/{}", group_id, edge_node_id, device_id);
-		if (!edge_to_devices.keySet().contains(edge_node_id)) {
+		if (!shard.edge_to_devices.keySet().contains(edge_node_id)) {
 			logger.error("Monitor: DDEATH received but no edge_node_id recorded");
 		} else {
-			HashSet<String> devices = (HashSet<String>) edge_to_devices.get(edge_node_id);
+			HashSet<String> devices = (HashSet<String>) shard.edge_to_devices.get(edge_node_id);
 			if (!devices.contains(device_id)) {
 				logger.error("Monitor: DDEATH before DBIRTH for device {} on edge {}", device_id, edge_node_id);
 			} else {
@@ -1163,8 +1277,8 @@ public class Monitor extends TCKTest implements ClientLifecycleEventListener {
 		if (payload != null && payload.hasSeq()) {
 			String id = group_id + "/" + edge_node_id;
 
-			if (edgeSeqs.get(id) != null) {
-				long expectedSeq = getNextSeq((Long) edgeSeqs.get(id));
+			if (shard.edgeSeqs.get(id) != null && !takeDataGap(shard, group_id, edge_node_id)) {
+				long expectedSeq = getNextSeq((Long) shard.edgeSeqs.get(id));
 				if (payload.getSeq() == expectedSeq) {
 					if (testResults.get(ID_PAYLOADS_DDEATH_SEQ_INC) == null) {
 						testResults.put(ID_PAYLOADS_DDEATH_SEQ_INC, setResult(true, PAYLOADS_DDEATH_SEQ_INC));
@@ -1173,7 +1287,7 @@ public class Monitor extends TCKTest implements ClientLifecycleEventListener {
 					testResults.put(ID_PAYLOADS_DDEATH_SEQ_INC, setResult(false, PAYLOADS_DDEATH_SEQ_INC));
 				}
 			}
-			edgeSeqs.put(id, payload.getSeq());
+			shard.edgeSeqs.put(id, payload.getSeq());
 		} else {
 			testResults.put(ID_PAYLOADS_DDEATH_SEQ_INC, setResult(false, PAYLOADS_DDEATH_SEQ_INC));
 		}
@@ -1203,21 +1317,26 @@ public class Monitor extends TCKTest implements ClientLifecycleEventListener {
 	@SpecAssertion(
 			section = Sections.PAYLOADS_B_PAYLOAD,
 			id = ID_PAYLOADS_SEQUENCE_NUM_INCREMENTING)
-	private void handleDDATA(String group_id, String edge_node_id, String device_id, PayloadOrBuilder payload) {
+	private void handleDDATA(EdgeNodeShards.Shard shard, String group_id, String edge_node_id, String device_id,
+			PayloadOrBuilder payload) {
 		logger.info("Monitor: *** DDATA *** {}/{}/{}", group_id, edge_node_id, device_id);
 
 		boolean correct_seq = false;
+		// after a gap left by data messages which were not validated there is no seq to compare with
+		boolean gap = takeDataGap(shard, group_id, edge_node_id);
 		if (payload.hasSeq()) {
 			String id = group_id + "/" + edge_node_id;
-			if (edgeSeqs.get(id) != null) {
-				long expectedSeq = getNextSeq((Long) edgeSeqs.get(id));
+			if (shard.edgeSeqs.get(id) != null) {
+				long expectedSeq = getNextSeq((Long) shard.edgeSeqs.get(id));
 				if (payload.getSeq() == expectedSeq) {
 					correct_seq = true;
 				}
 			}
-			edgeSeqs.put(id, payload.getSeq());
+			shard.edgeSeqs.put(id, payload.getSeq());
 		}
-		if (ignoreSeqNumCheck) {
+		if (gap) {
+			logger.debug("Monitor: seq of {}/{} not checked after unvalidated data messages", group_id, edge_node_id);
+		} else if (ignoreSeqNumCheck) {
 			setResultIfNotFail(testResults, true, ID_PAYLOADS_NDATA_SEQ_INC, PAYLOADS_NDATA_SEQ_INC);
 			setResultIfNotFail(testResults, true, ID_PAYLOADS_SEQUENCE_NUM_INCREMENTING,
 					PAYLOADS_SEQUENCE_NUM_INCREMENTING);
@@ -1230,27 +1349,18 @@ public class Monitor extends TCKTest implements ClientLifecycleEventListener {
 		long lastHistoricalTimestamp = 0L;
 		List<Metric> metrics = payload.getMetricsList();
 		String id = group_id + "/" + edge_node_id + "/" + device_id;
+		BirthRegistry.Birth birth = shard.births.getBirth(id);
+		BirthRegistry.Birth edgeBirth = shard.births.getBirth(group_id + "/" + edge_node_id);
 		ListIterator<Metric> metricIterator = metrics.listIterator();
 		while (metricIterator.hasNext()) {
 			Metric current = metricIterator.next();
 
 			// Get the metric name if aliases are used and set it as needed
-			String currentMetricName = current.getName();
-			if (!current.hasName() && current.hasAlias()) {
-				currentMetricName = edgeAliasMaps.get(id).get(current.getAlias());
-				logger.debug("Got currentMetricName from alias: {} -> {}", current.getAlias(), currentMetricName);
-			}
+			String currentMetricName = shard.births.resolveName(id, current);
 
-			List<Metric> birthMetrics = deviceBirthMetrics.get(id);
-			if (birthMetrics != null) {
-				boolean found = false;
+			if (birth != null) {
 				// look for the current metric name in the birth metrics
-				for (Metric birth : birthMetrics) {
-					if (birth.getName().equals(currentMetricName)) {
-						found = true;
-						break;
-					}
-				}
+				boolean found = birth.hasMetric(currentMetricName);
 
 				if (!setResultIfNotFail(testResults, found, ID_TOPICS_DBIRTH_METRIC_REQS, TOPICS_DBIRTH_METRIC_REQS)) {
 					log(TEST_FAILED_FOR_ASSERTION + ID_TOPICS_DBIRTH_METRIC_REQS + ": metric name: "
@@ -1263,37 +1373,8 @@ public class Monitor extends TCKTest implements ClientLifecycleEventListener {
 				}
 			}
 
-			List<Metric> eBirthMetrics = edgeBirthMetrics.get(id);
-			if (eBirthMetrics != null && current.getDatatype() == DataType.Template.getNumber()) {
-				if (current.hasTemplateValue()) {
-					Template template = current.getTemplateValue();
-					// instances must have a reference
-					if (template.hasTemplateRef()) {
-						boolean found = false;
-						String templateName = template.getTemplateRef();
-						// look for the template in the birth metrics
-						for (Metric birth : eBirthMetrics) {
-							if (birth.getName().equals(templateName)) {
-
-								if (birth.hasTemplateValue()) {
-									Template templatedef = birth.getTemplateValue();
-									if (templatedef.hasIsDefinition() && templatedef.hasIsDefinition()
-											&& !templatedef.hasTemplateRef()) {
-										found = true;
-										break;
-									}
-								}
-
-							}
-						}
-						if (!setResultIfNotFail(testResults, found, ID_TOPICS_NBIRTH_TEMPLATES,
-								TOPICS_NBIRTH_TEMPLATES)) {
-							log(TEST_FAILED_FOR_ASSERTION + ID_TOPICS_NBIRTH_TEMPLATES + ": metric name: "
-									+ currentMetricName);
-						}
-					}
-				}
-			}
+			// template definitions are in the NBIRTH of the device's edge node
+			checkTemplateInstance(edgeBirth, current, currentMetricName);
 
 			if (current.hasIsHistorical() && current.getIsHistorical() == false) {
 				if (!setResultIfNotFail(testResults, current.getTimestamp() >= lastHistoricalTimestamp,
@@ -1305,53 +1386,32 @@ public class Monitor extends TCKTest implements ClientLifecycleEventListener {
 				lastHistoricalTimestamp = current.getTimestamp();
 			}
 
-			List<Metric> lastMetrics = deviceLastMetrics.get(id);
-			if (lastMetrics != null) {
-				boolean found = false;
-				// look for the current metric name in the last metrics
-				for (Metric last : lastMetrics) {
-					// Get the metric name if aliases are used and set it as needed
-					String lastMetricName = last.getName();
-					if (!last.hasName() && last.hasAlias()) {
-						lastMetricName = edgeAliasMaps.get(id).get(last.getAlias());
-					}
-
-					if (lastMetricName.equals(currentMetricName)) {
-						found = true;
-						if (!setShouldResultIfNotFail(testResults, !metricsEqual(current, last),
-								ID_OPERATIONAL_BEHAVIOR_DATA_PUBLISH_DBIRTH_CHANGE,
-								OPERATIONAL_BEHAVIOR_DATA_PUBLISH_DBIRTH_CHANGE)) {
-							log(TEST_FAILED_FOR_ASSERTION + ID_OPERATIONAL_BEHAVIOR_DATA_PUBLISH_DBIRTH_CHANGE
-									+ ": metric name: " + currentMetricName);
-						}
-						if (!setShouldResultIfNotFail(testResults, !metricsEqual(current, last),
-								ID_PRINCIPLES_RBE_RECOMMENDED, PRINCIPLES_RBE_RECOMMENDED)) {
-							log(TEST_FAILED_FOR_ASSERTION + ID_PRINCIPLES_RBE_RECOMMENDED + ": metric name: "
-									+ currentMetricName);
-						}
-						break;
-					}
+			Metric last = shard.births.getLastMetric(id, currentMetricName);
+			if (last != null) {
+				if (!setShouldResultIfNotFail(testResults, !metricsEqual(current, last),
+						ID_OPERATIONAL_BEHAVIOR_DATA_PUBLISH_DBIRTH_CHANGE,
+						OPERATIONAL_BEHAVIOR_DATA_PUBLISH_DBIRTH_CHANGE)) {
+					log(TEST_FAILED_FOR_ASSERTION + ID_OPERATIONAL_BEHAVIOR_DATA_PUBLISH_DBIRTH_CHANGE
+							+ ": metric name: " + currentMetricName);
+				}
+				if (!setShouldResultIfNotFail(testResults, !metricsEqual(current, last), ID_PRINCIPLES_RBE_RECOMMENDED,
+						PRINCIPLES_RBE_RECOMMENDED)) {
+					log(TEST_FAILED_FOR_ASSERTION + ID_PRINCIPLES_RBE_RECOMMENDED + ": metric name: "
+							+ currentMetricName);
 				}
 			}
 		}
-		deviceLastMetrics.put(id, metrics);
+		shard.births.setLastMetrics(id, metrics);
 	}
 
 	@SpecAssertion(
 			section = Sections.OPERATIONAL_BEHAVIOR_SPARKPLUG_HOST_APPLICATION_SESSION_ESTABLISHMENT,
 			id = ID_OPERATIONAL_BEHAVIOR_HOST_APPLICATION_HOST_ID)
-	private void handleSTATE(String clientId, String topic, String payload) {
+	private void handleSTATE(String clientId, String hostid, String payload) {
 		if (ignoreDupHostCheck) {
 			return;
 		}
 
-		String hostid = null;
-		String[] topicParts = topic.split("/");
-		if (topicParts.length == 3) {
-			hostid = topicParts[2];
-		} else {
-			return;
-		}
 		logger.info("Monitor: clientid {} *** STATE *** {} {}", clientId, hostid, payload);
 
 		ObjectMapper mapper = new ObjectMapper();
@@ -1370,19 +1430,21 @@ public class Monitor extends TCKTest implements ClientLifecycleEventListener {
 				if (online.isBoolean()) {
 					boolean check = true;
 					boolean state = online.booleanValue();
-					String hostClientid = hostClientids.get(hostid);
-					if (state) {
-						if (hostClientid != null) {
-							if (hostClientid.equals(clientId)) {
-								check = false; // two different clientids with the same hostid online
+					synchronized (hostClientids) {
+						String hostClientid = hostClientids.get(hostid);
+						if (state) {
+							if (hostClientid != null) {
+								if (hostClientid.equals(clientId)) {
+									check = false; // two different clientids with the same hostid online
+								}
 							}
-						}
-						hostClientids.put(hostid, clientId);
-					} else {
-						if (hostClientid != null) {
-							hostClientids.remove(hostid);
+							hostClientids.put(hostid, clientId);
 						} else {
-							// didn't find host online but it might not be an error
+							if (hostClientid != null) {
+								hostClientids.remove(hostid);
+							} else {
+								// didn't find host online but it might not be an error
+							}
 						}
 					}
 					setShouldResultIfNotFail(testResults, check, ID_OPERATIONAL_BEHAVIOR_HOST_APPLICATION_HOST_ID,
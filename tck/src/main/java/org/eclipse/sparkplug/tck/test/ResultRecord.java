@@ -0,0 +1,156 @@
+/*******************************************************************************
+ * Copyright (c) 2022 Ian Craggs
+ *
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v2.0
+ * which is available at https://www.eclipse.org/legal/epl-2.0/
+ *
+ * SPDX-License-Identifier: EPL-2.0
+ *
+ * Contributors:
+ *    Ian Craggs - initial implementation and documentation
+ *******************************************************************************/
+
+package org.eclipse.sparkplug.tck.test;
+
+import com.fasterxml.jackson.annotation.JsonIgnore;
+import com.fasterxml.jackson.annotation.JsonProperty;
+
+/**
+ * The result of one assertion in one test of a TCK run, as stored by {@link ResultsStore}.
+ *
+ * @author Ian Craggs
+ */
+public class ResultRecord {
+
+	@JsonProperty("run")
+	private String run;
+
+	@JsonProperty("profile")
+	private String profile;
+
+	@JsonProperty("test")
+	private String test;
+
+	@JsonProperty("timestamp")
+	private long timestamp;
+
+	@JsonProperty("assertion")
+	private String assertion;
+
+	// true if the result is from the Monitor rather than the test itself
+	@JsonProperty("monitor")
+	private boolean monitor;
+
+	@JsonProperty("result")
+	private String result;
+
+	public ResultRecord() {
+	}
+
+	public ResultRecord(String run, String profile, String test, long timestamp, String assertion, boolean monitor,
+			String result) {
+		this.run = run;
+		this.profile = profile;
+		this.test = test;
+		this.timestamp = timestamp;
+		this.assertion = assertion;
+		this.monitor = monitor;
+		this.result = result;
+	}
+
+	public String getRun() {
+		return run;
+	}
+
+	public void setRun(String run) {
+		this.run = run;
+	}
+
+	/**
+	 * @return the profile of the test, in lower case: broker, edge or host
+	 */
+	public String getProfile() {
+		return profile;
+	}
+
+	public void setProfile(String profile) {
+		this.profile = profile;
+	}
+
+	public String getTest() {
+		return test;
+	}
+
+	public void setTest(String test) {
+		this.test = test;
+	}
+
+	/**
+	 * @return when the results of the test were reported, in milliseconds since the epoch
+	 */
+	public long getTimestamp() {
+		return timestamp;
+	}
+
+	public void setTimestamp(long timestamp) {
+		this.timestamp = timestamp;
+	}
+
+	/**
+	 * @return the assertion ID, as in the test's testIds, for example "topics-ndata-seq-num"
+	 */
+	public String getAssertion() {
+		return assertion;
+	}
+
+	public void setAssertion(String assertion) {
+		this.assertion = assertion;
+	}
+
+	public boolean isMonitor() {
+		return monitor;
+	}
+
+	public void setMonitor(boolean monitor) {
+		this.monitor = monitor;
+	}
+
+	/**
+	 * @return the result as reported by the test: PASS, FAIL, MAYBE or NOT EXECUTED, followed by any explanation
+	 */
+	public String getResult() {
+		return result;
+	}
+
+	public void setResult(String result) {
+		this.result = result;
+	}
+
+	/**
+	 * @return the key of the result in the results of its test, with the Monitor prefix if it is a Monitor result
+	 */
+	@JsonIgnore
+	public String getKey() {
+		return monitor ? "Monitor:" + assertion : assertion;
+	}
+
+	@Override
+	public String toString() {
+		StringBuilder builder = new StringBuilder();
+		builder.append("ResultRecord [run=");
+		builder.append(run);
+		builder.append(", profile=");
+		builder.append(profile);
+		builder.append(", test=");
+		builder.append(test);
+		builder.append(", timestamp=");
+		builder.append(timestamp);
+		builder.append(", assertion=");
+		builder.append(getKey());
+		builder.append(", result=");
+		builder.append(result);
+		builder.append("]");
+		return builder.toString();
+	}
+}
@@ -21,8 +21,10 @@ import static org.eclipse.sparkplug.tck.test.common.Constants.TCK_RESULTS_CONFIG
 import static org.eclipse.sparkplug.tck.test.common.Constants.TCK_RESULTS_TOPIC;
 
 import java.io.File;
-import java.io.FileWriter;
 import java.io.IOException;
+import java.nio.file.Paths;
+import java.text.SimpleDateFormat;
+import java.util.Date;
 import java.util.Map;
 import java.util.concurrent.TimeUnit;
 
@@ -50,6 +52,7 @@ import com.hivemq.extension.sdk.api.services.admin.LifecycleStage;
 public class Results implements MqttCallbackExtended {
 	private static final Logger logger = LoggerFactory.getLogger("Sparkplug");
 	protected static final String SPARKPLUG_TCKRESULTS_LOG = "SparkplugTCKresults.log";
+	protected static final String SPARKPLUG_TCKRESULTS_STORE = "SparkplugTCKresults.jsonl";
 
 	private final @NotNull AdminService adminService = Services.adminService();
 	private final @NotNull ManagedExtensionExecutorService executorService = Services.extensionExecutorService();
@@ -60,12 +63,48 @@ public class Results implements MqttCallbackExtended {
 	// private String username = "admin";
 	// private String password = "changeme";
 	private String filename = SPARKPLUG_TCKRESULTS_LOG;
+	private final @NotNull ResultsWriter resultsWriter = new ResultsWriter(filename);
+	private ResultsStore store = null;
 
 	private MqttTopic log_topic = null;
 	private MqttClient client = null;
 
-	public class Config {
+	public static class Config {
 		public long UTCwindow = 60000L;
+
+		// Monitor validation on separate threads, see ValidationPipeline
+		public boolean asyncValidation = false;
+		public int validationWorkers = Runtime.getRuntime().availableProcessors();
+		public int validationQueueSize = 8192;
+		public ValidationPipeline.Backpressure validationBackpressure = ValidationPipeline.Backpressure.BLOCK;
+		public int validationSampleRate = 10;
+
+		// the Monitor validates one in this many NDATA and DDATA messages of each edge node in full
+		public int monitorDataSampleRate = 1;
+
+		// the latencies of the messages received during a test are recorded, and published on SPARKPLUG_TCK/METRICS
+		// at its end and every metrics interval if that is not 0
+		public boolean messageLatencies = false;
+		public long metricsInterval = 0L;
+
+		// the publish stages are timed, and their timings exported, this often; see StageMetrics
+		public long stageMetricsInterval = 0L;
+		// the stage timings are appended to this file, or published on the log topic if it is not set
+		public String stageMetricsFile = null;
+
+		// the results log is flushed when this many milliseconds or characters are buffered, and at the end of a test
+		public long resultsFlushInterval = 1000L;
+		public int resultsFlushSize = 64 * 1024;
+		// the results log is rotated at the end of a test once it has reached this size, if not 0, keeping this many
+		// rotated logs
+		public long resultsMaxFileSize = 0L;
+		public int resultsMaxFiles = 5;
+		public boolean resultsGzip = false;
+
+		// each test's results are also stored as records in this file, if it is set; see ResultsStore
+		public String resultsStoreFile = SPARKPLUG_TCKRESULTS_STORE;
+		// the run the stored results belong to, by default the time the TCK was started
+		public String resultsRunId = new SimpleDateFormat("yyyyMMdd-HHmmss").format(new Date());
 	}
 
 	private Config config = new Config();
@@ -149,30 +188,127 @@ public class Results implements MqttCallbackExtended {
 	public void messageArrived(String topic, MqttMessage message) throws Exception {
 		try {
 			if (topic.equals(TCK_CONFIG_TOPIC)) {
-				String[] words = new String(message.getPayload()).split(" ");
-				config.UTCwindow = Long.parseLong(words[1]);
-				logger.info("{}: setting UTCwindow to " + config.UTCwindow, clientId);
+				setConfig(new String(message.getPayload()).trim().split(" "));
 			} else if (topic.equals(TCK_RESULTS_CONFIG_TOPIC)) {
 				logger.debug("{}: topic: {} msg: {}", clientId, topic, new String(message.getPayload())); // display log
 																											// message
 				checkOrCreateNewResultLog(message);
 			} else if (topic.equals(TCK_RESULTS_TOPIC)) {
-				try {
-					logger.debug("{}: {} used as log file.", clientId, (new File(filename).getAbsolutePath()));
-					FileWriter resultFileWriter = new FileWriter(filename, true);
-					resultFileWriter.write(new String(message.getPayload()) + System.lineSeparator());
-					resultFileWriter.close();
-				} catch (IOException e) {
-					logger.error("An error occurred. {} ", e.getMessage());
-					e.printStackTrace();
+				final String result = new String(message.getPayload());
+				resultsWriter.write(result);
+				// the OVERALL line ends the results of a test, so they are written out straight away, and the log
+				// can be rotated without splitting them
+				if (result.contains("OVERALL: ")) {
+					resultsWriter.endTest();
+					executorService.submit(() -> storeResults(result));
 				}
-
 			}
 		} catch (Exception e) {
 			e.printStackTrace();
 		}
 	}
 
+	/**
+	 * Writes out the buffered results and closes the results log.
+	 */
+	public void shutdown() {
+		resultsWriter.close();
+		synchronized (this) {
+			closeStore();
+		}
+	}
+
+	/**
+	 * @return the store of the results, opening it if need be, or null if there is none
+	 */
+	public synchronized ResultsStore getStore() {
+		if (store == null && config.resultsStoreFile != null) {
+			try {
+				store = new ResultsStore(Paths.get(config.resultsStoreFile));
+			} catch (IOException e) {
+				logger.error("{}: Failed to open results store {}: {}", clientId, config.resultsStoreFile,
+						e.getMessage());
+			}
+		}
+		return store;
+	}
+
+	private void storeResults(String summary) {
+		final ResultsStore resultsStore = getStore();
+		if (resultsStore != null) {
+			try {
+				resultsStore.append(ResultsStore.parseSummary(config.resultsRunId, summary));
+			} catch (IOException e) {
+				logger.error("{}: Failed to store results: {}", clientId, e.getMessage());
+			}
+		}
+	}
+
+	private void closeStore() {
+		if (store != null) {
+			try {
+				store.close();
+			} catch (IOException e) {
+				logger.error("{}: Failed to close results store: {}", clientId, e.getMessage());
+			}
+			store = null;
+		}
+	}
+
+	private void setConfig(String[] words) {
+		if (words.length < 2) {
+			logger.error("{}: config syntax is: name value", clientId);
+			return;
+		}
+		String name = words[0];
+		String value = words[1];
+		if (name.equalsIgnoreCase("AsyncValidation")) {
+			config.asyncValidation = Boolean.parseBoolean(value);
+		} else if (name.equalsIgnoreCase("ValidationWorkers")) {
+			config.validationWorkers = Integer.parseInt(value);
+		} else if (name.equalsIgnoreCase("ValidationQueueSize")) {
+			config.validationQueueSize = Integer.parseInt(value);
+		} else if (name.equalsIgnoreCase("ValidationBackpressure")) {
+			config.validationBackpressure = ValidationPipeline.Backpressure.valueOf(value.toUpperCase());
+		} else if (name.equalsIgnoreCase("ValidationSampleRate")) {
+			config.validationSampleRate = Integer.parseInt(value);
+		} else if (name.equalsIgnoreCase("MonitorDataSampleRate")) {
+			config.monitorDataSampleRate = Integer.parseInt(value);
+		} else if (name.equalsIgnoreCase("MessageLatencies")) {
+			config.messageLatencies = Boolean.parseBoolean(value);
+		} else if (name.equalsIgnoreCase("MetricsInterval")) {
+			config.metricsInterval = Long.parseLong(value);
+		} else if (name.equalsIgnoreCase("StageMetricsInterval")) {
+			config.stageMetricsInterval = Long.parseLong(value);
+		} else if (name.equalsIgnoreCase("StageMetricsFile")) {
+			config.stageMetricsFile = value;
+		} else if (name.equalsIgnoreCase("ResultsFlushInterval")) {
+			config.resultsFlushInterval = Long.parseLong(value);
+		} else if (name.equalsIgnoreCase("ResultsFlushSize")) {
+			config.resultsFlushSize = Integer.parseInt(value);
+		} else if (name.equalsIgnoreCase("ResultsMaxFileSize")) {
+			config.resultsMaxFileSize = Long.parseLong(value);
+		} else if (name.equalsIgnoreCase("ResultsMaxFiles")) {
+			config.resultsMaxFiles = Integer.parseInt(value);
+		} else if (name.equalsIgnoreCase("ResultsGzip")) {
+			config.resultsGzip = Boolean.parseBoolean(value);
+		} else if (name.equalsIgnoreCase("ResultsStoreFile")) {
+			synchronized (this) {
+				closeStore();
+				config.resultsStoreFile = value.equalsIgnoreCase("none") ? null : value;
+			}
+		} else if (name.equalsIgnoreCase("ResultsRunId")) {
+			config.resultsRunId = value;
+		} else {
+			// UTCwindow was once the only setting, so it is the default
+			config.UTCwindow = Long.parseLong(value);
+			name = "UTCwindow";
+		}
+		logger.info("{}: setting {} to {}", clientId, name, value);
+		resultsWriter.setFlush(config.resultsFlushInterval, config.resultsFlushSize);
+		resultsWriter.setRotation(config.resultsMaxFileSize, config.resultsMaxFiles, config.resultsGzip);
+	}
+
 	@Override
 	public void deliveryComplete(IMqttDeliveryToken token) {
 		// System.out.println("Published message: " + token);
@@ -190,6 +326,7 @@ public class Results implements MqttCallbackExtended {
 				File testFile = new File(newFilename);
 				if (testFile.canWrite() || testFile.createNewFile()) {
 					filename = newFilename;
+					resultsWriter.setFile(filename);
 					logger.debug(" {}: New log file created: {} ", clientId, testFile.getAbsolutePath());
 				} else {
 					logger.error(" {}: New log file: {} has no write access, use old setting: {} ", clientId,
@@ -200,6 +337,14 @@ public class Results implements MqttCallbackExtended {
 		}
 	}
 
+	/**
+	 * Gets the summary of a test in a run from the results store, as it was reported.
+	 */
+	public static StringBuilder getSummary(final @NotNull ResultsStore store, final @NotNull String run,
+			final @NotNull String profile, final @NotNull String test) throws IOException {
+		return getSummary(store.getTestResults(run, profile, test));
+	}
+
 	public static StringBuilder getSummary(final @NotNull Map<String, String> results) {
 		final StringBuilder summary = new StringBuilder();
 
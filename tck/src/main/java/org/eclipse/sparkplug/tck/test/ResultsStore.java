@@ -0,0 +1,531 @@
+/*******************************************************************************
+ * Copyright (c) 2022 Ian Craggs
+ *
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v2.0
+ * which is available at https://www.eclipse.org/legal/epl-2.0/
+ *
+ * SPDX-License-Identifier: EPL-2.0
+ *
+ * Contributors:
+ *    Ian Craggs - initial implementation and documentation
+ *******************************************************************************/
+
+package org.eclipse.sparkplug.tck.test;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.Closeable;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.sql.Timestamp;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.TreeSet;
+import java.util.zip.CRC32;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.ObjectReader;
+import com.fasterxml.jackson.databind.ObjectWriter;
+import com.hivemq.extension.sdk.api.annotations.NotNull;
+import com.hivemq.extension.sdk.api.annotations.Nullable;
+
+/**
+ * An append-only store of {@link ResultRecord}s, one per assertion per test per run, kept as JSON lines.
+ *
+ * The records are indexed by run, profile and assertion ID, so a query reads only the records it returns, rather than
+ * the whole file. The index holds the position of each record in the file, not the record, so it stays small for
+ * stores of thousands of runs. It is saved next to the store, in a file with the suffix .idx, when the store is closed
+ * and every {@link #SAVE_INTERVAL} appended records. When the store is opened, the saved index is loaded and only the
+ * records appended after it was saved are parsed. The whole file is parsed again if there is no saved index, or if
+ * the store no longer matches it. A partial last line, left by a crash during an append, is truncated when the store
+ * is opened.
+ *
+ * This class is thread safe.
+ *
+ * @author Ian Craggs
+ */
+public class ResultsStore implements Closeable {
+
+	private static final @NotNull Logger logger = LoggerFactory.getLogger("Sparkplug");
+
+	private static final String SUMMARY = "Summary Test Results for ";
+	private static final String MONITOR = "Monitor:";
+
+	/**
+	 * The number of records appended after which the index is saved again.
+	 */
+	static final int SAVE_INTERVAL = 10000;
+
+	private static final String INDEX_SUFFIX = ".idx";
+	private static final int INDEX_MAGIC = 0x53505249; // SPRI
+	private static final int INDEX_VERSION = 1;
+
+	/**
+	 * The record numbers with one value of an indexed field, in ascending order.
+	 */
+	private static final class Postings {
+		private int[] records = new int[16];
+		private int size = 0;
+
+		void add(final int record) {
+			if (size == records.length) {
+				records = Arrays.copyOf(records, size * 2);
+			}
+			records[size++] = record;
+		}
+	}
+
+	// returned by lookup for a field which matches any value
+	private static final Postings ALL = new Postings();
+
+	private final @NotNull ObjectReader reader;
+	private final @NotNull ObjectWriter writer;
+	private final @NotNull FileChannel channel;
+	private final @NotNull Path indexPath;
+
+	// the position and length of each record in the file
+	private long[] positions = new long[1024];
+	private int[] lengths = new int[1024];
+	private int count = 0;
+	private long end = 0L;
+	private int saved = 0;
+
+	private final @NotNull Map<String, Postings> runs = new HashMap<>();
+	private final @NotNull Map<String, Postings> profiles = new HashMap<>();
+	private final @NotNull Map<String, Postings> assertions = new HashMap<>();
+
+	/**
+	 * Opens a store, creating its file if it does not exist, and indexes the records in it. The saved index is used for
+	 * the records it covers.
+	 *
+	 * @param path the file of the store
+	 * @throws IOException if the file can't be opened or read
+	 */
+	public ResultsStore(final @NotNull Path path) throws IOException {
+		final ObjectMapper mapper = new ObjectMapper();
+		reader = mapper.readerFor(ResultRecord.class);
+		writer = mapper.writerFor(ResultRecord.class);
+		channel = FileChannel.open(path, StandardOpenOption.CREATE, StandardOpenOption.READ,
+				StandardOpenOption.WRITE);
+		indexPath = path.resolveSibling(path.getFileName() + INDEX_SUFFIX);
+		try {
+			if (!loadIndex()) {
+				clearIndex();
+			}
+			saved = count;
+			scan(end);
+		} catch (final IOException e) {
+			channel.close();
+			throw e;
+		}
+		logger.debug("Results store {} opened with {} records", path, count);
+	}
+
+	/**
+	 * Appends records to the store. They are written with one write, so a test's results are stored together.
+	 *
+	 * @param records the records
+	 * @throws IOException if the records can't be written
+	 */
+	public synchronized void append(final @NotNull Collection<ResultRecord> records) throws IOException {
+		if (records.isEmpty()) {
+			return;
+		}
+		final ByteArrayOutputStream bytes = new ByteArrayOutputStream(records.size() * 200);
+		final int[] recordLengths = new int[records.size()];
+		int i = 0;
+		for (final ResultRecord record : records) {
+			final byte[] json = writer.writeValueAsBytes(record);
+			bytes.write(json);
+			bytes.write('\n');
+			recordLengths[i++] = json.length;
+		}
+		final ByteBuffer buffer = ByteBuffer.wrap(bytes.toByteArray());
+		long position = end;
+		while (buffer.hasRemaining()) {
+			position += channel.write(buffer, position);
+		}
+
+		i = 0;
+		for (final ResultRecord record : records) {
+			index(record, end, recordLengths[i]);
+			end += recordLengths[i++] + 1;
+		}
+		if (count - saved >= SAVE_INTERVAL) {
+			saveIndex();
+		}
+	}
+
+	/**
+	 * @return the number of records in the store
+	 */
+	public synchronized int size() {
+		return count;
+	}
+
+	/**
+	 * @return the IDs of the runs in the store, in order
+	 */
+	public synchronized @NotNull Set<String> getRuns() {
+		return new TreeSet<>(runs.keySet());
+	}
+
+	/**
+	 * @return the profiles in the store, in order
+	 */
+	public synchronized @NotNull Set<String> getProfiles() {
+		return new TreeSet<>(profiles.keySet());
+	}
+
+	/**
+	 * @return the assertion IDs in the store, in order
+	 */
+	public synchronized @NotNull Set<String> getAssertions() {
+		return new TreeSet<>(assertions.keySet());
+	}
+
+	/**
+	 * Finds the records which match all the given fields. A null field matches any value.
+	 *
+	 * @param run the run ID, or null
+	 * @param profile the profile, or null
+	 * @param assertion the assertion ID, or null
+	 * @return the matching records, in the order they were appended
+	 * @throws IOException if the records can't be read
+	 */
+	public synchronized @NotNull List<ResultRecord> query(final @Nullable String run, final @Nullable String profile,
+			final @Nullable String assertion) throws IOException {
+		final List<Postings> lists = new ArrayList<>(3);
+		for (final Postings postings : new Postings[] { lookup(runs, run), lookup(profiles, profile),
+				lookup(assertions, assertion) }) {
+			if (postings == null) {
+				return new ArrayList<>();
+			} else if (postings != ALL) {
+				lists.add(postings);
+			}
+		}
+		lists.sort((a, b) -> Integer.compare(a.size, b.size));
+
+		final List<ResultRecord> records = new ArrayList<>();
+		if (lists.isEmpty()) {
+			for (int record = 0; record < count; record++) {
+				records.add(read(record));
+			}
+			return records;
+		}
+		// intersect the lists, driven by the shortest: each is in ascending order
+		final Postings shortest = lists.get(0);
+		final int[] cursors = new int[lists.size()];
+		outer: for (int i = 0; i < shortest.size; i++) {
+			final int record = shortest.records[i];
+			for (int j = 1; j < lists.size(); j++) {
+				final Postings other = lists.get(j);
+				while (cursors[j] < other.size && other.records[cursors[j]] < record) {
+					cursors[j]++;
+				}
+				if (cursors[j] == other.size) {
+					break outer;
+				}
+				if (other.records[cursors[j]] != record) {
+					continue outer;
+				}
+			}
+			records.add(read(record));
+		}
+		return records;
+	}
+
+	/**
+	 * Gets the results of one test in one run, in the form they were reported, for {@link Results#getSummary(Map)}.
+	 * If the test was run more than once, the last results are returned.
+	 *
+	 * @param run the run ID
+	 * @param profile the profile
+	 * @param test the test name
+	 * @return the results, keyed as they were reported by the test
+	 * @throws IOException if the records can't be read
+	 */
+	public @NotNull Map<String, String> getTestResults(final @NotNull String run, final @NotNull String profile,
+			final @NotNull String test) throws IOException {
+		final Map<String, String> results = new TreeMap<>();
+		long timestamp = Long.MIN_VALUE;
+		for (final ResultRecord record : query(run, profile, null)) {
+			if (!record.getTest().equals(test)) {
+				continue;
+			}
+			if (record.getTimestamp() != timestamp) {
+				// a later run of the test replaces the earlier ones
+				results.clear();
+				timestamp = record.getTimestamp();
+			}
+			results.put(record.getKey(), record.getResult());
+		}
+		return results;
+	}
+
+	@Override
+	public synchronized void close() throws IOException {
+		try {
+			if (count != saved) {
+				saveIndex();
+			}
+		} finally {
+			channel.close();
+		}
+	}
+
+	/**
+	 * Converts the summary of a test, as published on the results topic by {@link TCKTest#reportResults(Map)}, to
+	 * records.
+	 *
+	 * @param run the run ID to give the records
+	 * @param summary the summary
+	 * @return the records, one for each result in the summary, or none if it is not a test summary
+	 */
+	public static @NotNull List<ResultRecord> parseSummary(final @NotNull String run, final @NotNull String summary) {
+		final List<ResultRecord> records = new ArrayList<>();
+		final String[] lines = summary.split("\\r?\\n");
+		final int header = lines[0].indexOf(SUMMARY);
+		if (header < 0) {
+			return records;
+		}
+		final String[] name = lines[0].substring(header + SUMMARY.length()).trim().split(" ", 2);
+		if (name.length < 2) {
+			return records;
+		}
+		final String profile = name[0].toLowerCase();
+		final String test = name[1].replace(" ", "");
+		long timestamp;
+		try {
+			timestamp = Timestamp.valueOf(lines[0].substring(0, header).trim()).getTime();
+		} catch (final IllegalArgumentException e) {
+			timestamp = System.currentTimeMillis();
+		}
+
+		for (int i = 1; i < lines.length; i++) {
+			final String line = lines[i].trim();
+			final int colon = line.indexOf(": ");
+			if (colon <= 0 || line.startsWith("OVERALL: ")) {
+				continue;
+			}
+			String assertion = line.substring(0, colon);
+			final boolean monitor = assertion.startsWith(MONITOR);
+			if (monitor) {
+				assertion = assertion.substring(MONITOR.length());
+			}
+			String result = line.substring(colon + 2);
+			if (result.endsWith(";")) {
+				result = result.substring(0, result.length() - 1);
+			}
+			records.add(new ResultRecord(run, profile, test, timestamp, assertion, monitor, result));
+		}
+		return records;
+	}
+
+	private static @Nullable Postings lookup(final @NotNull Map<String, Postings> index, final @Nullable String key) {
+		return (key == null) ? ALL : index.get(key);
+	}
+
+	private void index(final @NotNull ResultRecord record, final long position, final int length) {
+		if (count == positions.length) {
+			positions = Arrays.copyOf(positions, count * 2);
+			lengths = Arrays.copyOf(lengths, count * 2);
+		}
+		positions[count] = position;
+		lengths[count] = length;
+		runs.computeIfAbsent(record.getRun(), k -> new Postings()).add(count);
+		profiles.computeIfAbsent(record.getProfile(), k -> new Postings()).add(count);
+		assertions.computeIfAbsent(record.getAssertion(), k -> new Postings()).add(count);
+		count++;
+	}
+
+	private @NotNull ResultRecord read(final int record) throws IOException {
+		final ByteBuffer buffer = ByteBuffer.allocate(lengths[record]);
+		long position = positions[record];
+		while (buffer.hasRemaining()) {
+			final int n = channel.read(buffer, position);
+			if (n < 0) {
+				throw new IOException("Results store truncated at record " + record);
+			}
+			position += n;
+		}
+		return reader.readValue(buffer.array());
+	}
+
+	/**
+	 * Saves the index, to a temporary file which then replaces the previous index. A failure is logged, as the index
+	 * can always be rebuilt from the store.
+	 */
+	private void saveIndex() {
+		final Path temporary = indexPath.resolveSibling(indexPath.getFileName() + ".tmp");
+		try {
+			try (DataOutputStream out = new DataOutputStream(
+					new BufferedOutputStream(Files.newOutputStream(temporary), 64 * 1024))) {
+				out.writeInt(INDEX_MAGIC);
+				out.writeInt(INDEX_VERSION);
+				out.writeLong(end);
+				out.writeInt(count);
+				out.writeLong(count == 0 ? 0L : checksum(count - 1));
+				for (int i = 0; i < count; i++) {
+					out.writeLong(positions[i]);
+					out.writeInt(lengths[i]);
+				}
+				for (final Map<String, Postings> index : Arrays.asList(runs, profiles, assertions)) {
+					out.writeInt(index.size());
+					for (final Map.Entry<String, Postings> entry : index.entrySet()) {
+						out.writeUTF(entry.getKey());
+						final Postings postings = entry.getValue();
+						out.writeInt(postings.size);
+						for (int i = 0; i < postings.size; i++) {
+							out.writeInt(postings.records[i]);
+						}
+					}
+				}
+			}
+			Files.move(temporary, indexPath, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+			saved = count;
+		} catch (final IOException e) {
+			logger.error("Results store: failed to save the index {}: {}", indexPath, e.getMessage());
+		}
+	}
+
+	/**
+	 * Loads the saved index, if there is one and the store still holds the records it covers: the store must be at
+	 * least as long, and its last indexed record must be unchanged.
+	 *
+	 * @return true if the index was loaded, false if the whole store has to be indexed
+	 */
+	private boolean loadIndex() throws IOException {
+		try (DataInputStream in = new DataInputStream(
+				new BufferedInputStream(Files.newInputStream(indexPath), 64 * 1024))) {
+			if (in.readInt() != INDEX_MAGIC || in.readInt() != INDEX_VERSION) {
+				logger.warn("Results store: index {} is not a results store index", indexPath);
+				return false;
+			}
+			end = in.readLong();
+			final int records = in.readInt();
+			final long checksum = in.readLong();
+			if (end > channel.size() || records < 0) {
+				logger.warn("Results store: index {} does not match the store, which is indexed again", indexPath);
+				return false;
+			}
+			positions = new long[Math.max(1024, records)];
+			lengths = new int[Math.max(1024, records)];
+			for (count = 0; count < records; count++) {
+				positions[count] = in.readLong();
+				lengths[count] = in.readInt();
+			}
+			if (count > 0 && checksum(count - 1) != checksum) {
+				logger.warn("Results store: index {} does not match the store, which is indexed again", indexPath);
+				return false;
+			}
+			for (final Map<String, Postings> index : Arrays.asList(runs, profiles, assertions)) {
+				final int keys = in.readInt();
+				for (int i = 0; i < keys; i++) {
+					final String key = in.readUTF();
+					final Postings postings = new Postings();
+					final int size = in.readInt();
+					postings.records = new int[Math.max(16, size)];
+					for (int j = 0; j < size; j++) {
+						postings.records[j] = in.readInt();
+					}
+					postings.size = size;
+					index.put(key, postings);
+				}
+			}
+			return true;
+		} catch (final NoSuchFileException e) {
+			return false;
+		} catch (final IOException e) {
+			logger.warn("Results store: index {} could not be read: {}", indexPath, e.getMessage());
+			return false;
+		}
+	}
+
+	private void clearIndex() {
+		positions = new long[1024];
+		lengths = new int[1024];
+		count = 0;
+		end = 0L;
+		runs.clear();
+		profiles.clear();
+		assertions.clear();
+	}
+
+	/**
+	 * @return the checksum of a record and the line separator after it, as stored
+	 */
+	private long checksum(final int record) throws IOException {
+		final ByteBuffer buffer = ByteBuffer.allocate(lengths[record] + 1);
+		long position = positions[record];
+		int n;
+		while (buffer.hasRemaining() && (n = channel.read(buffer, position)) > 0) {
+			position += n;
+		}
+		final CRC32 crc = new CRC32();
+		crc.update(buffer.array(), 0, buffer.position());
+		return crc.getValue();
+	}
+
+	/**
+	 * Indexes the records from a position in the file to its end.
+	 */
+	private void scan(final long start) throws IOException {
+		final ByteBuffer buffer = ByteBuffer.allocate(64 * 1024);
+		final ByteArrayOutputStream line = new ByteArrayOutputStream(256);
+		long position = start;
+		long lineStart = start;
+		int skipped = 0;
+		int n;
+		while ((n = channel.read(buffer, position)) > 0) {
+			final byte[] bytes = buffer.array();
+			int from = 0;
+			for (int i = 0; i < n; i++) {
+				if (bytes[i] != '\n') {
+					continue;
+				}
+				line.write(bytes, from, i - from);
+				if (line.size() > 0) {
+					try {
+						index(reader.readValue(line.toByteArray()), lineStart, line.size());
+					} catch (final IOException e) {
+						skipped++;
+					}
+				}
+				line.reset();
+				from = i + 1;
+				lineStart = position + from;
+			}
+			line.write(bytes, from, n - from);
+			position += n;
+			buffer.clear();
+		}
+		if (line.size() > 0) {
+			logger.warn("Results store: truncating a partial record of {} bytes", line.size());
+			channel.truncate(lineStart);
+		}
+		if (skipped > 0) {
+			logger.warn("Results store: {} records could not be read", skipped);
+		}
+		end = lineStart;
+	}
+}
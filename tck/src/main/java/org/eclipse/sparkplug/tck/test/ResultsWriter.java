@@ -0,0 +1,356 @@
+/*******************************************************************************
+ * Copyright (c) 2022 Ian Craggs
+ *
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v2.0
+ * which is available at https://www.eclipse.org/legal/epl-2.0/
+ *
+ * SPDX-License-Identifier: EPL-2.0
+ *
+ * Contributors:
+ *    Ian Craggs - initial implementation and documentation
+ *******************************************************************************/
+
+package org.eclipse.sparkplug.tck.test;
+
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.zip.GZIPOutputStream;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.hivemq.extension.sdk.api.annotations.NotNull;
+import com.hivemq.extension.sdk.api.annotations.Nullable;
+
+/**
+ * Writes the lines of the results log from a single thread, which keeps the log file open.
+ *
+ * Lines are queued by {@link #write(String)}, which never does any I/O, so the MQTT callback thread of {@link Results}
+ * is not held up by the file system. The writer thread buffers the lines, and flushes them when the buffer reaches the
+ * flush size, when the flush interval has passed since the first unflushed line, or when {@link #flush(long)} or
+ * {@link #endTest()} is called.
+ *
+ * When the log has reached its maximum size it is rotated at the end of the next test, so that the results of a test
+ * are never split between two files: the log is renamed with the suffix .1, the older logs are shifted up to the
+ * maximum number of files, and a new log is started. Rotated logs can be compressed with gzip, in
+ * which case they have the suffix .gz as well. The active log is always plain text, so that it can be followed while a
+ * test runs.
+ *
+ * @author Ian Craggs
+ */
+class ResultsWriter {
+
+	private static final @NotNull Logger logger = LoggerFactory.getLogger("Sparkplug");
+
+	private static final int QUEUE_SIZE = 65536;
+
+	/**
+	 * A line to write, or a command for the writer thread, queued in order with the lines.
+	 */
+	private static final class Entry {
+		private final @Nullable String line;
+		private final @Nullable String file;
+		private final @Nullable CountDownLatch done;
+		private final boolean testEnd;
+
+		Entry(final @Nullable String line, final @Nullable String file, final @Nullable CountDownLatch done,
+				final boolean testEnd) {
+			this.line = line;
+			this.file = file;
+			this.done = done;
+			this.testEnd = testEnd;
+		}
+	}
+
+	private static final @NotNull Entry CLOSE = new Entry(null, null, null, false);
+
+	private final @NotNull BlockingQueue<Entry> queue = new LinkedBlockingQueue<>(QUEUE_SIZE);
+	private final @NotNull Thread thread;
+
+	// settings, which are read by the writer thread
+	private volatile long flushInterval = 1000L;
+	private volatile int flushSize = 64 * 1024;
+	private volatile long maxBytes = 0L;
+	private volatile int maxFiles = 5;
+	private volatile boolean gzip = false;
+
+	// owned by the writer thread
+	private @NotNull String filename;
+	private @Nullable FileOutputStream stream = null;
+	private @Nullable Writer writer = null;
+	private int unflushed = 0;
+	private long flushDeadline = 0L;
+	private volatile boolean closed = false;
+
+	ResultsWriter(final @NotNull String filename) {
+		this.filename = filename;
+		thread = new Thread(this::run, "Sparkplug TCK results writer");
+		thread.setDaemon(true);
+		thread.start();
+	}
+
+	/**
+	 * Sets how the log is flushed.
+	 *
+	 * @param flushInterval the longest time, in milliseconds, that a line stays buffered
+	 * @param flushSize the number of buffered characters at which the buffer is flushed
+	 */
+	void setFlush(final long flushInterval, final int flushSize) {
+		this.flushInterval = flushInterval;
+		this.flushSize = flushSize;
+	}
+
+	/**
+	 * Sets how the log is rotated.
+	 *
+	 * @param maxBytes the size from which the log is rotated at the end of a test, or 0 for no rotation
+	 * @param maxFiles the number of rotated logs to keep
+	 * @param gzip true to compress the rotated logs
+	 */
+	void setRotation(final long maxBytes, final int maxFiles, final boolean gzip) {
+		this.maxBytes = maxBytes;
+		this.maxFiles = maxFiles;
+		this.gzip = gzip;
+	}
+
+	/**
+	 * Queues a line to be written. The line separator is added by the writer.
+	 *
+	 * @param line the line
+	 */
+	void write(final @NotNull String line) {
+		enqueue(new Entry(line, null, null, false));
+	}
+
+	/**
+	 * Queues a change of the log file: the lines queued before are written to the previous file.
+	 *
+	 * @param filename the new log file
+	 */
+	void setFile(final @NotNull String filename) {
+		enqueue(new Entry(null, filename, null, false));
+	}
+
+	/**
+	 * Writes all the lines queued so far to the file, and waits for them to be written.
+	 *
+	 * @param timeout the longest time to wait, in milliseconds, or 0 not to wait
+	 * @return true if the lines were written in time
+	 */
+	boolean flush(final long timeout) {
+		final CountDownLatch done = new CountDownLatch(1);
+		enqueue(new Entry(null, null, done, false));
+		try {
+			return done.await(timeout, TimeUnit.MILLISECONDS);
+		} catch (final InterruptedException e) {
+			Thread.currentThread().interrupt();
+			return false;
+		}
+	}
+
+	/**
+	 * Queues a flush at the end of the results of a test, after which the log is rotated if it has reached its maximum
+	 * size. This is the only time the log is rotated.
+	 */
+	void endTest() {
+		enqueue(new Entry(null, null, null, true));
+	}
+
+	/**
+	 * Writes all the lines queued so far, closes the file and stops the writer thread. Lines queued after this are
+	 * logged and dropped.
+	 */
+	void close() {
+		synchronized (this) {
+			if (closed) {
+				return;
+			}
+			// under the lock of enqueue, so that no line can be queued after CLOSE and be lost without a warning
+			closed = true;
+			put(CLOSE);
+		}
+		try {
+			thread.join(10000L);
+		} catch (final InterruptedException e) {
+			Thread.currentThread().interrupt();
+		}
+	}
+
+	private synchronized void enqueue(final @NotNull Entry entry) {
+		if (closed) {
+			if (entry.line != null) {
+				logger.warn("Results log closed, line not written: {}", entry.line);
+			}
+			return;
+		}
+		put(entry);
+	}
+
+	private void put(final @NotNull Entry entry) {
+		try {
+			// blocks only if the writer has fallen a whole queue behind
+			queue.put(entry);
+		} catch (final InterruptedException e) {
+			Thread.currentThread().interrupt();
+		}
+	}
+
+	private void run() {
+		try {
+			while (true) {
+				final Entry entry = (unflushed == 0)
+						? queue.take()
+						: queue.poll(Math.max(0L, flushDeadline - System.currentTimeMillis()), TimeUnit.MILLISECONDS);
+				if (entry == CLOSE) {
+					break;
+				} else if (entry == null) {
+					flushFile();
+				} else {
+					handle(entry);
+				}
+			}
+		} catch (final InterruptedException e) {
+			logger.error("Results log writer interrupted");
+		} finally {
+			flushFile();
+			closeFile();
+		}
+	}
+
+	private void handle(final @NotNull Entry entry) {
+		if (entry.line != null) {
+			writeLine(entry.line);
+		} else if (entry.file != null) {
+			flushFile();
+			closeFile();
+			filename = entry.file;
+		} else {
+			flushFile();
+			if (entry.testEnd) {
+				rotateIfFull();
+			}
+		}
+		if (entry.done != null) {
+			entry.done.countDown();
+		}
+	}
+
+	private void writeLine(final @NotNull String line) {
+		try {
+			if (writer == null) {
+				openFile();
+			}
+			writer.write(line);
+			writer.write(System.lineSeparator());
+			if (unflushed == 0) {
+				flushDeadline = System.currentTimeMillis() + flushInterval;
+			}
+			unflushed += line.length() + 1;
+			if (unflushed >= flushSize) {
+				flushFile();
+			}
+		} catch (final IOException e) {
+			logger.error("Failed to write to results log {}: {}", filename, e.getMessage());
+			closeFile();
+		}
+	}
+
+	private void flushFile() {
+		if (writer == null || unflushed == 0) {
+			unflushed = 0;
+			return;
+		}
+		try {
+			writer.flush();
+			unflushed = 0;
+		} catch (final IOException e) {
+			logger.error("Failed to flush results log {}: {}", filename, e.getMessage());
+			closeFile();
+		}
+	}
+
+	private void rotateIfFull() {
+		if (writer == null || maxBytes <= 0) {
+			return;
+		}
+		try {
+			if (stream.getChannel().position() >= maxBytes) {
+				rotate();
+			}
+		} catch (final IOException e) {
+			logger.error("Failed to check the size of results log {}: {}", filename, e.getMessage());
+		}
+	}
+
+	private void openFile() throws IOException {
+		logger.debug("{} used as results log file.", new File(filename).getAbsolutePath());
+		stream = new FileOutputStream(filename, true);
+		writer = new BufferedWriter(new OutputStreamWriter(stream, StandardCharsets.UTF_8), 16 * 1024);
+	}
+
+	private void closeFile() {
+		if (writer != null) {
+			try {
+				writer.close();
+			} catch (final IOException e) {
+				logger.error("Failed to close results log {}: {}", filename, e.getMessage());
+			}
+		}
+		writer = null;
+		stream = null;
+		unflushed = 0;
+	}
+
+	private void rotate() {
+		closeFile();
+		final String suffix = gzip ? ".gz" : "";
+		final int files = Math.max(1, maxFiles);
+		new File(filename + "." + files + suffix).delete();
+		for (int i = files - 1; i >= 1; i--) {
+			final File older = new File(filename + "." + i + suffix);
+			if (older.exists() && !older.renameTo(new File(filename + "." + (i + 1) + suffix))) {
+				logger.error("Failed to rotate results log {}", older);
+			}
+		}
+		final File current = new File(filename);
+		final File rotated = new File(filename + ".1");
+		if (!current.renameTo(rotated)) {
+			logger.error("Failed to rotate results log {}", filename);
+			return;
+		}
+		if (gzip) {
+			compress(rotated, new File(filename + ".1.gz"));
+		}
+		logger.info("Results log {} rotated", filename);
+	}
+
+	private void compress(final @NotNull File source, final @NotNull File target) {
+		try (InputStream in = new FileInputStream(source);
+				OutputStream out = new GZIPOutputStream(new FileOutputStream(target), 64 * 1024)) {
+			final byte[] buffer = new byte[64 * 1024];
+			int n;
+			while ((n = in.read(buffer)) > 0) {
+				out.write(buffer, 0, n);
+			}
+		} catch (final IOException e) {
+			logger.error("Failed to compress results log {}: {}", source, e.getMessage());
+			return;
+		}
+		if (!source.delete()) {
+			logger.error("Failed to delete results log {} after compressing it", source);
+		}
+	}
+}
@@ -13,13 +13,25 @@
 
 package org.eclipse.sparkplug.tck.test;
 
+import static org.eclipse.sparkplug.tck.test.common.Constants.NOT_EXECUTED;
+import static org.eclipse.sparkplug.tck.test.common.Constants.TCK_LOG_TOPIC;
+import static org.eclipse.sparkplug.tck.test.common.Constants.TCK_METRICS_TOPIC;
 import static org.eclipse.sparkplug.tck.test.common.Constants.TCK_RESULTS_TOPIC;
 
-import java.lang.reflect.Constructor;
+import java.io.FileWriter;
+import java.io.IOException;
 import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.Objects;
 import java.util.TreeMap;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
 
+import org.eclipse.sparkplug.impl.exception.model.MessageType;
 import org.eclipse.sparkplug.tck.test.common.Constants.Profile;
+import org.eclipse.sparkplug.tck.test.common.PublishEnvelope;
+import org.eclipse.sparkplug.tck.test.common.StageMetrics;
+import org.eclipse.sparkplug.tck.test.common.StageMetrics.Stage;
 import org.eclipse.sparkplug.tck.utility.EdgeNode;
 import org.eclipse.sparkplug.tck.utility.HostApplication;
 import org.slf4j.Logger;
@@ -47,11 +59,19 @@ public class TCK {
 
 	private static final @NotNull Logger logger = LoggerFactory.getLogger("Sparkplug");
 
-	private @Nullable TCKTest current = null;
+	// read by the broker threads which deliver MQTT events, and written by the test control thread
+	private volatile @Nullable TCKTest current = null;
 	final Results results = new Results();
 	private final Monitor monitor = new Monitor(results);
 	private final HostApplication hostApps = new HostApplication();
 	private final EdgeNode edgeNode = new EdgeNode();
+	private final MessageLatencies latencies = new MessageLatencies();
+	// whether the current test records the message latencies, read on every publish
+	private volatile boolean recordLatencies = false;
+	private @Nullable ScheduledFuture<?> metricsPublisher = null;
+	private @Nullable ScheduledFuture<?> stageExporter = null;
+	private long stageExportInterval = 0L;
+	private @Nullable String stageExportFile = null;
 
 	public class Utilities {
 		private Monitor monitor;
@@ -85,7 +105,13 @@ public class TCK {
 	 * don't neatly fit into a single test scenario, or apply all the time, so it runs alongside all Host and Edge
 	 * tests.
 	 */
-	private @NotNull Boolean hasMonitor = true;
+	private volatile boolean hasMonitor = true;
+
+	// when set, the Monitor is run on validator threads rather than on the broker's threads
+	private volatile @Nullable ValidationPipeline pipeline = null;
+
+	private static final long PIPELINE_DRAIN_TIMEOUT = 30000L;
+	private long pipelineDropped = 0L;
 
 	public void MQTTLog(String message) {
 		final PublishService publishService = Services.publishService();
@@ -94,6 +120,16 @@ public class TCK {
 		publishService.publish(payload);
 	}
 
+	/**
+	 * Publishes the message latencies recorded so far on the metrics topic, as JSON.
+	 */
+	private void publishMetrics(final @Nullable String testName) {
+		final PublishService publishService = Services.publishService();
+		final Publish payload = Builders.publish().topic(TCK_METRICS_TOPIC).qos(Qos.AT_LEAST_ONCE)
+				.payload(ByteBuffer.wrap(latencies.toJson(testName).getBytes(StandardCharsets.UTF_8))).build();
+		publishService.publish(payload);
+	}
+
 	private boolean listenerRunning = false;
 
 	public TCK() {
@@ -105,59 +141,80 @@ public class TCK {
 
 		logger.info("Test requested " + profile.name().toLowerCase() + " " + test);
 
+		final TestRegistry.Entry entry = TestRegistry.lookup(profile, test);
+		if (entry == null) {
+			logger.error("Could not find test class " + profile.name().toLowerCase() + "." + test);
+			return;
+		}
 		try {
-			final Class testClass =
-					Class.forName("org.eclipse.sparkplug.tck.test." + profile.name().toLowerCase() + "." + test);
-
 			try {
-				final Class[] types = { this.getClass(), String[].class };
-				final Constructor constructor = testClass.getConstructor(types);
-				final Object[] parameters = { this, parms };
-				current = (TCKTest) constructor.newInstance(parameters);
-			} catch (NoSuchMethodException e) {
-				try {
-					final Class[] types = { this.getClass(), String[].class, Results.Config.class };
-					final Constructor constructor = testClass.getConstructor(types);
-					final Object[] parameters = { this, parms, results.getConfig() };
-					current = (TCKTest) constructor.newInstance(parameters);
-				} catch (NoSuchMethodException f) {
-					final Class[] types = { this.getClass(), Utilities.class, String[].class, Results.Config.class };
-					final Constructor constructor = testClass.getConstructor(types);
-					final Object[] parameters = { this, utilities, parms, results.getConfig() };
-					current = (TCKTest) constructor.newInstance(parameters);
+				current = entry.getFactory().create(this, utilities, parms, results.getConfig());
+			} catch (final Exception e) {
+				logger.error("Error starting test " + profile.name().toLowerCase() + "." + test);
+				if (e.getMessage() != null) {
+					logger.error(e.getMessage());
 				}
+				MQTTLog(getNotExecuted(entry) + "OVERALL: NOT EXECUTED"); // Ensure the test ends
+				return;
 			}
 
 			hasMonitor = !profile.equals(Profile.BROKER);
 
+			latencies.reset();
+			recordLatencies = results.getConfig().messageLatencies;
+			startMetrics(test);
+
+			configurePipeline();
+			configureStageMetrics();
 			if (hasMonitor) {
 				monitor.startTest();
 			}
-		} catch (java.lang.reflect.InvocationTargetException e) {
-			logger.error("Error starting test " + profile.name().toLowerCase() + "." + test);
-			if (e.getMessage() != null) {
-				logger.error(e.getMessage());
-			}
-			MQTTLog("OVERALL: NOT EXECUTED"); // Ensure the test ends
 		} catch (final Exception e) {
-			logger.error("Could not find or set test class " + profile.name().toLowerCase() + "." + test, e);
+			logger.error("Could not set test class " + profile.name().toLowerCase() + "." + test, e);
 		}
 	}
 
+	/**
+	 * @return a line for each assertion of a test which could not be created, marking it as not executed, or nothing
+	 *         if the assertions of the test are not known without creating it
+	 */
+	private static @NotNull String getNotExecuted(final @NotNull TestRegistry.Entry entry) {
+		final StringBuilder lines = new StringBuilder();
+		if (entry.getTestIds() != null) {
+			for (final String id : entry.getTestIds()) {
+				lines.append(id).append(": ").append(NOT_EXECUTED).append(";").append(System.lineSeparator());
+			}
+		}
+		return lines.toString();
+	}
+
 	public void endTest() {
 		endTest("");
 	}
 
 	public void endTest(String info) {
-		if (current != null) {
-			logger.info("Test end requested for " + current.getName() + " " + info);
+		final TCKTest test = current;
+		if (test != null) {
+			logger.info("Test end requested for " + test.getName() + " " + info);
 			final TreeMap<String, String> testResults = new TreeMap<>();
 
+			// before the test results, whose OVERALL line marks the end of the test
+			stopMetrics();
+			if (recordLatencies) {
+				recordLatencies = false;
+				publishMetrics(test.getName());
+				final String latencySummary = latencies.getSummary();
+				if (!latencySummary.isEmpty()) {
+					MQTTLog("Message latencies for " + test.getName() + System.lineSeparator() + latencySummary);
+				}
+			}
+
 			if (!hasMonitor) {
-				current.endTest(testResults);
+				test.endTest(testResults);
 			} else {
+				drainPipeline();
 				testResults.putAll(monitor.getResults());
-				current.endTest(testResults);
+				test.endTest(testResults);
 				monitor.endTest(null);
 			}
 			current = null;
@@ -167,67 +224,248 @@ public class TCK {
 	}
 
 	public void onMqttConnectionStart(ConnectionStartInput connectionStartInput) {
-		if (current != null) {
-			current.onMqttConnectionStart(connectionStartInput);
+		final TCKTest test = current;
+		if (test != null) {
+			test.onMqttConnectionStart(connectionStartInput);
 		}
 		if (hasMonitor) {
-			monitor.onMqttConnectionStart(connectionStartInput);
+			toMonitor(connectionStartInput.getClientInformation().getClientId(), () -> monitor.onMqttConnectionStart(connectionStartInput));
 		}
 	}
 
 	public void onAuthenticationSuccessful(AuthenticationSuccessfulInput authenticationSuccessfulInput) {
-		if (current != null) {
-			current.onAuthenticationSuccessful(authenticationSuccessfulInput);
+		final TCKTest test = current;
+		if (test != null) {
+			test.onAuthenticationSuccessful(authenticationSuccessfulInput);
 		}
 		if (hasMonitor) {
-			monitor.onAuthenticationSuccessful(authenticationSuccessfulInput);
+			toMonitor(authenticationSuccessfulInput.getClientInformation().getClientId(), () -> monitor.onAuthenticationSuccessful(authenticationSuccessfulInput));
 		}
 	}
 
 	public void onDisconnect(DisconnectEventInput disconnectEventInput) {
-		if (current != null) {
-			current.onDisconnect(disconnectEventInput);
+		final TCKTest test = current;
+		if (test != null) {
+			test.onDisconnect(disconnectEventInput);
 		}
 		if (hasMonitor) {
-			monitor.onDisconnect(disconnectEventInput);
+			toMonitor(disconnectEventInput.getClientInformation().getClientId(), () -> monitor.onDisconnect(disconnectEventInput));
 		}
 	}
 
 	public void connect(final @NotNull String clientId, final @NotNull ConnectPacket packet) {
-		if (current != null) {
-			current.connect(clientId, packet);
+		final TCKTest test = current;
+		if (test != null) {
+			test.connect(clientId, packet);
 		}
 		if (hasMonitor) {
-			monitor.connect(clientId, packet);
+			toMonitor(clientId, () -> monitor.connect(clientId, packet));
 		}
 	}
 
 	public void disconnect(final @NotNull String clientId, final @NotNull DisconnectPacket packet) {
-		if (current != null) {
-			current.disconnect(clientId, packet);
+		final TCKTest test = current;
+		if (test != null) {
+			test.disconnect(clientId, packet);
 		}
 		if (hasMonitor) {
-			monitor.disconnect(clientId, packet);
+			toMonitor(clientId, () -> monitor.disconnect(clientId, packet));
 		}
 	}
 
 	public void subscribe(final @NotNull String clientId, final @NotNull SubscribePacket packet) {
-		if (current != null) {
-			current.subscribe(clientId, packet);
+		final TCKTest test = current;
+		if (test != null) {
+			test.subscribe(clientId, packet);
 		}
 		if (hasMonitor) {
-			monitor.subscribe(clientId, packet);
+			toMonitor(clientId, () -> monitor.subscribe(clientId, packet));
 		}
 	}
 
 	public void publish(final @NotNull String clientId, final @NotNull PublishPacket packet) {
+		final long start = StageMetrics.start();
+		final TCKTest test = current;
 		logger.debug("CLIENT_ID={} :: TOPIC: {} :: current={}", clientId, packet.getTopic(),
-				current != null ? current.getName() : "null");
-		if (current != null) {
-			current.publish(clientId, packet);
+				test != null ? test.getName() : "null");
+		final PublishEnvelope envelope = new PublishEnvelope(clientId, packet);
+		if (recordLatencies) {
+			latencies.record(envelope);
 		}
-		if (hasMonitor) {
-			monitor.publish(clientId, packet);
+		envelope.bind();
+		try {
+			if (test != null) {
+				final long testStart = StageMetrics.start();
+				test.publish(clientId, packet, envelope);
+				StageMetrics.record(Stage.TEST_DISPATCH, testStart);
+			}
+			if (hasMonitor) {
+				final ValidationPipeline validators = pipeline;
+				if (validators == null) {
+					final long monitorStart = StageMetrics.start();
+					monitor.publish(clientId, packet, envelope);
+					StageMetrics.record(Stage.MONITOR, monitorStart);
+				} else {
+					final MessageType type = envelope.getMessageType();
+					toMonitor(validators, clientId, type == MessageType.NDATA || type == MessageType.DDATA, () -> {
+						final long monitorStart = StageMetrics.start();
+						envelope.bind();
+						try {
+							monitor.publish(clientId, packet, envelope);
+						} finally {
+							envelope.unbind();
+							StageMetrics.record(Stage.MONITOR, monitorStart);
+						}
+					});
+				}
+			}
+		} finally {
+			envelope.unbind();
+			StageMetrics.record(Stage.TCK_PUBLISH, start);
+		}
+	}
+
+	/**
+	 * Publishes the message latencies every metrics interval while a test runs, if they are recorded and an interval
+	 * is configured.
+	 */
+	private synchronized void startMetrics(final @NotNull String testName) {
+		stopMetrics();
+		final long interval = results.getConfig().metricsInterval;
+		if (recordLatencies && interval > 0) {
+			metricsPublisher = Services.extensionExecutorService().scheduleAtFixedRate(() -> publishMetrics(testName),
+					interval, interval, TimeUnit.MILLISECONDS);
+		}
+	}
+
+	private synchronized void stopMetrics() {
+		if (metricsPublisher != null) {
+			metricsPublisher.cancel(false);
+			metricsPublisher = null;
+		}
+	}
+
+	/**
+	 * Starts, restarts or stops the timing of the publish stages to match the configuration, at the start of a test.
+	 * The timings are exported every interval to the log topic, or appended to a file if one is configured.
+	 */
+	private synchronized void configureStageMetrics() {
+		final Results.Config config = results.getConfig();
+		final String file = (config.stageMetricsFile == null || config.stageMetricsFile.isEmpty())
+				? null
+				: config.stageMetricsFile;
+		if (stageExporter != null && stageExportInterval == config.stageMetricsInterval
+				&& Objects.equals(stageExportFile, file)) {
+			return;
+		}
+		if (stageExporter != null) {
+			stageExporter.cancel(false);
+			stageExporter = null;
+		}
+		stageExportInterval = config.stageMetricsInterval;
+		stageExportFile = file;
+		StageMetrics.setEnabled(stageExportInterval > 0);
+		if (stageExportInterval > 0) {
+			StageMetrics.report(); // start a new interval
+			stageExporter = Services.extensionExecutorService().scheduleAtFixedRate(() -> exportStageMetrics(file),
+					stageExportInterval, stageExportInterval, TimeUnit.MILLISECONDS);
+		}
+	}
+
+	private void exportStageMetrics(final @Nullable String file) {
+		final String report = StageMetrics.report();
+		if (report.isEmpty()) {
+			return;
+		}
+		if (file == null) {
+			final Publish payload = Builders.publish().topic(TCK_LOG_TOPIC).qos(Qos.AT_MOST_ONCE)
+					.payload(ByteBuffer.wrap(report.getBytes(StandardCharsets.UTF_8))).build();
+			Services.publishService().publish(payload);
+		} else {
+			try (FileWriter writer = new FileWriter(file, true)) {
+				writer.write(report);
+			} catch (final IOException e) {
+				logger.error("Failed to write stage metrics to {}: {}", file, e.getMessage());
+			}
+		}
+	}
+
+	private void toMonitor(final @NotNull String clientId, final @NotNull Runnable event) {
+		final ValidationPipeline validators = pipeline;
+		if (validators == null) {
+			event.run();
+		} else {
+			toMonitor(validators, clientId, false, event);
+		}
+	}
+
+	/**
+	 * Queues an event for the Monitor. If the pipeline has been stopped since it was read, by a change of
+	 * configuration or a shutdown, the event is validated on the calling thread instead of being lost.
+	 */
+	private void toMonitor(final @NotNull ValidationPipeline validators, final @NotNull String clientId,
+			final boolean isData, final @NotNull Runnable event) {
+		if (!validators.submit(clientId, isData, event) && validators.isStopped()) {
+			event.run();
+		}
+	}
+
+	/**
+	 * Starts, restarts or stops the validation pipeline to match the configuration, at the start of a test.
+	 */
+	private void configurePipeline() {
+		final Results.Config config = results.getConfig();
+		ValidationPipeline validators = pipeline;
+		if (validators != null && (!config.asyncValidation || validators.getWorkerCount() != config.validationWorkers
+				|| validators.getQueueSize() != config.validationQueueSize
+				|| validators.getBackpressure() != config.validationBackpressure
+				|| validators.getSampleRate() != config.validationSampleRate)) {
+			drainPipeline();
+			pipeline = null;
+			validators.shutdown();
+			validators = null;
+			pipelineDropped = 0L;
+		}
+		if (validators == null && config.asyncValidation) {
+			pipeline = new ValidationPipeline(config.validationWorkers, config.validationQueueSize,
+					config.validationBackpressure, config.validationSampleRate, monitor::dataGap);
+		}
+	}
+
+	/**
+	 * Waits for the Monitor to finish validating the events queued so far, so that its results are up to date.
+	 */
+	private void drainPipeline() {
+		final ValidationPipeline validators = pipeline;
+		if (validators != null) {
+			if (!validators.drain(PIPELINE_DRAIN_TIMEOUT)) {
+				logger.error("Timed out waiting for the Monitor to validate {} queued events",
+						validators.getQueueDepth());
+			}
+			final long dropped = validators.getDroppedCount();
+			if (dropped > pipelineDropped) {
+				final String warning = "Monitor results are incomplete: " + (dropped - pipelineDropped)
+						+ " data messages were not validated because of validation pipeline backpressure";
+				logger.warn(warning);
+				// published before the test results, so that it is in the results log with them
+				MQTTLog(warning);
+			}
+			pipelineDropped = dropped;
+		}
+	}
+
+	public synchronized void shutdown() {
+		stopMetrics();
+		if (stageExporter != null) {
+			stageExporter.cancel(false);
+			stageExporter = null;
+		}
+		StageMetrics.setEnabled(false);
+		final ValidationPipeline validators = pipeline;
+		pipeline = null;
+		if (validators != null) {
+			validators.shutdown();
 		}
+		results.shutdown();
 	}
 }
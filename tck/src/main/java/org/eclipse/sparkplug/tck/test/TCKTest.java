@@ -21,8 +21,9 @@ import java.nio.ByteBuffer;
 import java.sql.Timestamp;
 import java.util.Date;
 import java.util.Map;
-import java.util.TreeMap;
 
+import org.eclipse.sparkplug.tck.test.common.PublishEnvelope;
+import org.eclipse.sparkplug.tck.test.common.ResultTable;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
@@ -47,7 +48,7 @@ import com.hivemq.extension.sdk.api.services.publish.PublishService;
 public abstract class TCKTest {
 
 	private static final @NotNull Logger logger = LoggerFactory.getLogger("Sparkplug");
-	protected final @NotNull Map<String, String> testResults = new TreeMap<>();
+	protected final @NotNull Map<String, String> testResults = new ResultTable();
 
 	public void onMqttConnectionStart(ConnectionStartInput connectionStartInput) {
 	}
@@ -66,6 +67,14 @@ public abstract class TCKTest {
 
 	public abstract void publish(String clientId, PublishPacket packet);
 
+	/**
+	 * Called by the TCK for each publish, with the envelope holding the topic and payload already parsed. Tests which
+	 * don't need the envelope can just implement {@link #publish(String, PublishPacket)}.
+	 */
+	public void publish(String clientId, PublishPacket packet, PublishEnvelope envelope) {
+		publish(clientId, packet);
+	}
+
 	public abstract String getName();
 
 	public abstract Map<String, String> getResults();
@@ -0,0 +1,262 @@
+/*******************************************************************************
+ * Copyright (c) 2022 Ian Craggs
+ *
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v2.0
+ * which is available at https://www.eclipse.org/legal/epl-2.0/
+ *
+ * SPDX-License-Identifier: EPL-2.0
+ *
+ * Contributors:
+ *    Ian Craggs - initial implementation and documentation
+ *******************************************************************************/
+
+package org.eclipse.sparkplug.tck.test;
+
+import java.util.List;
+import java.util.Objects;
+import java.util.concurrent.ConcurrentHashMap;
+
+import org.eclipse.sparkplug.tck.test.common.SparkplugBProto.Payload.Metric;
+import org.eclipse.sparkplug.tck.test.common.SparkplugBProto.Payload.Template;
+
+import com.google.protobuf.InvalidProtocolBufferException;
+import com.hivemq.extension.sdk.api.annotations.NotNull;
+import com.hivemq.extension.sdk.api.annotations.Nullable;
+
+/**
+ * The template definitions from the NBIRTHs seen by the Monitor, interned across edge nodes.
+ *
+ * A fleet of edge nodes usually defines the same templates, so each NBIRTH would otherwise hold its own copy of the
+ * same definition trees. A definition is identified by its name and its template, which includes the version and
+ * all the members and parameters. The timestamps of the member metrics are left out: they only record when each edge
+ * node built its definition, and the shared copy has none. They are skipped when definitions are hashed and
+ * compared, so looking a definition up doesn't copy it. The first time a definition is seen a copy of it is kept,
+ * without the timestamps and detached from the publish buffer it was parsed from, and every later NBIRTH with an
+ * equal definition refers to that copy instead.
+ *
+ * The Monitor clears the registry at the start of each test, so definitions are only shared within a test. The births
+ * of an earlier test keep the definitions they refer to until they are replaced.
+ *
+ * Each {@link BirthRegistry.Birth} holds the definitions of its edge node by name, so a template reference is
+ * resolved to its definition in constant time.
+ *
+ * This class is thread safe, and one instance is shared by all the shards of the Monitor.
+ *
+ * @author Ian Craggs
+ */
+class TemplateRegistry {
+
+	/**
+	 * A template definition, shared by all the edge nodes which define it.
+	 */
+	static final class Definition {
+		private final @NotNull String name;
+		private final @NotNull Template template;
+		private final int hash;
+
+		Definition(final @NotNull String name, final @NotNull Template template) {
+			this.name = name;
+			this.template = template;
+			this.hash = 31 * name.hashCode() + hash(template);
+		}
+
+		public @NotNull String getName() {
+			return name;
+		}
+
+		/**
+		 * @return the version of the definition, or null if it has none
+		 */
+		public @Nullable String getVersion() {
+			return template.hasVersion() ? template.getVersion() : null;
+		}
+
+		public @NotNull Template getTemplate() {
+			return template;
+		}
+
+		@Override
+		public int hashCode() {
+			return hash;
+		}
+
+		@Override
+		public boolean equals(final Object obj) {
+			if (this == obj) {
+				return true;
+			}
+			if (!(obj instanceof Definition)) {
+				return false;
+			}
+			final Definition other = (Definition) obj;
+			return hash == other.hash && name.equals(other.name) && equal(template, other.template);
+		}
+
+		@Override
+		public String toString() {
+			return "Definition [name=" + name + ", version=" + getVersion() + "]";
+		}
+	}
+
+	private final @NotNull ConcurrentHashMap<Definition, Definition> definitions = new ConcurrentHashMap<>();
+
+	/**
+	 * Returns the shared definition equal to a template definition from a birth certificate.
+	 *
+	 * @param name the name of the template definition metric
+	 * @param template the template definition
+	 * @return the shared definition
+	 */
+	public @NotNull Definition intern(final @NotNull String name, final @NotNull Template template) {
+		final Definition existing = definitions.get(new Definition(name, template));
+		if (existing != null) {
+			return existing;
+		}
+		final Definition detached = new Definition(name, detach(withoutTimestamps(template)));
+		final Definition raced = definitions.putIfAbsent(detached, detached);
+		return (raced == null) ? detached : raced;
+	}
+
+	/**
+	 * @return the number of distinct template definitions
+	 */
+	public int size() {
+		return definitions.size();
+	}
+
+	/**
+	 * Forgets all the definitions, so that they can be freed once no birth refers to them.
+	 */
+	public void clear() {
+		definitions.clear();
+	}
+
+	/**
+	 * Hashes a template, leaving out the timestamps of its member metrics and of any nested templates.
+	 */
+	private static int hash(final @NotNull Template template) {
+		int hash = Objects.hash(template.hasVersion() ? template.getVersion() : null,
+				template.hasTemplateRef() ? template.getTemplateRef() : null,
+				template.hasIsDefinition() ? template.getIsDefinition() : null, template.getParametersList());
+		for (Metric metric : template.getMetricsList()) {
+			hash = 31 * hash + Objects.hash(metric.hasName() ? metric.getName() : null,
+					metric.hasAlias() ? metric.getAlias() : null, metric.hasDatatype() ? metric.getDatatype() : null,
+					metric.getValueCase());
+			hash = 31 * hash
+					+ (metric.hasTemplateValue() ? hash(metric.getTemplateValue()) : Objects.hashCode(value(metric)));
+		}
+		return hash;
+	}
+
+	/**
+	 * Compares two templates, leaving out the timestamps of their member metrics and of any nested templates.
+	 */
+	private static boolean equal(final @NotNull Template one, final @NotNull Template two) {
+		if (one == two) {
+			return true;
+		}
+		if (one.hasVersion() != two.hasVersion() || !one.getVersion().equals(two.getVersion())
+				|| one.hasTemplateRef() != two.hasTemplateRef() || !one.getTemplateRef().equals(two.getTemplateRef())
+				|| one.hasIsDefinition() != two.hasIsDefinition() || one.getIsDefinition() != two.getIsDefinition()
+				|| !one.getParametersList().equals(two.getParametersList())
+				|| !one.getUnknownFields().equals(two.getUnknownFields())) {
+			return false;
+		}
+		final List<Metric> metrics = one.getMetricsList();
+		final List<Metric> others = two.getMetricsList();
+		if (metrics.size() != others.size()) {
+			return false;
+		}
+		for (int i = 0; i < metrics.size(); i++) {
+			if (!equal(metrics.get(i), others.get(i))) {
+				return false;
+			}
+		}
+		return true;
+	}
+
+	private static boolean equal(final @NotNull Metric one, final @NotNull Metric two) {
+		if (one.hasName() != two.hasName() || !one.getName().equals(two.getName()) || one.hasAlias() != two.hasAlias()
+				|| one.getAlias() != two.getAlias() || one.hasDatatype() != two.hasDatatype()
+				|| one.getDatatype() != two.getDatatype() || one.hasIsHistorical() != two.hasIsHistorical()
+				|| one.getIsHistorical() != two.getIsHistorical() || one.hasIsTransient() != two.hasIsTransient()
+				|| one.getIsTransient() != two.getIsTransient() || one.hasIsNull() != two.hasIsNull()
+				|| one.getIsNull() != two.getIsNull() || one.hasMetadata() != two.hasMetadata()
+				|| !one.getMetadata().equals(two.getMetadata()) || one.hasProperties() != two.hasProperties()
+				|| !one.getProperties().equals(two.getProperties()) || one.getValueCase() != two.getValueCase()
+				|| !one.getUnknownFields().equals(two.getUnknownFields())) {
+			return false;
+		}
+		return one.hasTemplateValue()
+				? equal(one.getTemplateValue(), two.getTemplateValue())
+				: Objects.equals(value(one), value(two));
+	}
+
+	/**
+	 * @return the value of a metric which is not a template, or null if it has none
+	 */
+	private static @Nullable Object value(final @NotNull Metric metric) {
+		switch (metric.getValueCase()) {
+			case INT_VALUE:
+				return metric.getIntValue();
+			case LONG_VALUE:
+				return metric.getLongValue();
+			case FLOAT_VALUE:
+				return metric.getFloatValue();
+			case DOUBLE_VALUE:
+				return metric.getDoubleValue();
+			case BOOLEAN_VALUE:
+				return metric.getBooleanValue();
+			case STRING_VALUE:
+				return metric.getStringValue();
+			case BYTES_VALUE:
+				return metric.getBytesValue();
+			case DATASET_VALUE:
+				return metric.getDatasetValue();
+			case EXTENSION_VALUE:
+				return metric.getExtensionValue();
+			default:
+				return null;
+		}
+	}
+
+	/**
+	 * Clears the timestamps of the member metrics of a template, and of any nested templates.
+	 */
+	private static @NotNull Template withoutTimestamps(final @NotNull Template template) {
+		if (!hasTimestamps(template)) {
+			return template;
+		}
+		final Template.Builder builder = template.toBuilder();
+		for (int i = 0; i < builder.getMetricsCount(); i++) {
+			final Metric.Builder metric = builder.getMetricsBuilder(i);
+			metric.clearTimestamp();
+			if (metric.hasTemplateValue()) {
+				metric.setTemplateValue(withoutTimestamps(metric.getTemplateValue()));
+			}
+		}
+		return builder.build();
+	}
+
+	private static boolean hasTimestamps(final @NotNull Template template) {
+		for (Metric metric : template.getMetricsList()) {
+			if (metric.hasTimestamp() || (metric.hasTemplateValue() && hasTimestamps(metric.getTemplateValue()))) {
+				return true;
+			}
+		}
+		return false;
+	}
+
+	/**
+	 * Copies a template so that it no longer refers to the buffer it was decoded from.
+	 */
+	private static @NotNull Template detach(final @NotNull Template template) {
+		try {
+			return Template.parseFrom(template.toByteString());
+		} catch (final InvalidProtocolBufferException e) {
+			// a template which has just been parsed always encodes to a valid message
+			throw new IllegalStateException(e);
+		}
+	}
+}
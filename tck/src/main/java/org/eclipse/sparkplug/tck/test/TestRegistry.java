@@ -0,0 +1,183 @@
+/*******************************************************************************
+ * Copyright (c) 2022 Ian Craggs
+ *
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v2.0
+ * which is available at https://www.eclipse.org/legal/epl-2.0/
+ *
+ * SPDX-License-Identifier: EPL-2.0
+ *
+ * Contributors:
+ *    Ian Craggs - initial implementation and documentation
+ *******************************************************************************/
+
+package org.eclipse.sparkplug.tck.test;
+
+import java.lang.reflect.Constructor;
+import java.lang.reflect.InvocationTargetException;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.Supplier;
+
+import org.eclipse.sparkplug.tck.test.common.Constants.Profile;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.hivemq.extension.sdk.api.annotations.NotNull;
+import com.hivemq.extension.sdk.api.annotations.Nullable;
+
+/**
+ * The TCK tests, by profile and name, with a factory for each and the IDs of the assertions it checks.
+ *
+ * The registry is generated from the test sources at build time, by the generateTestRegistry task of
+ * build.gradle.kts, as GeneratedTestRegistry. Its factories call the test constructors directly, and its assertion
+ * IDs are resolved by the compiler, so starting a test needs no reflection, and the assertions of a test are known
+ * even if it can't be created. When the generated registry is not on the class path, as in a build without that
+ * task, the tests are found by reflection instead, as they were before, and their assertion IDs are known only from
+ * {@link TCKTest#getTestIds()} once they have been created.
+ *
+ * @author Ian Craggs
+ */
+public final class TestRegistry {
+
+	private static final @NotNull Logger logger = LoggerFactory.getLogger("Sparkplug");
+
+	private static final String GENERATED = "org.eclipse.sparkplug.tck.test.GeneratedTestRegistry";
+
+	/**
+	 * Creates a test, with the arguments of whichever of the test constructors the test has.
+	 */
+	@FunctionalInterface
+	public interface Factory {
+		@NotNull
+		TCKTest create(@NotNull TCK tck, @NotNull TCK.Utilities utilities, @NotNull String[] parms,
+				@NotNull Results.Config config) throws Exception;
+	}
+
+	/**
+	 * A test in the registry.
+	 */
+	public static final class Entry {
+		private final @NotNull Factory factory;
+		private final @Nullable List<String> testIds;
+
+		public Entry(final @NotNull Factory factory, final @Nullable List<String> testIds) {
+			this.factory = factory;
+			this.testIds = testIds;
+		}
+
+		public @NotNull Factory getFactory() {
+			return factory;
+		}
+
+		/**
+		 * @return the IDs of the assertions the test checks, or null if they are not known before it is created
+		 */
+		public @Nullable List<String> getTestIds() {
+			return testIds;
+		}
+	}
+
+	private static final @Nullable Map<String, Entry> generated = loadGenerated();
+
+	// the tests found by reflection, when there is no generated registry
+	private static final @NotNull Map<String, Entry> reflected = new ConcurrentHashMap<>();
+
+	private TestRegistry() {
+	}
+
+	/**
+	 * @return true if the registry was generated at build time, false if tests are found by reflection
+	 */
+	public static boolean isGenerated() {
+		return generated != null;
+	}
+
+	/**
+	 * @return the tests of the generated registry, keyed by profile/test, or an empty map if it was not generated
+	 */
+	public static @NotNull Map<String, Entry> getTests() {
+		return (generated == null) ? Collections.emptyMap() : generated;
+	}
+
+	/**
+	 * Finds a test.
+	 *
+	 * @param profile the profile of the test
+	 * @param test the name of the test class, for example SendCommandTest
+	 * @return the test, or null if there is no such test
+	 */
+	public static @Nullable Entry lookup(final @NotNull Profile profile, final @NotNull String test) {
+		final String key = key(profile, test);
+		if (generated != null) {
+			return generated.get(key);
+		}
+		Entry entry = reflected.get(key);
+		if (entry == null) {
+			entry = reflect(profile, test);
+			if (entry != null) {
+				reflected.put(key, entry);
+			}
+		}
+		return entry;
+	}
+
+	static @NotNull String key(final @NotNull Profile profile, final @NotNull String test) {
+		return profile.name().toLowerCase() + "/" + test;
+	}
+
+	@SuppressWarnings("unchecked")
+	private static @Nullable Map<String, Entry> loadGenerated() {
+		try {
+			final Class<?> registry = Class.forName(GENERATED);
+			final Map<String, Entry> tests =
+					((Supplier<Map<String, Entry>>) registry.getDeclaredConstructor().newInstance()).get();
+			logger.debug("Test registry with {} tests loaded", tests.size());
+			return tests;
+		} catch (final ClassNotFoundException e) {
+			logger.info("No generated test registry, tests will be found by reflection");
+		} catch (final ReflectiveOperationException | ClassCastException e) {
+			logger.warn("Can't load the generated test registry, tests will be found by reflection: {}", e.toString());
+		}
+		return null;
+	}
+
+	private static @Nullable Entry reflect(final @NotNull Profile profile, final @NotNull String test) {
+		final Class<?> testClass;
+		try {
+			testClass = Class.forName("org.eclipse.sparkplug.tck.test." + profile.name().toLowerCase() + "." + test);
+		} catch (final ClassNotFoundException e) {
+			return null;
+		}
+		// the constructors the tests have, in the order they are looked for, as in the generateTestRegistry task
+		final Class<?>[][] signatures = { { TCK.class, String[].class },
+				{ TCK.class, String[].class, Results.Config.class },
+				{ TCK.class, TCK.Utilities.class, String[].class, Results.Config.class } };
+		for (final Class<?>[] signature : signatures) {
+			final Constructor<?> constructor;
+			try {
+				constructor = testClass.getConstructor(signature);
+			} catch (final NoSuchMethodException e) {
+				continue;
+			}
+			final int arity = signature.length;
+			return new Entry((tck, utilities, parms, config) -> {
+				try {
+					switch (arity) {
+						case 2:
+							return (TCKTest) constructor.newInstance(tck, parms);
+						case 3:
+							return (TCKTest) constructor.newInstance(tck, parms, config);
+						default:
+							return (TCKTest) constructor.newInstance(tck, utilities, parms, config);
+					}
+				} catch (final InvocationTargetException e) {
+					throw (e.getCause() instanceof Exception) ? (Exception) e.getCause() : e;
+				}
+			}, null);
+		}
+		return null;
+	}
+}
@@ -0,0 +1,298 @@
+/*******************************************************************************
+ * Copyright (c) 2022 Ian Craggs
+ *
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v2.0
+ * which is available at https://www.eclipse.org/legal/epl-2.0/
+ *
+ * SPDX-License-Identifier: EPL-2.0
+ *
+ * Contributors:
+ *    Ian Craggs - initial implementation and documentation
+ *******************************************************************************/
+
+package org.eclipse.sparkplug.tck.test;
+
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Consumer;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.hivemq.extension.sdk.api.annotations.NotNull;
+import com.hivemq.extension.sdk.api.annotations.Nullable;
+
+/**
+ * Runs the Monitor's checks on a set of validator threads, so that the broker's interceptor threads only have to
+ * queue each event.
+ *
+ * Each worker drains its own bounded queue in order. Events are assigned to a worker by MQTT client id. An edge node
+ * sends all its messages through one client, so each edge node's connect, publishes and disconnect are validated in
+ * the order the broker delivered them.
+ *
+ * When a queue is full, the backpressure setting decides what happens to a new data message:
+ * <ul>
+ * <li>BLOCK - the interceptor thread waits for room in the queue. No event is lost.</li>
+ * <li>DROP - the data message is discarded.</li>
+ * <li>SAMPLE - once a queue is half full, only one in every sampleRate data messages is queued, and any others are
+ * discarded.</li>
+ * </ul>
+ * Only data messages are ever discarded. Connects, disconnects, subscribes and the other Sparkplug messages, births
+ * and deaths among them, always wait for room in the queue, because the Monitor's checks of everything after them
+ * depend on them.
+ *
+ * Discarded data messages leave gaps in the sequence numbers that the Monitor sees. The gap handler is told of each
+ * gap, on the validator thread, just before the next event from the same client is validated, so that the Monitor
+ * can skip the comparisons the gap makes meaningless rather than report them as failures. The Monitor's results are
+ * still only complete when {@link #getDroppedCount()} is 0.
+ *
+ * @author Ian Craggs
+ */
+public class ValidationPipeline {
+
+	private static final Logger logger = LoggerFactory.getLogger("Sparkplug");
+
+	// how often an interceptor thread waiting for room in a queue checks whether the pipeline has been stopped
+	private static final long STOP_CHECK_INTERVAL = 100L;
+
+	public enum Backpressure {
+		DROP,
+		BLOCK,
+		SAMPLE
+	}
+
+	private class Worker implements Runnable {
+		private final @NotNull ArrayBlockingQueue<Runnable> queue;
+		private final @NotNull Thread thread;
+		private long sampleCount = 0; // guarded by the worker
+		private volatile int maxDepth = 0;
+
+		Worker(final int index) {
+			queue = new ArrayBlockingQueue<>(queueSize);
+			thread = new Thread(this, "sparkplug-validator-" + index);
+			thread.setDaemon(true);
+		}
+
+		@Override
+		public void run() {
+			while (!stopped) {
+				try {
+					queue.take().run();
+				} catch (final InterruptedException e) {
+					// stopped
+				} catch (final Exception e) {
+					logger.error("Validation exception", e);
+				}
+			}
+		}
+
+		void recordDepth() {
+			final int depth = queue.size();
+			if (depth > maxDepth) {
+				maxDepth = depth;
+			}
+		}
+	}
+
+	private final @NotNull Backpressure backpressure;
+	private final int queueSize;
+	private final int sampleRate;
+	private final @NotNull Worker[] workers;
+	private final @NotNull AtomicLong dropped = new AtomicLong();
+	private final @Nullable Consumer<String> gapHandler;
+	// the client ids with data messages discarded since their last queued event
+	private final @NotNull ConcurrentHashMap<String, Boolean> gaps = new ConcurrentHashMap<>();
+	private volatile boolean stopped = false;
+
+	/**
+	 * @param workerCount the number of validator threads
+	 * @param queueSize the maximum number of events waiting for each validator thread
+	 * @param backpressure what to do with events when a queue is full
+	 * @param sampleRate for SAMPLE, the rate at which data messages are kept once a queue is half full
+	 * @param gapHandler called with the client id before the next event of a client whose data messages have been
+	 *            discarded, or null
+	 */
+	public ValidationPipeline(final int workerCount, final int queueSize, final @NotNull Backpressure backpressure,
+			final int sampleRate, final @Nullable Consumer<String> gapHandler) {
+		if (workerCount < 1 || queueSize < 2 || sampleRate < 1) {
+			throw new IllegalArgumentException("Invalid validation pipeline settings: workers " + workerCount
+					+ " queue size " + queueSize + " sample rate " + sampleRate);
+		}
+		this.backpressure = backpressure;
+		this.queueSize = queueSize;
+		this.sampleRate = sampleRate;
+		this.gapHandler = gapHandler;
+		workers = new Worker[workerCount];
+		for (int i = 0; i < workerCount; i++) {
+			workers[i] = new Worker(i);
+		}
+		for (Worker worker : workers) {
+			worker.thread.start();
+		}
+		logger.info("Validation pipeline started: {} workers, queue size {}, backpressure {}", workerCount, queueSize,
+				backpressure);
+	}
+
+	private @NotNull Worker getWorker(final @NotNull String clientId) {
+		final int h = clientId.hashCode();
+		return workers[((h ^ (h >>> 16)) & 0x7fffffff) % workers.length];
+	}
+
+	/**
+	 * Queues an event for validation.
+	 *
+	 * @param clientId the MQTT client id the event came from
+	 * @param isData true if the event is a data message, which may be discarded
+	 * @param event the validation to run
+	 * @return true if the event was queued, false if it was discarded or the pipeline has been stopped
+	 */
+	public boolean submit(final @NotNull String clientId, final boolean isData, final @NotNull Runnable event) {
+		if (stopped) {
+			return false;
+		}
+		final Worker worker = getWorker(clientId);
+		final boolean gap = gapHandler != null && gaps.remove(clientId) != null;
+		final Runnable task = !gap ? event : () -> {
+			gapHandler.accept(clientId);
+			event.run();
+		};
+		boolean queued = false;
+		try {
+			if (isData && backpressure == Backpressure.DROP) {
+				queued = worker.queue.offer(task);
+			} else if (isData && backpressure == Backpressure.SAMPLE) {
+				if (worker.queue.size() < queueSize / 2) {
+					queued = worker.queue.offer(task);
+				} else {
+					synchronized (worker) {
+						queued = (worker.sampleCount++ % sampleRate == 0) && worker.queue.offer(task);
+					}
+				}
+			} else {
+				queued = put(worker, task);
+			}
+		} catch (final InterruptedException e) {
+			Thread.currentThread().interrupt();
+		}
+		// an event queued while the pipeline was being stopped would never be validated
+		if (queued && stopped && worker.queue.remove(task)) {
+			queued = false;
+		}
+		if (queued) {
+			worker.recordDepth();
+		} else {
+			if (!stopped) {
+				dropped.incrementAndGet();
+			}
+			if (isData || gap) {
+				gaps.put(clientId, Boolean.TRUE);
+			}
+		}
+		return queued;
+	}
+
+	/**
+	 * Waits for room in a worker's queue, until the pipeline is stopped.
+	 *
+	 * @return true if the task was queued, false if the pipeline was stopped first
+	 */
+	private boolean put(final @NotNull Worker worker, final @NotNull Runnable task) throws InterruptedException {
+		while (!worker.queue.offer(task, STOP_CHECK_INTERVAL, TimeUnit.MILLISECONDS)) {
+			if (stopped) {
+				return false;
+			}
+		}
+		return true;
+	}
+
+	/**
+	 * @return true once {@link #shutdown()} has been called, after which no more events are accepted
+	 */
+	public boolean isStopped() {
+		return stopped;
+	}
+
+	/**
+	 * @return the number of events waiting to be validated, over all the workers
+	 */
+	public int getQueueDepth() {
+		int depth = 0;
+		for (Worker worker : workers) {
+			depth += worker.queue.size();
+		}
+		return depth;
+	}
+
+	/**
+	 * @return the largest number of events which have been waiting for any one worker
+	 */
+	public int getMaxQueueDepth() {
+		int depth = 0;
+		for (Worker worker : workers) {
+			depth = Math.max(depth, worker.maxDepth);
+		}
+		return depth;
+	}
+
+	/**
+	 * @return the number of data messages discarded because of backpressure
+	 */
+	public long getDroppedCount() {
+		return dropped.get();
+	}
+
+	public @NotNull Backpressure getBackpressure() {
+		return backpressure;
+	}
+
+	public int getQueueSize() {
+		return queueSize;
+	}
+
+	public int getWorkerCount() {
+		return workers.length;
+	}
+
+	public int getSampleRate() {
+		return sampleRate;
+	}
+
+	/**
+	 * Waits until every event queued before this call has been validated.
+	 *
+	 * @param timeout the longest time to wait, in milliseconds
+	 * @return true if all the events were validated in time
+	 */
+	public boolean drain(final long timeout) {
+		final CountDownLatch latch = new CountDownLatch(workers.length);
+		try {
+			for (Worker worker : workers) {
+				if (!put(worker, latch::countDown)) {
+					return false;
+				}
+			}
+			return latch.await(timeout, TimeUnit.MILLISECONDS);
+		} catch (final InterruptedException e) {
+			Thread.currentThread().interrupt();
+			return false;
+		}
+	}
+
+	/**
+	 * Stops the validator threads. Any events still queued are not validated, and are discarded so that interceptor
+	 * threads waiting for room in a queue are woken. From now on {@link #submit} rejects every event.
+	 */
+	public void shutdown() {
+		stopped = true;
+		for (Worker worker : workers) {
+			worker.thread.interrupt();
+			worker.queue.clear();
+		}
+		logger.info("Validation pipeline stopped: max queue depth {}, dropped events {}", getMaxQueueDepth(),
+				getDroppedCount());
+	}
+}
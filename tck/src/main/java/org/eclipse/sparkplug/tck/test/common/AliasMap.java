@@ -0,0 +1,144 @@
+/*******************************************************************************
+ * Copyright (c) 2022 Ian Craggs
+ *
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v2.0
+ * which is available at https://www.eclipse.org/legal/epl-2.0/
+ *
+ * SPDX-License-Identifier: EPL-2.0
+ *
+ * Contributors:
+ *    Ian Craggs - initial implementation and documentation
+ *******************************************************************************/
+
+package org.eclipse.sparkplug.tck.test.common;
+
+import java.util.Arrays;
+
+/**
+ * A map from metric alias to a non-negative int, typically the index of the metric in a birth certificate.
+ *
+ * Keys and values are held in two parallel primitive arrays using open addressing with linear probing, so a lookup
+ * neither boxes the alias nor allocates. Putting an alias which is already present keeps the existing value and
+ * returns it, which is how duplicate aliases are detected.
+ *
+ * Not thread safe.
+ */
+public class AliasMap {
+
+	/**
+	 * Returned by {@link #get(long)} and {@link #put(long, int)} when the alias is not present.
+	 */
+	public static final int NO_VALUE = -1;
+
+	private static final int MIN_CAPACITY = 8;
+
+	private long[] keys;
+	private int[] values; // NO_VALUE marks an empty slot
+	private int mask;
+	private int size = 0;
+
+	public AliasMap() {
+		this(MIN_CAPACITY / 2);
+	}
+
+	/**
+	 * @param expectedSize the number of aliases expected, so that the map does not need to grow
+	 */
+	public AliasMap(int expectedSize) {
+		// keep the load factor at or below one half
+		int capacity = MIN_CAPACITY;
+		while (capacity < expectedSize * 2) {
+			capacity <<= 1;
+		}
+		allocate(capacity);
+	}
+
+	private void allocate(int capacity) {
+		keys = new long[capacity];
+		values = new int[capacity];
+		Arrays.fill(values, NO_VALUE);
+		mask = capacity - 1;
+	}
+
+	private int slot(long alias) {
+		// spread the bits so that sequential aliases don't cluster
+		long hash = alias * 0x9E3779B97F4A7C15L;
+		return (int) (hash ^ (hash >>> 32)) & mask;
+	}
+
+	/**
+	 * @param alias the alias
+	 * @return the value for the alias, or {@link #NO_VALUE} if the alias is not present
+	 */
+	public int get(long alias) {
+		int i = slot(alias);
+		while (values[i] != NO_VALUE) {
+			if (keys[i] == alias) {
+				return values[i];
+			}
+			i = (i + 1) & mask;
+		}
+		return NO_VALUE;
+	}
+
+	public boolean containsAlias(long alias) {
+		return get(alias) != NO_VALUE;
+	}
+
+	/**
+	 * Adds an alias, unless it is already present.
+	 *
+	 * @param alias the alias
+	 * @param value the value for the alias, which must not be negative
+	 * @return {@link #NO_VALUE} if the alias was added, otherwise the value already held for the alias, which is left
+	 *         unchanged
+	 */
+	public int put(long alias, int value) {
+		if (value < 0) {
+			throw new IllegalArgumentException("Alias map values must not be negative: " + value);
+		}
+		int i = slot(alias);
+		while (values[i] != NO_VALUE) {
+			if (keys[i] == alias) {
+				return values[i];
+			}
+			i = (i + 1) & mask;
+		}
+		keys[i] = alias;
+		values[i] = value;
+		if (++size * 2 > keys.length) {
+			grow();
+		}
+		return NO_VALUE;
+	}
+
+	private void grow() {
+		long[] oldKeys = keys;
+		int[] oldValues = values;
+		allocate(keys.length * 2);
+		for (int j = 0; j < oldKeys.length; j++) {
+			if (oldValues[j] != NO_VALUE) {
+				int i = slot(oldKeys[j]);
+				while (values[i] != NO_VALUE) {
+					i = (i + 1) & mask;
+				}
+				keys[i] = oldKeys[j];
+				values[i] = oldValues[j];
+			}
+		}
+	}
+
+	public int size() {
+		return size;
+	}
+
+	public boolean isEmpty() {
+		return size == 0;
+	}
+
+	public void clear() {
+		Arrays.fill(values, NO_VALUE);
+		size = 0;
+	}
+}
@@ -0,0 +1,215 @@
+/*******************************************************************************
+ * Copyright (c) 2022 Ian Craggs
+ *
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v2.0
+ * which is available at https://www.eclipse.org/legal/epl-2.0/
+ *
+ * SPDX-License-Identifier: EPL-2.0
+ *
+ * Contributors:
+ *    Ian Craggs - initial implementation and documentation
+ *******************************************************************************/
+
+package org.eclipse.sparkplug.tck.test.common;
+
+import java.nio.ByteBuffer;
+
+import org.eclipse.sparkplug.impl.exception.model.MessageType;
+import org.eclipse.sparkplug.impl.exception.model.SparkplugBPayloadView;
+import org.eclipse.sparkplug.impl.exception.model.TopicTokenizer;
+import org.eclipse.sparkplug.tck.test.common.SparkplugBProto.Payload;
+import org.eclipse.sparkplug.tck.test.common.SparkplugBProto.PayloadOrBuilder;
+
+import com.hivemq.extension.sdk.api.annotations.NotNull;
+import com.hivemq.extension.sdk.api.annotations.Nullable;
+import com.hivemq.extension.sdk.api.packets.publish.PublishPacket;
+
+/**
+ * An inbound publish together with the parts of it that the Monitor and the tests all need: the tokenized topic,
+ * the Sparkplug message type and the decoded Sparkplug B payload.
+ *
+ * The envelope is created once per publish by the TCK and handed to every consumer, so the payload is decoded at
+ * most once however many of them look at it. While the consumers run, the envelope is bound to the calling thread
+ * so that {@link Utils#getSparkplugPayload(PublishPacket)} can return the already decoded payload.
+ *
+ * An envelope only refers to the packet, so it can be queued for validation on another thread without copying.
+ * HiveMQ's payload buffers are read-only, so protobuf can't parse them in place and would copy the payload on every
+ * decode. The envelope copies it to an array the first time it is decoded, and every decode of the envelope reads
+ * that array, so a publish is copied at most once.
+ */
+public class PublishEnvelope {
+
+	private static final ThreadLocal<PublishEnvelope> inFlight = new ThreadLocal<>();
+
+	private final @NotNull String clientId;
+	private final @NotNull PublishPacket packet;
+	private final @NotNull TopicTokenizer topicTokens;
+	private final long receivedTimestamp;
+
+	// the payload may be asked for by the active test and by a Monitor validator thread at the same time
+	private volatile boolean decoded = false;
+	private @Nullable PayloadOrBuilder payload = null;
+
+	// a view of the payload, for the Monitor's data sampling, and the timestamp and seq read from it
+	private volatile boolean viewDecoded = false;
+	private @Nullable SparkplugBPayloadView view = null;
+	private @Nullable PayloadOrBuilder header = null;
+
+	// the payload in a form protobuf can read in place, made on first use
+	private volatile @Nullable ByteBuffer readable = null;
+
+	public PublishEnvelope(final @NotNull String clientId, final @NotNull PublishPacket packet) {
+		this.clientId = clientId;
+		this.packet = packet;
+		this.topicTokens = new TopicTokenizer(packet.getTopic());
+		this.receivedTimestamp = System.currentTimeMillis();
+	}
+
+	public @NotNull String getClientId() {
+		return clientId;
+	}
+
+	public @NotNull PublishPacket getPacket() {
+		return packet;
+	}
+
+	public @NotNull String getTopic() {
+		return packet.getTopic();
+	}
+
+	/**
+	 * @return the topic split into its levels
+	 */
+	public @NotNull TopicTokenizer getTopicTokens() {
+		return topicTokens;
+	}
+
+	/**
+	 * @return the message type of a Sparkplug topic, or null if the topic is not a Sparkplug topic or the message
+	 *         type element is not recognized
+	 */
+	public @Nullable MessageType getMessageType() {
+		return topicTokens.getMessageType();
+	}
+
+	/**
+	 * @return the time in milliseconds at which the publish was received by the TCK
+	 */
+	public long getReceivedTimestamp() {
+		return receivedTimestamp;
+	}
+
+	/**
+	 * Returns the decoded Sparkplug B payload, decoding it on first use.
+	 *
+	 * @return the payload, or null if the topic is not a Sparkplug B topic, there is no payload or it could not be
+	 *         decoded
+	 */
+	public @Nullable PayloadOrBuilder getPayload() {
+		if (!decoded) {
+			synchronized (this) {
+				if (!decoded) {
+					final ByteBuffer buffer = getReadablePayload();
+					if (buffer != null) {
+						payload = Utils.decode(buffer);
+					}
+					decoded = true;
+				}
+			}
+		}
+		return payload;
+	}
+
+	/**
+	 * Returns a view of the Sparkplug B payload, creating it on first use. The view reads only the timestamp and seq,
+	 * and the fields of a metric when they are asked for. It reads the payload in place, so it is only valid while the
+	 * envelope is in use. A view is not thread safe, so its metrics are read only by the Monitor, under the lock of
+	 * the edge node's shard.
+	 *
+	 * @return the view, or null if the topic is not a Sparkplug B topic, there is no payload or it could not be
+	 *         decoded
+	 */
+	public @Nullable SparkplugBPayloadView getPayloadView() {
+		if (!viewDecoded) {
+			synchronized (this) {
+				if (!viewDecoded) {
+					final ByteBuffer buffer = getReadablePayload();
+					if (buffer != null) {
+						view = Utils.decodeView(buffer);
+					}
+					if (view != null) {
+						final Payload.Builder builder = Payload.newBuilder();
+						if (view.hasTimestamp()) {
+							builder.setTimestamp(view.getTimestamp());
+						}
+						if (view.hasSeq()) {
+							builder.setSeq(view.getSeq());
+						}
+						header = builder.build();
+					}
+					viewDecoded = true;
+				}
+			}
+		}
+		return view;
+	}
+
+	/**
+	 * Returns the timestamp and seq of the Sparkplug B payload, reading them through the view of the payload on first
+	 * use. The metrics are not decoded, unless the whole payload has been decoded already.
+	 *
+	 * @return a payload holding at least the timestamp and seq, or null if the topic is not a Sparkplug B topic, there
+	 *         is no payload or it could not be decoded
+	 */
+	public @Nullable PayloadOrBuilder getPayloadHeader() {
+		if (decoded) {
+			return payload;
+		}
+		getPayloadView();
+		return header;
+	}
+
+	/**
+	 * @return the Sparkplug B payload as a buffer that can be parsed without copying it, or null if the topic is not a
+	 *         Sparkplug B topic or there is no payload
+	 */
+	private @Nullable ByteBuffer getReadablePayload() {
+		ByteBuffer buffer = readable;
+		if (buffer == null && topicTokens.isSparkplugB()) {
+			synchronized (this) {
+				buffer = readable;
+				if (buffer == null) {
+					buffer = packet.getPayload().orElse(null);
+					if (buffer != null && !buffer.hasArray() && !buffer.isDirect()) {
+						final byte[] bytes = new byte[buffer.remaining()];
+						buffer.duplicate().get(bytes);
+						buffer = ByteBuffer.wrap(bytes);
+					}
+					readable = buffer;
+				}
+			}
+		}
+		return (buffer == null) ? null : buffer.duplicate();
+	}
+
+	/**
+	 * Makes this envelope the one in flight on the current thread, until {@link #unbind()} is called.
+	 */
+	public void bind() {
+		inFlight.set(this);
+	}
+
+	public void unbind() {
+		inFlight.remove();
+	}
+
+	/**
+	 * @param packet a publish packet
+	 * @return the envelope in flight on the current thread if it wraps the given packet, otherwise null
+	 */
+	public static @Nullable PublishEnvelope inFlight(final @NotNull PublishPacket packet) {
+		final PublishEnvelope envelope = inFlight.get();
+		return (envelope != null && envelope.packet == packet) ? envelope : null;
+	}
+}
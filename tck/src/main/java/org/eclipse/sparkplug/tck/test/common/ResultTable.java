@@ -0,0 +1,403 @@
+/*******************************************************************************
+ * Copyright (c) 2022 Ian Craggs
+ *
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v2.0
+ * which is available at https://www.eclipse.org/legal/epl-2.0/
+ *
+ * SPDX-License-Identifier: EPL-2.0
+ *
+ * Contributors:
+ *    Ian Craggs - initial implementation and documentation
+ *******************************************************************************/
+
+package org.eclipse.sparkplug.tck.test.common;
+
+import static org.eclipse.sparkplug.tck.test.common.Constants.FAIL;
+import static org.eclipse.sparkplug.tck.test.common.Constants.MAYBE;
+import static org.eclipse.sparkplug.tck.test.common.Constants.NOT_EXECUTED;
+import static org.eclipse.sparkplug.tck.test.common.Constants.PASS;
+
+import java.lang.reflect.Field;
+import java.lang.reflect.Modifier;
+import java.util.AbstractMap;
+import java.util.AbstractSet;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeSet;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+import java.util.function.BiFunction;
+
+import com.hivemq.extension.sdk.api.annotations.NotNull;
+import com.hivemq.extension.sdk.api.annotations.Nullable;
+
+/**
+ * The results of a test, by assertion ID, held in an array indexed by the ordinal of the assertion.
+ *
+ * Each result is a {@link Status} and, for a failure, the requirement and where it failed, which are only formatted
+ * into the result string when it is read, at the end of the test. Setting a result which passes allocates nothing, so
+ * checks on the paths of data messages, which may pass millions of times in a test, cost an array store.
+ *
+ * The table is a {@code Map<String, String>} of the formatted results, so it can be used where a TreeMap was, and it
+ * iterates in the same order. The assertion ordinals are those of the IDs in {@link Requirements}. Other keys, such as
+ * the Monitor's labelled results, are kept in a sorted map alongside. The table is thread safe.
+ *
+ * @author Ian Craggs
+ */
+public final class ResultTable extends AbstractMap<String, String> {
+
+	/**
+	 * The status of a result.
+	 */
+	public enum Status {
+		PASS(Constants.PASS),
+		FAIL(Constants.FAIL),
+		MAYBE(Constants.MAYBE),
+		NOT_EXECUTED(Constants.NOT_EXECUTED),
+		OTHER("");
+
+		private final @NotNull String text;
+		private final @NotNull Result result;
+
+		Status(final @NotNull String text) {
+			this.text = text;
+			this.result = new Result(this, null, null, text);
+		}
+
+		/**
+		 * @return the status of a result string, from its first word
+		 */
+		public static @NotNull Status of(final @NotNull String result) {
+			if (result.startsWith(Constants.PASS)) {
+				return PASS;
+			} else if (result.startsWith(Constants.FAIL)) {
+				return FAIL;
+			} else if (result.startsWith(Constants.MAYBE)) {
+				return MAYBE;
+			} else if (result.startsWith(Constants.NOT_EXECUTED)) {
+				return NOT_EXECUTED;
+			}
+			return OTHER;
+		}
+	}
+
+	/**
+	 * A result, formatted when it is first read.
+	 */
+	private static final class Result {
+		private final @NotNull Status status;
+		private final @Nullable String requirement;
+		private final @Nullable StackWalker.StackFrame where;
+		private volatile @Nullable String text;
+
+		Result(final @NotNull Status status, final @Nullable String requirement,
+				final @Nullable StackWalker.StackFrame where, final @Nullable String text) {
+			this.status = status;
+			this.requirement = requirement;
+			this.where = where;
+			this.text = text;
+		}
+
+		@NotNull
+		String getText() {
+			String result = text;
+			if (result == null) {
+				result = status.text + " " + requirement;
+				if (where != null) {
+					result += " (" + where.toStackTraceElement() + ")";
+				}
+				text = result;
+			}
+			return result;
+		}
+	}
+
+	private static final @NotNull String[] IDS;
+	private static final @NotNull Map<String, Integer> ORDINALS = new HashMap<>();
+
+	static {
+		final Set<String> ids = new TreeSet<>();
+		for (final Field field : Requirements.class.getFields()) {
+			if (field.getName().startsWith("ID_") && Modifier.isStatic(field.getModifiers())
+					&& field.getType() == String.class) {
+				try {
+					ids.add((String) field.get(null));
+				} catch (final IllegalAccessException e) {
+					// not an assertion ID
+				}
+			}
+		}
+		IDS = ids.toArray(new String[0]);
+		for (int i = 0; i < IDS.length; i++) {
+			ORDINALS.put(IDS[i], i);
+		}
+	}
+
+	private final @NotNull AtomicReferenceArray<Result> results = new AtomicReferenceArray<>(IDS.length);
+	private final @NotNull ConcurrentSkipListMap<String, String> others = new ConcurrentSkipListMap<>();
+
+	/**
+	 * Sets a result.
+	 *
+	 * @param id the assertion ID
+	 * @param status the status
+	 * @param requirement the requirement, for a result other than PASS or NOT_EXECUTED
+	 * @param where where the requirement was checked, or null
+	 */
+	public void set(final @NotNull String id, final @NotNull Status status, final @Nullable String requirement,
+			final @Nullable StackWalker.StackFrame where) {
+		final Integer ordinal = ORDINALS.get(id);
+		final Result result = create(status, requirement, where);
+		if (ordinal == null) {
+			others.put(id, result.getText());
+		} else {
+			results.set(ordinal, result);
+		}
+	}
+
+	/**
+	 * Sets a result unless the current result has the given status, so that a failure is not hidden by a later pass.
+	 * The result is created only if it is set.
+	 *
+	 * @param id the assertion ID
+	 * @param keep the status of a current result which is not to be replaced
+	 * @param status the status
+	 * @param requirement the requirement, for a result other than PASS or NOT_EXECUTED
+	 * @param where where the requirement was checked, or null
+	 */
+	public void setUnless(final @NotNull String id, final @NotNull Status keep, final @NotNull Status status,
+			final @Nullable String requirement, final @Nullable StackWalker.StackFrame where) {
+		final Integer ordinal = ORDINALS.get(id);
+		if (ordinal == null) {
+			others.compute(id, (k, current) -> (current != null && Status.of(current) == keep) ? current
+					: create(status, requirement, where).getText());
+			return;
+		}
+		Result result = null;
+		while (true) {
+			final Result current = results.get(ordinal);
+			if (current != null && current.status == keep) {
+				return;
+			}
+			if (result == null) {
+				result = create(status, requirement, where);
+			}
+			if (results.compareAndSet(ordinal, current, result)) {
+				return;
+			}
+		}
+	}
+
+	/**
+	 * Replaces a result which is present and is not a failure.
+	 *
+	 * @param id the assertion ID
+	 * @param value the result string
+	 */
+	public void replaceIfNotFail(final @NotNull String id, final @NotNull String value) {
+		final Integer ordinal = ORDINALS.get(id);
+		if (ordinal == null) {
+			others.computeIfPresent(id, (k, current) -> current.startsWith(FAIL) ? current : value);
+			return;
+		}
+		final Result result = parse(value);
+		while (true) {
+			final Result current = results.get(ordinal);
+			if (current == null || current.status == Status.FAIL || results.compareAndSet(ordinal, current, result)) {
+				return;
+			}
+		}
+	}
+
+	/**
+	 * @param id the assertion ID
+	 * @return the status of the result of the assertion, or null if it has none
+	 */
+	public @Nullable Status getStatus(final @NotNull String id) {
+		final Integer ordinal = ORDINALS.get(id);
+		if (ordinal == null) {
+			final String value = others.get(id);
+			return (value == null) ? null : Status.of(value);
+		}
+		final Result result = results.get(ordinal);
+		return (result == null) ? null : result.status;
+	}
+
+	/**
+	 * @param prefix the label to prefix each key with, for example "Monitor:"
+	 * @return a read-only view of the results with labelled keys, formatted only when it is read
+	 */
+	public @NotNull Map<String, String> labelled(final @NotNull String prefix) {
+		return new AbstractMap<String, String>() {
+			@Override
+			public @NotNull Set<Entry<String, String>> entrySet() {
+				final List<Entry<String, String>> entries = new ArrayList<>();
+				for (final Entry<String, String> entry : ResultTable.this.entrySet()) {
+					entries.add(new SimpleImmutableEntry<>(prefix + entry.getKey(), entry.getValue()));
+				}
+				return new EntrySet(entries);
+			}
+		};
+	}
+
+	@Override
+	public @Nullable String get(final @Nullable Object key) {
+		final Integer ordinal = ORDINALS.get(key);
+		if (ordinal == null) {
+			return (key instanceof String) ? others.get(key) : null;
+		}
+		final Result result = results.get(ordinal);
+		return (result == null) ? null : result.getText();
+	}
+
+	@Override
+	public boolean containsKey(final @Nullable Object key) {
+		final Integer ordinal = ORDINALS.get(key);
+		if (ordinal == null) {
+			return (key instanceof String) && others.containsKey(key);
+		}
+		return results.get(ordinal) != null;
+	}
+
+	@Override
+	public @Nullable String put(final @NotNull String key, final @NotNull String value) {
+		final Integer ordinal = ORDINALS.get(key);
+		if (ordinal == null) {
+			return others.put(key, value);
+		}
+		final Result previous = results.getAndSet(ordinal, parse(value));
+		return (previous == null) ? null : previous.getText();
+	}
+
+	@Override
+	public @Nullable String remove(final @Nullable Object key) {
+		final Integer ordinal = ORDINALS.get(key);
+		if (ordinal == null) {
+			return (key instanceof String) ? others.remove(key) : null;
+		}
+		final Result previous = results.getAndSet(ordinal, null);
+		return (previous == null) ? null : previous.getText();
+	}
+
+	@Override
+	public @Nullable String compute(final @NotNull String key,
+			final @NotNull BiFunction<? super String, ? super String, ? extends String> function) {
+		final Integer ordinal = ORDINALS.get(key);
+		if (ordinal == null) {
+			return others.compute(key, function);
+		}
+		while (true) {
+			final Result current = results.get(ordinal);
+			final String value = function.apply(key, (current == null) ? null : current.getText());
+			if (results.compareAndSet(ordinal, current, (value == null) ? null : parse(value))) {
+				return value;
+			}
+		}
+	}
+
+	@Override
+	public @Nullable String computeIfPresent(final @NotNull String key,
+			final @NotNull BiFunction<? super String, ? super String, ? extends String> function) {
+		final Integer ordinal = ORDINALS.get(key);
+		if (ordinal == null) {
+			return others.computeIfPresent(key, function);
+		}
+		while (true) {
+			final Result current = results.get(ordinal);
+			if (current == null) {
+				return null;
+			}
+			final String value = function.apply(key, current.getText());
+			if (results.compareAndSet(ordinal, current, (value == null) ? null : parse(value))) {
+				return value;
+			}
+		}
+	}
+
+	@Override
+	public int size() {
+		int size = others.size();
+		for (int i = 0; i < results.length(); i++) {
+			if (results.get(i) != null) {
+				size++;
+			}
+		}
+		return size;
+	}
+
+	@Override
+	public void clear() {
+		for (int i = 0; i < results.length(); i++) {
+			results.set(i, null);
+		}
+		others.clear();
+	}
+
+	/**
+	 * @return a snapshot of the results, formatted, in key order
+	 */
+	@Override
+	public @NotNull Set<Entry<String, String>> entrySet() {
+		final List<Entry<String, String>> entries = new ArrayList<>();
+		final Iterator<Entry<String, String>> other = others.entrySet().iterator();
+		Entry<String, String> next = other.hasNext() ? other.next() : null;
+		for (int i = 0; i < results.length(); i++) {
+			final Result result = results.get(i);
+			if (result == null) {
+				continue;
+			}
+			while (next != null && next.getKey().compareTo(IDS[i]) < 0) {
+				entries.add(new SimpleImmutableEntry<>(next));
+				next = other.hasNext() ? other.next() : null;
+			}
+			entries.add(new SimpleImmutableEntry<>(IDS[i], result.getText()));
+		}
+		while (next != null) {
+			entries.add(new SimpleImmutableEntry<>(next));
+			next = other.hasNext() ? other.next() : null;
+		}
+		return new EntrySet(entries);
+	}
+
+	private static @NotNull Result create(final @NotNull Status status, final @Nullable String requirement,
+			final @Nullable StackWalker.StackFrame where) {
+		if (requirement == null || status == Status.PASS || status == Status.NOT_EXECUTED) {
+			return status.result;
+		}
+		return new Result(status, requirement, where, null);
+	}
+
+	private static @NotNull Result parse(final @NotNull String value) {
+		if (value.equals(PASS) || value.equals(FAIL) || value.equals(MAYBE) || value.equals(NOT_EXECUTED)) {
+			return Status.of(value).result;
+		}
+		return new Result(Status.of(value), null, null, value);
+	}
+
+	/**
+	 * A snapshot of the entries of a table.
+	 */
+	private static final class EntrySet extends AbstractSet<Entry<String, String>> {
+		private final @NotNull List<Entry<String, String>> entries;
+
+		EntrySet(final @NotNull List<Entry<String, String>> entries) {
+			this.entries = entries;
+		}
+
+		@Override
+		public @NotNull Iterator<Entry<String, String>> iterator() {
+			return Collections.unmodifiableList(entries).iterator();
+		}
+
+		@Override
+		public int size() {
+			return entries.size();
+		}
+	}
+}
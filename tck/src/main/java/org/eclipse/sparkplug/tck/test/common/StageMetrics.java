@@ -0,0 +1,140 @@
+/*******************************************************************************
+ * Copyright (c) 2022 Ian Craggs
+ *
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v2.0
+ * which is available at https://www.eclipse.org/legal/epl-2.0/
+ *
+ * SPDX-License-Identifier: EPL-2.0
+ *
+ * Contributors:
+ *    Ian Craggs - initial implementation and documentation
+ *******************************************************************************/
+
+package org.eclipse.sparkplug.tck.test.common;
+
+import java.util.concurrent.TimeUnit;
+
+import org.eclipse.sparkplug.tck.utility.LatencyHistogram;
+
+import com.hivemq.extension.sdk.api.annotations.NotNull;
+
+/**
+ * Timings of the stages each inbound publish goes through in the extension, to show which stage to scale when the
+ * broker's interceptor threads saturate.
+ *
+ * A stage is timed with
+ *
+ * <pre>
+ * final long start = StageMetrics.start();
+ * ...
+ * StageMetrics.record(Stage.DECODE, start);
+ * </pre>
+ *
+ * Each stage has a histogram of its durations which is recorded to without locking, so the cost of timing a stage is
+ * two reads of the clock and a few uncontended atomic increments. Timing is off until {@link #setEnabled(boolean)} is
+ * called, and while it is off a stage costs a read of a volatile flag.
+ *
+ * The stages nest: the interceptor includes the TCK dispatch, which includes the test and the Monitor, which include
+ * the decode of the payload and the Monitor's handler for the message type.
+ */
+public class StageMetrics {
+
+	/**
+	 * The stages of an inbound publish.
+	 */
+	public enum Stage {
+		INTERCEPTOR,
+		TCK_PUBLISH,
+		TEST_DISPATCH,
+		MONITOR,
+		DECODE,
+		DECODE_HEADER,
+		HANDLE_NBIRTH,
+		HANDLE_NDATA,
+		HANDLE_DBIRTH,
+		HANDLE_DDATA,
+		HANDLE_STATE
+	}
+
+	private static final Stage[] STAGES = Stage.values();
+	private static final LatencyHistogram[] histograms = new LatencyHistogram[STAGES.length];
+
+	static {
+		for (int i = 0; i < histograms.length; i++) {
+			histograms[i] = new LatencyHistogram();
+		}
+	}
+
+	private static volatile boolean enabled = false;
+	private static long intervalStart = System.nanoTime();
+
+	private StageMetrics() {
+	}
+
+	public static boolean isEnabled() {
+		return enabled;
+	}
+
+	public static void setEnabled(final boolean enabled) {
+		StageMetrics.enabled = enabled;
+	}
+
+	/**
+	 * @return the start time of a stage, or 0 if timing is off
+	 */
+	public static long start() {
+		return enabled ? System.nanoTime() : 0L;
+	}
+
+	/**
+	 * Records the duration of a stage.
+	 *
+	 * @param stage the stage
+	 * @param start the value returned by {@link #start()} when the stage started
+	 */
+	public static void record(final @NotNull Stage stage, final long start) {
+		if (start != 0L) {
+			histograms[stage.ordinal()].record(System.nanoTime() - start);
+		}
+	}
+
+	/**
+	 * @param stage a stage
+	 * @return the durations of the stage, in nanoseconds, since the last report
+	 */
+	public static @NotNull LatencyHistogram getHistogram(final @NotNull Stage stage) {
+		return histograms[stage.ordinal()];
+	}
+
+	/**
+	 * Returns a report of the stages timed since the last report, one line per stage, and starts a new interval.
+	 *
+	 * @return the report, or an empty string if no stage was timed
+	 */
+	public static synchronized @NotNull String report() {
+		final long now = System.nanoTime();
+		final double seconds = Math.max(1L, now - intervalStart) / 1e9;
+		intervalStart = now;
+
+		final StringBuilder report = new StringBuilder();
+		for (final Stage stage : STAGES) {
+			final LatencyHistogram histogram = histograms[stage.ordinal()];
+			final long count = histogram.getCount();
+			if (count == 0) {
+				continue;
+			}
+			report.append(String.format("Stage %s: %d in %.1f s (%.0f/s), mean %d us, p50 %d us, p99 %d us, max %d us",
+					stage.name(), count, seconds, count / seconds, micros(histogram.getMean()),
+					micros(histogram.getPercentile(0.5)), micros(histogram.getPercentile(0.99)),
+					micros(histogram.getMax())));
+			report.append(System.lineSeparator());
+			histogram.reset();
+		}
+		return report.toString();
+	}
+
+	private static long micros(final long nanos) {
+		return TimeUnit.NANOSECONDS.toMicros(nanos);
+	}
+}
@@ -19,6 +19,7 @@ import static org.eclipse.sparkplug.tck.test.common.Constants.NOT_EXECUTED;
 import static org.eclipse.sparkplug.tck.test.common.Constants.PASS;
 import static org.eclipse.sparkplug.tck.test.common.Constants.TOPIC_ROOT_SP_BV_1_0;
 
+import java.io.IOException;
 import java.nio.ByteBuffer;
 import java.nio.charset.StandardCharsets;
 import java.util.ArrayList;
@@ -32,8 +33,10 @@ import java.util.concurrent.atomic.AtomicBoolean;
 import java.util.regex.Matcher;
 import java.util.regex.Pattern;
 
+import org.eclipse.sparkplug.impl.exception.message.SparkplugBPayloadDecoder;
+import org.eclipse.sparkplug.impl.exception.model.SparkplugBPayloadView;
+import org.eclipse.sparkplug.tck.test.common.ResultTable.Status;
 import org.eclipse.sparkplug.tck.test.common.SparkplugBProto.DataType;
-import org.eclipse.sparkplug.tck.test.common.SparkplugBProto.Payload;
 import org.eclipse.sparkplug.tck.test.common.SparkplugBProto.Payload.Metric;
 import org.eclipse.sparkplug.tck.test.common.SparkplugBProto.Payload.Template.Parameter;
 import org.eclipse.sparkplug.tck.test.common.SparkplugBProto.PayloadOrBuilder;
@@ -42,7 +45,6 @@ import org.slf4j.LoggerFactory;
 
 import com.fasterxml.jackson.databind.JsonNode;
 import com.fasterxml.jackson.databind.ObjectMapper;
-import com.google.protobuf.InvalidProtocolBufferException;
 import com.hivemq.extension.sdk.api.annotations.NotNull;
 import com.hivemq.extension.sdk.api.packets.publish.PublishPacket;
 import com.hivemq.extension.sdk.api.services.Services;
@@ -50,6 +52,7 @@ import com.hivemq.extension.sdk.api.services.publish.RetainedPublish;
 
 public class Utils {
 	private static final @NotNull Logger logger = LoggerFactory.getLogger("Sparkplug");
+	private static final @NotNull StackWalker stackWalker = StackWalker.getInstance();
 
 	/**
 	 * Set the not executed text for any test with a blank status
@@ -102,44 +105,119 @@ public class Utils {
 
 	public static @NotNull boolean setShouldResult(Map<String, String> results, boolean result, String req_id,
 			String req_desc) {
+		if (results instanceof ResultTable) {
+			final ResultTable table = (ResultTable) results;
+			table.set(req_id, result ? Status.PASS : Status.MAYBE, req_desc, result ? null : getCaller());
+			logFailure(table, result, req_id);
+			return result;
+		}
 		results.put(req_id, setShouldResultWithStackTrace(result, req_desc, 2));
 		return result;
 	}
 
 	public static @NotNull boolean setResult(Map<String, String> results, boolean result, String req_id,
 			String req_desc) {
+		if (results instanceof ResultTable) {
+			final ResultTable table = (ResultTable) results;
+			table.set(req_id, result ? Status.PASS : Status.FAIL, req_desc, result ? null : getCaller());
+			logFailure(table, result, req_id);
+			return result;
+		}
 		results.put(req_id, setResultWithStackTrace(result, req_desc, 2));
 		return result;
 	}
 
+	/**
+	 * Records a result unless the assertion has already failed. A stored failure is the word FAIL followed by the
+	 * requirement and where it failed, so it is recognized by its prefix. The check and the update are one step, so a
+	 * failure recorded by one thread can't be replaced by a pass from another.
+	 *
+	 * @return the result
+	 */
 	public static @NotNull boolean setResultIfNotFail(Map<String, String> results, boolean result, String req_id,
 			String req_desc) {
-		if (results.get(req_id) == null || !results.get(req_id).equals(FAIL)) {
-			results.put(req_id, setResultWithStackTrace(result, req_desc, 2));
+		if (results instanceof ResultTable) {
+			final ResultTable table = (ResultTable) results;
+			// a failure already recorded is kept, so there is no need to find where this one happened
+			if (table.getStatus(req_id) != Status.FAIL) {
+				table.setUnless(req_id, Status.FAIL, result ? Status.PASS : Status.FAIL, req_desc,
+						result ? null : getCaller());
+				logFailure(table, result, req_id);
+			}
+			return result;
 		}
+		// compute the entry here, so that the stack trace depth is unchanged, then update it in one step. The stored
+		// value is "FAIL <requirement> (<where>)", so it has to be compared by prefix, not with equals.
+		final String value = setResultWithStackTrace(result, req_desc, 2);
+		results.compute(req_id, (id, current) -> (current == null || !current.startsWith(FAIL)) ? value : current);
 		return result;
 	}
 
+	/**
+	 * Records the result of a recommendation unless it has already been found not to be met, that is unless the
+	 * stored result starts with MAYBE. As with {@link #setResultIfNotFail}, the check and the update are one step.
+	 *
+	 * @return the result
+	 */
 	public static @NotNull boolean setShouldResultIfNotFail(Map<String, String> results, boolean result, String req_id,
 			String req_desc) {
-		if (results.get(req_id) == null || !results.get(req_id).equals(MAYBE)) {
-			results.put(req_id, setShouldResult(result, req_desc));
+		if (results instanceof ResultTable) {
+			((ResultTable) results).setUnless(req_id, Status.MAYBE, result ? Status.PASS : Status.MAYBE, req_desc,
+					null);
+			return result;
 		}
+		final String value = setShouldResult(result, req_desc);
+		results.compute(req_id, (id, current) -> (current == null || !current.startsWith(MAYBE)) ? value : current);
 		return result;
 	}
 
+	/**
+	 * @return the frame of the caller of the Utils method which calls this
+	 */
+	private static StackWalker.StackFrame getCaller() {
+		return stackWalker.walk(frames -> frames.skip(2).findFirst()).orElse(null);
+	}
+
+	private static void logFailure(final ResultTable table, final boolean result, final String req_id) {
+		if (!result && logger.isDebugEnabled()) {
+			logger.debug(table.get(req_id));
+		}
+	}
+
 	public static PayloadOrBuilder decode(ByteBuffer payload) {
-		byte[] array = new byte[payload.remaining()];
-		payload.get(array);
+		final long start = StageMetrics.start();
 		try {
-			return Payload.parseFrom(array);
-		} catch (InvalidProtocolBufferException e) {
+			return SparkplugBPayloadDecoder.getInstance().buildFromByteBuffer(payload);
+		} catch (IOException e) {
 			logger.error("Payload Exception", e);
 			return null;
+		} finally {
+			StageMetrics.record(StageMetrics.Stage.DECODE, start);
+		}
+	}
+
+	/**
+	 * @param payload an encoded Sparkplug B payload, which the view reads in place
+	 * @return a view of the payload, which has read only its timestamp and seq, or null if it could not be decoded
+	 */
+	public static SparkplugBPayloadView decodeView(ByteBuffer payload) {
+		final long start = StageMetrics.start();
+		try {
+			return SparkplugBPayloadView.of(payload);
+		} catch (IOException e) {
+			logger.error("Payload Exception", e);
+			return null;
+		} finally {
+			StageMetrics.record(StageMetrics.Stage.DECODE_HEADER, start);
 		}
 	}
 
 	public static PayloadOrBuilder getSparkplugPayload(PublishPacket packet) {
+		// reuse the payload if the packet is the one currently being dispatched by the TCK
+		final PublishEnvelope envelope = PublishEnvelope.inFlight(packet);
+		if (envelope != null) {
+			return envelope.getPayload();
+		}
 		final ByteBuffer payload = packet.getPayload().orElseGet(null);
 		if (payload != null && packet.getTopic().startsWith(TOPIC_ROOT_SP_BV_1_0)) {
 			return decode(payload);
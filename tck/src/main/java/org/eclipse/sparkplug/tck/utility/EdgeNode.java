@@ -32,7 +32,9 @@ import static org.eclipse.sparkplug.impl.exception.model.MetricDataType.UInt8;
 import static org.eclipse.sparkplug.impl.exception.model.MetricDataType.UUID;
 import static org.eclipse.sparkplug.tck.test.common.Constants.TOPIC_ROOT_SP_BV_1_0;
 
+import java.io.IOException;
 import java.math.BigInteger;
+import java.nio.ByteBuffer;
 import java.util.ArrayList;
 import java.util.Calendar;
 import java.util.Date;
@@ -55,6 +57,7 @@ import org.eclipse.sparkplug.impl.exception.model.Metric;
 import org.eclipse.sparkplug.impl.exception.model.Metric.MetricBuilder;
 import org.eclipse.sparkplug.impl.exception.model.MetricDataType;
 import org.eclipse.sparkplug.impl.exception.model.Parameter;
+import org.eclipse.sparkplug.impl.exception.model.PayloadPool;
 import org.eclipse.sparkplug.impl.exception.model.ParameterDataType;
 import org.eclipse.sparkplug.impl.exception.model.PropertyDataType;
 import org.eclipse.sparkplug.impl.exception.model.PropertySet;
@@ -103,6 +106,11 @@ public class EdgeNode {
 	private int birthBdSeq = 255;
 	private long seq = 0;
 
+	// one encoder, and pooled payloads for data messages, so that publishing data doesn't allocate per message.
+	// Tests publish data from more than one thread, so the pool is only used while holding its lock.
+	private final SparkplugBPayloadEncoder encoder = new SparkplugBPayloadEncoder();
+	private final PayloadPool pool = new PayloadPool();
+
 	public EdgeNode() {
 		logger.info(getName());
 	}
@@ -131,7 +139,7 @@ public class EdgeNode {
 		// and MUST have a bdseq - that fits to the NBIRTH
 		SparkplugBPayloadBuilder deathPayload = new SparkplugBPayloadBuilder().setTimestamp(new Date());
 		deathPayload = addDeathBdSeqNum(deathPayload);
-		deathBytes = new SparkplugBPayloadEncoder().getBytes(deathPayload.createPayload());
+		deathBytes = encoder.getBytes(deathPayload.createPayload());
 
 		MqttConnectOptions options = new MqttConnectOptions();
 		options.setAutomaticReconnect(true);
@@ -150,7 +158,8 @@ public class EdgeNode {
 		/* wait for retained message indicating state of host application under test */
 		int count = 0;
 		while (true) {
-			MqttMessage msg = edge_listener.getNextMessage();
+			// returns as soon as the message arrives, rather than polling
+			MqttMessage msg = edge_listener.getNextMessage(100);
 
 			if (msg != null) {
 				try {
@@ -168,7 +177,6 @@ public class EdgeNode {
 				}
 			}
 
-			Thread.sleep(100);
 			if (++count >= 5) {
 				logger.info("Error: no host application state");
 				return false;
@@ -216,18 +224,16 @@ public class EdgeNode {
 	}
 
 	public boolean publishEdgeData(String metricName, MetricDataType metricDataType, Object value) throws Exception {
-		List<Metric> nodeMetrics = new ArrayList<Metric>();
-
-		// Add a 'real time' metric
-		nodeMetrics
-				.add(new MetricBuilder(metricName, metricDataType, value).timestamp(calendar.getTime()).createMetric());
-
-		logger.info("{} Updating metric " + metricName + " to " + value, getName());
+		SparkplugBPayload nodePayload = acquirePayload(metricName, metricDataType, value);
 
-		SparkplugBPayload nodePayload = new SparkplugBPayload(new Date(), nodeMetrics, getNextSeqNum(), null, null);
+		logger.info("{} Updating metric {} to {}", getName(), metricName, value);
 
-		edge.publish(TOPIC_ROOT_SP_BV_1_0 + "/" + group_id + "/NDATA/" + edge_node_id,
-				new SparkplugBPayloadEncoder().getBytes(nodePayload), 0, false);
+		try {
+			edge.publish(TOPIC_ROOT_SP_BV_1_0 + "/" + group_id + "/NDATA/" + edge_node_id, encode(nodePayload), 0,
+					false);
+		} finally {
+			release(nodePayload);
+		}
 		return true;
 	}
 
@@ -235,26 +241,63 @@ public class EdgeNode {
 		return publishDeviceData(getNextDeviceData(metricName, metricDataType, value));
 	}
 
+	/**
+	 * Publishes a DDATA message. A payload from {@link #getNextDeviceData} is returned to the pool once published, so
+	 * it must not be used again.
+	 */
 	public boolean publishDeviceData(SparkplugBPayload devicePayload) throws Exception {
-		edge.publish(TOPIC_ROOT_SP_BV_1_0 + "/" + group_id + "/DDATA/" + edge_node_id + "/" + deviceId,
-				new SparkplugBPayloadEncoder().getBytes(devicePayload), 0, false);
+		try {
+			edge.publish(TOPIC_ROOT_SP_BV_1_0 + "/" + group_id + "/DDATA/" + edge_node_id + "/" + deviceId,
+					encode(devicePayload), 0, false);
+		} finally {
+			release(devicePayload);
+		}
 		return true;
 	}
 
+	/**
+	 * Creates the payload of the next DDATA message, from the pool of this edge node. The payload is returned to the
+	 * pool when it is published with {@link #publishDeviceData(SparkplugBPayload)}.
+	 */
 	public SparkplugBPayload getNextDeviceData(String metricName, MetricDataType metricDataType, Object value)
 			throws Exception {
-		List<Metric> deviceMetrics = new ArrayList<Metric>();
-
-		// Add a 'real time' metric
-		deviceMetrics
-				.add(new MetricBuilder(metricName, metricDataType, value).timestamp(calendar.getTime()).createMetric());
+		SparkplugBPayload devicePayload = acquirePayload(metricName, metricDataType, value);
 
-		logger.info("{} Updating metric " + metricName + " to " + value, getName());
+		logger.info("{} Updating metric {} to {}", getName(), metricName, value);
 
-		SparkplugBPayload devicePayload = new SparkplugBPayload(new Date(), deviceMetrics, getNextSeqNum(), null, null);
 		return devicePayload;
 	}
 
+	/**
+	 * Acquires a payload with the next seq and one metric from the pool of this edge node.
+	 */
+	private SparkplugBPayload acquirePayload(String metricName, MetricDataType metricDataType, Object value)
+			throws Exception {
+		long seq = getNextSeqNum();
+		synchronized (pool) {
+			SparkplugBPayload payload = pool.acquirePayload(System.currentTimeMillis(), seq);
+
+			// Add a 'real time' metric
+			payload.addMetric(pool.acquireMetric(metricName, metricDataType, value, calendar.getTimeInMillis()));
+			return payload;
+		}
+	}
+
+	private void release(SparkplugBPayload payload) {
+		synchronized (pool) {
+			pool.release(payload);
+		}
+	}
+
+	/**
+	 * Encodes a payload with the streaming encoder, straight into an array of its exact size.
+	 */
+	private byte[] encode(SparkplugBPayload payload) throws IOException {
+		byte[] bytes = new byte[encoder.getSerializedSize(payload)];
+		encoder.encode(payload, ByteBuffer.wrap(bytes));
+		return bytes;
+	}
+
 	// Used to add the birth/death sequence number
 	private SparkplugBPayloadBuilder addDeathBdSeqNum(SparkplugBPayloadBuilder payload) throws Exception {
 		if (payload == null) {
@@ -339,7 +382,6 @@ public class EdgeNode {
 		payload.addMetric(new MetricBuilder("Metric", String, "My Value").properties(propertySet).createMetric());
 
 		payload.setTimestamp(new Date());
-		SparkplugBPayloadEncoder encoder = new SparkplugBPayloadEncoder();
 		return encoder.getBytes(payload);
 	}
 
@@ -347,7 +389,6 @@ public class EdgeNode {
 		SparkplugBPayloadBuilder deathPayload = new SparkplugBPayloadBuilder().setTimestamp(new Date());
 		deathPayload.setSeq(seq);
 
-		SparkplugBPayloadEncoder encoder = new SparkplugBPayloadEncoder();
 		return encoder.getBytes(deathPayload.createPayload());
 	}
 
@@ -387,7 +428,6 @@ public class EdgeNode {
 						.createPropertySet();
 		payload.addMetric(new MetricBuilder("MyMetric", String, "My Value").properties(propertySet).createMetric());
 
-		SparkplugBPayloadEncoder encoder = new SparkplugBPayloadEncoder();
 		return encoder.getBytes(payload);
 	}
 
@@ -571,6 +611,18 @@ public class EdgeNode {
 			}
 		}
 
+		public MqttMessage getNextMessage(long timeout) throws InterruptedException {
+			long deadline = System.currentTimeMillis() + timeout;
+			synchronized (messages) {
+				long remaining = timeout;
+				while (messages.size() == 0 && remaining > 0) {
+					messages.wait(remaining);
+					remaining = deadline - System.currentTimeMillis();
+				}
+				return (messages.size() == 0) ? null : messages.remove(0);
+			}
+		}
+
 		@Override
 		public void connectComplete(boolean reconnect, String serverURI) {
 			logger.debug("{} Connected!", getName());
@@ -0,0 +1,636 @@
+/*******************************************************************************
+ * Copyright (c) 2022 Ian Craggs
+ *
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v2.0
+ * which is available at https://www.eclipse.org/legal/epl-2.0/
+ *
+ * SPDX-License-Identifier: EPL-2.0
+ *
+ * Contributors:
+ *    Ian Craggs - initial implementation and documentation
+ *******************************************************************************/
+
+package org.eclipse.sparkplug.tck.utility;
+
+import static org.eclipse.sparkplug.tck.test.common.Constants.TOPIC_ROOT_SP_BV_1_0;
+import static org.eclipse.sparkplug.tck.test.common.Constants.TOPIC_ROOT_STATE;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.SplittableRandom;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+
+import org.eclipse.paho.client.mqttv3.IMqttActionListener;
+import org.eclipse.paho.client.mqttv3.IMqttDeliveryToken;
+import org.eclipse.paho.client.mqttv3.IMqttToken;
+import org.eclipse.paho.client.mqttv3.MqttAsyncClient;
+import org.eclipse.paho.client.mqttv3.MqttCallback;
+import org.eclipse.paho.client.mqttv3.MqttConnectOptions;
+import org.eclipse.paho.client.mqttv3.MqttException;
+import org.eclipse.paho.client.mqttv3.MqttMessage;
+import org.eclipse.paho.client.mqttv3.persist.MemoryPersistence;
+import org.eclipse.sparkplug.impl.exception.message.SparkplugBPayloadDecoder;
+import org.eclipse.sparkplug.impl.exception.message.SparkplugBPayloadEncoder;
+import org.eclipse.sparkplug.impl.exception.model.MessageType;
+import org.eclipse.sparkplug.impl.exception.model.Metric;
+import org.eclipse.sparkplug.impl.exception.model.Metric.MetricBuilder;
+import org.eclipse.sparkplug.impl.exception.model.MetricDataType;
+import org.eclipse.sparkplug.impl.exception.model.SparkplugBPayload;
+import org.eclipse.sparkplug.impl.exception.model.TopicTokenizer;
+import org.eclipse.sparkplug.tck.test.common.SparkplugBProto.Payload;
+import org.eclipse.sparkplug.tck.test.common.StatePayload;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+/**
+ * A host application simulator, for benchmarking the command handling of edge nodes under host load.
+ *
+ * Where {@link HostApplication} drives one TCK test with a blocking client, the simulator is a long running host: it
+ * publishes its STATE, subscribes to the whole Sparkplug B namespace, and keeps the birth state of every edge node and
+ * device it sees. It sends commands at a fixed rate to edge nodes picked at random: Node Control/Rebirth NCMDs, and
+ * NCMD or DCMD writes of a new value to a metric from the birth certificate.
+ *
+ * The round trip of a command is timed from its publish to the arrival of its echo: the NBIRTH for a rebirth, and
+ * the NDATA or DDATA reporting the written value for a write. A command with no echo within the command timeout is
+ * counted as timed out. The rates and round trip latencies are logged every report interval.
+ *
+ * Incoming messages are only sorted by edge node on the MQTT client thread. They are decoded on a pool of worker
+ * threads, each of which owns the state of the edge nodes hashed to it and sends their commands, so the order of the
+ * messages of each edge node is kept and its state needs no locking.
+ *
+ * Run it with name=value arguments, as listed in {@link HostSimulatorOptions#set(String, String)}, for example
+ *
+ * <pre>
+ * java org.eclipse.sparkplug.tck.utility.HostSimulator workers=4 commandRate=500 duration=60000
+ * </pre>
+ *
+ * @author Ian Craggs
+ */
+public class HostSimulator {
+
+	private static final Logger logger = LoggerFactory.getLogger("Sparkplug");
+
+	private static final String REBIRTH = "Node Control/Rebirth";
+
+	private final HostSimulatorOptions options;
+	private final Worker[] workers;
+	private final TopicTokenizer tokenizer = new TopicTokenizer();
+	private final CommandListener commandListener = new CommandListener();
+
+	private final LongAdder received = new LongAdder();
+	private final LongAdder decodeFailures = new LongAdder();
+	private final LongAdder commands = new LongAdder();
+	private final LongAdder commandFailures = new LongAdder();
+	private final LongAdder timeouts = new LongAdder();
+	private final AtomicInteger onlineNodes = new AtomicInteger();
+	private final LatencyHistogram writeLatency = new LatencyHistogram();
+	private final LatencyHistogram rebirthLatency = new LatencyHistogram();
+	private final LatencyHistogram intervalWriteLatency = new LatencyHistogram();
+	private final LatencyHistogram intervalRebirthLatency = new LatencyHistogram();
+
+	private MqttAsyncClient client = null;
+	private String stateTopic = null;
+	private byte[] deathPayload = null;
+	private ScheduledExecutorService scheduler = null;
+	private long lastReportTime;
+	private long lastReceived;
+	private long lastCommands;
+
+	public HostSimulator(HostSimulatorOptions options) {
+		options.validate();
+		this.options = options;
+		workers = new Worker[options.getWorkers()];
+	}
+
+	public String getName() {
+		return "Sparkplug TCK host simulator";
+	}
+
+	/**
+	 * Connects, subscribes to the Sparkplug B namespace, publishes the online STATE and starts sending commands.
+	 */
+	public synchronized void start() throws Exception {
+		if (client != null) {
+			logger.info("{} already started", getName());
+			return;
+		}
+		logger.info("{} starting: {}", getName(), options);
+
+		for (int w = 0; w < workers.length; w++) {
+			workers[w] = new Worker(w);
+		}
+
+		ObjectMapper mapper = new ObjectMapper();
+		long now = System.currentTimeMillis();
+		byte[] birthPayload = mapper.writeValueAsString(new StatePayload(true, now)).getBytes();
+		deathPayload = mapper.writeValueAsString(new StatePayload(false, now)).getBytes();
+		stateTopic = TOPIC_ROOT_STATE + "/" + options.getHostApplicationId();
+
+		client = new MqttAsyncClient(options.getBrokerURI(), "Sparkplug_TCK_" + options.getHostApplicationId(),
+				new MemoryPersistence());
+		client.setCallback(new MessageListener());
+		MqttConnectOptions connectOptions = new MqttConnectOptions();
+		connectOptions.setCleanSession(true);
+		connectOptions.setMaxInflight(Math.max(10, (int) options.getCommandRate()));
+		connectOptions.setWill(stateTopic, deathPayload, 1, true);
+		client.connect(connectOptions).waitForCompletion();
+
+		// listen before announcing the STATE, so that no birth in answer to it is missed
+		client.subscribe(TOPIC_ROOT_SP_BV_1_0 + "/#", 0).waitForCompletion();
+		client.publish(stateTopic, birthPayload, 1, true).waitForCompletion();
+		logger.info("Host {} online", options.getHostApplicationId());
+
+		lastReportTime = System.nanoTime();
+		scheduler = Executors.newSingleThreadScheduledExecutor(r -> new Thread(r, "Sparkplug host simulator"));
+		if (options.getCommandRate() > 0) {
+			long period = (long) (TimeUnit.SECONDS.toNanos(1) / options.getCommandRate());
+			scheduler.scheduleAtFixedRate(this::command, period, period, TimeUnit.NANOSECONDS);
+		}
+		scheduler.scheduleAtFixedRate(this::report, options.getReportInterval(), options.getReportInterval(),
+				TimeUnit.MILLISECONDS);
+	}
+
+	/**
+	 * Stops sending commands, publishes the offline STATE and disconnects.
+	 */
+	public synchronized void stop() {
+		if (client == null) {
+			return;
+		}
+		scheduler.shutdownNow();
+		try {
+			client.publish(stateTopic, deathPayload, 1, true).waitForCompletion(1000L);
+			client.disconnect().waitForCompletion();
+			client.close();
+		} catch (MqttException e) {
+			logger.error("{} failed to disconnect: {}", getName(), e.getMessage());
+		}
+		for (Worker worker : workers) {
+			worker.executor.shutdownNow();
+		}
+		client = null;
+		report();
+		logger.info("{} stopped: {}", getName(), getSummary());
+	}
+
+	/**
+	 * @return the totals since the start, and the round trip latencies of all the commands
+	 */
+	public String getSummary() {
+		return String.format("%d received, %d decode failures, %d commands, %d failed, %d timed out, "
+				+ "write round trip p50 %d us, p99 %d us (%d), rebirth round trip p50 %d us, p99 %d us (%d)",
+				received.sum(), decodeFailures.sum(), commands.sum(), commandFailures.sum(), timeouts.sum(),
+				writeLatency.getPercentile(0.5) / 1000, writeLatency.getPercentile(0.99) / 1000,
+				writeLatency.getCount(), rebirthLatency.getPercentile(0.5) / 1000,
+				rebirthLatency.getPercentile(0.99) / 1000, rebirthLatency.getCount());
+	}
+
+	/**
+	 * @return the round trip latencies of the metric writes, from the command to its echo in an NDATA or DDATA
+	 */
+	public LatencyHistogram getWriteLatency() {
+		return writeLatency;
+	}
+
+	/**
+	 * @return the round trip latencies of the rebirth commands, from the NCMD to the NBIRTH
+	 */
+	public LatencyHistogram getRebirthLatency() {
+		return rebirthLatency;
+	}
+
+	public long getTimeouts() {
+		return timeouts.sum();
+	}
+
+	public int getOnlineNodes() {
+		return onlineNodes.get();
+	}
+
+	private void command() {
+		Worker worker = workers[ThreadLocalRandom.current().nextInt(workers.length)];
+		worker.executor.execute(worker::command);
+	}
+
+	private void report() {
+		long now = System.nanoTime();
+		long receivedNow = received.sum();
+		long commandsNow = commands.sum();
+		double seconds = Math.max(1, now - lastReportTime) / 1e9;
+		logger.info("{}: {} nodes online, {} msg/s received, {} commands/s, write round trip p50 {} us, p99 {} us, "
+				+ "rebirth round trip p50 {} us, p99 {} us; {} timed out in total", getName(), onlineNodes.get(),
+				Math.round((receivedNow - lastReceived) / seconds), Math.round((commandsNow - lastCommands) / seconds),
+				intervalWriteLatency.getPercentile(0.5) / 1000, intervalWriteLatency.getPercentile(0.99) / 1000,
+				intervalRebirthLatency.getPercentile(0.5) / 1000, intervalRebirthLatency.getPercentile(0.99) / 1000,
+				timeouts.sum());
+		intervalWriteLatency.reset();
+		intervalRebirthLatency.reset();
+		lastReportTime = now;
+		lastReceived = receivedNow;
+		lastCommands = commandsNow;
+	}
+
+	/**
+	 * A metric from a birth certificate, which commands can be sent to, and the write waiting for its echo.
+	 */
+	private static class Target {
+		private final String name;
+		private final MetricDataType type;
+		private Object expected = null;
+		private long sent = 0;
+
+		Target(String name, MetricDataType type) {
+			this.name = name;
+			this.type = type;
+		}
+	}
+
+	/**
+	 * The metrics of an edge node or device, by name and by alias, from its last birth certificate.
+	 */
+	private static class MetricSet {
+		private final Map<String, Target> byName = new HashMap<String, Target>();
+		private final Map<Long, Target> byAlias = new HashMap<Long, Target>();
+		private final List<Target> writable = new ArrayList<Target>();
+
+		void load(Payload payload) {
+			byName.clear();
+			byAlias.clear();
+			writable.clear();
+			for (Payload.Metric metric : payload.getMetricsList()) {
+				if (!metric.hasName()) {
+					continue;
+				}
+				Target target = new Target(metric.getName(), MetricDataType.fromInteger(metric.getDatatype()));
+				byName.put(target.name, target);
+				if (metric.hasAlias()) {
+					byAlias.put(metric.getAlias(), target);
+				}
+				if (isWritable(target)) {
+					writable.add(target);
+				}
+			}
+		}
+
+		Target find(Payload.Metric metric) {
+			if (metric.hasName()) {
+				return byName.get(metric.getName());
+			}
+			return metric.hasAlias() ? byAlias.get(metric.getAlias()) : null;
+		}
+
+		private static boolean isWritable(Target target) {
+			if (target.name.equals("bdSeq") || target.name.startsWith("Node Control/")
+					|| target.name.startsWith("Device Control/")) {
+				return false;
+			}
+			switch (target.type) {
+				case Int32:
+				case Int64:
+				case Float:
+				case Double:
+				case Boolean:
+				case String:
+					return true;
+				default:
+					return false;
+			}
+		}
+	}
+
+	private static class DeviceState {
+		private final String commandTopic;
+		private final MetricSet metrics = new MetricSet();
+		private boolean online = false;
+
+		DeviceState(String group, String edgeNode, String device) {
+			commandTopic = TOPIC_ROOT_SP_BV_1_0 + "/" + group + "/DCMD/" + edgeNode + "/" + device;
+		}
+	}
+
+	private static class NodeState {
+		private final String edgeNodeId;
+		private final String commandTopic;
+		private final MetricSet metrics = new MetricSet();
+		private final Map<String, DeviceState> devices = new HashMap<String, DeviceState>();
+		private final List<DeviceState> deviceList = new ArrayList<DeviceState>();
+		private boolean online = false;
+		private long rebirthSent = 0;
+
+		NodeState(String group, String edgeNode) {
+			edgeNodeId = edgeNode;
+			commandTopic = TOPIC_ROOT_SP_BV_1_0 + "/" + group + "/NCMD/" + edgeNode;
+		}
+	}
+
+	/**
+	 * A worker thread, with the edge nodes hashed to it. The state of those edge nodes, the encoder and the random
+	 * number generator are only used on this thread.
+	 */
+	private class Worker {
+		private final ScheduledExecutorService executor;
+		private final SparkplugBPayloadEncoder encoder = new SparkplugBPayloadEncoder();
+		private final SplittableRandom random;
+		private final Map<String, Map<String, NodeState>> groups = new HashMap<String, Map<String, NodeState>>();
+		private final List<NodeState> nodes = new ArrayList<NodeState>();
+		private final List<Target> pendingWrites = new ArrayList<Target>();
+
+		Worker(int index) {
+			random = new SplittableRandom(index);
+			executor = Executors.newSingleThreadScheduledExecutor(r -> new Thread(r, "Sparkplug host worker " + index));
+			executor.scheduleAtFixedRate(this::expire, options.getCommandTimeout(), options.getCommandTimeout() / 2 + 1,
+					TimeUnit.MILLISECONDS);
+		}
+
+		void handle(MessageType type, String group, String edgeNode, String device, byte[] bytes, long arrived) {
+			Payload payload;
+			try {
+				payload = SparkplugBPayloadDecoder.getInstance().buildFromByteArray(bytes);
+			} catch (Exception e) {
+				decodeFailures.increment();
+				return;
+			}
+
+			Map<String, NodeState> groupNodes = groups.computeIfAbsent(group, g -> new HashMap<String, NodeState>());
+			NodeState node = groupNodes.get(edgeNode);
+			if (node == null) {
+				if (type != MessageType.NBIRTH) {
+					// data from before the host came online: the edge node is unknown until its next birth
+					return;
+				}
+				node = new NodeState(group, edgeNode);
+				groupNodes.put(edgeNode, node);
+				nodes.add(node);
+			}
+
+			switch (type) {
+				case NBIRTH:
+					if (node.rebirthSent != 0) {
+						record(rebirthLatency, intervalRebirthLatency, arrived - node.rebirthSent);
+						node.rebirthSent = 0;
+					}
+					if (!node.online) {
+						onlineNodes.incrementAndGet();
+					}
+					node.online = true;
+					node.metrics.load(payload);
+					for (DeviceState deviceState : node.deviceList) {
+						deviceState.online = false;
+					}
+					break;
+				case NDEATH:
+					if (node.online) {
+						onlineNodes.decrementAndGet();
+					}
+					node.online = false;
+					for (DeviceState deviceState : node.deviceList) {
+						deviceState.online = false;
+					}
+					break;
+				case DBIRTH:
+					DeviceState born = node.devices.get(device);
+					if (born == null) {
+						born = new DeviceState(group, edgeNode, device);
+						node.devices.put(device, born);
+						node.deviceList.add(born);
+					}
+					born.online = true;
+					born.metrics.load(payload);
+					break;
+				case DDEATH:
+					DeviceState dead = node.devices.get(device);
+					if (dead != null) {
+						dead.online = false;
+					}
+					break;
+				case NDATA:
+					echo(node.metrics, payload, arrived);
+					break;
+				case DDATA:
+					DeviceState reporting = node.devices.get(device);
+					if (reporting != null) {
+						echo(reporting.metrics, payload, arrived);
+					}
+					break;
+				default:
+					break;
+			}
+		}
+
+		private void echo(MetricSet metrics, Payload payload, long arrived) {
+			for (Payload.Metric metric : payload.getMetricsList()) {
+				Target target = metrics.find(metric);
+				if (target != null && target.sent != 0 && target.expected.equals(value(metric))) {
+					record(writeLatency, intervalWriteLatency, arrived - target.sent);
+					target.sent = 0;
+				}
+			}
+		}
+
+		void command() {
+			if (nodes.isEmpty()) {
+				return;
+			}
+			NodeState node = nodes.get(random.nextInt(nodes.size()));
+			if (!node.online) {
+				return;
+			}
+			if (random.nextDouble() < options.getRebirthFraction()) {
+				if (node.rebirthSent == 0) {
+					MetricBuilder rebirth = new MetricBuilder(REBIRTH, MetricDataType.Boolean, true);
+					node.rebirthSent = send(node.commandTopic, rebirth);
+				}
+				return;
+			}
+
+			// the edge node itself, or one of its online devices
+			int which = random.nextInt(node.deviceList.size() + 1) - 1;
+			MetricSet metrics = node.metrics;
+			String topic = node.commandTopic;
+			if (which >= 0) {
+				DeviceState device = node.deviceList.get(which);
+				if (!device.online) {
+					return;
+				}
+				metrics = device.metrics;
+				topic = device.commandTopic;
+			}
+			if (metrics.writable.isEmpty()) {
+				return;
+			}
+			Target target = metrics.writable.get(random.nextInt(metrics.writable.size()));
+			if (target.sent != 0) {
+				return;
+			}
+			Object value = newValue(target.type);
+			target.expected = value;
+			target.sent = send(topic, new MetricBuilder(target.name, target.type, value));
+			if (target.sent != 0) {
+				pendingWrites.add(target);
+			}
+		}
+
+		/**
+		 * @return the time the command was sent, or 0 if it could not be
+		 */
+		private long send(String topic, MetricBuilder metric) {
+			try {
+				List<Metric> metrics = Collections.singletonList(metric.createMetric());
+				byte[] bytes = encoder.getBytes(new SparkplugBPayload(new Date(), metrics, null, null, null));
+				long sent = System.nanoTime();
+				client.publish(topic, bytes, options.getQos(), false, null, commandListener);
+				commands.increment();
+				return sent;
+			} catch (Exception e) {
+				commandFailures.increment();
+				logger.debug("{} failed to send a command to {}: {}", getName(), topic, e.getMessage());
+				return 0;
+			}
+		}
+
+		private Object newValue(MetricDataType type) {
+			switch (type) {
+				case Int32:
+					return random.nextInt();
+				case Int64:
+					return random.nextLong();
+				case Float:
+					return (float) random.nextDouble();
+				case Double:
+					return random.nextDouble();
+				case Boolean:
+					return random.nextBoolean();
+				default:
+					return Long.toHexString(random.nextLong());
+			}
+		}
+
+		private void expire() {
+			long deadline = System.nanoTime() - TimeUnit.MILLISECONDS.toNanos(options.getCommandTimeout());
+			Iterator<Target> iterator = pendingWrites.iterator();
+			while (iterator.hasNext()) {
+				Target target = iterator.next();
+				if (target.sent == 0) {
+					iterator.remove();
+				} else if (target.sent - deadline < 0) {
+					target.sent = 0;
+					timeouts.increment();
+					iterator.remove();
+				}
+			}
+			for (NodeState node : nodes) {
+				if (node.rebirthSent != 0 && node.rebirthSent - deadline < 0) {
+					node.rebirthSent = 0;
+					timeouts.increment();
+					logger.debug("{} no rebirth from {}", getName(), node.edgeNodeId);
+				}
+			}
+		}
+	}
+
+	private static void record(LatencyHistogram total, LatencyHistogram interval, long nanos) {
+		total.record(nanos);
+		interval.record(nanos);
+	}
+
+	/**
+	 * @return the value of a metric as the class it is written with, or null if it is not a scalar
+	 */
+	private static Object value(Payload.Metric metric) {
+		switch (metric.getValueCase()) {
+			case INT_VALUE:
+				return metric.getIntValue();
+			case LONG_VALUE:
+				return metric.getLongValue();
+			case FLOAT_VALUE:
+				return metric.getFloatValue();
+			case DOUBLE_VALUE:
+				return metric.getDoubleValue();
+			case BOOLEAN_VALUE:
+				return metric.getBooleanValue();
+			case STRING_VALUE:
+				return metric.getStringValue();
+			default:
+				return null;
+		}
+	}
+
+	private class MessageListener implements MqttCallback {
+
+		@Override
+		public void messageArrived(String topic, MqttMessage message) {
+			long arrived = System.nanoTime();
+			received.increment();
+			tokenizer.reset(topic);
+			MessageType type = tokenizer.getMessageType();
+			if (!tokenizer.isSparkplugB() || type == null || type == MessageType.STATE || type == MessageType.NCMD
+					|| type == MessageType.DCMD) {
+				return;
+			}
+			String group = tokenizer.getGroupId();
+			String edgeNode = tokenizer.getEdgeNodeId();
+			if (group == null || edgeNode == null) {
+				return;
+			}
+			String device = tokenizer.getDeviceId();
+			byte[] bytes = message.getPayload();
+			int hash = 31 * group.hashCode() + edgeNode.hashCode();
+			Worker worker = workers[(hash & Integer.MAX_VALUE) % workers.length];
+			worker.executor.execute(() -> worker.handle(type, group, edgeNode, device, bytes, arrived));
+		}
+
+		@Override
+		public void connectionLost(Throwable cause) {
+			logger.error("{} connection lost: {}", getName(), cause.getMessage());
+		}
+
+		@Override
+		public void deliveryComplete(IMqttDeliveryToken token) {
+		}
+	}
+
+	private class CommandListener implements IMqttActionListener {
+
+		@Override
+		public void onSuccess(IMqttToken token) {
+		}
+
+		@Override
+		public void onFailure(IMqttToken token, Throwable exception) {
+			commandFailures.increment();
+		}
+	}
+
+	public static void main(String[] args) throws Exception {
+		HostSimulatorOptions options = new HostSimulatorOptions();
+		for (String arg : args) {
+			int equals = arg.indexOf('=');
+			if (equals < 0) {
+				throw new IllegalArgumentException("Arguments are name=value, not " + arg);
+			}
+			options.set(arg.substring(0, equals), arg.substring(equals + 1));
+		}
+		HostSimulator simulator = new HostSimulator(options);
+		Runtime.getRuntime().addShutdownHook(new Thread(simulator::stop));
+		simulator.start();
+		if (options.getDuration() > 0) {
+			Thread.sleep(options.getDuration());
+			simulator.stop();
+		} else {
+			Thread.currentThread().join();
+		}
+	}
+}
@@ -0,0 +1,192 @@
+/*******************************************************************************
+ * Copyright (c) 2022 Ian Craggs
+ *
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v2.0
+ * which is available at https://www.eclipse.org/legal/epl-2.0/
+ *
+ * SPDX-License-Identifier: EPL-2.0
+ *
+ * Contributors:
+ *    Ian Craggs - initial implementation and documentation
+ *******************************************************************************/
+
+package org.eclipse.sparkplug.tck.utility;
+
+/**
+ * The settings of a {@link HostSimulator} run.
+ *
+ * Each setting can also be given on the command line of {@link HostSimulator#main(String[])} as name=value, using the
+ * names in {@link #set(String, String)}.
+ *
+ * @author Ian Craggs
+ */
+public class HostSimulatorOptions {
+
+	private String brokerURI = "tcp://localhost:1883";
+	private String hostApplicationId = "TCK_HOST_SIMULATOR";
+	private int workers = Runtime.getRuntime().availableProcessors();
+	private double commandRate = 10;
+	private double rebirthFraction = 0.1;
+	private long commandTimeout = 5000;
+	private int qos = 0;
+	private long reportInterval = 10000;
+	private long duration = 0;
+
+	public String getBrokerURI() {
+		return brokerURI;
+	}
+
+	public HostSimulatorOptions setBrokerURI(String brokerURI) {
+		this.brokerURI = brokerURI;
+		return this;
+	}
+
+	public String getHostApplicationId() {
+		return hostApplicationId;
+	}
+
+	public HostSimulatorOptions setHostApplicationId(String hostApplicationId) {
+		this.hostApplicationId = hostApplicationId;
+		return this;
+	}
+
+	/**
+	 * @return the number of threads decoding the incoming messages, and keeping the state of the edge nodes
+	 */
+	public int getWorkers() {
+		return workers;
+	}
+
+	public HostSimulatorOptions setWorkers(int workers) {
+		this.workers = workers;
+		return this;
+	}
+
+	/**
+	 * @return the number of commands sent per second, over all the edge nodes
+	 */
+	public double getCommandRate() {
+		return commandRate;
+	}
+
+	public HostSimulatorOptions setCommandRate(double commandRate) {
+		this.commandRate = commandRate;
+		return this;
+	}
+
+	/**
+	 * @return the fraction of the commands, from 0 to 1, which are Node Control/Rebirth rather than metric writes
+	 */
+	public double getRebirthFraction() {
+		return rebirthFraction;
+	}
+
+	public HostSimulatorOptions setRebirthFraction(double rebirthFraction) {
+		this.rebirthFraction = rebirthFraction;
+		return this;
+	}
+
+	/**
+	 * @return how long to wait for the echo of a command, in milliseconds, before counting it as timed out
+	 */
+	public long getCommandTimeout() {
+		return commandTimeout;
+	}
+
+	public HostSimulatorOptions setCommandTimeout(long commandTimeout) {
+		this.commandTimeout = commandTimeout;
+		return this;
+	}
+
+	public int getQos() {
+		return qos;
+	}
+
+	public HostSimulatorOptions setQos(int qos) {
+		this.qos = qos;
+		return this;
+	}
+
+	/**
+	 * @return the time between two logged reports of the message rates and command latencies, in milliseconds
+	 */
+	public long getReportInterval() {
+		return reportInterval;
+	}
+
+	public HostSimulatorOptions setReportInterval(long reportInterval) {
+		this.reportInterval = reportInterval;
+		return this;
+	}
+
+	/**
+	 * @return how long {@link HostSimulator#main(String[])} runs for, in milliseconds, or 0 until it is interrupted
+	 */
+	public long getDuration() {
+		return duration;
+	}
+
+	public HostSimulatorOptions setDuration(long duration) {
+		this.duration = duration;
+		return this;
+	}
+
+	/**
+	 * Sets an option by name.
+	 *
+	 * @param name the name of the option, as in its getter, for example "workers" or "commandRate"
+	 * @param value the value of the option
+	 * @return these options
+	 * @throws IllegalArgumentException if the option is not known, or the value is not valid for it
+	 */
+	public HostSimulatorOptions set(String name, String value) {
+		switch (name) {
+			case "brokerURI":
+				return setBrokerURI(value);
+			case "hostApplicationId":
+				return setHostApplicationId(value);
+			case "workers":
+				return setWorkers(Integer.parseInt(value));
+			case "commandRate":
+				return setCommandRate(Double.parseDouble(value));
+			case "rebirthFraction":
+				return setRebirthFraction(Double.parseDouble(value));
+			case "commandTimeout":
+				return setCommandTimeout(Long.parseLong(value));
+			case "qos":
+				return setQos(Integer.parseInt(value));
+			case "reportInterval":
+				return setReportInterval(Long.parseLong(value));
+			case "duration":
+				return setDuration(Long.parseLong(value));
+			default:
+				throw new IllegalArgumentException("Unknown option " + name);
+		}
+	}
+
+	/**
+	 * @throws IllegalArgumentException if a setting is out of range
+	 */
+	public void validate() {
+		if (workers < 1) {
+			throw new IllegalArgumentException("There must be at least one worker");
+		}
+		if (commandRate < 0 || rebirthFraction < 0 || rebirthFraction > 1) {
+			throw new IllegalArgumentException("commandRate must be positive and rebirthFraction from 0 to 1");
+		}
+		if (commandTimeout < 1 || reportInterval < 1 || duration < 0) {
+			throw new IllegalArgumentException("Intervals must be positive");
+		}
+		if (qos < 0 || qos > 2) {
+			throw new IllegalArgumentException("qos must be 0, 1 or 2");
+		}
+	}
+
+	@Override
+	public String toString() {
+		return "HostSimulatorOptions [brokerURI=" + brokerURI + ", hostApplicationId=" + hostApplicationId
+				+ ", workers=" + workers + ", commandRate=" + commandRate + ", rebirthFraction=" + rebirthFraction
+				+ ", commandTimeout=" + commandTimeout + ", qos=" + qos + "]";
+	}
+}
@@ -0,0 +1,400 @@
+/*******************************************************************************
+ * Copyright (c) 2022 Ian Craggs
+ *
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v2.0
+ * which is available at https://www.eclipse.org/legal/epl-2.0/
+ *
+ * SPDX-License-Identifier: EPL-2.0
+ *
+ * Contributors:
+ *    Ian Craggs - initial implementation and documentation
+ *******************************************************************************/
+
+package org.eclipse.sparkplug.tck.utility;
+
+import static org.eclipse.sparkplug.tck.test.common.Constants.TOPIC_ROOT_SP_BV_1_0;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.SplittableRandom;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+
+import org.eclipse.paho.client.mqttv3.IMqttActionListener;
+import org.eclipse.paho.client.mqttv3.IMqttDeliveryToken;
+import org.eclipse.paho.client.mqttv3.IMqttToken;
+import org.eclipse.paho.client.mqttv3.MqttAsyncClient;
+import org.eclipse.paho.client.mqttv3.MqttCallback;
+import org.eclipse.paho.client.mqttv3.MqttConnectOptions;
+import org.eclipse.paho.client.mqttv3.MqttException;
+import org.eclipse.paho.client.mqttv3.MqttMessage;
+import org.eclipse.paho.client.mqttv3.persist.MemoryPersistence;
+import org.eclipse.sparkplug.impl.exception.message.SparkplugBPayloadDecoder;
+import org.eclipse.sparkplug.impl.exception.message.SparkplugBPayloadEncoder;
+import org.eclipse.sparkplug.impl.exception.model.PayloadPool;
+import org.eclipse.sparkplug.tck.test.common.SparkplugBProto.Payload;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * A load generator which simulates many Sparkplug edge nodes and devices, for sizing brokers and host applications.
+ *
+ * Where {@link EdgeNode} is one edge node with one device on its own blocking client, the load generator spreads
+ * thousands of simulated edge nodes over a small pool of asynchronous clients. Each client has one thread, which
+ * publishes the births of its edge nodes and then updates each of their devices once per publish interval, with
+ * report by exception or periodic reporting, by name or by alias. Edge nodes can be made to churn, publishing an
+ * NDEATH and a new NBIRTH and DBIRTHs, and they are reborn on a Node Control/Rebirth NCMD.
+ *
+ * A device update is skipped, rather than queued, while its client has too many messages waiting to be sent, so the
+ * generator shows the rate a broker actually sustains. The rates, and the latencies from publish to completion
+ * (written to the network for QoS 0, acknowledged for QoS 1 and 2), are logged every report interval.
+ *
+ * Run it with name=value arguments, as listed in {@link LoadOptions#set(String, String)}, for example
+ *
+ * <pre>
+ * java org.eclipse.sparkplug.tck.utility.LoadGenerator edgeNodes=2000 devicesPerNode=5 clients=8 duration=60000
+ * </pre>
+ *
+ * @author Ian Craggs
+ */
+public class LoadGenerator {
+
+	private static final Logger logger = LoggerFactory.getLogger("Sparkplug");
+
+	private static final String REBIRTH = "Node Control/Rebirth";
+
+	private final LoadOptions options;
+	private final List<Partition> partitions = new ArrayList<Partition>();
+
+	private final LongAdder published = new LongAdder();
+	private final LongAdder failed = new LongAdder();
+	private final LongAdder skipped = new LongAdder();
+	private final LongAdder bytes = new LongAdder();
+	private final LongAdder births = new LongAdder();
+	private final LongAdder deaths = new LongAdder();
+	private final LatencyHistogram latency = new LatencyHistogram();
+	private final LatencyHistogram intervalLatency = new LatencyHistogram();
+
+	private ScheduledExecutorService reporter = null;
+	private long startTime;
+	private long lastReportTime;
+	private long lastPublished;
+	private long lastBytes;
+
+	public LoadGenerator(LoadOptions options) {
+		options.validate();
+		this.options = options;
+	}
+
+	public String getName() {
+		return "Sparkplug TCK load generator";
+	}
+
+	/**
+	 * Connects the clients, publishes the births of all the edge nodes and devices, and starts publishing data.
+	 */
+	public synchronized void start() throws MqttException {
+		if (!partitions.isEmpty()) {
+			logger.info("{} already started", getName());
+			return;
+		}
+		logger.info("{} starting: {}", getName(), options);
+
+		for (int c = 0; c < options.getClients(); c++) {
+			partitions.add(new Partition(c));
+		}
+		for (int n = 0; n < options.getEdgeNodes(); n++) {
+			SimulatedEdgeNode node = new SimulatedEdgeNode(options, options.getEdgeNodePrefix() + n);
+			partitions.get(n % partitions.size()).nodes.put(node.getEdgeNodeId(), node);
+		}
+		for (Partition partition : partitions) {
+			partition.connect();
+		}
+
+		startTime = lastReportTime = System.nanoTime();
+		for (Partition partition : partitions) {
+			partition.start();
+		}
+		reporter = Executors.newSingleThreadScheduledExecutor(r -> new Thread(r, "Sparkplug load report"));
+		reporter.scheduleAtFixedRate(this::report, options.getReportInterval(), options.getReportInterval(),
+				TimeUnit.MILLISECONDS);
+	}
+
+	/**
+	 * Stops publishing data, publishes the deaths of all the edge nodes, and disconnects the clients.
+	 */
+	public synchronized void stop() {
+		if (partitions.isEmpty()) {
+			return;
+		}
+		reporter.shutdownNow();
+		for (Partition partition : partitions) {
+			partition.stop();
+		}
+		report();
+		logger.info("{} stopped: {}", getName(), getSummary());
+		partitions.clear();
+	}
+
+	/**
+	 * @return the totals since the start, and the latencies of all the messages
+	 */
+	public String getSummary() {
+		double seconds = Math.max(1, System.nanoTime() - startTime) / 1e9;
+		return String.format("%d published (%.0f/s, %.1f KB/s), %d failed, %d skipped, %d births, %d deaths, "
+				+ "latency mean %d us, p50 %d us, p99 %d us, max %d us", published.sum(), published.sum() / seconds,
+				bytes.sum() / seconds / 1024, failed.sum(), skipped.sum(), births.sum(), deaths.sum(),
+				latency.getMean() / 1000, latency.getPercentile(0.5) / 1000, latency.getPercentile(0.99) / 1000,
+				latency.getMax() / 1000);
+	}
+
+	public long getPublished() {
+		return published.sum();
+	}
+
+	public long getFailed() {
+		return failed.sum();
+	}
+
+	/**
+	 * @return the number of device updates skipped because their client had too many messages waiting to be sent
+	 */
+	public long getSkipped() {
+		return skipped.sum();
+	}
+
+	/**
+	 * @return the latencies, from publish to completion, of all the messages since the start
+	 */
+	public LatencyHistogram getLatency() {
+		return latency;
+	}
+
+	private void report() {
+		long now = System.nanoTime();
+		long publishedNow = published.sum();
+		long bytesNow = bytes.sum();
+		double seconds = Math.max(1, now - lastReportTime) / 1e9;
+		logger.info("{}: {} msg/s, {} KB/s, latency p50 {} us, p99 {} us, max {} us; {} failed, {} skipped in total",
+				getName(), Math.round((publishedNow - lastPublished) / seconds),
+				Math.round((bytesNow - lastBytes) / seconds / 1024), intervalLatency.getPercentile(0.5) / 1000,
+				intervalLatency.getPercentile(0.99) / 1000, intervalLatency.getMax() / 1000, failed.sum(),
+				skipped.sum());
+		intervalLatency.reset();
+		lastReportTime = now;
+		lastPublished = publishedNow;
+		lastBytes = bytesNow;
+	}
+
+	/**
+	 * One client, the edge nodes published on it, and the thread which publishes them. All the state of the edge
+	 * nodes, the payload pool and the encoder are only used on that thread.
+	 */
+	private class Partition implements MqttCallback, IMqttActionListener {
+
+		private final Map<String, SimulatedEdgeNode> nodes = new HashMap<String, SimulatedEdgeNode>();
+		private final SparkplugBPayloadEncoder encoder = new SparkplugBPayloadEncoder();
+		private final PayloadPool pool = new PayloadPool();
+		private final SplittableRandom random;
+		private final AtomicInteger inflight = new AtomicInteger();
+		private final ScheduledExecutorService executor;
+		private final MqttAsyncClient client;
+
+		Partition(int index) throws MqttException {
+			random = new SplittableRandom(index);
+			String clientId = "Sparkplug TCK load " + options.getGroupId() + " " + index;
+			client = new MqttAsyncClient(options.getBrokerURI(), clientId, new MemoryPersistence());
+			client.setCallback(this);
+			executor = Executors.newSingleThreadScheduledExecutor(r -> new Thread(r, clientId));
+		}
+
+		void connect() throws MqttException {
+			MqttConnectOptions connectOptions = new MqttConnectOptions();
+			connectOptions.setCleanSession(true);
+			connectOptions.setConnectionTimeout(30);
+			connectOptions.setKeepAliveInterval(30);
+			// births of all the nodes are sent in one burst, on top of the data messages
+			connectOptions.setMaxInflight(options.getMaxInflight() + nodes.size() * (2 + options.getDevicesPerNode()));
+			client.connect(connectOptions).waitForCompletion();
+			client.subscribe(TOPIC_ROOT_SP_BV_1_0 + "/" + options.getGroupId() + "/NCMD/+", 0).waitForCompletion();
+		}
+
+		void start() {
+			executor.execute(() -> {
+				for (SimulatedEdgeNode node : nodes.values()) {
+					birth(node);
+				}
+			});
+			executor.scheduleAtFixedRate(this::update, options.getPublishInterval(), options.getPublishInterval(),
+					TimeUnit.MILLISECONDS);
+			if (options.getChurnInterval() > 0) {
+				executor.scheduleAtFixedRate(this::churn, options.getChurnInterval(), options.getChurnInterval(),
+						TimeUnit.MILLISECONDS);
+			}
+		}
+
+		void stop() {
+			CountDownLatch stopped = new CountDownLatch(1);
+			executor.execute(() -> {
+				for (SimulatedEdgeNode node : nodes.values()) {
+					if (node.isOnline()) {
+						death(node);
+					}
+				}
+				stopped.countDown();
+			});
+			try {
+				stopped.await(30, TimeUnit.SECONDS);
+				executor.shutdownNow();
+				client.disconnect().waitForCompletion();
+				client.close();
+			} catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+			} catch (MqttException e) {
+				logger.error("{} failed to disconnect: {}", client.getClientId(), e.getMessage());
+			}
+		}
+
+		private void update() {
+			for (SimulatedEdgeNode node : nodes.values()) {
+				if (!node.isOnline()) {
+					continue;
+				}
+				for (int d = 0; d < node.getDeviceCount(); d++) {
+					if (inflight.get() >= options.getMaxInflight()) {
+						skipped.increment();
+						continue;
+					}
+					try {
+						byte[] payload = node.deviceData(pool, encoder, random, d);
+						if (payload != null) {
+							publish(node.getDeviceDataTopic(d), payload);
+						}
+					} catch (Exception e) {
+						failed.increment();
+						logger.debug("{} failed to publish DDATA: {}", node.getEdgeNodeId(), e.getMessage());
+					}
+				}
+			}
+		}
+
+		private void churn() {
+			List<SimulatedEdgeNode> online = new ArrayList<SimulatedEdgeNode>(nodes.size());
+			for (SimulatedEdgeNode node : nodes.values()) {
+				if (node.isOnline()) {
+					online.add(node);
+				}
+			}
+			if (!online.isEmpty()) {
+				SimulatedEdgeNode node = online.get(random.nextInt(online.size()));
+				death(node);
+				birth(node);
+			}
+		}
+
+		private void birth(SimulatedEdgeNode node) {
+			try {
+				publish(node.getNodeBirthTopic(), node.nodeBirth(encoder));
+				for (int d = 0; d < node.getDeviceCount(); d++) {
+					publish(node.getDeviceBirthTopic(d), node.deviceBirth(encoder, d));
+				}
+				births.increment();
+			} catch (Exception e) {
+				failed.increment();
+				logger.error("{} failed to publish births: {}", node.getEdgeNodeId(), e.getMessage());
+			}
+		}
+
+		private void death(SimulatedEdgeNode node) {
+			try {
+				for (int d = 0; d < node.getDeviceCount(); d++) {
+					publish(node.getDeviceDeathTopic(d), node.deviceDeath(encoder));
+				}
+				publish(node.getNodeDeathTopic(), node.nodeDeath(encoder));
+				deaths.increment();
+			} catch (Exception e) {
+				failed.increment();
+				logger.error("{} failed to publish deaths: {}", node.getEdgeNodeId(), e.getMessage());
+			}
+		}
+
+		private void publish(String topic, byte[] payload) throws MqttException {
+			inflight.incrementAndGet();
+			try {
+				client.publish(topic, payload, options.getQos(), false, System.nanoTime(), this);
+			} catch (MqttException e) {
+				inflight.decrementAndGet();
+				throw e;
+			}
+			bytes.add(payload.length);
+		}
+
+		@Override
+		public void onSuccess(IMqttToken token) {
+			inflight.decrementAndGet();
+			long nanos = System.nanoTime() - (Long) token.getUserContext();
+			latency.record(nanos);
+			intervalLatency.record(nanos);
+			published.increment();
+		}
+
+		@Override
+		public void onFailure(IMqttToken token, Throwable exception) {
+			inflight.decrementAndGet();
+			failed.increment();
+		}
+
+		@Override
+		public void messageArrived(String topic, MqttMessage message) throws Exception {
+			SimulatedEdgeNode node = nodes.get(topic.substring(topic.lastIndexOf('/') + 1));
+			if (node == null) {
+				return;
+			}
+			Payload payload = SparkplugBPayloadDecoder.getInstance().buildFromByteArray(message.getPayload());
+			for (Payload.Metric metric : payload.getMetricsList()) {
+				if (REBIRTH.equals(metric.getName()) && metric.getBooleanValue()) {
+					logger.info("{} rebirth requested", node.getEdgeNodeId());
+					// the session carries on, so the births keep the bdSeq of the current one
+					executor.execute(() -> birth(node));
+					return;
+				}
+			}
+		}
+
+		@Override
+		public void connectionLost(Throwable cause) {
+			logger.error("{} connection lost: {}", client.getClientId(), cause.getMessage());
+		}
+
+		@Override
+		public void deliveryComplete(IMqttDeliveryToken token) {
+		}
+	}
+
+	public static void main(String[] args) throws Exception {
+		LoadOptions options = new LoadOptions();
+		for (String arg : args) {
+			int equals = arg.indexOf('=');
+			if (equals < 0) {
+				throw new IllegalArgumentException("Arguments are name=value, not " + arg);
+			}
+			options.set(arg.substring(0, equals), arg.substring(equals + 1));
+		}
+		LoadGenerator generator = new LoadGenerator(options);
+		Runtime.getRuntime().addShutdownHook(new Thread(generator::stop));
+		generator.start();
+		if (options.getDuration() > 0) {
+			Thread.sleep(options.getDuration());
+			generator.stop();
+		} else {
+			Thread.currentThread().join();
+		}
+	}
+}
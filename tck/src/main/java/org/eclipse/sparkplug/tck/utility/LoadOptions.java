@@ -0,0 +1,291 @@
+/*******************************************************************************
+ * Copyright (c) 2022 Ian Craggs
+ *
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v2.0
+ * which is available at https://www.eclipse.org/legal/epl-2.0/
+ *
+ * SPDX-License-Identifier: EPL-2.0
+ *
+ * Contributors:
+ *    Ian Craggs - initial implementation and documentation
+ *******************************************************************************/
+
+package org.eclipse.sparkplug.tck.utility;
+
+/**
+ * The settings of a {@link LoadGenerator} run.
+ *
+ * Each setting can also be given on the command line of {@link LoadGenerator#main(String[])} as name=value, using the
+ * names in {@link #set(String, String)}.
+ *
+ * @author Ian Craggs
+ */
+public class LoadOptions {
+
+	private String brokerURI = "tcp://localhost:1883";
+	private String groupId = "Load";
+	private String edgeNodePrefix = "Edge";
+	private int edgeNodes = 100;
+	private int devicesPerNode = 1;
+	private int metricsPerDevice = 10;
+	private int clients = 4;
+	private long publishInterval = 1000;
+	private boolean reportByException = true;
+	private double changeProbability = 0.1;
+	private boolean aliases = true;
+	private long churnInterval = 0;
+	private int qos = 0;
+	private int maxInflight = 1000;
+	private long reportInterval = 10000;
+	private long duration = 0;
+
+	public String getBrokerURI() {
+		return brokerURI;
+	}
+
+	public LoadOptions setBrokerURI(String brokerURI) {
+		this.brokerURI = brokerURI;
+		return this;
+	}
+
+	public String getGroupId() {
+		return groupId;
+	}
+
+	public LoadOptions setGroupId(String groupId) {
+		this.groupId = groupId;
+		return this;
+	}
+
+	/**
+	 * @return the prefix of the edge node IDs, which are numbered from 0
+	 */
+	public String getEdgeNodePrefix() {
+		return edgeNodePrefix;
+	}
+
+	public LoadOptions setEdgeNodePrefix(String edgeNodePrefix) {
+		this.edgeNodePrefix = edgeNodePrefix;
+		return this;
+	}
+
+	public int getEdgeNodes() {
+		return edgeNodes;
+	}
+
+	public LoadOptions setEdgeNodes(int edgeNodes) {
+		this.edgeNodes = edgeNodes;
+		return this;
+	}
+
+	public int getDevicesPerNode() {
+		return devicesPerNode;
+	}
+
+	public LoadOptions setDevicesPerNode(int devicesPerNode) {
+		this.devicesPerNode = devicesPerNode;
+		return this;
+	}
+
+	public int getMetricsPerDevice() {
+		return metricsPerDevice;
+	}
+
+	public LoadOptions setMetricsPerDevice(int metricsPerDevice) {
+		this.metricsPerDevice = metricsPerDevice;
+		return this;
+	}
+
+	/**
+	 * @return the number of MQTT connections shared by the simulated edge nodes
+	 */
+	public int getClients() {
+		return clients;
+	}
+
+	public LoadOptions setClients(int clients) {
+		this.clients = clients;
+		return this;
+	}
+
+	/**
+	 * @return the time between two updates of each device, in milliseconds
+	 */
+	public long getPublishInterval() {
+		return publishInterval;
+	}
+
+	public LoadOptions setPublishInterval(long publishInterval) {
+		this.publishInterval = publishInterval;
+		return this;
+	}
+
+	/**
+	 * @return true if only the metrics which changed are published, false if all the metrics of a device are
+	 *         published on every update
+	 */
+	public boolean isReportByException() {
+		return reportByException;
+	}
+
+	public LoadOptions setReportByException(boolean reportByException) {
+		this.reportByException = reportByException;
+		return this;
+	}
+
+	/**
+	 * @return the probability, from 0 to 1, that a metric changes on each update
+	 */
+	public double getChangeProbability() {
+		return changeProbability;
+	}
+
+	public LoadOptions setChangeProbability(double changeProbability) {
+		this.changeProbability = changeProbability;
+		return this;
+	}
+
+	/**
+	 * @return true if the device metrics are given aliases in the DBIRTH, and published by alias only
+	 */
+	public boolean isAliases() {
+		return aliases;
+	}
+
+	public LoadOptions setAliases(boolean aliases) {
+		this.aliases = aliases;
+		return this;
+	}
+
+	/**
+	 * @return the time between two edge node death and rebirth cycles on each client, in milliseconds, or 0 for none
+	 */
+	public long getChurnInterval() {
+		return churnInterval;
+	}
+
+	public LoadOptions setChurnInterval(long churnInterval) {
+		this.churnInterval = churnInterval;
+		return this;
+	}
+
+	public int getQos() {
+		return qos;
+	}
+
+	public LoadOptions setQos(int qos) {
+		this.qos = qos;
+		return this;
+	}
+
+	/**
+	 * @return the maximum number of data messages waiting to be sent on each client, above which updates are skipped
+	 */
+	public int getMaxInflight() {
+		return maxInflight;
+	}
+
+	public LoadOptions setMaxInflight(int maxInflight) {
+		this.maxInflight = maxInflight;
+		return this;
+	}
+
+	/**
+	 * @return the time between two logged reports of the publish rates and latencies, in milliseconds
+	 */
+	public long getReportInterval() {
+		return reportInterval;
+	}
+
+	public LoadOptions setReportInterval(long reportInterval) {
+		this.reportInterval = reportInterval;
+		return this;
+	}
+
+	/**
+	 * @return how long {@link LoadGenerator#main(String[])} runs for, in milliseconds, or 0 until it is interrupted
+	 */
+	public long getDuration() {
+		return duration;
+	}
+
+	public LoadOptions setDuration(long duration) {
+		this.duration = duration;
+		return this;
+	}
+
+	/**
+	 * Sets an option by name.
+	 *
+	 * @param name the name of the option, as in its getter, for example "edgeNodes" or "publishInterval"
+	 * @param value the value of the option
+	 * @return these options
+	 * @throws IllegalArgumentException if the option is not known, or the value is not valid for it
+	 */
+	public LoadOptions set(String name, String value) {
+		switch (name) {
+			case "brokerURI":
+				return setBrokerURI(value);
+			case "groupId":
+				return setGroupId(value);
+			case "edgeNodePrefix":
+				return setEdgeNodePrefix(value);
+			case "edgeNodes":
+				return setEdgeNodes(Integer.parseInt(value));
+			case "devicesPerNode":
+				return setDevicesPerNode(Integer.parseInt(value));
+			case "metricsPerDevice":
+				return setMetricsPerDevice(Integer.parseInt(value));
+			case "clients":
+				return setClients(Integer.parseInt(value));
+			case "publishInterval":
+				return setPublishInterval(Long.parseLong(value));
+			case "reportByException":
+				return setReportByException(Boolean.parseBoolean(value));
+			case "changeProbability":
+				return setChangeProbability(Double.parseDouble(value));
+			case "aliases":
+				return setAliases(Boolean.parseBoolean(value));
+			case "churnInterval":
+				return setChurnInterval(Long.parseLong(value));
+			case "qos":
+				return setQos(Integer.parseInt(value));
+			case "maxInflight":
+				return setMaxInflight(Integer.parseInt(value));
+			case "reportInterval":
+				return setReportInterval(Long.parseLong(value));
+			case "duration":
+				return setDuration(Long.parseLong(value));
+			default:
+				throw new IllegalArgumentException("Unknown option " + name);
+		}
+	}
+
+	/**
+	 * @throws IllegalArgumentException if a setting is out of range
+	 */
+	public void validate() {
+		if (edgeNodes < 1 || devicesPerNode < 0 || metricsPerDevice < 1 || clients < 1) {
+			throw new IllegalArgumentException("There must be at least one edge node, client and metric per device");
+		}
+		if (publishInterval < 1 || reportInterval < 1 || churnInterval < 0 || duration < 0) {
+			throw new IllegalArgumentException("Intervals must be positive");
+		}
+		if (changeProbability < 0 || changeProbability > 1) {
+			throw new IllegalArgumentException("changeProbability must be from 0 to 1");
+		}
+		if (qos < 0 || qos > 2 || maxInflight < 1) {
+			throw new IllegalArgumentException("qos must be 0, 1 or 2 and maxInflight at least 1");
+		}
+	}
+
+	@Override
+	public String toString() {
+		return "LoadOptions [brokerURI=" + brokerURI + ", groupId=" + groupId + ", edgeNodes=" + edgeNodes
+				+ ", devicesPerNode=" + devicesPerNode + ", metricsPerDevice=" + metricsPerDevice + ", clients="
+				+ clients + ", publishInterval=" + publishInterval + ", reportByException=" + reportByException
+				+ ", changeProbability=" + changeProbability + ", aliases=" + aliases + ", churnInterval="
+				+ churnInterval + ", qos=" + qos + ", maxInflight=" + maxInflight + "]";
+	}
+}
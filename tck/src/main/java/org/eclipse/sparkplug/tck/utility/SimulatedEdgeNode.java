@@ -0,0 +1,243 @@
+/*******************************************************************************
+ * Copyright (c) 2022 Ian Craggs
+ *
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v2.0
+ * which is available at https://www.eclipse.org/legal/epl-2.0/
+ *
+ * SPDX-License-Identifier: EPL-2.0
+ *
+ * Contributors:
+ *    Ian Craggs - initial implementation and documentation
+ *******************************************************************************/
+
+package org.eclipse.sparkplug.tck.utility;
+
+import static org.eclipse.sparkplug.impl.exception.model.MetricDataType.Boolean;
+import static org.eclipse.sparkplug.impl.exception.model.MetricDataType.Double;
+import static org.eclipse.sparkplug.impl.exception.model.MetricDataType.Int32;
+import static org.eclipse.sparkplug.impl.exception.model.MetricDataType.Int64;
+import static org.eclipse.sparkplug.tck.test.common.Constants.TOPIC_ROOT_SP_BV_1_0;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.List;
+import java.util.SplittableRandom;
+
+import org.eclipse.sparkplug.impl.exception.SparkplugInvalidTypeException;
+import org.eclipse.sparkplug.impl.exception.message.SparkplugBPayloadEncoder;
+import org.eclipse.sparkplug.impl.exception.model.Metric;
+import org.eclipse.sparkplug.impl.exception.model.Metric.MetricBuilder;
+import org.eclipse.sparkplug.impl.exception.model.MetricDataType;
+import org.eclipse.sparkplug.impl.exception.model.PayloadPool;
+import org.eclipse.sparkplug.impl.exception.model.SparkplugBPayload;
+
+/**
+ * The state of one edge node simulated by the {@link LoadGenerator}: its devices and their metric values, its bdSeq
+ * and seq, and its topics.
+ *
+ * Device metrics are of type Int32, Int64, Double or Boolean in turn. Each update changes every metric with the
+ * configured probability, by a small random step. The payloads are built with the pool and encoder of the client
+ * the node is published on, and an instance is only used from that client's thread, so it needs no locking.
+ *
+ * @author Ian Craggs
+ */
+class SimulatedEdgeNode {
+
+	private static final MetricDataType[] TYPES = { Int32, Int64, Double, Boolean };
+
+	private final String edgeNodeId;
+	private final String[] deviceIds;
+	private final String[] metricNames;
+	private final double[][] values;
+	private final LoadOptions options;
+
+	private final String nbirthTopic;
+	private final String ndeathTopic;
+	private final String[] dbirthTopics;
+	private final String[] ddataTopics;
+	private final String[] ddeathTopics;
+
+	private int bdSeq = 0;
+	private long seq = 0;
+	private boolean online = false;
+
+	SimulatedEdgeNode(LoadOptions options, String edgeNodeId) {
+		this.options = options;
+		this.edgeNodeId = edgeNodeId;
+		String prefix = TOPIC_ROOT_SP_BV_1_0 + "/" + options.getGroupId() + "/";
+		nbirthTopic = prefix + "NBIRTH/" + edgeNodeId;
+		ndeathTopic = prefix + "NDEATH/" + edgeNodeId;
+
+		int devices = options.getDevicesPerNode();
+		deviceIds = new String[devices];
+		dbirthTopics = new String[devices];
+		ddataTopics = new String[devices];
+		ddeathTopics = new String[devices];
+		for (int d = 0; d < devices; d++) {
+			deviceIds[d] = "Device" + d;
+			dbirthTopics[d] = prefix + "DBIRTH/" + edgeNodeId + "/" + deviceIds[d];
+			ddataTopics[d] = prefix + "DDATA/" + edgeNodeId + "/" + deviceIds[d];
+			ddeathTopics[d] = prefix + "DDEATH/" + edgeNodeId + "/" + deviceIds[d];
+		}
+
+		metricNames = new String[options.getMetricsPerDevice()];
+		for (int m = 0; m < metricNames.length; m++) {
+			metricNames[m] = "Metric/" + m;
+		}
+		values = new double[devices][metricNames.length];
+	}
+
+	String getEdgeNodeId() {
+		return edgeNodeId;
+	}
+
+	int getDeviceCount() {
+		return deviceIds.length;
+	}
+
+	boolean isOnline() {
+		return online;
+	}
+
+	String getNodeBirthTopic() {
+		return nbirthTopic;
+	}
+
+	String getNodeDeathTopic() {
+		return ndeathTopic;
+	}
+
+	String getDeviceBirthTopic(int device) {
+		return dbirthTopics[device];
+	}
+
+	String getDeviceDataTopic(int device) {
+		return ddataTopics[device];
+	}
+
+	String getDeviceDeathTopic(int device) {
+		return ddeathTopics[device];
+	}
+
+	/**
+	 * Creates the NBIRTH of the next session of the node, which resets seq.
+	 */
+	byte[] nodeBirth(SparkplugBPayloadEncoder encoder) throws Exception {
+		seq = 0;
+		online = true;
+		List<Metric> metrics = new ArrayList<Metric>();
+		metrics.add(new MetricBuilder("bdSeq", Int64, (long) bdSeq).createMetric());
+		metrics.add(new MetricBuilder("Node Control/Rebirth", Boolean, false).createMetric());
+		return encoder.getBytes(new SparkplugBPayload(new Date(), metrics, nextSeq(), null, null));
+	}
+
+	/**
+	 * Creates the NDEATH of the current session, with the bdSeq of its NBIRTH. The next NBIRTH has the next bdSeq.
+	 *
+	 * The clients are shared by many edge nodes, so this can't be their MQTT will: it is published explicitly.
+	 */
+	byte[] nodeDeath(SparkplugBPayloadEncoder encoder) throws Exception {
+		online = false;
+		List<Metric> metrics = new ArrayList<Metric>();
+		metrics.add(new MetricBuilder("bdSeq", Int64, (long) bdSeq).createMetric());
+		bdSeq = (bdSeq + 1) % 256;
+		return encoder.getBytes(new SparkplugBPayload(new Date(), metrics, null, null, null));
+	}
+
+	byte[] deviceBirth(SparkplugBPayloadEncoder encoder, int device) throws Exception {
+		List<Metric> metrics = new ArrayList<Metric>(metricNames.length);
+		for (int m = 0; m < metricNames.length; m++) {
+			MetricBuilder builder = new MetricBuilder(metricNames[m], type(m), value(device, m));
+			if (options.isAliases()) {
+				builder.alias(alias(device, m));
+			}
+			metrics.add(builder.createMetric());
+		}
+		return encoder.getBytes(new SparkplugBPayload(new Date(), metrics, nextSeq(), null, null));
+	}
+
+	byte[] deviceDeath(SparkplugBPayloadEncoder encoder) throws Exception {
+		return encoder.getBytes(new SparkplugBPayload(new Date(), new ArrayList<Metric>(), nextSeq(), null, null));
+	}
+
+	/**
+	 * Updates the metrics of a device and creates its DDATA.
+	 *
+	 * @return the DDATA, or null if no metric changed and only changes are reported
+	 */
+	byte[] deviceData(PayloadPool pool, SparkplugBPayloadEncoder encoder, SplittableRandom random, int device)
+			throws SparkplugInvalidTypeException, IOException {
+		long now = System.currentTimeMillis();
+		SparkplugBPayload payload = null;
+		try {
+			for (int m = 0; m < metricNames.length; m++) {
+				boolean changed = random.nextDouble() < options.getChangeProbability();
+				if (changed) {
+					change(random, device, m);
+				} else if (options.isReportByException()) {
+					continue;
+				}
+				if (payload == null) {
+					payload = pool.acquirePayload(now, 0L);
+				}
+				Metric metric = pool.acquireMetric(options.isAliases() ? null : metricNames[m], type(m),
+						value(device, m), now);
+				if (options.isAliases()) {
+					metric.setAlias(alias(device, m));
+				}
+				payload.addMetric(metric);
+			}
+			if (payload == null) {
+				return null;
+			}
+			payload.setSeq(nextSeq());
+			byte[] bytes = new byte[encoder.getSerializedSize(payload)];
+			encoder.encode(payload, ByteBuffer.wrap(bytes));
+			return bytes;
+		} finally {
+			if (payload != null) {
+				pool.release(payload);
+			}
+		}
+	}
+
+	private long nextSeq() {
+		long next = seq;
+		seq = (seq + 1) % 256;
+		return next;
+	}
+
+	private long alias(int device, int metric) {
+		return (long) device * metricNames.length + metric + 1;
+	}
+
+	private static MetricDataType type(int metric) {
+		return TYPES[metric % TYPES.length];
+	}
+
+	private void change(SplittableRandom random, int device, int metric) {
+		double value = values[device][metric];
+		if (type(metric) == Boolean) {
+			values[device][metric] = (value == 0) ? 1 : 0;
+		} else {
+			values[device][metric] = value + random.nextDouble(-10, 10);
+		}
+	}
+
+	private Object value(int device, int metric) {
+		double value = values[device][metric];
+		switch (type(metric)) {
+			case Int32:
+				return (int) value;
+			case Int64:
+				return (long) value;
+			case Double:
+				return value;
+			default:
+				return value != 0;
+		}
+	}
+}